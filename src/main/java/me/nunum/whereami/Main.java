@@ -1,15 +1,26 @@
 package me.nunum.whereami;
 
+import me.nunum.whereami.facade.websocket.TrackingApplication;
 import me.nunum.whereami.framework.interceptor.PrincipalInterceptor;
 import me.nunum.whereami.framework.interceptor.RequestTrackingFilter;
+import me.nunum.whereami.framework.interceptor.UnitOfWorkFilter;
+import me.nunum.whereami.framework.interceptor.UnitOfWorkListener;
+import me.nunum.whereami.framework.persistence.ConnectionPool;
 import me.nunum.whereami.model.exceptions.EntityNotFoundException;
 import me.nunum.whereami.model.exceptions.ForbiddenSubResourceException;
+import me.nunum.whereami.service.FingerprintCompactionService;
+import me.nunum.whereami.service.PredictionRetentionService;
+import me.nunum.whereami.service.RadioMapSnapshotService;
+import me.nunum.whereami.service.RadioMapWarmUpService;
 import me.nunum.whereami.service.TaskManager;
+import me.nunum.whereami.service.tracking.TrackingSessionExpiryService;
 import me.nunum.whereami.utils.AppConfig;
 import org.glassfish.grizzly.http.server.DefaultErrorPageGenerator;
 import org.glassfish.grizzly.http.server.HttpServer;
 import org.glassfish.grizzly.http.server.ServerConfiguration;
 import org.glassfish.grizzly.http.server.StaticHttpHandler;
+import org.glassfish.grizzly.websockets.WebSocketAddOn;
+import org.glassfish.grizzly.websockets.WebSocketEngine;
 import org.glassfish.jersey.grizzly2.httpserver.GrizzlyHttpServerFactory;
 import org.glassfish.jersey.logging.LoggingFeature;
 import org.glassfish.jersey.server.ResourceConfig;
@@ -19,6 +30,7 @@ import org.slf4j.bridge.SLF4JBridgeHandler;
 
 import java.io.IOException;
 import java.net.URI;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.LogManager;
 import java.util.logging.Logger;
@@ -37,7 +49,7 @@ public final class Main {
      *
      * @return Grizzly HTTP server.
      */
-    private static HttpServer startServer() {
+    private static HttpServer startServer() throws IOException {
 
         // create a resource config that scans for JAX-RS resources and providers
         // in me.nunum.whereami.facade package
@@ -46,6 +58,8 @@ public final class Main {
 
         rc.register(PrincipalInterceptor.class);
         rc.register(RequestTrackingFilter.class);
+        rc.register(UnitOfWorkFilter.class);
+        rc.register(UnitOfWorkListener.class);
 
         rc.register(io.swagger.jaxrs.listing.SwaggerSerializers.class);
 
@@ -62,9 +76,16 @@ public final class Main {
         rc.register(ForbiddenSubResourceException.class);
 
 
-        // create and start a new instance of grizzly http server
+        // create a new instance of grizzly http server
         // exposing the Jersey application at BASE_URI
-        return GrizzlyHttpServerFactory.createHttpServer(URI.create(BASE_URI), rc);
+        final HttpServer server = GrizzlyHttpServerFactory.createHttpServer(URI.create(BASE_URI), rc, false);
+
+        // tracking sessions share the listener through the WebSocket upgrade
+        final WebSocketAddOn webSocketAddOn = new WebSocketAddOn();
+        server.getListeners().forEach(listener -> listener.registerAddOn(webSocketAddOn));
+        WebSocketEngine.getEngine().register("/" + AppConfig.APP_API_PATH, AppConfig.TRACKING_PATH, TrackingApplication.getInstance());
+
+        return server;
     }
 
     /**
@@ -88,11 +109,26 @@ public final class Main {
         ServerConfiguration cfg = server.getServerConfiguration();
         cfg.addHttpHandler(docsHandler, "/");
 
+        server.start();
+
         LOGGER.log(Level.INFO, "Jersey app started with WADL available at http://{0}", AppConfig.APP_AUTHORITY);
 
         final Thread taskManager = new Thread(() -> TaskManager.getInstance().run(), "TaskManager");
         taskManager.start();
 
+        if (!AppConfig.RADIO_MAP_SNAPSHOT_DIR.isEmpty()) {
+            TaskManager.getInstance().queue(new RadioMapWarmUpService());
+            TaskManager.getInstance().scheduleAtFixedRate(RadioMapSnapshotService::new, AppConfig.RADIO_MAP_SNAPSHOT_PERIOD_MINUTES, AppConfig.RADIO_MAP_SNAPSHOT_PERIOD_MINUTES, TimeUnit.MINUTES);
+        }
+
+        if (AppConfig.FINGERPRINT_STORE_SEGMENT.equals(AppConfig.FINGERPRINT_STORE)) {
+            TaskManager.getInstance().scheduleAtFixedRate(FingerprintCompactionService::new, AppConfig.FINGERPRINT_COMPACTION_PERIOD_MINUTES, AppConfig.FINGERPRINT_COMPACTION_PERIOD_MINUTES, TimeUnit.MINUTES);
+        }
+
+        TaskManager.getInstance().scheduleAtFixedRate(PredictionRetentionService::new, 0L, AppConfig.PREDICTION_RETENTION_PERIOD_HOURS, TimeUnit.HOURS);
+
+        TaskManager.getInstance().scheduleAtFixedRate(() -> new TrackingSessionExpiryService(TrackingApplication.getInstance().sessions()), AppConfig.TRACKING_IDLE_SECONDS, AppConfig.TRACKING_IDLE_SECONDS, TimeUnit.SECONDS);
+
         LOGGER.fine("System Properties");
         System.getProperties().forEach((k, v) -> {
             LOGGER.fine(k + ":" + v);
@@ -102,6 +138,8 @@ public final class Main {
 
         server.shutdown();
 
+        ConnectionPool.getInstance().close();
+
     }
 }
 
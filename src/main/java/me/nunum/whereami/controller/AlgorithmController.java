@@ -1,6 +1,7 @@
 package me.nunum.whereami.controller;
 
 import me.nunum.whereami.framework.dto.DTO;
+import me.nunum.whereami.framework.persistence.repositories.Keyset;
 import me.nunum.whereami.model.*;
 import me.nunum.whereami.model.dto.AlgorithmImplementationDTO;
 import me.nunum.whereami.model.exceptions.EntityNotFoundException;
@@ -10,6 +11,13 @@ import me.nunum.whereami.model.persistance.*;
 import me.nunum.whereami.model.persistance.jpa.*;
 import me.nunum.whereami.model.request.*;
 import me.nunum.whereami.service.notification.NotifyService;
+import me.nunum.whereami.service.radiomap.BatchPredictor;
+import me.nunum.whereami.service.radiomap.BuiltInAlgorithm;
+import me.nunum.whereami.service.radiomap.BuiltInAlgorithms;
+import me.nunum.whereami.service.radiomap.Candidate;
+import me.nunum.whereami.service.radiomap.RadioMapIndex;
+import me.nunum.whereami.service.radiomap.RadioMapSnapshot;
+import me.nunum.whereami.utils.AppConfig;
 
 import java.security.Principal;
 import java.util.List;
@@ -28,7 +36,6 @@ public class AlgorithmController implements AutoCloseable {
     private final AlgorithmProviderRepository algorithmProviderRepository;
     private final ProviderRepository providerRepository;
     private final TrainingRepository trainingRepository;
-    private final FingerprintRepository fingerprintRepository;
 
     /**
      * constructor
@@ -39,7 +46,6 @@ public class AlgorithmController implements AutoCloseable {
         this.providerRepository = new ProviderRepositoryJpa();
         this.algorithmProviderRepository = new AlgorithmProviderRepositoryJpa();
         this.trainingRepository = new TrainingRepositoryJpa();
-        this.fingerprintRepository = new FingerprintRepositoryJpa();
     }
 
     /**
@@ -53,11 +59,25 @@ public class AlgorithmController implements AutoCloseable {
         return this.repository
                 .paginate(page)
                 .stream()
-                .map(Algorithm::toDTO)
+                .map(DTO.class::cast)
                 .collect(Collectors.toList());
 
     }
 
+    /**
+     * Display a page of approved algorithm entities after a continuation token
+     *
+     * @param cursor Continuation token of the previous page, absent for the first page
+     * @return Page of {@link me.nunum.whereami.model.dto.AlgorithmDTO}
+     * @throws IllegalArgumentException Invalid cursor
+     */
+    public Keyset<DTO> algorithmsAfter(Optional<String> cursor) {
+
+        return this.repository
+                .paginateAfter(Keyset.lastSeen(cursor))
+                .map(DTO.class::cast);
+    }
+
 
     /**
      * Update algorithm instance
@@ -328,10 +348,65 @@ public class AlgorithmController implements AutoCloseable {
         repository.close();
     }
 
+    /**
+     * Run a built-in algorithm implementation over the localization radio map
+     *
+     * @param aId     Algorithm Id
+     * @param ag      Implementation Id, see {@link BuiltInAlgorithms}
+     * @param request See {@link NewAlgorithmRunRequest}
+     * @return See {@link AlgorithmImplementationDTO}
+     * @throws EntityNotFoundException If the implementation does not exist
+     */
     public DTO runAlgorithmImplementation(Long aId, Long ag, NewAlgorithmRunRequest request) {
 
-        long predictedPosition = this.fingerprintRepository.predictUserLocalization(request.getSamples(), request.getLocalizationId());
+        final BuiltInAlgorithm implementation = BuiltInAlgorithms
+                .implementation(ag)
+                .orElseThrow(() -> new EntityNotFoundException(String.format("Implementation %d not found", ag)));
+
+        final RadioMapSnapshot snapshot = RadioMapIndex.getInstance().snapshot(request.getLocalizationId());
+
+        return implementationDTO(implementation.predict(snapshot, request.getSamples()));
+    }
+
+    /**
+     * Run a built-in algorithm implementation over many scans of the same localization
+     *
+     * @param aId     Algorithm Id
+     * @param ag      Implementation Id, see {@link BuiltInAlgorithms}
+     * @param request See {@link NewAlgorithmBatchRunRequest}
+     * @return List of {@link AlgorithmImplementationDTO}, in the order of the scans
+     * @throws EntityNotFoundException  If the implementation does not exist
+     * @throws IllegalArgumentException If the batch is larger than allowed
+     */
+    public List<DTO> runAlgorithmImplementationBatch(Long aId, Long ag, NewAlgorithmBatchRunRequest request) {
+
+        final BuiltInAlgorithm implementation = BuiltInAlgorithms
+                .implementation(ag)
+                .orElseThrow(() -> new EntityNotFoundException(String.format("Implementation %d not found", ag)));
+
+        if (request.getScans().size() > AppConfig.PREDICTION_BATCH_MAX_SCANS) {
+            throw new IllegalArgumentException(String.format("A batch can not have more than %d scans", AppConfig.PREDICTION_BATCH_MAX_SCANS));
+        }
+
+        final RadioMapSnapshot snapshot = RadioMapIndex.getInstance().snapshot(request.getLocalizationId());
+
+        return BatchPredictor
+                .predict(implementation, snapshot, request.getScans())
+                .stream()
+                .map(AlgorithmController::implementationDTO)
+                .collect(Collectors.toList());
+    }
+
+    private static DTO implementationDTO(List<Candidate> candidates) {
+
+        if (candidates.isEmpty()) {
+            return new AlgorithmImplementationDTO(0L, 0.0);
+        }
+
+        final Candidate best = candidates.get(0);
 
-        return new AlgorithmImplementationDTO(predictedPosition, 100.0);
+        return new AlgorithmImplementationDTO(best.getPositionId(),
+                best.getConfidence() * 100.0,
+                candidates.stream().map(Candidate::values).collect(Collectors.toList()));
     }
 }
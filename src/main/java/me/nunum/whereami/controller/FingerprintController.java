@@ -9,6 +9,7 @@ import me.nunum.whereami.model.Position;
 import me.nunum.whereami.model.dto.PositionDTO;
 import me.nunum.whereami.model.persistance.DeviceRepository;
 import me.nunum.whereami.model.persistance.FingerprintRepository;
+import me.nunum.whereami.model.persistance.FingerprintStore;
 import me.nunum.whereami.model.persistance.LocalizationRepository;
 import me.nunum.whereami.model.persistance.PositionRepository;
 import me.nunum.whereami.model.persistance.jpa.DeviceRepositoryJpa;
@@ -16,6 +17,9 @@ import me.nunum.whereami.model.persistance.jpa.FingerprintRepositoryJpa;
 import me.nunum.whereami.model.persistance.jpa.LocalizationRepositoryJpa;
 import me.nunum.whereami.model.persistance.jpa.PositionRepositoryJpa;
 import me.nunum.whereami.model.request.FingerprintRequest;
+import me.nunum.whereami.service.BssidIndex;
+import me.nunum.whereami.service.PredictionCache;
+import me.nunum.whereami.service.radiomap.RadioMapIndex;
 
 import java.security.Principal;
 import java.util.ArrayList;
@@ -37,6 +41,16 @@ public class FingerprintController implements AutoCloseable {
         this.localizationRepository = new LocalizationRepositoryJpa();
     }
 
+    /**
+     * @param store Store the samples are written to and the position metadata read from
+     */
+    public FingerprintController(FingerprintStore store) {
+        this.repository = new FingerprintRepositoryJpa(store);
+        this.deviceRepository = new DeviceRepositoryJpa();
+        this.positionRepository = new PositionRepositoryJpa(() -> store);
+        this.localizationRepository = new LocalizationRepositoryJpa();
+    }
+
     /**
      * Bulk insert a list of samples
      *
@@ -74,6 +88,9 @@ public class FingerprintController implements AutoCloseable {
 
                     if (localization.canOtherUsersSendSamples() || localization.isOwner(device)) {
                         this.repository.bulkFingerprints(fingerprintList);
+                        RadioMapIndex.getInstance().append(localization.id(), fingerprintList);
+                        BssidIndex.getInstance().add(localization.id(), fingerprintList);
+                        PredictionCache.getInstance().invalidate(localization.id());
                     } else {
                         continue;
                     }
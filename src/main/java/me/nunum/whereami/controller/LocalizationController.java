@@ -1,6 +1,7 @@
 package me.nunum.whereami.controller;
 
 import me.nunum.whereami.framework.dto.DTO;
+import me.nunum.whereami.framework.persistence.repositories.Keyset;
 import me.nunum.whereami.model.AlgorithmProvider;
 import me.nunum.whereami.model.Device;
 import me.nunum.whereami.model.Localization;
@@ -17,13 +18,20 @@ import me.nunum.whereami.model.persistance.jpa.AlgorithmProviderRepositoryJpa;
 import me.nunum.whereami.model.persistance.jpa.DeviceRepositoryJpa;
 import me.nunum.whereami.model.persistance.jpa.LocalizationRepositoryJpa;
 import me.nunum.whereami.model.persistance.jpa.PredictionRepositoryJpa;
+import me.nunum.whereami.model.dto.LocalizationMatchDTO;
+import me.nunum.whereami.model.request.DiscoverLocalizationRequest;
 import me.nunum.whereami.model.request.NewLocalizationRequest;
 import me.nunum.whereami.model.request.NewPredictionRequest;
 import me.nunum.whereami.model.request.UpdatePredictionRequest;
+import me.nunum.whereami.service.BssidIndex;
 import me.nunum.whereami.service.OnlinePhaseService;
+import me.nunum.whereami.service.PredictionCache;
+import me.nunum.whereami.service.PredictionRequestIdAllocator;
 import me.nunum.whereami.service.TaskManager;
+import me.nunum.whereami.utils.AppConfig;
 
 import java.security.Principal;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
 import java.util.logging.Level;
@@ -64,10 +72,32 @@ public class LocalizationController implements AutoCloseable {
         return this.repository
                 .searchWithPagination(requester, page, localizationName, trained, onlyUserLocalizations)
                 .stream()
-                .map(e -> e.toDTO(requester))
+                .<DTO>map(e -> e.seenBy(requester.getId()))
                 .collect(Collectors.toList());
     }
 
+    /**
+     * Paginate localizations by continuation token
+     *
+     * @param principal        See {@link Principal}
+     * @param cursor           Continuation token of the previous page, absent for the first page
+     * @param localizationName Nullable name for search
+     * @return Page of {@link me.nunum.whereami.model.dto.LocalizationDTO}
+     * @throws IllegalArgumentException Invalid cursor
+     */
+    public Keyset<DTO> localizationsAfter(final Principal principal,
+                                          final Optional<String> cursor,
+                                          final Optional<String> localizationName,
+                                          final Optional<String> trained,
+                                          final Optional<Boolean> onlyUserLocalizations) {
+
+        final Device requester = this.deviceRepository.findOrPersist(principal);
+
+        return this.repository
+                .searchAfter(requester, Keyset.lastSeen(cursor), localizationName, trained, onlyUserLocalizations)
+                .<DTO>map(e -> e.seenBy(requester.getId()));
+    }
+
     /**
      * Create new localization
      *
@@ -122,10 +152,50 @@ public class LocalizationController implements AutoCloseable {
 
         this.repository.delete(theLocalization);
 
+        BssidIndex.getInstance().remove(localizationId);
+
         return theLocalization.toDTO();
     }
 
 
+    /**
+     * Find the localizations a scan was most likely taken in, among the ones
+     * the requester may predict in
+     *
+     * @param principal See {@link Principal}
+     * @param request   See {@link DiscoverLocalizationRequest}
+     * @return List of {@link LocalizationMatchDTO}, best match first
+     * @throws IllegalArgumentException The request has no samples
+     */
+    public List<DTO> discoverLocalizations(final Principal principal,
+                                           final DiscoverLocalizationRequest request) {
+
+        if (request == null || request.getSamples() == null || request.getSamples().isEmpty()) {
+            throw new IllegalArgumentException("The scan to discover localizations for is missing or empty");
+        }
+
+        final Device requester = this.deviceRepository.findOrPersist(principal);
+
+        final List<DTO> dtos = new ArrayList<>(AppConfig.LOCALIZATION_DISCOVERY_MAX_RESULTS);
+
+        for (BssidIndex.Match match : BssidIndex.getInstance().match(request.getSamples())) {
+
+            if (dtos.size() >= AppConfig.LOCALIZATION_DISCOVERY_MAX_RESULTS) {
+                break;
+            }
+
+            final Optional<Localization> someLocalization = this.repository.findById(match.getLocalizationId());
+
+            if (someLocalization.isPresent()
+                    && (someLocalization.get().isPublicForOnline() || someLocalization.get().isOwner(requester))) {
+                dtos.add(new LocalizationMatchDTO(someLocalization.get().toDTO(requester), match.getScore()));
+            }
+        }
+
+        return dtos;
+    }
+
+
     /**
      * Report a specific localization
      *
@@ -201,11 +271,24 @@ public class LocalizationController implements AutoCloseable {
 
         if (!request.isOnlyPolling()) {
 
-            Long requestId = predictionRepository.maxRequestIdForLocalization(localization) + 1;
+            final Long requestId = PredictionRequestIdAllocator.getInstance().nextRequestId(localization);
+
+            final Optional<List<Prediction>> cachedPredictions = PredictionCache.getInstance()
+                    .lookup(localization.id(), request.getSamples());
+
+            if (cachedPredictions.isPresent()) {
+
+                predictionRepository.saveAll(cachedPredictions.get()
+                        .stream()
+                        .map(e -> e.reuseFor(requestId, device.getId()))
+                        .collect(Collectors.toList()));
+
+            } else {
 
-            final OnlinePhaseService onlinePhaseService = new OnlinePhaseService(device.getId(), localization.id(), requestId, request.getSamples());
+                final OnlinePhaseService onlinePhaseService = new OnlinePhaseService(device.getId(), localization.id(), requestId, request.getSamples());
 
-            TaskManager.getInstance().queue(onlinePhaseService);
+                TaskManager.getInstance().queue(onlinePhaseService);
+            }
         }
 
         return predictionRepository
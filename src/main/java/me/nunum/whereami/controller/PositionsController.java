@@ -10,11 +10,13 @@ import me.nunum.whereami.model.exceptions.ForbiddenEntityModificationException;
 import me.nunum.whereami.model.persistance.*;
 import me.nunum.whereami.model.persistance.jpa.*;
 import me.nunum.whereami.model.request.NewPositionRequest;
+import me.nunum.whereami.service.BssidIndex;
+import me.nunum.whereami.service.radiomap.RadioMapIndex;
 
 import java.security.Principal;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
-import java.util.stream.Collectors;
 
 public class PositionsController implements AutoCloseable {
 
@@ -43,10 +45,7 @@ public class PositionsController implements AutoCloseable {
      */
     public List<DTO> positions() {
 
-        return this.repository.positionsByLocalization(this.localization)
-                .stream()
-                .map(Position::toDTO)
-                .collect(Collectors.toList());
+        return new ArrayList<>(this.repository.positionSummariesByLocalization(this.localization));
 
     }
 
@@ -118,6 +117,10 @@ public class PositionsController implements AutoCloseable {
 
         this.fingerprintRepository.deleteByPosition(position);
 
+        RadioMapIndex.getInstance().invalidate(this.localization.id());
+
+        BssidIndex.getInstance().replace(this.localization.id(), this.fingerprintRepository.bssidsOfLocalization(this.localization.id()));
+
         return position.toDTO();
     }
 
@@ -1,6 +1,7 @@
 package me.nunum.whereami.controller;
 
 import me.nunum.whereami.framework.dto.DTO;
+import me.nunum.whereami.framework.persistence.repositories.Keyset;
 import me.nunum.whereami.model.Post;
 import me.nunum.whereami.model.exceptions.EntityNotFoundException;
 import me.nunum.whereami.model.persistance.PostRepository;
@@ -29,6 +30,13 @@ public class PostController implements AutoCloseable {
                 .collect(Collectors.toList());
     }
 
+    public Keyset<DTO> postsAfter(Optional<String> cursor) {
+
+        return this.repository
+                .paginateAfter(Keyset.lastSeen(cursor))
+                .map(Post::toDTO);
+    }
+
 
     public DTO addNewPost(PostRequest postRequest) {
         return this.repository.save(postRequest.build()).toDTO();
@@ -11,6 +11,7 @@ import me.nunum.whereami.model.persistance.TaskRepository;
 import me.nunum.whereami.model.persistance.jpa.DeviceRepositoryJpa;
 import me.nunum.whereami.model.persistance.jpa.TaskRepositoryJpa;
 import me.nunum.whereami.model.request.UpdateTask;
+import me.nunum.whereami.service.PredictionCache;
 import me.nunum.whereami.service.notification.NotifyService;
 
 import java.security.Principal;
@@ -55,6 +56,8 @@ public class TaskController implements AutoCloseable {
 
             localization.incrementTrainedModels();
 
+            PredictionCache.getInstance().invalidate(localization.id());
+
             NotifyService.trainingFinished(localization, task);
 
         } else {
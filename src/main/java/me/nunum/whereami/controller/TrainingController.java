@@ -16,15 +16,16 @@ import me.nunum.whereami.model.persistance.jpa.TaskRepositoryJpa;
 import me.nunum.whereami.model.persistance.jpa.TrainingRepositoryJpa;
 import me.nunum.whereami.model.request.NewTrainingRequest;
 import me.nunum.whereami.service.OfflinePhaseService;
+import me.nunum.whereami.service.PredictionCache;
 import me.nunum.whereami.service.TaskManager;
 import me.nunum.whereami.service.notification.NotifyService;
 
 import java.security.Principal;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import java.util.stream.Collectors;
 
 public class TrainingController implements AutoCloseable {
 
@@ -52,6 +53,7 @@ public class TrainingController implements AutoCloseable {
      * @return See {@link me.nunum.whereami.model.dto.TrainingDTO}
      * @throws EntityNotFoundException
      * @throws ForbiddenEntityAccessException
+     * @throws EntityAlreadyExists            If the same training is requested concurrently
      */
     public DTO submitTrainingRequest(Principal principal, NewTrainingRequest request, Localization localization) {
 
@@ -89,25 +91,11 @@ public class TrainingController implements AutoCloseable {
             throw new ForbiddenEntityCreationException(String.format("Provider %s for this algorithm %d is not yet verified the account.", request.getProviderId(), request.getAlgorithmId()));
         }
 
-        try {
-            Training training = new Training(algorithm, provider, localization);
+        // look the training up before inserting it, a refused insert would roll
+        // back the whole transaction of the request
+        final Optional<Training> existing = this.repository.findTrainingByLocalizationAlgorithmAndProviderId(localization, algorithm, provider);
 
-            localization.addTraining(training);
-
-            training = this.repository.save(training);
-
-            TaskManager.getInstance().queue(new OfflinePhaseService());
-            NotifyService.newTrainingRequest(training);
-
-            return training.toDTO();
-
-        } catch (EntityAlreadyExists e) {
-
-            try {
-                this.close();
-            } catch (Exception e1) {
-                LOGGER.log(Level.FINE, "Could not close previous entity manager", e1);
-            }
+        if (existing.isPresent()) {
 
             LOGGER.log(Level.INFO, () -> String
                     .format("Training for algorithm %d and provider %d for localization %d already exists, reset task",
@@ -115,26 +103,32 @@ public class TrainingController implements AutoCloseable {
                             provider.getId(),
                             localization.id()));
 
-            final Optional<Training> training = this.repository.findTrainingByLocalizationAlgorithmAndProviderId(localization, algorithm, provider);
-
-            if (!training.isPresent()) {
-                LOGGER.log(Level.SEVERE, "Database gives entity already exists, however the second query has failed");
-                throw new EntityNotFoundException("Training not found");
-            }
+            final Training training = existing.get();
 
-            final Training training1 = training.get();
+            training.resetState();
+            training.getTask().setState(Task.STATE.RUNNING);
 
-            training1.resetState();
-            training1.getTask().setState(Task.STATE.RUNNING);
+            this.repository.save(training);
 
-            this.repository.save(training1);
+            PredictionCache.getInstance().invalidate(localization.id());
 
             TaskManager.getInstance().queue(new OfflinePhaseService());
 
-            NotifyService.newTrainingRequest(training1);
+            NotifyService.newTrainingRequest(training);
 
-            return training1.toDTO();
+            return training.toDTO();
         }
+
+        Training training = new Training(algorithm, provider, localization);
+
+        localization.addTraining(training);
+
+        training = this.repository.save(training);
+
+        TaskManager.getInstance().queue(new OfflinePhaseService());
+        NotifyService.newTrainingRequest(training);
+
+        return training.toDTO();
     }
 
 
@@ -184,9 +178,7 @@ public class TrainingController implements AutoCloseable {
             throw new ForbiddenEntityAccessException(String.format("Device %s is not allowed", device.getId()));
         }
 
-        List<Training> trainingList = this.repository.findByLocalization(localization);
-
-        return trainingList.stream().map(Training::toDTO).collect(Collectors.toList());
+        return new ArrayList<>(this.repository.trainingStatusByLocalization(localization));
     }
 
 
@@ -212,6 +204,8 @@ public class TrainingController implements AutoCloseable {
                 DTO toSend = training.toDTO();
                 this.repository.delete(training);
 
+                PredictionCache.getInstance().invalidate(training.localizationAssociated());
+
                 return toSend;
             }
 
@@ -5,6 +5,7 @@ import io.swagger.annotations.ApiImplicitParam;
 import io.swagger.annotations.ApiImplicitParams;
 import me.nunum.whereami.controller.AlgorithmController;
 import me.nunum.whereami.framework.dto.DTO;
+import me.nunum.whereami.framework.persistence.repositories.Keyset;
 import me.nunum.whereami.framework.response.TheMediaType;
 import me.nunum.whereami.model.dto.ErrorDTO;
 import me.nunum.whereami.model.exceptions.EntityAlreadyExists;
@@ -44,13 +45,28 @@ public class AlgorithmResource {
             @ApiImplicitParam(name = "X-APP", value = "App Instance", required = true, dataType = "string", paramType = "header")
     })
     @Produces({TheMediaType.APPLICATION_JSON})
-    public Response availableAlgorithm(@QueryParam("page") Integer page) {
+    public Response availableAlgorithm(@QueryParam("page") Integer page,
+                                       @QueryParam("cursor") String cursor) {
 
         try (final AlgorithmController controller = new AlgorithmController()) {
 
-            final List<DTO> dtoList = controller.algorithms(Optional.ofNullable(page));
+            if (page != null) {
+                final List<DTO> dtoList = controller.algorithms(Optional.of(page));
 
-            return Response.ok(dtoList.stream().map(DTO::dtoValues).collect(Collectors.toList())).build();
+                return Response.ok(dtoList.stream().map(DTO::dtoValues).collect(Collectors.toList())).build();
+            }
+
+            final Keyset<DTO> dtoList = controller.algorithmsAfter(Optional.ofNullable(cursor));
+
+            return Response.ok(dtoList.items().stream().map(DTO::dtoValues).collect(Collectors.toList()))
+                    .header(Keyset.NEXT_HEADER, dtoList.next().orElse(null))
+                    .build();
+
+        } catch (IllegalArgumentException e) {
+
+            LOGGER.log(Level.INFO, "Invalid algorithms cursor", e);
+
+            return Response.status(Response.Status.BAD_REQUEST).entity(ErrorDTO.fromError(e)).build();
 
         } catch (Exception e) {
 
@@ -333,6 +349,12 @@ public class AlgorithmResource {
 
             return Response.ok(controller.runAlgorithmImplementation(aId, ag, request).dtoValues()).build();
 
+        } catch (EntityNotFoundException e) {
+
+            LOGGER.log(Level.SEVERE, "Unable to find algorithm implementation", e);
+
+            return Response.status(Response.Status.NOT_FOUND).build();
+
         } catch (ForbiddenEntityAccessException | ForbiddenEntityCreationException e) {
 
             LOGGER.log(Level.SEVERE, "Forbidden action", e);
@@ -347,4 +369,40 @@ public class AlgorithmResource {
         }
     }
 
+
+    @POST
+    @Path("{it}/implementation/{ag}/batch")
+    @ApiImplicitParams({
+            @ApiImplicitParam(name = "X-APP", value = "App Instance", required = true, dataType = "string", paramType = "header")
+    })
+    @Consumes({MediaType.APPLICATION_JSON})
+    @Produces({TheMediaType.APPLICATION_JSON})
+    public Response executeAlgorithmBatch(@PathParam("it") Long aId, @PathParam("ag") Long ag, @Valid NewAlgorithmBatchRunRequest request) {
+
+        try (final AlgorithmController controller = new AlgorithmController()) {
+
+            final List<DTO> dtos = controller.runAlgorithmImplementationBatch(aId, ag, request);
+
+            return Response.ok(dtos.stream().map(DTO::dtoValues).collect(Collectors.toList())).build();
+
+        } catch (EntityNotFoundException e) {
+
+            LOGGER.log(Level.SEVERE, "Unable to find algorithm implementation", e);
+
+            return Response.status(Response.Status.NOT_FOUND).build();
+
+        } catch (IllegalArgumentException e) {
+
+            LOGGER.log(Level.INFO, "Invalid request", e);
+
+            return Response.status(Response.Status.BAD_REQUEST).entity(ErrorDTO.fromError(e)).build();
+
+        } catch (Exception e) {
+
+            LOGGER.log(Level.SEVERE, "Unable to apply algorithms", e);
+
+            return Response.status(Response.Status.INTERNAL_SERVER_ERROR).build();
+        }
+    }
+
 }
@@ -5,8 +5,11 @@ import io.swagger.annotations.ApiImplicitParam;
 import io.swagger.annotations.ApiImplicitParams;
 import me.nunum.whereami.controller.LocalizationController;
 import me.nunum.whereami.framework.dto.DTO;
+import me.nunum.whereami.framework.persistence.repositories.Keyset;
 import me.nunum.whereami.framework.response.TheMediaType;
+import me.nunum.whereami.model.dto.ErrorDTO;
 import me.nunum.whereami.model.exceptions.*;
+import me.nunum.whereami.model.request.DiscoverLocalizationRequest;
 import me.nunum.whereami.model.request.NewLocalizationRequest;
 import me.nunum.whereami.model.request.NewPredictionRequest;
 import me.nunum.whereami.model.request.UpdatePredictionRequest;
@@ -43,19 +46,40 @@ public class LocalizationResource {
     })
     @Produces({TheMediaType.APPLICATION_JSON})
     public Response retrieveLocalizations(@QueryParam("page") Integer page,
+                                          @QueryParam("cursor") String cursor,
                                           @QueryParam("name") String localizationName,
                                           @QueryParam("trained") String trained,
                                           @QueryParam("owner") Boolean onlyUserLocalizations) {
 
         try (final LocalizationController controller = new LocalizationController()) {
-            final List<DTO> dtos = controller.localizations(securityContext.getUserPrincipal(),
-                    Optional.ofNullable(page),
+
+            if (page != null) {
+                final List<DTO> dtos = controller.localizations(securityContext.getUserPrincipal(),
+                        Optional.of(page),
+                        Optional.ofNullable(localizationName),
+                        Optional.ofNullable(trained),
+                        Optional.ofNullable(onlyUserLocalizations)
+                );
+
+                return Response.ok(dtos.stream().map(DTO::dtoValues).collect(Collectors.toList())).build();
+            }
+
+            final Keyset<DTO> dtos = controller.localizationsAfter(securityContext.getUserPrincipal(),
+                    Optional.ofNullable(cursor),
                     Optional.ofNullable(localizationName),
                     Optional.ofNullable(trained),
                     Optional.ofNullable(onlyUserLocalizations)
             );
 
-            return Response.ok(dtos.stream().map(DTO::dtoValues).collect(Collectors.toList())).build();
+            return Response.ok(dtos.items().stream().map(DTO::dtoValues).collect(Collectors.toList()))
+                    .header(Keyset.NEXT_HEADER, dtos.next().orElse(null))
+                    .build();
+
+        } catch (IllegalArgumentException e) {
+
+            LOGGER.log(Level.INFO, "Invalid localizations cursor", e);
+
+            return Response.status(Response.Status.BAD_REQUEST).entity(ErrorDTO.fromError(e)).build();
 
         } catch (Exception e) {
 
@@ -94,6 +118,35 @@ public class LocalizationResource {
         }
     }
 
+    @POST
+    @ApiImplicitParams({
+            @ApiImplicitParam(name = "X-APP", value = "App Instance", required = true, dataType = "string", paramType = "header")
+    })
+    @Path("discover")
+    @Consumes({MediaType.APPLICATION_JSON})
+    @Produces({TheMediaType.APPLICATION_JSON})
+    public Response discoverLocalizations(@Valid DiscoverLocalizationRequest request) {
+
+        try (final LocalizationController controller = new LocalizationController()) {
+
+            final List<DTO> dtos = controller.discoverLocalizations(securityContext.getUserPrincipal(), request);
+
+            return Response.ok(dtos.stream().map(DTO::dtoValues).collect(Collectors.toList())).build();
+
+        } catch (IllegalArgumentException e) {
+
+            LOGGER.log(Level.INFO, "Invalid discover request", e);
+
+            return Response.status(Response.Status.BAD_REQUEST).entity(ErrorDTO.fromError(e)).build();
+
+        } catch (Exception e) {
+
+            LOGGER.log(Level.SEVERE, "Unable to discover localizations", e);
+
+            return Response.status(Response.Status.INTERNAL_SERVER_ERROR).build();
+        }
+    }
+
     @DELETE
     @ApiImplicitParams({
             @ApiImplicitParam(name = "X-APP", value = "App Instance", required = true, dataType = "string", paramType = "header")
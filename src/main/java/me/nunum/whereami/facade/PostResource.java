@@ -5,7 +5,9 @@ import io.swagger.annotations.ApiImplicitParam;
 import io.swagger.annotations.ApiImplicitParams;
 import me.nunum.whereami.controller.PostController;
 import me.nunum.whereami.framework.dto.DTO;
+import me.nunum.whereami.framework.persistence.repositories.Keyset;
 import me.nunum.whereami.framework.response.TheMediaType;
+import me.nunum.whereami.model.dto.ErrorDTO;
 import me.nunum.whereami.model.exceptions.EntityNotFoundException;
 import me.nunum.whereami.model.request.PostRequest;
 
@@ -42,17 +44,34 @@ public class PostResource {
             @ApiImplicitParam(name = "X-APP", value = "App Instance", required = true, dataType = "string", paramType = "header")
     })
     @Produces({TheMediaType.APPLICATION_JSON})
-    public Response posts(@QueryParam("page") Integer page) {
+    public Response posts(@QueryParam("page") Integer page,
+                          @QueryParam("cursor") String cursor) {
 
         try (final PostController controller = new PostController()) {
 
-            final List<DTO> dtoList = controller.posts(Optional.ofNullable(page));
+            if (page != null) {
+                final List<DTO> dtoList = controller.posts(Optional.of(page));
 
-            return Response.ok(dtoList.stream().map(DTO::dtoValues).collect(Collectors.toList()))
+                return Response.ok(dtoList.stream().map(DTO::dtoValues).collect(Collectors.toList()))
+                        .expires(new Date(System.currentTimeMillis() + 3600000))
+                        .header("Date", new Date())
+                        .build();
+            }
+
+            final Keyset<DTO> dtoList = controller.postsAfter(Optional.ofNullable(cursor));
+
+            return Response.ok(dtoList.items().stream().map(DTO::dtoValues).collect(Collectors.toList()))
                     .expires(new Date(System.currentTimeMillis() + 3600000))
                     .header("Date", new Date())
+                    .header(Keyset.NEXT_HEADER, dtoList.next().orElse(null))
                     .build();
 
+        } catch (IllegalArgumentException e) {
+
+            LOGGER.log(Level.INFO, "Invalid posts cursor", e);
+
+            return Response.status(Response.Status.BAD_REQUEST).entity(ErrorDTO.fromError(e)).build();
+
         } catch (Exception e) {
 
             LOGGER.log(Level.SEVERE, "Unable to retrieve posts", e);
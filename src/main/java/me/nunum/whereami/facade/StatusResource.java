@@ -3,8 +3,15 @@ package me.nunum.whereami.facade;
 import io.swagger.annotations.Api;
 import io.swagger.annotations.ApiImplicitParam;
 import io.swagger.annotations.ApiImplicitParams;
+import me.nunum.whereami.facade.websocket.TrackingApplication;
+import me.nunum.whereami.framework.persistence.ConnectionPool;
+import me.nunum.whereami.framework.persistence.RoutingDataSource;
 import me.nunum.whereami.framework.persistence.repositories.impl.jpa.JpaRepository;
 import me.nunum.whereami.framework.response.TheMediaType;
+import me.nunum.whereami.model.persistance.segment.SegmentFingerprintStore;
+import me.nunum.whereami.service.BssidIndex;
+import me.nunum.whereami.service.PredictionCache;
+import me.nunum.whereami.service.radiomap.RadioMapIndex;
 import me.nunum.whereami.utils.AppConfig;
 import org.glassfish.jersey.server.monitoring.MonitoringStatistics;
 import org.glassfish.jersey.server.monitoring.TimeWindowStatistics;
@@ -81,7 +88,7 @@ public class StatusResource {
 
                 final String sql = reducedSql.substring(0, reducedSql.length() - 5);
 
-                final String top = "SELECT m.name, p.id, ((successPredictions) / NULLIF(CAST( (a.SUCCESSPREDICTIONS + a.failurePredictions) AS FLOAT),0)) * 100  AS top FROM provider p INNER JOIN algorithmProvider a ON a.provider_id = p.id INNER JOIN algorithm m ON m.alg_id = a.alg_owner_id ORDER BY 3 DESC ;";
+                final String top = "SELECT m.name, p.id, (SUM(r.correctPredictions) / NULLIF(CAST(SUM(r.correctPredictions + r.incorrectPredictions) AS FLOAT),0)) * 100  AS top FROM predictionRollup r INNER JOIN algorithmProvider a ON a.id = r.algorithmProviderId INNER JOIN provider p ON a.provider_id = p.id INNER JOIN algorithm m ON m.alg_id = a.alg_owner_id GROUP BY m.name, p.id ORDER BY 3 DESC ;";
 
                 final HashMap<String, Object> map = new HashMap<>(6);
 
@@ -89,11 +96,11 @@ public class StatusResource {
 
                 final Query entitiesStatus = entityManager.createNativeQuery(sql);
 
-                final List<Object[]> topList = entityManager.createNativeQuery(top)
+                final List<Object[]> topList = RoutingDataSource.readOnly(() -> entityManager.createNativeQuery(top)
                         .setMaxResults(5)
-                        .getResultList();
+                        .getResultList());
 
-                final List<Object[]> resultList = entitiesStatus.getResultList();
+                final List<Object[]> resultList = RoutingDataSource.readOnly(() -> entitiesStatus.getResultList());
 
                 resultList.forEach(e -> map.put(e[0].toString(), e[1]));
 
@@ -122,4 +129,31 @@ public class StatusResource {
         return Response.ok(stringStringMap).build();
     }
 
+
+    @GET
+    @Path("metrics")
+    @Produces({TheMediaType.APPLICATION_JSON})
+    @ApiImplicitParams({
+            @ApiImplicitParam(name = "X-APP", value = "App Instance", required = true, dataType = "string", paramType = "header")
+    })
+    @RolesAllowed({"admin"})
+    public Response obtainRuntimeMetrics() {
+
+        final HashMap<String, Object> metrics = new HashMap<>();
+
+        metrics.put("predictionCache", PredictionCache.getInstance().stats());
+        metrics.put("radioMap", RadioMapIndex.getInstance().stats());
+        metrics.put("bssidIndex", BssidIndex.getInstance().stats());
+        metrics.put("tracking", TrackingApplication.getInstance().sessions().stats());
+        metrics.put("entityManagers", JpaRepository.stats());
+        metrics.put("entityCache", JpaRepository.cacheStats());
+        metrics.put("connectionPool", ConnectionPool.getInstance().stats());
+
+        if (AppConfig.FINGERPRINT_STORE_SEGMENT.equals(AppConfig.FINGERPRINT_STORE)) {
+            metrics.put("fingerprintStore", SegmentFingerprintStore.getInstance().stats());
+        }
+
+        return Response.ok(metrics).build();
+    }
+
 }
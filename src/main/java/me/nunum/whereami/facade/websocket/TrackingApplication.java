@@ -0,0 +1,171 @@
+package me.nunum.whereami.facade.websocket;
+
+import me.nunum.whereami.controller.LocalizationController;
+import me.nunum.whereami.framework.persistence.repositories.impl.jpa.UnitOfWork;
+import me.nunum.whereami.model.dto.ErrorDTO;
+import me.nunum.whereami.model.dto.TrackingEstimateDTO;
+import me.nunum.whereami.model.exceptions.EntityNotFoundException;
+import me.nunum.whereami.model.exceptions.ForbiddenSubResourceException;
+import me.nunum.whereami.model.request.TrackingScanRequest;
+import me.nunum.whereami.service.radiomap.Candidate;
+import me.nunum.whereami.service.radiomap.PositionFilter;
+import me.nunum.whereami.service.radiomap.RadioMapIndex;
+import me.nunum.whereami.service.tracking.TrackingSession;
+import me.nunum.whereami.service.tracking.TrackingSessions;
+import me.nunum.whereami.utils.AppConfig;
+import org.glassfish.grizzly.http.HttpRequestPacket;
+import org.glassfish.grizzly.websockets.DataFrame;
+import org.glassfish.grizzly.websockets.DefaultWebSocket;
+import org.glassfish.grizzly.websockets.ProtocolHandler;
+import org.glassfish.grizzly.websockets.WebSocket;
+import org.glassfish.grizzly.websockets.WebSocketApplication;
+import org.glassfish.grizzly.websockets.WebSocketListener;
+
+import javax.json.bind.Jsonb;
+import javax.json.bind.JsonbBuilder;
+import java.security.Principal;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Continuous tracking over a WebSocket at {@code /api/tracking}.
+ * <p>
+ * The device connects with its {@code X-APP} header and sends one
+ * {@link TrackingScanRequest} per scan. Every scan is answered with a
+ * {@link TrackingEstimateDTO} smoothed by the {@link PositionFilter} of the
+ * session, or with an {@link ErrorDTO}. Sending a scan of another
+ * localization starts over.
+ */
+public final class TrackingApplication extends WebSocketApplication {
+
+    private static final Logger LOGGER = Logger.getLogger(TrackingApplication.class.getSimpleName());
+
+    private static final int POLICY_VIOLATION = 1008;
+
+    private static final int TRY_AGAIN_LATER = 1013;
+
+    private static final int GOING_AWAY = 1001;
+
+    private static final TrackingApplication ourInstance = new TrackingApplication();
+
+    private final Jsonb jsonb;
+
+    private final TrackingSessions<WebSocket> sessions;
+
+    private TrackingApplication() {
+        this.jsonb = JsonbBuilder.create();
+        this.sessions = new TrackingSessions<>(AppConfig.TRACKING_MAX_SESSIONS,
+                TimeUnit.SECONDS.toMillis(AppConfig.TRACKING_IDLE_SECONDS),
+                () -> new PositionFilter(AppConfig.TRACKING_STAY_PROBABILITY, AppConfig.TRACKING_SIGMA_DBM, AppConfig.TRACKING_CANDIDATES),
+                socket -> socket.close(GOING_AWAY, "Idle tracking session"));
+    }
+
+    public static TrackingApplication getInstance() {
+        return ourInstance;
+    }
+
+    public TrackingSessions<WebSocket> sessions() {
+        return sessions;
+    }
+
+    @Override
+    public WebSocket createSocket(ProtocolHandler handler, HttpRequestPacket requestPacket, WebSocketListener... listeners) {
+        return new TrackingSocket(handler, requestPacket, listeners);
+    }
+
+    @Override
+    public void onConnect(WebSocket socket) {
+
+        super.onConnect(socket);
+
+        final String instance = ((TrackingSocket) socket).instance;
+
+        if (instance == null || instance.isEmpty()) {
+            socket.close(POLICY_VIOLATION, "X-APP header is required");
+            return;
+        }
+
+        if (!this.sessions.open(socket, instance).isPresent()) {
+            LOGGER.log(Level.WARNING, "Tracking session refused, {0} sessions already open", AppConfig.TRACKING_MAX_SESSIONS);
+            socket.close(TRY_AGAIN_LATER, "Too many tracking sessions");
+        }
+    }
+
+    @Override
+    public void onMessage(WebSocket socket, String text) {
+
+        final Optional<TrackingSession> someSession = this.sessions.get(socket);
+
+        if (!someSession.isPresent()) {
+            return;
+        }
+
+        final TrackingSession session = someSession.get();
+
+        try {
+
+            final TrackingScanRequest request = this.jsonb.fromJson(text, TrackingScanRequest.class);
+
+            if (request == null || request.getLocalizationId() == null || request.getSamples() == null) {
+                throw new IllegalArgumentException("Expecting localizationId and samples");
+            }
+
+            if (!session.isBoundTo(request.getLocalizationId())) {
+                authorize(session, request.getLocalizationId());
+                session.bind(request.getLocalizationId());
+            }
+
+            final List<Candidate> candidates = session.update(
+                    RadioMapIndex.getInstance().snapshot(request.getLocalizationId()),
+                    request.getSamples());
+
+            send(socket, new TrackingEstimateDTO(request.getLocalizationId(), session.scans(), candidates).dtoValues());
+
+        } catch (EntityNotFoundException | ForbiddenSubResourceException | IllegalArgumentException e) {
+
+            send(socket, ErrorDTO.fromError(e));
+
+        } catch (Exception e) {
+
+            LOGGER.log(Level.SEVERE, "Unable to track device", e);
+
+            send(socket, new ErrorDTO("Unable to track device").dtoValues());
+        }
+    }
+
+    @Override
+    public void onClose(WebSocket socket, DataFrame frame) {
+        this.sessions.close(socket);
+        super.onClose(socket, frame);
+    }
+
+    private void authorize(TrackingSession session, Long localizationId) throws Exception {
+
+        final Principal principal = session::getInstance;
+
+        try (final UnitOfWork work = UnitOfWork.begin();
+             final LocalizationController controller = new LocalizationController()) {
+            controller.localizationForOnlinePhase(principal, localizationId);
+        }
+    }
+
+    private void send(WebSocket socket, Map<String, Object> payload) {
+        if (socket.isConnected()) {
+            socket.send(this.jsonb.toJson(payload));
+        }
+    }
+
+    private static final class TrackingSocket extends DefaultWebSocket {
+
+        private final String instance;
+
+        private TrackingSocket(ProtocolHandler handler, HttpRequestPacket request, WebSocketListener... listeners) {
+            super(handler, request, listeners);
+            this.instance = request.getHeader(AppConfig.X_APP_HEADER);
+        }
+    }
+}
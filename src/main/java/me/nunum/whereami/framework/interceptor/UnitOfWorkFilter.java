@@ -0,0 +1,68 @@
+package me.nunum.whereami.framework.interceptor;
+
+import me.nunum.whereami.framework.persistence.repositories.impl.jpa.UnitOfWork;
+import me.nunum.whereami.model.dto.ErrorDTO;
+
+import javax.annotation.Priority;
+import javax.ws.rs.container.*;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import java.io.IOException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Binds a {@link UnitOfWork} to every request, so the repositories created while
+ * handling it share one entity manager and one transaction. Once the response
+ * is ready the transaction is committed, or rolled back for an error response,
+ * and the unit closed; a commit that fails turns the response into an error.
+ * Requests that skip the response filters are closed by {@link UnitOfWorkListener}.
+ */
+@PreMatching
+@Priority(Integer.MIN_VALUE + 1)
+public class UnitOfWorkFilter implements ContainerRequestFilter, ContainerResponseFilter {
+
+    private static final Logger LOGGER = Logger.getLogger(UnitOfWorkFilter.class.getSimpleName());
+
+    static final String UNIT_OF_WORK_PROPERTY = UnitOfWork.class.getName();
+
+    @Override
+    public void filter(ContainerRequestContext requestContext) throws IOException {
+
+        UnitOfWork.current().ifPresent(stale -> {
+            LOGGER.log(Level.WARNING, "Closing a unit of work left bound to the worker thread");
+            stale.close();
+        });
+
+        requestContext.setProperty(UNIT_OF_WORK_PROPERTY, UnitOfWork.beginTransaction());
+    }
+
+    @Override
+    public void filter(ContainerRequestContext requestContext,
+                       ContainerResponseContext responseContext) throws IOException {
+
+        final Object work = requestContext.getProperty(UNIT_OF_WORK_PROPERTY);
+
+        if (!(work instanceof UnitOfWork)) {
+            return;
+        }
+
+        try {
+
+            if (responseContext.getStatus() < Response.Status.BAD_REQUEST.getStatusCode()) {
+                ((UnitOfWork) work).commit();
+            }
+
+        } catch (RuntimeException e) {
+
+            LOGGER.log(Level.SEVERE, "Could not commit the unit of work of the request", e);
+
+            responseContext.setStatus(Response.Status.INTERNAL_SERVER_ERROR.getStatusCode());
+            responseContext.setEntity(ErrorDTO.fromError(e), null, MediaType.APPLICATION_JSON_TYPE);
+
+        } finally {
+            ((UnitOfWork) work).close();
+            requestContext.removeProperty(UNIT_OF_WORK_PROPERTY);
+        }
+    }
+}
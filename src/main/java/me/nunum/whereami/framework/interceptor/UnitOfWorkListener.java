@@ -0,0 +1,48 @@
+package me.nunum.whereami.framework.interceptor;
+
+import me.nunum.whereami.framework.persistence.repositories.impl.jpa.UnitOfWork;
+import org.glassfish.jersey.server.ContainerRequest;
+import org.glassfish.jersey.server.monitoring.ApplicationEvent;
+import org.glassfish.jersey.server.monitoring.ApplicationEventListener;
+import org.glassfish.jersey.server.monitoring.RequestEvent;
+import org.glassfish.jersey.server.monitoring.RequestEventListener;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Closes the {@link UnitOfWork} of a request when Jersey finishes it. The
+ * {@link UnitOfWorkFilter} already closes it before the response is written,
+ * but response filters are skipped when the request fails outside of a
+ * resource, say with an exception no mapper handles; the unit is then rolled
+ * back and its entity manager closed here.
+ */
+public class UnitOfWorkListener implements ApplicationEventListener {
+
+    private static final Logger LOGGER = Logger.getLogger(UnitOfWorkListener.class.getSimpleName());
+
+    @Override
+    public void onEvent(ApplicationEvent event) {
+    }
+
+    @Override
+    public RequestEventListener onRequest(RequestEvent requestEvent) {
+        return UnitOfWorkListener::onRequestEvent;
+    }
+
+    private static void onRequestEvent(RequestEvent event) {
+
+        if (event.getType() != RequestEvent.Type.FINISHED) {
+            return;
+        }
+
+        final ContainerRequest request = event.getContainerRequest();
+        final Object work = request.getProperty(UnitOfWorkFilter.UNIT_OF_WORK_PROPERTY);
+
+        if (work instanceof UnitOfWork) {
+            LOGGER.log(Level.WARNING, "Closing the unit of work of a request that skipped the response filters");
+            ((UnitOfWork) work).close();
+            request.removeProperty(UnitOfWorkFilter.UNIT_OF_WORK_PROPERTY);
+        }
+    }
+}
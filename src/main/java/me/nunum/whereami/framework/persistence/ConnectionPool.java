@@ -0,0 +1,158 @@
+package me.nunum.whereami.framework.persistence;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import com.zaxxer.hikari.metrics.IMetricsTracker;
+import me.nunum.whereami.utils.AppConfig;
+
+import javax.sql.DataSource;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * JDBC connection pool handed to the persistence unit as its non-JTA data
+ * source. Besides sizing, acquisition timeout and leak detection, it keeps
+ * track of how long threads wait for a connection.
+ * <p>
+ * When {@code app.db.replica.jdbc.url} is set, a second pool connects to the
+ * read replica and the persistence unit gets a {@link RoutingDataSource}.
+ */
+public final class ConnectionPool {
+
+    private static final ConnectionPool ourInstance = new ConnectionPool();
+
+    private final LongAdder acquisitions = new LongAdder();
+
+    private final LongAdder waitNanos = new LongAdder();
+
+    private final LongAccumulator maxWaitNanos = new LongAccumulator(Math::max, 0L);
+
+    private final LongAdder timeouts = new LongAdder();
+
+    private HikariDataSource dataSource;
+
+    private HikariDataSource replica;
+
+    private RoutingDataSource routing;
+
+    private ConnectionPool() {
+    }
+
+    public static ConnectionPool getInstance() {
+        return ourInstance;
+    }
+
+    /**
+     * @return Pooled data source, started on first use
+     */
+    public synchronized DataSource dataSource() {
+
+        if (this.dataSource == null) {
+
+            this.dataSource = pool(AppConfig.APP_NAME, AppConfig.DB_JDBC_URL, AppConfig.DB_USER, AppConfig.DB_PASSWORD);
+
+            if (!AppConfig.DB_REPLICA_JDBC_URL.isEmpty()) {
+                this.replica = pool(AppConfig.APP_NAME + "-replica", AppConfig.DB_REPLICA_JDBC_URL, AppConfig.DB_REPLICA_USER, AppConfig.DB_REPLICA_PASSWORD);
+                this.routing = new RoutingDataSource(this.dataSource, this.replica);
+            }
+        }
+
+        return this.routing == null ? this.dataSource : this.routing;
+    }
+
+    private HikariDataSource pool(String name, String jdbcUrl, String user, String password) {
+
+        final HikariConfig config = new HikariConfig();
+
+        config.setPoolName(name);
+        config.setDriverClassName(AppConfig.DB_DRIVER);
+        config.setJdbcUrl(jdbcUrl);
+        config.setUsername(user);
+        config.setPassword(password);
+
+        config.setMinimumIdle(AppConfig.DB_POOL_MIN_IDLE);
+        config.setMaximumPoolSize(AppConfig.DB_POOL_MAX_SIZE);
+        config.setConnectionTimeout(AppConfig.DB_POOL_ACQUIRE_TIMEOUT_MILLIS);
+        config.setLeakDetectionThreshold(AppConfig.DB_POOL_LEAK_DETECTION_MILLIS);
+
+        // H2 keeps the parsed prepared statements of each connection in this cache
+        config.addDataSourceProperty("QUERY_CACHE_SIZE", String.valueOf(AppConfig.DB_STATEMENT_CACHE_SIZE));
+
+        config.setMetricsTrackerFactory((poolName, poolStats) -> new IMetricsTracker() {
+
+            @Override
+            public void recordConnectionAcquiredNanos(long elapsedAcquiredNanos) {
+                acquisitions.increment();
+                waitNanos.add(elapsedAcquiredNanos);
+                maxWaitNanos.accumulate(elapsedAcquiredNanos);
+            }
+
+            @Override
+            public void recordConnectionTimeout() {
+                timeouts.increment();
+            }
+        });
+
+        return new HikariDataSource(config);
+    }
+
+    public synchronized void close() {
+        if (this.dataSource != null) {
+            this.dataSource.close();
+            this.dataSource = null;
+        }
+
+        if (this.replica != null) {
+            this.replica.close();
+            this.replica = null;
+            this.routing = null;
+        }
+    }
+
+    /**
+     * @return Connections in use, idle and awaited, and the time spent waiting for them
+     */
+    public synchronized Map<String, Object> stats() {
+
+        final HashMap<String, Object> map = new HashMap<>(12);
+
+        map.put("minIdle", AppConfig.DB_POOL_MIN_IDLE);
+        map.put("maxSize", AppConfig.DB_POOL_MAX_SIZE);
+
+        final HikariPoolMXBean pool = this.dataSource == null ? null : this.dataSource.getHikariPoolMXBean();
+
+        if (pool != null) {
+            map.put("active", pool.getActiveConnections());
+            map.put("idle", pool.getIdleConnections());
+            map.put("total", pool.getTotalConnections());
+            map.put("waiting", pool.getThreadsAwaitingConnection());
+        }
+
+        if (this.replica != null && this.replica.getHikariPoolMXBean() != null) {
+            final HikariPoolMXBean replicaPool = this.replica.getHikariPoolMXBean();
+
+            final HashMap<String, Object> replicaMap = new HashMap<>(4);
+
+            replicaMap.put("active", replicaPool.getActiveConnections());
+            replicaMap.put("idle", replicaPool.getIdleConnections());
+            replicaMap.put("total", replicaPool.getTotalConnections());
+            replicaMap.put("waiting", replicaPool.getThreadsAwaitingConnection());
+
+            map.put("replica", replicaMap);
+            map.put("routes", this.routing.stats());
+        }
+
+        final long numberOfAcquisitions = this.acquisitions.sum();
+
+        map.put("acquisitions", numberOfAcquisitions);
+        map.put("timeouts", this.timeouts.sum());
+        map.put("meanWaitMillis", numberOfAcquisitions == 0 ? 0.0 : TimeUnit.NANOSECONDS.toMicros(this.waitNanos.sum()) / 1000.0 / numberOfAcquisitions);
+        map.put("maxWaitMillis", TimeUnit.NANOSECONDS.toMicros(this.maxWaitNanos.get()) / 1000.0);
+
+        return map;
+    }
+}
@@ -0,0 +1,171 @@
+package me.nunum.whereami.framework.persistence;
+
+import me.nunum.whereami.framework.persistence.repositories.impl.jpa.UnitOfWork;
+
+import javax.sql.DataSource;
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import java.util.logging.Logger;
+
+/**
+ * Data source that hands out connections of a read replica to the reads marked
+ * with {@link #readOnly(Supplier)}, and of the primary database to everything else.
+ * <p>
+ * Once a {@link UnitOfWork} begins a transaction on the primary, its reads stay
+ * on the primary until it ends, so a request always reads its own writes.
+ */
+public final class RoutingDataSource implements DataSource {
+
+    private static final ThreadLocal<Boolean> READ_ONLY = ThreadLocal.withInitial(() -> Boolean.FALSE);
+
+    private final DataSource primary;
+
+    private final DataSource replica;
+
+    private final LongAdder primaryRoutes = new LongAdder();
+
+    private final LongAdder replicaRoutes = new LongAdder();
+
+    public RoutingDataSource(DataSource primary, DataSource replica) {
+        this.primary = primary;
+        this.replica = replica;
+    }
+
+    /**
+     * Run a read that tolerates replication lag, so it may be served by the replica
+     *
+     * @param read Database reads
+     * @param <R>  Type of the result
+     * @return Result of the reads
+     */
+    public static <R> R readOnly(Supplier<R> read) {
+
+        final Boolean previous = READ_ONLY.get();
+
+        READ_ONLY.set(Boolean.TRUE);
+
+        try {
+            return read.get();
+        } finally {
+            READ_ONLY.set(previous);
+        }
+    }
+
+    private static boolean routesToReplica() {
+        return READ_ONLY.get() && !UnitOfWork.current().map(UnitOfWork::hasWritten).orElse(false);
+    }
+
+    /**
+     * @param connection Connection of the primary
+     * @return Connection that marks the unit of work bound to the thread as
+     * written when a transaction begins on it
+     */
+    private static Connection tracked(Connection connection) {
+
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class[]{Connection.class}, (proxy, method, args) -> {
+
+            switch (method.getName()) {
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "setAutoCommit":
+                    if (Boolean.FALSE.equals(args[0])) {
+                        UnitOfWork.current().ifPresent(UnitOfWork::wrote);
+                    }
+                    break;
+                default:
+                    break;
+            }
+
+            try {
+                return method.invoke(connection, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        });
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+
+        if (routesToReplica()) {
+            this.replicaRoutes.increment();
+            return this.replica.getConnection();
+        }
+
+        this.primaryRoutes.increment();
+        return tracked(this.primary.getConnection());
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+
+        if (routesToReplica()) {
+            this.replicaRoutes.increment();
+            return this.replica.getConnection(username, password);
+        }
+
+        this.primaryRoutes.increment();
+        return tracked(this.primary.getConnection(username, password));
+    }
+
+    /**
+     * @return Connections handed out by each database since startup
+     */
+    public Map<String, Object> stats() {
+
+        final HashMap<String, Object> map = new HashMap<>(2);
+
+        map.put("primary", this.primaryRoutes.sum());
+        map.put("replica", this.replicaRoutes.sum());
+
+        return map;
+    }
+
+    @Override
+    public PrintWriter getLogWriter() throws SQLException {
+        return this.primary.getLogWriter();
+    }
+
+    @Override
+    public void setLogWriter(PrintWriter out) throws SQLException {
+        this.primary.setLogWriter(out);
+        this.replica.setLogWriter(out);
+    }
+
+    @Override
+    public void setLoginTimeout(int seconds) throws SQLException {
+        this.primary.setLoginTimeout(seconds);
+        this.replica.setLoginTimeout(seconds);
+    }
+
+    @Override
+    public int getLoginTimeout() throws SQLException {
+        return this.primary.getLoginTimeout();
+    }
+
+    @Override
+    public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+        return this.primary.getParentLogger();
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        return iface.isInstance(this) ? (T) this : this.primary.unwrap(iface);
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> iface) throws SQLException {
+        return iface.isInstance(this) || this.primary.isWrapperFor(iface);
+    }
+}
@@ -6,6 +6,7 @@ package me.nunum.whereami.framework.persistence.repositories;
 
 
 import java.util.Iterator;
+import java.util.function.Consumer;
 
 /**
  * A Repository which can be efficiently iterated.
@@ -21,4 +22,13 @@ import java.util.Iterator;
 public interface IterableRepository<T, PK> extends Repository<T, PK>, Iterable<T> {
 
     Iterator<T> iterator(int pagesize);
+
+    /**
+     * hands every entity in the repository to a consumer, one at a time,
+     * without holding on to the ones already handed
+     *
+     * @param consumer consumer of each entity
+     * @return number of entities
+     */
+    long stream(Consumer<T> consumer);
 }
@@ -0,0 +1,95 @@
+package me.nunum.whereami.framework.persistence.repositories;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Page read by seeking past the last entity seen instead of skipping rows, so
+ * deep pages cost the same as the first one and rows inserted meanwhile do not
+ * shift the pages still to read.
+ * <p>
+ * The position is handed to clients as an opaque continuation token; a page
+ * shorter than the page size is the last one and carries no token.
+ *
+ * @param <T> Type of the page items
+ */
+public final class Keyset<T> {
+
+    /**
+     * Response header with the continuation token of the next page
+     */
+    public static final String NEXT_HEADER = "X-NEXT-CURSOR";
+
+    private static final String PREFIX = "id:";
+
+    private final List<T> items;
+
+    private final Long lastSeenId;
+
+    private Keyset(List<T> items, Long lastSeenId) {
+        this.items = items;
+        this.lastSeenId = lastSeenId;
+    }
+
+    /**
+     * @param items    Page read
+     * @param pageSize Page size asked for
+     * @param id       Key of each item
+     * @param <T>      Type of the page items
+     * @return Page, continued after its last item when it is full
+     */
+    public static <T> Keyset<T> of(List<T> items, int pageSize, Function<T, Long> id) {
+
+        if (items.isEmpty() || items.size() < pageSize) {
+            return new Keyset<>(items, null);
+        }
+
+        return new Keyset<>(items, id.apply(items.get(items.size() - 1)));
+    }
+
+    /**
+     * @param token Continuation token, absent for the first page
+     * @return Key of the last entity seen
+     * @throws IllegalArgumentException If the token was not issued by {@link #next()}
+     */
+    public static Optional<Long> lastSeen(Optional<String> token) {
+
+        if (!token.isPresent()) {
+            return Optional.empty();
+        }
+
+        try {
+
+            final String value = new String(Base64.getUrlDecoder().decode(token.get()), StandardCharsets.UTF_8);
+
+            if (!value.startsWith(PREFIX)) {
+                throw new IllegalArgumentException("Invalid page cursor");
+            }
+
+            return Optional.of(Long.parseLong(value.substring(PREFIX.length())));
+
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid page cursor", e);
+        }
+    }
+
+    public List<T> items() {
+        return items;
+    }
+
+    /**
+     * @return Continuation token of the next page, absent on the last one
+     */
+    public Optional<String> next() {
+        return Optional.ofNullable(lastSeenId)
+                .map(e -> Base64.getUrlEncoder().withoutPadding().encodeToString((PREFIX + e).getBytes(StandardCharsets.UTF_8)));
+    }
+
+    public <R> Keyset<R> map(Function<T, R> mapper) {
+        return new Keyset<>(this.items.stream().map(mapper).collect(Collectors.toList()), this.lastSeenId);
+    }
+}
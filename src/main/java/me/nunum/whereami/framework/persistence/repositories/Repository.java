@@ -5,6 +5,8 @@
 package me.nunum.whereami.framework.persistence.repositories;
 
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 /**
@@ -25,6 +27,14 @@ public interface Repository<T, PK> {
      */
     T save(T entity);
 
+    /**
+     * Saves several entities at once, all of them or none.
+     *
+     * @param entities
+     * @return
+     */
+    List<T> saveAll(Collection<T> entities);
+
     /**
      * Creates a new an entity in the persistence layer. if the entity already
      * exists it will throw an exception.
@@ -6,15 +6,29 @@ import me.nunum.whereami.framework.persistence.repositories.IterableRepository;
 import me.nunum.whereami.framework.persistence.repositories.Repository;
 import me.nunum.whereami.model.exceptions.EntityAlreadyExists;
 import me.nunum.whereami.utils.AppConfig;
+import org.eclipse.persistence.config.HintValues;
+import org.eclipse.persistence.config.QueryHints;
+import org.eclipse.persistence.descriptors.ClassDescriptor;
+import org.eclipse.persistence.jpa.JpaHelper;
+import org.eclipse.persistence.queries.ScrollableCursor;
 
 import javax.persistence.*;
 import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.metamodel.EntityType;
 import java.io.Serializable;
 import java.lang.reflect.ParameterizedType;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -43,7 +57,17 @@ public abstract class JpaRepository<T, K extends Serializable>
     protected static final int DEFAULT_PAGE_SIZE = 20;
     private final Class<T> entityClass;
 
-    private ConcurrentHashMap<String, EntityManager> manager = new ConcurrentHashMap<>();
+    private static final LongAdder OPENED = new LongAdder();
+    private static final LongAdder CLOSED = new LongAdder();
+
+    private static final ConcurrentHashMap<String, CacheCounters> CACHE_COUNTERS = new ConcurrentHashMap<>();
+
+    /**
+     * Entity manager of this repository when used outside a {@link UnitOfWork}
+     */
+    private EntityManager manager;
+
+    private Optional<CacheCounters> cacheCounters;
 
 
     protected static final Logger LOGGER = Logger.getLogger(JpaRepository.class.getSimpleName());
@@ -61,19 +85,256 @@ public abstract class JpaRepository<T, K extends Serializable>
         return emFactory;
     }
 
+    /**
+     * @return Entity manager of the unit of work bound to the thread, or of this
+     * repository when there is none
+     */
     protected EntityManager entityManager() {
 
-        final String tName = Thread.currentThread().getName();
+        final Optional<UnitOfWork> work = UnitOfWork.current();
 
-        EntityManager entityManager = this.manager.get(tName);
+        if (work.isPresent()) {
+            return work.get().entityManager(this::openEntityManager);
+        }
 
-        if (entityManager == null || !entityManager.isOpen()) {
-            entityManager = entityManagerFactory().createEntityManager();
-            this.manager.put(tName, entityManager);
+        if (this.manager == null || !this.manager.isOpen()) {
+            this.manager = openEntityManager();
         }
+
+        return this.manager;
+    }
+
+    private EntityManager openEntityManager() {
+        final EntityManager entityManager = entityManagerFactory().createEntityManager();
+        OPENED.increment();
         return entityManager;
     }
 
+    /**
+     * Close an entity manager obtained from {@link #entityManager()}, unless it
+     * belongs to the unit of work, which closes it when it ends
+     *
+     * @param entityManager Entity manager
+     */
+    protected void release(EntityManager entityManager) {
+
+        final boolean isShared = UnitOfWork.current()
+                .map(e -> e.owns(entityManager))
+                .orElse(false);
+
+        if (!isShared) {
+            closeEntityManager(entityManager);
+        }
+    }
+
+    static void closeEntityManager(EntityManager entityManager) {
+        if (entityManager.isOpen()) {
+            entityManager.close();
+            CLOSED.increment();
+        }
+    }
+
+    /**
+     * @return Entity managers opened and closed since startup
+     */
+    public static Map<String, Object> stats() {
+
+        final long opened = OPENED.sum();
+        final long closed = CLOSED.sum();
+
+        final HashMap<String, Object> map = new HashMap<>(4);
+
+        map.put("opened", opened);
+        map.put("closed", closed);
+        map.put("open", opened - closed);
+        map.put("unitsOfWork", UnitOfWork.begun());
+
+        return map;
+    }
+
+    /**
+     * @return Shared cache lookups by id and invalidations, per cached entity
+     */
+    public static Map<String, Object> cacheStats() {
+
+        final HashMap<String, Object> map = new HashMap<>(CACHE_COUNTERS.size());
+
+        CACHE_COUNTERS.forEach((entity, counters) -> {
+
+            final long numberOfHits = counters.hits.sum();
+            final long numberOfMisses = counters.misses.sum();
+            final long lookups = numberOfHits + numberOfMisses;
+
+            final HashMap<String, Object> entry = new HashMap<>(4);
+
+            entry.put("hits", numberOfHits);
+            entry.put("misses", numberOfMisses);
+            entry.put("evictions", counters.evictions.sum());
+            entry.put("hitRate", lookups == 0 ? 0.0f : numberOfHits / (float) lookups);
+
+            map.put(entity, entry);
+        });
+
+        return map;
+    }
+
+    /**
+     * @return Counters of the entity, empty if it is not kept in the shared cache
+     */
+    private Optional<CacheCounters> cacheCounters() {
+
+        if (this.cacheCounters == null) {
+
+            final ClassDescriptor descriptor = JpaHelper.getServerSession(entityManagerFactory()).getClassDescriptor(entityClass);
+
+            this.cacheCounters = descriptor == null || descriptor.getCachePolicy().isIsolated()
+                    ? Optional.empty()
+                    : Optional.of(CACHE_COUNTERS.computeIfAbsent(entityClass.getSimpleName(), k -> new CacheCounters()));
+        }
+
+        return this.cacheCounters;
+    }
+
+    /**
+     * Drop the shared cache copy of a written entity, the next read loads it again
+     *
+     * @param entity Entity just written
+     */
+    private void evict(Object entity) {
+
+        cacheCounters().ifPresent(counters -> {
+
+            final Object id = entityManagerFactory().getPersistenceUnitUtil().getIdentifier(entity);
+
+            if (id != null) {
+                entityManagerFactory().getCache().evict(entityClass, id);
+                counters.evictions.increment();
+            }
+        });
+    }
+
+    /**
+     * Evict a written entity once its write is committed, at the end of a
+     * transactional unit of work or at once when the write committed on its own
+     *
+     * @param entity Entity written
+     */
+    private void evictOnCommit(Object entity) {
+
+        final Optional<UnitOfWork> work = transactionalUnitOfWork();
+
+        if (work.isPresent()) {
+            work.get().afterCommit(() -> evict(entity));
+        } else {
+            evict(entity);
+        }
+    }
+
+    private static Optional<UnitOfWork> transactionalUnitOfWork() {
+        return UnitOfWork.current().filter(UnitOfWork::isTransactional);
+    }
+
+    /**
+     * Run a write in a transaction. Inside a transactional {@link UnitOfWork} it
+     * joins the transaction of the unit and is flushed at once, so a refused
+     * write fails here rather than when the unit commits; a failure marks the
+     * unit to roll back. Otherwise the write commits on its own.
+     *
+     * @param write Write on the entity manager
+     * @param <R>   Type of the result
+     * @return Result of the write
+     * @throws EntityAlreadyExists If the write violates an integrity constraint
+     */
+    protected <R> R transactionally(Function<EntityManager, R> write) {
+
+        final Optional<UnitOfWork> work = transactionalUnitOfWork();
+
+        if (!work.isPresent()) {
+            return inTransaction(entityManager(), write);
+        }
+
+        final EntityManager em = entityManager();
+
+        work.get().join(em);
+
+        try {
+
+            final R result = write.apply(em);
+            em.flush();
+
+            return result;
+
+        } catch (final PersistenceException ex) {
+
+            work.get().setRollbackOnly();
+
+            throw translate(ex);
+
+        } catch (final RuntimeException ex) {
+
+            work.get().setRollbackOnly();
+
+            throw ex;
+        }
+    }
+
+    /**
+     * Run a write in a transaction of its own, committed at once even inside a
+     * transactional {@link UnitOfWork}. Meant for writes that may conflict and
+     * be retried, or that lock rows, which must neither fail the unit nor keep
+     * their locks until it ends. Inside a transactional unit the write runs in
+     * an entity manager apart from the one of the unit, so the entities it
+     * returns are not managed by the unit.
+     *
+     * @param write Write on the entity manager
+     * @param <R>   Type of the result
+     * @return Result of the write
+     * @throws EntityAlreadyExists If the write violates an integrity constraint
+     */
+    protected <R> R inOwnTransaction(Function<EntityManager, R> write) {
+        return inTransaction(transactionalUnitOfWork().isPresent() ? openEntityManager() : entityManager(), write);
+    }
+
+    private <R> R inTransaction(EntityManager em, Function<EntityManager, R> write) {
+
+        final EntityTransaction tx = em.getTransaction();
+
+        try {
+
+            tx.begin();
+            final R result = write.apply(em);
+            tx.commit();
+
+            return result;
+
+        } catch (final PersistenceException ex) {
+
+            rollback(tx);
+
+            throw translate(ex);
+
+        } catch (final RuntimeException ex) {
+
+            rollback(tx);
+
+            throw ex;
+
+        } finally {
+            // outside a unit of work this code runs in a non-container managed
+            // way and closes the entity manager; inside one it is left to it
+            release(em);
+        }
+    }
+
+    private static final class CacheCounters {
+
+        private final LongAdder hits = new LongAdder();
+
+        private final LongAdder misses = new LongAdder();
+
+        private final LongAdder evictions = new LongAdder();
+    }
+
     /**
      * adds a new entity to the persistence store
      *
@@ -92,6 +353,15 @@ public abstract class JpaRepository<T, K extends Serializable>
      * @return
      */
     public T read(K id) {
+
+        cacheCounters().ifPresent(counters -> {
+            if (entityManagerFactory().getCache().contains(entityClass, id)) {
+                counters.hits.increment();
+            } else {
+                counters.misses.increment();
+            }
+        });
+
         return this.entityManager().find(entityClass, id);
     }
 
@@ -119,12 +389,13 @@ public abstract class JpaRepository<T, K extends Serializable>
     @Override
     public void delete(T entity) {
 
-        final EntityTransaction tx = entityManager().getTransaction();
+        final T removed = transactionally(em -> {
+            final T merged = em.merge(entity);
+            em.remove(merged);
+            return merged;
+        });
 
-        tx.begin();
-        entity = entityManager().merge(entity);
-        entityManager().remove(entity);
-        tx.commit();
+        evictOnCommit(removed);
     }
 
     /**
@@ -165,7 +436,8 @@ public abstract class JpaRepository<T, K extends Serializable>
     }
 
     /**
-     * adds <b>and commits</b> a new entity to the persistence store
+     * adds <b>and commits</b> a new entity to the persistence store, inside a
+     * transactional unit of work it is committed with the unit
      * <p>
      * <p>
      * It is controversial if the repository class should have explicit
@@ -188,35 +460,38 @@ public abstract class JpaRepository<T, K extends Serializable>
             throw new IllegalArgumentException();
         }
 
-        final EntityManager em = entityManager();
-        try {
-            final EntityTransaction tx = em.getTransaction();
-            tx.begin();
+        transactionally(em -> {
             em.persist(entity);
-            tx.commit();
-        } finally {
-            em.close();
-        }
+            return entity;
+        });
+
+        evictOnCommit(entity);
+
         return true;
     }
 
     @Override
     public void close() throws Exception {
         try {
-            EntityManager manager = entityManager();
-            manager.clear();
-            manager.close();
+            if (this.manager != null) {
+                closeEntityManager(this.manager);
+                this.manager = null;
+            }
         } catch (Exception exception) {
             LOGGER.log(Level.SEVERE, "Could not close entity manager", exception);
         }
     }
 
     /**
-     * Inserts or updates an entity <b>and commits</b>.
+     * Inserts or updates an entity <b>and commits</b>, inside a transactional
+     * unit of work it is committed with the unit.
+     * <p>
+     * entities without an identifier are persisted, detached ones merged and
+     * managed ones only flushed by the commit, so no exception drives the
+     * choice and a new entity costs no SELECT.
      * <p>
      * note that you should reference the return value to use the persisted
-     * entity, as the original object passed as argument might be copied to a
-     * new object
+     * entity, as a detached object passed as argument is copied to a new object
      * <p>
      * check <a href=
      * "http://blog.xebia.com/2009/03/23/jpa-implementation-patterns-saving-detached-entities/">
@@ -226,6 +501,7 @@ public abstract class JpaRepository<T, K extends Serializable>
      * @param entity
      * @return the persisted entity - might be a different object than the
      * parameter
+     * @throws EntityAlreadyExists If the write violates an integrity constraint
      */
     @Override
     public T save(T entity) {
@@ -233,49 +509,113 @@ public abstract class JpaRepository<T, K extends Serializable>
             throw new IllegalArgumentException();
         }
 
-        // the following code attempts to do a save or update by checking for
-        // persistence exceptions while doing persist()
-        // this could be made more efficient if we check if the entity has an
-        // autogenerated id
-        final EntityManager em = entityManager();
-        assert em != null;
-        try {
-            // transaction will be rolled back if any exception occurs
-            // we are especially interested in "detached entity" meaning that
-            // the object already exists
-            EntityTransaction tx = em.getTransaction();
-            try {
-                // we need to set up a new transaction if persist() raises an
-                // exception
+        final T saved = transactionally(em -> write(em, entity));
+
+        evictOnCommit(saved);
 
-                tx.begin();
-                entity = em.merge(entity);
+        return saved;
+    }
 
-                tx.commit();
+    /**
+     * Inserts or updates several entities in a single transaction, letting the
+     * provider batch the statements of the flush.
+     *
+     * @param entities Entities to save
+     * @return the persisted entities, in the iteration order of the argument
+     * @throws EntityAlreadyExists If a write violates an integrity constraint, nothing is saved
+     */
+    public List<T> saveAll(Collection<T> entities) {
+        if (entities == null || entities.contains(null)) {
+            throw new IllegalArgumentException();
+        }
 
-            } catch (final PersistenceException ex) {
+        if (entities.isEmpty()) {
+            return new ArrayList<>(0);
+        }
 
-                if (ex.getMessage().contains("JdbcSQLIntegrityConstraintViolationException")
-                        || ex.getMessage().contains("Unique index or primary key violation")) {
-                    throw new EntityAlreadyExists("Entity already exists.", ex);
-                }
+        final List<T> saved = transactionally(em -> {
 
-                tx = em.getTransaction();
-                tx.begin();
-                em.persist(entity);
+            final List<T> written = new ArrayList<>(entities.size());
 
-                tx.commit();
+            for (T entity : entities) {
+                written.add(write(em, entity));
             }
 
-        } finally {
-            // we are closing the entity manager here because this code is
-            // running in a non-container managed way. if it was the case to be
-            // running under an application server with a JPA container and
-            // managed transactions/sessions, one should not be doing this
-            em.close();
+            return written;
+        });
+
+        saved.forEach(this::evictOnCommit);
+
+        return saved;
+    }
+
+    private T write(EntityManager em, T entity) {
+
+        if (em.contains(entity)) {
+            return entity;
         }
 
-        return entity;
+        if (isNew(entity)) {
+            em.persist(entity);
+            return entity;
+        }
+
+        return em.merge(entity);
+    }
+
+    /**
+     * @param entity Entity
+     * @return True if the entity has no identifier yet
+     */
+    protected boolean isNew(T entity) {
+        return entityManagerFactory().getPersistenceUnitUtil().getIdentifier(entity) == null;
+    }
+
+    private static void rollback(EntityTransaction tx) {
+        try {
+            if (tx.isActive()) {
+                tx.rollback();
+            }
+        } catch (RuntimeException e) {
+            LOGGER.log(Level.SEVERE, "Could not roll back the transaction", e);
+        }
+    }
+
+    /**
+     * Keep the entities of a query run with
+     * {@link me.nunum.whereami.framework.persistence.RoutingDataSource#readOnly}
+     * out of the shared cache. The replica may lag behind, and the stale rows it
+     * returns would otherwise be served from the cache to every later read.
+     *
+     * @param query Query read from the replica
+     * @param <Q>   Type of the query
+     * @return The query
+     */
+    protected static <Q extends Query> Q fromReplica(Q query) {
+        query.setHint(QueryHints.CACHE_STORE_MODE, CacheStoreMode.BYPASS);
+        return query;
+    }
+
+    /**
+     * @param ex Exception of a write
+     * @return {@link EntityAlreadyExists} when the database refused the write
+     * for an integrity constraint (SQL state class 23), the exception itself otherwise
+     */
+    protected static RuntimeException translate(PersistenceException ex) {
+
+        for (Throwable cause = ex; cause != null; cause = cause.getCause() == cause ? null : cause.getCause()) {
+
+            if (cause instanceof SQLException) {
+
+                final String state = ((SQLException) cause).getSQLState();
+
+                if (state != null && state.startsWith("23")) {
+                    return new EntityAlreadyExists("Entity already exists.", ex);
+                }
+            }
+        }
+
+        return ex;
     }
 
     /**
@@ -310,6 +650,41 @@ public abstract class JpaRepository<T, K extends Serializable>
         return q.getResultList();
     }
 
+    /**
+     * returns the page of entities following a key, in key order. Unlike
+     * {@link #page(int, int)} it seeks the key instead of skipping rows
+     *
+     * @param lastSeenId key of the last entity of the previous page, null for the first page
+     * @param pageSize   page size
+     * @return
+     */
+    @SuppressWarnings("unchecked")
+    public List<T> pageAfter(K lastSeenId, int pageSize) {
+
+        final String idAttribute = idAttributeName();
+
+        final String where = lastSeenId == null ? "" : " WHERE e." + idAttribute + " > :lastSeenId";
+
+        final Query q = entityManager().createQuery("SELECT e FROM " + entityClass.getSimpleName() + " e" + where + " ORDER BY e." + idAttribute);
+        q.setMaxResults(pageSize);
+
+        if (lastSeenId != null) {
+            q.setParameter("lastSeenId", lastSeenId);
+        }
+
+        return q.getResultList();
+    }
+
+    private String idAttributeName() {
+        final EntityType<T> type = entityManagerFactory().getMetamodel().entity(entityClass);
+        return type.getId(type.getIdType().getJavaType()).getName();
+    }
+
+    @SuppressWarnings("unchecked")
+    private K idOf(T entity) {
+        return (K) entityManagerFactory().getPersistenceUnitUtil().getIdentifier(entity);
+    }
+
     /**
      * returns a paged iterator
      *
@@ -330,6 +705,60 @@ public abstract class JpaRepository<T, K extends Serializable>
         return q.getResultList();
     }
 
+    @Override
+    public long stream(Consumer<T> consumer) {
+        return stream(em -> em.createQuery("SELECT e FROM " + entityClass.getSimpleName() + " e ORDER BY e." + idAttributeName()), consumer);
+    }
+
+    /**
+     * Hand every result of a query to a consumer through a database cursor.
+     * Results are read-only and bypass the cache; the persistence context is
+     * cleared every {@link AppConfig#DB_STREAM_FETCH_SIZE} rows, so memory
+     * stays flat however many rows the query returns. The query runs in an
+     * entity manager of its own, leaving the unit of work untouched.
+     *
+     * @param query    Query built on the given entity manager
+     * @param consumer Consumer of each result, which must not keep it managed
+     * @return Number of results
+     */
+    @SuppressWarnings("unchecked")
+    protected long stream(Function<EntityManager, Query> query, Consumer<T> consumer) {
+
+        final EntityManager entityManager = openEntityManager();
+
+        ScrollableCursor cursor = null;
+
+        try {
+
+            cursor = (ScrollableCursor) query.apply(entityManager)
+                    .setHint(QueryHints.READ_ONLY, HintValues.TRUE)
+                    .setHint(QueryHints.MAINTAIN_CACHE, HintValues.FALSE)
+                    .setHint(QueryHints.JDBC_FETCH_SIZE, AppConfig.DB_STREAM_FETCH_SIZE)
+                    .setHint(QueryHints.SCROLLABLE_CURSOR, HintValues.TRUE)
+                    .getSingleResult();
+
+            long count = 0;
+
+            while (cursor.hasNext()) {
+
+                consumer.accept((T) cursor.next());
+
+                if (++count % AppConfig.DB_STREAM_FETCH_SIZE == 0) {
+                    cursor.clear();
+                    entityManager.clear();
+                }
+            }
+
+            return count;
+
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+            closeEntityManager(entityManager);
+        }
+    }
+
     @Override
     public Iterator<T> iterator() {
         return new JpaPagedIterator(this, DEFAULT_PAGE_SIZE);
@@ -361,7 +790,8 @@ public abstract class JpaRepository<T, K extends Serializable>
 
         private final JpaRepository<T, K> repository;
         private final int pageSize;
-        private int currentPageNumber;
+        private K lastSeenId;
+        private boolean isLastPage;
         private Iterator<T> currentPage;
 
         private JpaPagedIterator(JpaRepository<T, K> repository, int pagesize) {
@@ -382,7 +812,9 @@ public abstract class JpaRepository<T, K extends Serializable>
             if (needsToLoadPage()) {
                 loadNextPage();
             }
-            return currentPage.next();
+            final T entity = currentPage.next();
+            lastSeenId = repository.idOf(entity);
+            return entity;
         }
 
         @Override
@@ -391,14 +823,15 @@ public abstract class JpaRepository<T, K extends Serializable>
         }
 
         private void loadNextPage() {
-            final List<T> page = repository.page(++currentPageNumber, pageSize);
+            final List<T> page = repository.pageAfter(lastSeenId, pageSize);
+            isLastPage = page.size() < pageSize;
             currentPage = page.iterator();
         }
 
         private boolean needsToLoadPage() {
             // either we do not have an iterator yet or we have reached the end
-            // of the (current) iterator
-            return (currentPage == null || !currentPage.hasNext());
+            // of the (current) iterator and there may be more pages
+            return (currentPage == null || (!currentPage.hasNext() && !isLastPage));
         }
     }
 }
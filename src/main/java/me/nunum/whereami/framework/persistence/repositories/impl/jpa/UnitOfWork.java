@@ -0,0 +1,278 @@
+package me.nunum.whereami.framework.persistence.repositories.impl.jpa;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityTransaction;
+import javax.persistence.RollbackException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Scope in which every {@link JpaRepository} used by the thread shares a single
+ * {@link EntityManager}, and so the same persistence context and transaction.
+ * Requests are bound by the {@code UnitOfWorkFilter}, tasks by the task manager.
+ * <p>
+ * Closing a repository inside a unit of work leaves the entity manager open,
+ * it is closed once, when the unit of work ends. Beginning a unit of work while
+ * one is bound joins it; only the outermost one closes the entity manager.
+ * <p>
+ * A unit begun with {@link #beginTransaction()}, as requests are, also shares
+ * one transaction: it is begun by the first write and ends with the unit,
+ * committed by {@link #commit()} or rolled back by {@link #close()}. In other
+ * units every write commits on its own.
+ */
+public final class UnitOfWork implements AutoCloseable {
+
+    private static final Logger LOGGER = Logger.getLogger(UnitOfWork.class.getSimpleName());
+
+    private static final ThreadLocal<UnitOfWork> CURRENT = new ThreadLocal<>();
+
+    private static final LongAdder BEGUN = new LongAdder();
+
+    private final UnitOfWork root;
+
+    private EntityManager entityManager;
+
+    private boolean written;
+
+    private final boolean transactional;
+
+    private boolean rollbackOnly;
+
+    /**
+     * Work to run once the transaction of the unit commits
+     */
+    private final List<Runnable> afterCommit = new ArrayList<>();
+
+    private UnitOfWork(UnitOfWork root, boolean transactional) {
+        this.root = root;
+        this.transactional = transactional;
+    }
+
+    /**
+     * @return A new unit of work bound to the thread, or a handle of the one already bound
+     */
+    public static UnitOfWork begin() {
+        return begin(false);
+    }
+
+    /**
+     * @return A new unit of work bound to the thread whose writes share one
+     * transaction, or a handle of the one already bound
+     */
+    public static UnitOfWork beginTransaction() {
+        return begin(true);
+    }
+
+    private static UnitOfWork begin(boolean transactional) {
+
+        final UnitOfWork current = CURRENT.get();
+
+        if (current != null) {
+            return new UnitOfWork(current, current.transactional);
+        }
+
+        final UnitOfWork work = new UnitOfWork(null, transactional);
+
+        CURRENT.set(work);
+        BEGUN.increment();
+
+        return work;
+    }
+
+    /**
+     * @return Unit of work bound to the thread
+     */
+    public static Optional<UnitOfWork> current() {
+        return Optional.ofNullable(CURRENT.get());
+    }
+
+    /**
+     * @return Number of units of work begun since startup
+     */
+    public static long begun() {
+        return BEGUN.sum();
+    }
+
+    EntityManager entityManager(Supplier<EntityManager> factory) {
+
+        if (this.root != null) {
+            return this.root.entityManager(factory);
+        }
+
+        if (this.entityManager == null || !this.entityManager.isOpen()) {
+            this.entityManager = factory.get();
+        }
+
+        return this.entityManager;
+    }
+
+    /**
+     * Record that the unit of work began a transaction on the primary database,
+     * from then on it reads from the primary too
+     */
+    public void wrote() {
+        if (this.root != null) {
+            this.root.wrote();
+        } else {
+            this.written = true;
+        }
+    }
+
+    /**
+     * @return If the unit of work began a transaction on the primary database
+     */
+    public boolean hasWritten() {
+        return this.root != null ? this.root.hasWritten() : this.written;
+    }
+
+    boolean owns(EntityManager manager) {
+        return this.root != null ? this.root.owns(manager) : this.entityManager == manager;
+    }
+
+    /**
+     * @return If the writes of the unit share one transaction
+     */
+    public boolean isTransactional() {
+        return this.transactional;
+    }
+
+    /**
+     * Join the transaction of the unit, beginning it on the first write
+     *
+     * @param manager Entity manager of the unit
+     */
+    void join(EntityManager manager) {
+
+        if (this.root != null) {
+            this.root.join(manager);
+            return;
+        }
+
+        final EntityTransaction transaction = manager.getTransaction();
+
+        if (!transaction.isActive()) {
+            transaction.begin();
+        }
+    }
+
+    /**
+     * Mark the transaction of the unit so that it is rolled back, a write of it failed
+     */
+    void setRollbackOnly() {
+        if (this.root != null) {
+            this.root.setRollbackOnly();
+        } else {
+            this.rollbackOnly = true;
+        }
+    }
+
+    /**
+     * @return If the transaction of the unit will be rolled back
+     */
+    public boolean isRollbackOnly() {
+        return this.root != null ? this.root.isRollbackOnly() : this.rollbackOnly;
+    }
+
+    /**
+     * @param action Run once the transaction of the unit commits, dropped if it rolls back
+     */
+    public void afterCommit(Runnable action) {
+        if (this.root != null) {
+            this.root.afterCommit(action);
+        } else {
+            this.afterCommit.add(action);
+        }
+    }
+
+    /**
+     * Commit the transaction of the unit, if a write began it, and run the
+     * work waiting for the commit. Only the outermost unit commits, a nested
+     * one leaves it to the outer one.
+     *
+     * @throws RollbackException If a write of the unit failed, or the commit
+     *                           did; the transaction is rolled back
+     */
+    public void commit() {
+
+        if (this.root != null) {
+            return;
+        }
+
+        final EntityTransaction transaction = this.entityManager == null || !this.entityManager.isOpen()
+                ? null
+                : this.entityManager.getTransaction();
+
+        if (this.rollbackOnly) {
+            rollback(transaction);
+            throw new RollbackException("A write of the unit of work failed, its transaction was rolled back");
+        }
+
+        if (transaction != null && transaction.isActive()) {
+            try {
+                transaction.commit();
+            } catch (RuntimeException e) {
+                rollback(transaction);
+                throw e;
+            }
+        }
+
+        final List<Runnable> actions = new ArrayList<>(this.afterCommit);
+
+        this.afterCommit.clear();
+
+        actions.forEach(Runnable::run);
+    }
+
+    private void rollback(EntityTransaction transaction) {
+
+        this.rollbackOnly = false;
+        this.afterCommit.clear();
+
+        if (transaction != null && transaction.isActive()) {
+            transaction.rollback();
+        }
+    }
+
+    @Override
+    public void close() {
+
+        if (this.root != null) {
+            return;
+        }
+
+        if (CURRENT.get() == this) {
+            CURRENT.remove();
+        }
+
+        this.afterCommit.clear();
+
+        if (this.entityManager == null || !this.entityManager.isOpen()) {
+            return;
+        }
+
+        try {
+
+            final EntityTransaction transaction = this.entityManager.getTransaction();
+
+            if (transaction.isActive()) {
+
+                if (!this.transactional) {
+                    LOGGER.log(Level.WARNING, "Rolling back a transaction left open in the unit of work");
+                }
+
+                rollback(transaction);
+            }
+
+        } catch (RuntimeException e) {
+            LOGGER.log(Level.SEVERE, "Could not roll back the unit of work", e);
+        } finally {
+            JpaRepository.closeEntityManager(this.entityManager);
+            this.entityManager = null;
+        }
+    }
+}
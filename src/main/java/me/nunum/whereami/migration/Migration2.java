@@ -0,0 +1,45 @@
+package me.nunum.whereami.migration;
+
+
+import me.nunum.whereami.utils.AppConfig;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.EntityTransaction;
+import javax.persistence.Persistence;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Create the prediction indexes on databases whose tables were generated
+ * before they were declared on {@link me.nunum.whereami.model.Prediction}
+ */
+public final class Migration2 implements Runnable {
+
+    private static final Logger LOGGER = Logger.getLogger(Migration2.class.getSimpleName());
+
+    @Override
+    public synchronized void run() {
+        LOGGER.info("Migration started");
+        EntityManagerFactory entityManagerFactory = Persistence.createEntityManagerFactory(AppConfig.JPA_UNIT, AppConfig.persistenceUnitOverrideConfigs());
+        EntityManager entityManager = entityManagerFactory.createEntityManager();
+        final EntityTransaction transaction = entityManager.getTransaction();
+        transaction.begin();
+        try {
+
+            entityManager.createNativeQuery("CREATE INDEX IF NOT EXISTS PREDICTION_POLLING_IDX ON PREDICTION (LOCALIZATIONID, DEVICEID, CREATED)").executeUpdate();
+            entityManager.createNativeQuery("CREATE INDEX IF NOT EXISTS INDEX_PREDICTION_CREATED ON PREDICTION (CREATED)").executeUpdate();
+
+            transaction.commit();
+
+        } catch (Throwable e) {
+            if (transaction.isActive())
+                transaction.rollback();
+            LOGGER.log(Level.SEVERE, "Error on running migration 2", e);
+        } finally {
+            entityManager.close();
+        }
+
+        LOGGER.info("Migration finished");
+    }
+}
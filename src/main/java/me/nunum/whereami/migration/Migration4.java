@@ -0,0 +1,60 @@
+package me.nunum.whereami.migration;
+
+
+import me.nunum.whereami.model.Algorithm;
+import me.nunum.whereami.model.AlgorithmProvider;
+import me.nunum.whereami.model.Provider;
+import me.nunum.whereami.service.radiomap.BuiltInAlgorithms;
+import me.nunum.whereami.utils.AppConfig;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.EntityTransaction;
+import javax.persistence.Persistence;
+import java.util.HashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Register the built-in Horus probabilistic algorithm, served by the same
+ * provider as the built-in Mean algorithm of {@link Migration1}
+ */
+public final class Migration4 implements Runnable {
+
+    private static final Logger LOGGER = Logger.getLogger(Migration4.class.getSimpleName());
+
+    @Override
+    public synchronized void run() {
+        LOGGER.info("Migration started");
+        EntityManagerFactory entityManagerFactory = Persistence.createEntityManagerFactory(AppConfig.JPA_UNIT, AppConfig.persistenceUnitOverrideConfigs());
+        EntityManager entityManager = entityManagerFactory.createEntityManager();
+        final EntityTransaction transaction = entityManager.getTransaction();
+        transaction.begin();
+        try {
+
+            final Provider aProvider = entityManager.createNamedQuery("Provider.findByEmail", Provider.class)
+                    .setParameter("email", "nuno@nunum.me")
+                    .getSingleResult();
+
+            Algorithm algorithm = new Algorithm("Horus", "Nuno", "https://doi.org/10.1145/1067170.1067193", true, aProvider.getRequester());
+            entityManager.persist(algorithm);
+
+            final HashMap<String, String> map = new HashMap<>(3);
+            map.put(AlgorithmProvider.HTTP_PROVIDER_INGESTION_URL_KEY, "http://www.mocky.io/v2/5cfd86b93200007100ccd52f");
+            map.put(AlgorithmProvider.HTTP_PROVIDER_PREDICTION_URL_KEY, String.format("http://" + AppConfig.APP_AUTHORITY + "/api/algorithm/%d/implementation/%d", algorithm.getId(), BuiltInAlgorithms.HORUS));
+            algorithm.addProvider(new AlgorithmProvider(aProvider, AlgorithmProvider.METHOD.HTTP, map));
+
+            entityManager.flush();
+            transaction.commit();
+
+        } catch (Throwable e) {
+            if (transaction.isActive())
+                transaction.rollback();
+            LOGGER.log(Level.SEVERE, "Error on running migration 4", e);
+        } finally {
+            entityManager.close();
+        }
+
+        LOGGER.info("Migration finished");
+    }
+}
@@ -0,0 +1,94 @@
+package me.nunum.whereami.migration;
+
+
+import me.nunum.whereami.model.AlgorithmProvider;
+import me.nunum.whereami.service.radiomap.BuiltInAlgorithms;
+import me.nunum.whereami.utils.AppConfig;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.EntityTransaction;
+import javax.persistence.Persistence;
+import java.util.HashMap;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Turn the HTTP providers whose prediction url loops back to a built-in
+ * implementation of this server (see {@link Migration1}, {@link Migration3}
+ * and {@link Migration4}) into in-process providers
+ */
+public final class Migration5 implements Runnable {
+
+    private static final Logger LOGGER = Logger.getLogger(Migration5.class.getSimpleName());
+
+    private static final Pattern LOOPBACK_URL = Pattern.compile(
+            "^http://" + Pattern.quote(AppConfig.APP_AUTHORITY) + "/api/algorithm/\\d+/implementation/(\\d+)$");
+
+    private static final HashMap<Long, String> IMPLEMENTATION_NAMES = new HashMap<>(3);
+
+    static {
+        IMPLEMENTATION_NAMES.put(BuiltInAlgorithms.MEAN, BuiltInAlgorithms.MEAN_NAME);
+        IMPLEMENTATION_NAMES.put(BuiltInAlgorithms.WKNN, BuiltInAlgorithms.WKNN_NAME);
+        IMPLEMENTATION_NAMES.put(BuiltInAlgorithms.HORUS, BuiltInAlgorithms.HORUS_NAME);
+    }
+
+    @Override
+    public synchronized void run() {
+        LOGGER.info("Migration started");
+        EntityManagerFactory entityManagerFactory = Persistence.createEntityManagerFactory(AppConfig.JPA_UNIT, AppConfig.persistenceUnitOverrideConfigs());
+        EntityManager entityManager = entityManagerFactory.createEntityManager();
+        final EntityTransaction transaction = entityManager.getTransaction();
+        transaction.begin();
+        try {
+
+            final List<AlgorithmProvider> providers = entityManager
+                    .createQuery("SELECT p FROM AlgorithmProvider p WHERE p.method = :method", AlgorithmProvider.class)
+                    .setParameter("method", AlgorithmProvider.METHOD.HTTP)
+                    .getResultList();
+
+            for (AlgorithmProvider provider : providers) {
+
+                final String url = provider.getProperties().get(AlgorithmProvider.HTTP_PROVIDER_PREDICTION_URL_KEY);
+
+                if (url == null) {
+                    continue;
+                }
+
+                final Matcher matcher = LOOPBACK_URL.matcher(url);
+
+                if (!matcher.matches()) {
+                    continue;
+                }
+
+                final String name = IMPLEMENTATION_NAMES.get(Long.valueOf(matcher.group(1)));
+
+                if (name == null) {
+                    LOGGER.log(Level.WARNING, "Provider {0} points to an unknown implementation {1}", new Object[]{provider.getId(), url});
+                    continue;
+                }
+
+                provider.setMethod(AlgorithmProvider.METHOD.IN_PROCESS);
+                provider.getProperties().clear();
+                provider.getProperties().put(AlgorithmProvider.IN_PROCESS_PROVIDER_IMPLEMENTATION_KEY, name);
+
+                LOGGER.log(Level.INFO, "Provider {0} is now in-process with implementation {1}", new Object[]{provider.getId(), name});
+            }
+
+            entityManager.flush();
+            transaction.commit();
+
+        } catch (Throwable e) {
+            if (transaction.isActive())
+                transaction.rollback();
+            LOGGER.log(Level.SEVERE, "Error on running migration 5", e);
+        } finally {
+            entityManager.close();
+        }
+
+        LOGGER.info("Migration finished");
+    }
+}
@@ -0,0 +1,46 @@
+package me.nunum.whereami.migration;
+
+
+import me.nunum.whereami.utils.AppConfig;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.EntityTransaction;
+import javax.persistence.Persistence;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Add the building column of {@link me.nunum.whereami.model.Fingerprint} and
+ * its building and floor index on databases whose tables were generated
+ * before they were declared
+ */
+public final class Migration6 implements Runnable {
+
+    private static final Logger LOGGER = Logger.getLogger(Migration6.class.getSimpleName());
+
+    @Override
+    public synchronized void run() {
+        LOGGER.info("Migration started");
+        EntityManagerFactory entityManagerFactory = Persistence.createEntityManagerFactory(AppConfig.JPA_UNIT, AppConfig.persistenceUnitOverrideConfigs());
+        EntityManager entityManager = entityManagerFactory.createEntityManager();
+        final EntityTransaction transaction = entityManager.getTransaction();
+        transaction.begin();
+        try {
+
+            entityManager.createNativeQuery("ALTER TABLE FINGERPRINT ADD COLUMN IF NOT EXISTS BUILDID INTEGER").executeUpdate();
+            entityManager.createNativeQuery("CREATE INDEX IF NOT EXISTS FINGERPRINT_PARTITION_IDX ON FINGERPRINT (LOCALIZATIONID, BUILDID, FLOORID)").executeUpdate();
+
+            transaction.commit();
+
+        } catch (Throwable e) {
+            if (transaction.isActive())
+                transaction.rollback();
+            LOGGER.log(Level.SEVERE, "Error on running migration 6", e);
+        } finally {
+            entityManager.close();
+        }
+
+        LOGGER.info("Migration finished");
+    }
+}
@@ -12,6 +12,11 @@ public class MigrationManager {
         HashMap<String, Runnable> migrations = new HashMap<>();
 
         migrations.put(Migration1.class.getSimpleName(), new Migration1());
+        migrations.put(Migration2.class.getSimpleName(), new Migration2());
+        migrations.put(Migration3.class.getSimpleName(), new Migration3());
+        migrations.put(Migration4.class.getSimpleName(), new Migration4());
+        migrations.put(Migration5.class.getSimpleName(), new Migration5());
+        migrations.put(Migration6.class.getSimpleName(), new Migration6());
 
         final Scanner scanner = new Scanner(System.in);
 
@@ -4,6 +4,8 @@ import me.nunum.whereami.framework.domain.Identifiable;
 import me.nunum.whereami.framework.dto.DTO;
 import me.nunum.whereami.framework.dto.DTOable;
 import me.nunum.whereami.model.dto.AlgorithmDTO;
+import org.eclipse.persistence.annotations.BatchFetch;
+import org.eclipse.persistence.annotations.BatchFetchType;
 import org.eclipse.persistence.annotations.Index;
 
 import javax.persistence.*;
@@ -53,6 +55,7 @@ public class Algorithm
 
     @OneToMany(cascade = CascadeType.ALL)
     @JoinColumn(name = "ALG_OWNER_ID", referencedColumnName = "ALG_ID")
+    @BatchFetch(BatchFetchType.IN)
     private List<AlgorithmProvider> providers;
 
 
@@ -189,14 +192,8 @@ public class Algorithm
                 authorName,
                 paperURL,
                 isApproved,
-                providers.stream().map(e -> {
-                    final HashMap<String, Object> map = new HashMap<>(4);
-                    map.put("id", e.getId());
-                    map.put("method", e.getMethod().toString());
-                    map.put("isDeployed", e.isDeployed());
-                    map.put("predictionRate", e.getPredictionRate());
-
-                    return map;
-                }).collect(Collectors.toList()));
+                providers.stream()
+                        .map(e -> AlgorithmDTO.provider(e.getId(), e.getMethod().toString(), e.isDeployed(), e.getPredictionRate()))
+                        .collect(Collectors.toList()));
     }
 }
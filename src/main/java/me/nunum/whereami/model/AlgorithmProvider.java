@@ -3,8 +3,12 @@ package me.nunum.whereami.model;
 import me.nunum.whereami.framework.dto.DTO;
 import me.nunum.whereami.framework.dto.DTOable;
 import me.nunum.whereami.model.dto.AlgorithmProviderDTO;
+import org.eclipse.persistence.annotations.BatchFetch;
+import org.eclipse.persistence.annotations.BatchFetchType;
 
 import javax.persistence.*;
+import java.net.MalformedURLException;
+import java.net.URL;
 import java.util.Date;
 import java.util.Map;
 import java.util.Objects;
@@ -16,8 +20,16 @@ public class AlgorithmProvider implements DTOable {
     public static final String HTTP_PROVIDER_INGESTION_URL_KEY = "url_to_receive_data";
     public static final String HTTP_PROVIDER_PREDICTION_URL_KEY = "url_to_predict";
 
+    /**
+     * Optional, number of batches the sink keeps in flight waiting for acknowledgement
+     */
+    public static final String HTTP_PROVIDER_SINK_WINDOW_KEY = "sink_window";
+    public static final int MAX_SINK_WINDOW = 32;
+
     public static final String GIT_PROVIDER_URL_KEY = "repository_url";
 
+    public static final String IN_PROCESS_PROVIDER_IMPLEMENTATION_KEY = "implementation";
+
     @Id
     @GeneratedValue
     private Long id;
@@ -44,6 +56,7 @@ public class AlgorithmProvider implements DTOable {
 
 
     @ElementCollection
+    @BatchFetch(BatchFetchType.IN)
     private Map<String, String> properties;
 
     public boolean belongs(final Device device) {
@@ -63,6 +76,19 @@ public class AlgorithmProvider implements DTOable {
             public String[] requiredKeys() {
                 return new String[]{HTTP_PROVIDER_INGESTION_URL_KEY, HTTP_PROVIDER_PREDICTION_URL_KEY};
             }
+
+            @Override
+            public String[] optionalKeys() {
+                return new String[]{HTTP_PROVIDER_SINK_WINDOW_KEY};
+            }
+
+            @Override
+            public boolean isValidProperty(String key, String value) {
+                if (HTTP_PROVIDER_SINK_WINDOW_KEY.equals(key)) {
+                    return isValidSinkWindow(value);
+                }
+                return isValidProperty(value);
+            }
         },
         GIT {
             @Override
@@ -85,15 +111,61 @@ public class AlgorithmProvider implements DTOable {
             public String[] requiredKeys() {
                 return new String[0];
             }
+        },
+        /**
+         * Implementation loaded in the server JVM, trained and called without any request.
+         * Declared last, the method is persisted by ordinal.
+         */
+        IN_PROCESS {
+            @Override
+            public String toString() {
+                return "IN_PROCESS";
+            }
+
+            @Override
+            public String[] requiredKeys() {
+                return new String[]{IN_PROCESS_PROVIDER_IMPLEMENTATION_KEY};
+            }
+
+            @Override
+            public boolean isValidProperty(String value) {
+                return value != null && !value.trim().isEmpty();
+            }
         };
 
 
         public abstract String[] requiredKeys();
 
+        public String[] optionalKeys() {
+            return new String[0];
+        }
+
         public boolean isAutomaticDeployed() {
             return true;
         }
 
+        /**
+         * @param value Value of a provider property
+         * @return True if the value is acceptable for this method
+         */
+        public boolean isValidProperty(String value) {
+            try {
+                new URL(value);
+                return true;
+            } catch (MalformedURLException e) {
+                return false;
+            }
+        }
+
+        /**
+         * @param key   Provider property
+         * @param value Value of the property
+         * @return True if the value is acceptable for that property of this method
+         */
+        public boolean isValidProperty(String key, String value) {
+            return isValidProperty(value);
+        }
+
 
         public static METHOD parse(String method) {
             for (METHOD m : METHOD.values()) {
@@ -151,8 +223,12 @@ public class AlgorithmProvider implements DTOable {
     }
 
     public float getPredictionRate() {
+        return predictionRate(this.successPredictions, this.failurePredictions);
+    }
+
+    public static float predictionRate(int successPredictions, int failurePredictions) {
         float result = 0f;
-        int sum = this.failurePredictions + this.successPredictions;
+        int sum = failurePredictions + successPredictions;
 
         if (sum > 0) {
             result = (successPredictions / (float) sum) * 100;
@@ -198,4 +274,23 @@ public class AlgorithmProvider implements DTOable {
         return Objects.hash(this.provider.getEmail(), method);
     }
 
+
+    /**
+     * @param properties Properties of a HTTP provider
+     * @return Number of batches the sink may keep in flight, one when not set
+     */
+    public static int sinkWindow(Map<String, String> properties) {
+        final String window = properties.get(HTTP_PROVIDER_SINK_WINDOW_KEY);
+
+        return isValidSinkWindow(window) ? Integer.parseInt(window.trim()) : 1;
+    }
+
+    private static boolean isValidSinkWindow(String value) {
+        try {
+            final int window = Integer.parseInt(value.trim());
+            return window > 0 && window <= MAX_SINK_WINDOW;
+        } catch (NullPointerException | NumberFormatException e) {
+            return false;
+        }
+    }
 }
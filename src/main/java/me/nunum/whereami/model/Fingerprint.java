@@ -10,6 +10,7 @@ import java.util.Date;
 import java.util.UUID;
 
 @Entity
+@Index(name = "FINGERPRINT_PARTITION_IDX", columnNames = {"LOCALIZATIONID", "BUILDID", "FLOORID"})
 public class Fingerprint
         implements Comparable<Fingerprint>,
         DTOable {
@@ -39,6 +40,8 @@ public class Fingerprint
     @Index
     private Long localizationId;
 
+    private Integer buildId;
+
     private Integer floorId;
 
     private Long positionId;
@@ -76,6 +79,7 @@ public class Fingerprint
         this.channelWidth = channelWidth;
         this.frequency = frequency;
         this.timeStamp = timeStamp;
+        this.buildId = buildid;
         this.floorId = floorId;
         this.positionId = positionId;
         this.localizationId = localizationId;
@@ -169,6 +173,14 @@ public class Fingerprint
         this.localizationId = localizationId;
     }
 
+    public Integer getBuildId() {
+        return buildId;
+    }
+
+    public void setBuildId(Integer buildId) {
+        this.buildId = buildId;
+    }
+
     public Integer getFloorId() {
         return floorId;
     }
@@ -243,6 +255,7 @@ public class Fingerprint
                 ", frequency=" + frequency +
                 ", timeStamp='" + timeStamp + '\'' +
                 ", localizationId=" + localizationId +
+                ", buildId=" + buildId +
                 ", floorId=" + floorId +
                 ", positionId=" + positionId +
                 ", created=" + created +
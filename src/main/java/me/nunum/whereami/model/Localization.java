@@ -4,6 +4,8 @@ import me.nunum.whereami.framework.domain.Identifiable;
 import me.nunum.whereami.framework.dto.DTO;
 import me.nunum.whereami.framework.dto.DTOable;
 import me.nunum.whereami.model.dto.LocalizationDTO;
+import org.eclipse.persistence.annotations.BatchFetch;
+import org.eclipse.persistence.annotations.BatchFetchType;
 import org.eclipse.persistence.annotations.Index;
 
 import javax.persistence.*;
@@ -14,27 +16,32 @@ import java.util.*;
 @NamedQueries({
         @NamedQuery(
                 name = "Localization.allVisibleLocalizations",
-                query = "SELECT OBJECT (l) FROM Localization l WHERE l.isPublicForOffline=true OR l.owner.id=:ownerId ORDER BY l.id DESC"
+                query = "SELECT " + Localization.PROJECTION + " FROM Localization l WHERE (l.isPublicForOffline=true OR l.owner.id=:ownerId) AND l.id < :lastSeenId ORDER BY l.id DESC"
         ),
         @NamedQuery(
                 name = "Localization.allVisibleLocalizationsFilterByName",
-                query = "SELECT OBJECT (l) FROM Localization l WHERE (l.isPublicForOffline=true OR l.owner.id=:ownerId) AND l.label LIKE :name ORDER BY l.id DESC"
+                query = "SELECT " + Localization.PROJECTION + " FROM Localization l WHERE (l.isPublicForOffline=true OR l.owner.id=:ownerId) AND l.label LIKE :name AND l.id < :lastSeenId ORDER BY l.id DESC"
         ),
         @NamedQuery(
                 name = "Localization.allVisibleLocalizationsFilterByTraining",
-                query = "SELECT OBJECT (l) FROM Localization l WHERE (l.isPublicForOnline=true OR l.owner.id=:ownerId) AND l.numberOfModels > 0 ORDER BY l.id DESC"
+                query = "SELECT " + Localization.PROJECTION + " FROM Localization l WHERE (l.isPublicForOnline=true OR l.owner.id=:ownerId) AND l.numberOfModels > 0 AND l.id < :lastSeenId ORDER BY l.id DESC"
         ),
         @NamedQuery(
                 name = "Localization.allVisibleOwnerLocalizationsFilterByTraining",
-                query = "SELECT OBJECT (l) FROM Localization l WHERE l.owner.id=:ownerId AND l.numberOfModels > 0 ORDER BY l.id DESC"
+                query = "SELECT " + Localization.PROJECTION + " FROM Localization l WHERE l.owner.id=:ownerId AND l.numberOfModels > 0 AND l.id < :lastSeenId ORDER BY l.id DESC"
         ),
         @NamedQuery(
                 name = "Localization.onlyOwnerLocalizations",
-                query = "SELECT OBJECT (l) FROM Localization l WHERE l.owner.id=:ownerId ORDER BY l.id DESC"
+                query = "SELECT " + Localization.PROJECTION + " FROM Localization l WHERE l.owner.id=:ownerId AND l.id < :lastSeenId ORDER BY l.id DESC"
         )
 })
 public class Localization implements DTOable, Identifiable<Long>, Comparable<Localization> {
 
+    /**
+     * Columns of {@link LocalizationDTO}, lists read them instead of the entity
+     */
+    static final String PROJECTION = "NEW me.nunum.whereami.model.dto.LocalizationDTO(l.id, l.label, l.user, l.samples, l.numberOfModels, l.numberOfPositions, l.owner.id, l.canOtherUsersSendSamples, l.created)";
+
     @Id
     @GeneratedValue
     private Long id;
@@ -65,6 +72,7 @@ public class Localization implements DTOable, Identifiable<Long>, Comparable<Loc
     private String user;
 
     @ManyToOne(fetch = FetchType.LAZY)
+    @BatchFetch(BatchFetchType.IN)
     private Device owner;
 
     @OneToMany(orphanRemoval = true, cascade = {CascadeType.REMOVE, CascadeType.REFRESH}, mappedBy = "localization")
@@ -10,10 +10,16 @@ import java.util.Date;
 import java.util.Objects;
 
 @Entity
-@NamedQuery(
-        name = "Position.findByLocalizationId",
-        query = "SELECT OBJECT(u) FROM Position u where u.localization.id=:localizationId ORDER BY u.id DESC"
-)
+@NamedQueries({
+        @NamedQuery(
+                name = "Position.findByLocalizationId",
+                query = "SELECT OBJECT(u) FROM Position u where u.localization.id=:localizationId ORDER BY u.id DESC"
+        ),
+        @NamedQuery(
+                name = "Position.summaryByLocalizationId",
+                query = "SELECT NEW me.nunum.whereami.model.dto.PositionDTO(u.id, u.label, u.samples, u.routers, u.networks, u.strongestSignal) FROM Position u where u.localization.id=:localizationId ORDER BY u.id DESC"
+        )
+})
 @Table(uniqueConstraints = @UniqueConstraint(columnNames = {"LABEL", "LOCALIZATION_ID"}))
 public class Position
         implements Comparable<Position>,
@@ -9,7 +9,10 @@ import javax.persistence.*;
 import java.util.Date;
 
 @Entity
-@NamedQuery(name = "Post.all", query = "SELECT OBJECT (u) FROM Post u ORDER BY u.created DESC")
+@NamedQueries({
+        @NamedQuery(name = "Post.all", query = "SELECT OBJECT (u) FROM Post u ORDER BY u.created DESC"),
+        @NamedQuery(name = "Post.allBefore", query = "SELECT OBJECT (u) FROM Post u WHERE u.id < :lastSeenId ORDER BY u.id DESC")
+})
 public class Post
         implements Comparable<Post>,
         DTOable {
@@ -19,8 +19,21 @@ import java.util.Objects;
         @NamedQuery(
                 name = "Prediction.allPredictionsSince",
                 query = "SELECT OBJECT (u) FROM Prediction u WHERE u.localizationId=:localizationId AND u.created > :since AND u.deviceId = :deviceId"
+        ),
+        @NamedQuery(
+                name = "Prediction.oldest",
+                query = "SELECT MIN (u.created) FROM Prediction u"
+        ),
+        @NamedQuery(
+                name = "Prediction.rollupBetween",
+                query = "SELECT u.localizationId, u.algorithmProviderId, COUNT(u), " +
+                        "SUM(CASE WHEN u.predictionFeedback = :correct THEN 1 ELSE 0 END), " +
+                        "SUM(CASE WHEN u.predictionFeedback = :incorrect THEN 1 ELSE 0 END) " +
+                        "FROM Prediction u WHERE u.created >= :since AND u.created < :until " +
+                        "GROUP BY u.localizationId, u.algorithmProviderId"
         )
 })
+@Index(name = "PREDICTION_POLLING_IDX", columnNames = {"LOCALIZATIONID", "DEVICEID", "CREATED"})
 public class Prediction implements DTOable {
 
     @Id
@@ -29,7 +42,6 @@ public class Prediction implements DTOable {
 
     private Long requestId;
 
-    @Index
     private Long localizationId;
 
     private Long positionId;
@@ -44,7 +56,7 @@ public class Prediction implements DTOable {
 
     private PREDICTION_FEEDBACK predictionFeedback;
 
-    enum PREDICTION_FEEDBACK {
+    public enum PREDICTION_FEEDBACK {
         NOT_GIVEN {
             @Override
             public String toString() {
@@ -63,6 +75,7 @@ public class Prediction implements DTOable {
         }
     }
 
+    @Index
     @Temporal(TemporalType.TIMESTAMP)
     private Date created;
 
@@ -96,6 +109,10 @@ public class Prediction implements DTOable {
         this.predictionFeedback = PREDICTION_FEEDBACK.NOT_GIVEN;
     }
 
+    public Long getId() {
+        return id;
+    }
+
     public Long getRequestId() {
         return requestId;
     }
@@ -112,6 +129,24 @@ public class Prediction implements DTOable {
         this.positionId = positionId;
     }
 
+    /**
+     * Copy of this prediction for another request, used when the same scan
+     * was already predicted a moment ago
+     *
+     * @param requestId Batch
+     * @param deviceId  Device ID
+     * @return New prediction
+     */
+    public Prediction reuseFor(Long requestId, Long deviceId) {
+        return new Prediction(requestId,
+                this.localizationId,
+                this.positionId,
+                this.positionLabel,
+                this.accuracy,
+                this.algorithmProviderId,
+                deviceId);
+    }
+
     @PrePersist
     protected void onCreate() {
         created = Date.from(Instant.now());
@@ -0,0 +1,102 @@
+package me.nunum.whereami.model;
+
+import org.eclipse.persistence.annotations.Index;
+
+import javax.persistence.*;
+import java.util.Date;
+import java.util.Objects;
+
+/**
+ * Daily volume and accuracy of the predictions made by an algorithm provider
+ * for a localization. Survives the retention of the {@link Prediction} rows.
+ */
+@Entity
+@NamedQueries({
+        @NamedQuery(
+                name = "PredictionRollup.deleteByDay",
+                query = "DELETE FROM PredictionRollup r WHERE r.rollupDay = :day"
+        ),
+        @NamedQuery(
+                name = "PredictionRollup.latestDay",
+                query = "SELECT MAX (r.rollupDay) FROM PredictionRollup r"
+        )
+})
+@Table(uniqueConstraints = @UniqueConstraint(columnNames = {"ROLLUPDAY", "LOCALIZATIONID", "ALGORITHMPROVIDERID"}))
+public class PredictionRollup {
+
+    @Id
+    @GeneratedValue
+    private Long id;
+
+    @Index
+    @Temporal(TemporalType.DATE)
+    private Date rollupDay;
+
+    private Long localizationId;
+
+    @Index
+    private Long algorithmProviderId;
+
+    private long predictions;
+
+    private long correctPredictions;
+
+    private long incorrectPredictions;
+
+    protected PredictionRollup() {
+        //JPA
+    }
+
+    public PredictionRollup(Date rollupDay,
+                            Long localizationId,
+                            Long algorithmProviderId,
+                            long predictions,
+                            long correctPredictions,
+                            long incorrectPredictions) {
+        this.rollupDay = rollupDay;
+        this.localizationId = localizationId;
+        this.algorithmProviderId = algorithmProviderId;
+        this.predictions = predictions;
+        this.correctPredictions = correctPredictions;
+        this.incorrectPredictions = incorrectPredictions;
+    }
+
+    public Date getRollupDay() {
+        return rollupDay;
+    }
+
+    public Long getLocalizationId() {
+        return localizationId;
+    }
+
+    public Long getAlgorithmProviderId() {
+        return algorithmProviderId;
+    }
+
+    public long getPredictions() {
+        return predictions;
+    }
+
+    public long getCorrectPredictions() {
+        return correctPredictions;
+    }
+
+    public long getIncorrectPredictions() {
+        return incorrectPredictions;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        PredictionRollup that = (PredictionRollup) o;
+        return Objects.equals(rollupDay, that.rollupDay) &&
+                Objects.equals(localizationId, that.localizationId) &&
+                Objects.equals(algorithmProviderId, that.algorithmProviderId);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(rollupDay, localizationId, algorithmProviderId);
+    }
+}
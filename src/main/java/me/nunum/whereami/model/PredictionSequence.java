@@ -0,0 +1,54 @@
+package me.nunum.whereami.model;
+
+import javax.persistence.*;
+import java.util.Date;
+
+/**
+ * High-water mark of the prediction request ids handed out for a localization.
+ * <p>
+ * Ids are reserved in blocks, the persisted value is the first id that was not
+ * yet reserved, so after a restart the allocator never reuses an id from a
+ * block reserved before.
+ */
+@Entity
+public class PredictionSequence {
+
+    @Id
+    private Long localizationId;
+
+    private Long nextBlockStart;
+
+    @Temporal(TemporalType.TIMESTAMP)
+    private Date updated;
+
+    protected PredictionSequence() {
+        //JPA
+    }
+
+    public PredictionSequence(Long localizationId, Long nextBlockStart) {
+        this.localizationId = localizationId;
+        this.nextBlockStart = nextBlockStart;
+    }
+
+    /**
+     * Reserve the next block of ids
+     *
+     * @param blockSize Number of ids to reserve
+     * @return First id of the reserved block
+     */
+    public long reserve(int blockSize) {
+        final long start = this.nextBlockStart;
+        this.nextBlockStart = start + blockSize;
+        return start;
+    }
+
+    public Long getLocalizationId() {
+        return localizationId;
+    }
+
+    @PrePersist
+    @PreUpdate
+    protected void onUpdate() {
+        updated = new Date(System.currentTimeMillis());
+    }
+}
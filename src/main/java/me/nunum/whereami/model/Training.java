@@ -3,6 +3,8 @@ package me.nunum.whereami.model;
 import me.nunum.whereami.framework.dto.DTO;
 import me.nunum.whereami.framework.dto.DTOable;
 import me.nunum.whereami.model.dto.TrainingDTO;
+import org.eclipse.persistence.annotations.BatchFetch;
+import org.eclipse.persistence.annotations.BatchFetchType;
 
 import javax.persistence.*;
 import java.time.Instant;
@@ -15,10 +17,13 @@ import java.util.UUID;
 @NamedQueries({
         @NamedQuery(
                 name = "Training.findAllByLocalization",
-                query = "SELECT OBJECT(u) FROM Training u where u.localization.id=:localizationId ORDER BY u.updated DESC"),
+                query = "SELECT OBJECT(u) FROM Training u LEFT JOIN FETCH u.algorithm LEFT JOIN FETCH u.algorithmProvider where u.localization.id=:localizationId ORDER BY u.updated DESC"),
+        @NamedQuery(
+                name = "Training.statusByLocalization",
+                query = "SELECT NEW me.nunum.whereami.model.dto.TrainingDTO(u.id, u.status, u.algorithm.name, u.algorithm.id, u.algorithmProvider.id, u.created, u.updated) FROM Training u where u.localization.id=:localizationId ORDER BY u.updated DESC"),
         @NamedQuery(
                 name = "Training.findAllByProviderId",
-                query = "SELECT OBJECT(u) FROM Training u where u.algorithmProvider.id=:providerId"
+                query = "SELECT OBJECT(u) FROM Training u LEFT JOIN FETCH u.localization where u.algorithmProvider.id=:providerId"
         ),
         @NamedQuery(
                 name = "Training.findTrainingByProviderAndAlgorithmId",
@@ -39,14 +44,17 @@ public class Training implements DTOable {
     private String uid;
 
     @ManyToOne(fetch = FetchType.LAZY)
+    @BatchFetch(BatchFetchType.IN)
     private Algorithm algorithm;
 
     @ManyToOne(fetch = FetchType.LAZY, cascade = { CascadeType.REFRESH, CascadeType.MERGE })
+    @BatchFetch(BatchFetchType.IN)
     private AlgorithmProvider algorithmProvider;
 
     private TrainingStatus status;
 
     @ManyToOne(fetch = FetchType.LAZY)
+    @BatchFetch(BatchFetchType.IN)
     private Localization localization;
 
     @OneToOne(orphanRemoval = true, cascade = CascadeType.ALL)
@@ -96,6 +104,10 @@ public class Training implements DTOable {
         return this.algorithmProvider.getMethod().equals(AlgorithmProvider.METHOD.HTTP);
     }
 
+    public boolean isInProcessProvider() {
+        return this.algorithmProvider.getMethod().equals(AlgorithmProvider.METHOD.IN_PROCESS);
+    }
+
     public void trainingInProgress() {
         this.status = TrainingStatus.PROGRESS;
     }
@@ -2,6 +2,7 @@ package me.nunum.whereami.model.dto;
 
 import me.nunum.whereami.framework.dto.DTO;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -10,6 +11,19 @@ public final class AlgorithmDTO implements DTO {
 
     private final Map<String, Object> objectMap;
 
+    private final List<Map<String, Object>> providers;
+
+    /**
+     * Projection of an algorithm row, providers are added with {@link #addProvider}
+     */
+    public AlgorithmDTO(Long id,
+                        String name,
+                        String authorName,
+                        String paperURL,
+                        boolean isApproved) {
+        this(id, name, authorName, paperURL, isApproved, new ArrayList<>());
+    }
+
     public AlgorithmDTO(Long id,
                         String name,
                         String authorName,
@@ -18,6 +32,7 @@ public final class AlgorithmDTO implements DTO {
                         List<Map<String, Object>> providers) {
 
         this.objectMap = new HashMap<>(6);
+        this.providers = providers;
 
         objectMap.put("id", id);
         objectMap.put("authorName", authorName);
@@ -28,6 +43,26 @@ public final class AlgorithmDTO implements DTO {
 
     }
 
+    public static Map<String, Object> provider(Long id, String method, boolean isDeployed, float predictionRate) {
+
+        final HashMap<String, Object> map = new HashMap<>(4);
+
+        map.put("id", id);
+        map.put("method", method);
+        map.put("isDeployed", isDeployed);
+        map.put("predictionRate", predictionRate);
+
+        return map;
+    }
+
+    public void addProvider(Long id, String method, boolean isDeployed, float predictionRate) {
+        this.providers.add(provider(id, method, isDeployed, predictionRate));
+    }
+
+    public Long id() {
+        return (Long) this.objectMap.get("id");
+    }
+
     @Override
     public Map<String, Object> dtoValues() {
         return objectMap;
@@ -2,7 +2,9 @@ package me.nunum.whereami.model.dto;
 
 import me.nunum.whereami.framework.dto.DTO;
 
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 public class AlgorithmImplementationDTO implements DTO {
@@ -10,10 +12,15 @@ public class AlgorithmImplementationDTO implements DTO {
     private final HashMap<String,Object> map;
 
     public AlgorithmImplementationDTO(Long predictedPosition, Double accuracy) {
-        this.map = new HashMap<>(2);
+        this(predictedPosition, accuracy, Collections.emptyList());
+    }
+
+    public AlgorithmImplementationDTO(Long predictedPosition, Double accuracy, List<? extends Map<String, Object>> candidates) {
+        this.map = new HashMap<>(3);
 
         this.map.put("positionId", predictedPosition);
         this.map.put("accuracy", accuracy);
+        this.map.put("candidates", candidates);
     }
 
     @Override
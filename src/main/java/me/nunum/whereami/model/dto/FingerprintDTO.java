@@ -12,7 +12,7 @@ public final class FingerprintDTO implements DTO {
 
     public FingerprintDTO(Fingerprint fingerprint) {
 
-        map = new HashMap<>(11);
+        map = new HashMap<>(13);
 
         map.put("id" , fingerprint.getId());
         map.put("uid" , fingerprint.getUid());
@@ -25,6 +25,8 @@ public final class FingerprintDTO implements DTO {
         map.put("frequency", fingerprint.getFrequency());
         map.put("timeStamp", fingerprint.getTimeStamp());
         map.put("localizationId", fingerprint.getLocalizationId());
+        map.put("buildId", fingerprint.getBuildId());
+        map.put("floorId", fingerprint.getFloorId());
         map.put("positionId", fingerprint.getPositionId());
 
     }
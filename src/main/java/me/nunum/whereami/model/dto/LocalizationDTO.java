@@ -10,6 +10,8 @@ public final class LocalizationDTO implements DTO {
 
     private final Map<String, Object> objectMap;
 
+    private final Long ownerId;
+
 
     public LocalizationDTO(Long id,
                            String label,
@@ -21,14 +23,35 @@ public final class LocalizationDTO implements DTO {
                            boolean canOthersSendSamples,
                            Date created) {
 
+        this(id, label, userLabel, samples, numberOfModels, positions, (Long) null, canOthersSendSamples, created);
+
+        this.objectMap.put("isOwner", isOwner);
+    }
+
+    /**
+     * Projection of a localization row, see {@link #seenBy(Long)}
+     *
+     * @param ownerId Id of the device owning the localization
+     */
+    public LocalizationDTO(Long id,
+                           String label,
+                           String userLabel,
+                           Long samples,
+                           Integer numberOfModels,
+                           Integer positions,
+                           Long ownerId,
+                           boolean canOthersSendSamples,
+                           Date created) {
+
         this.objectMap = new HashMap<>(6);
+        this.ownerId = ownerId;
 
         final Map<String, Object> stats = new HashMap<>(3);
 
         this.objectMap.put("id", id);
         this.objectMap.put("label", label);
         this.objectMap.put("user", userLabel);
-        this.objectMap.put("isOwner", isOwner);
+        this.objectMap.put("isOwner", false);
         this.objectMap.put("canOthersSendSamples", canOthersSendSamples);
         this.objectMap.put("created", created);
 
@@ -39,6 +62,19 @@ public final class LocalizationDTO implements DTO {
         this.objectMap.put("stats", stats);
     }
 
+    /**
+     * @param deviceId Id of the device asking for the localization
+     * @return This localization, as seen by the device
+     */
+    public LocalizationDTO seenBy(Long deviceId) {
+        this.objectMap.put("isOwner", this.ownerId != null && this.ownerId.equals(deviceId));
+        return this;
+    }
+
+    public Long id() {
+        return (Long) this.objectMap.get("id");
+    }
+
     @Override
     public Map<String, Object> dtoValues() {
         return objectMap;
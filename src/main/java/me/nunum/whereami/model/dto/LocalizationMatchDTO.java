@@ -0,0 +1,25 @@
+package me.nunum.whereami.model.dto;
+
+import me.nunum.whereami.framework.dto.DTO;
+
+import java.util.HashMap;
+import java.util.Map;
+
+public final class LocalizationMatchDTO implements DTO {
+
+    private final Map<String, Object> objectMap;
+
+    /**
+     * @param localization See {@link LocalizationDTO}
+     * @param score        How much of the scan the localization explains, from 0 to 1
+     */
+    public LocalizationMatchDTO(DTO localization, double score) {
+        this.objectMap = new HashMap<>(localization.dtoValues());
+        this.objectMap.put("score", score);
+    }
+
+    @Override
+    public Map<String, Object> dtoValues() {
+        return objectMap;
+    }
+}
@@ -0,0 +1,34 @@
+package me.nunum.whereami.model.dto;
+
+import me.nunum.whereami.framework.dto.DTO;
+import me.nunum.whereami.service.radiomap.Candidate;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+public final class TrackingEstimateDTO implements DTO {
+
+    private final HashMap<String, Object> map;
+
+    /**
+     * @param localizationId Localization Id
+     * @param scan           Number of scans of the session so far
+     * @param candidates     Smoothed candidates, most likely first
+     */
+    public TrackingEstimateDTO(Long localizationId, long scan, List<Candidate> candidates) {
+        this.map = new HashMap<>(5);
+
+        this.map.put("localizationId", localizationId);
+        this.map.put("scan", scan);
+        this.map.put("positionId", candidates.isEmpty() ? 0L : candidates.get(0).getPositionId());
+        this.map.put("probability", candidates.isEmpty() ? 0.0 : candidates.get(0).getConfidence());
+        this.map.put("candidates", candidates.stream().map(Candidate::values).collect(Collectors.toList()));
+    }
+
+    @Override
+    public Map<String, Object> dtoValues() {
+        return map;
+    }
+}
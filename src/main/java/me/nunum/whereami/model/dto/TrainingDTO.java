@@ -1,6 +1,7 @@
 package me.nunum.whereami.model.dto;
 
 import me.nunum.whereami.framework.dto.DTO;
+import me.nunum.whereami.model.TrainingStatus;
 
 import java.util.Date;
 import java.util.HashMap;
@@ -10,6 +11,19 @@ public final class TrainingDTO implements DTO {
 
     private final Map<String, Object> objectMap;
 
+    /**
+     * Projection of a training row
+     */
+    public TrainingDTO(final Long id,
+                       final TrainingStatus status,
+                       final String name,
+                       Long algId,
+                       Long pId,
+                       Date created,
+                       Date updated) {
+        this(id, status.toString(), name, algId, pId, created, updated);
+    }
+
     public TrainingDTO(final Long id,
                        final String status,
                        final String name,
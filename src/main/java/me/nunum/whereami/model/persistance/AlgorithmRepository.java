@@ -1,14 +1,22 @@
 package me.nunum.whereami.model.persistance;
 
+import me.nunum.whereami.framework.persistence.repositories.Keyset;
 import me.nunum.whereami.framework.persistence.repositories.Repository;
 import me.nunum.whereami.model.Algorithm;
+import me.nunum.whereami.model.dto.AlgorithmDTO;
 
 import java.util.List;
 import java.util.Optional;
 
 public interface AlgorithmRepository extends Repository<Algorithm, Long>, AutoCloseable {
 
-    List<Algorithm> paginate(Optional<Integer> page);
+    List<AlgorithmDTO> paginate(Optional<Integer> page);
+
+    /**
+     * @param lastSeenId Id of the last algorithm of the previous page, absent for the first page
+     * @return Approved algorithms newest first
+     */
+    Keyset<AlgorithmDTO> paginateAfter(Optional<Long> lastSeenId);
     
     Optional<Algorithm> findFirst();
 }
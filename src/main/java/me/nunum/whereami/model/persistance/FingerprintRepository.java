@@ -1,14 +1,20 @@
 package me.nunum.whereami.model.persistance;
 
-import me.nunum.whereami.framework.persistence.repositories.Repository;
 import me.nunum.whereami.model.Fingerprint;
 import me.nunum.whereami.model.Position;
-import me.nunum.whereami.model.request.FingerprintSample;
 
 import java.util.List;
-
-public interface FingerprintRepository
-        extends Repository<Fingerprint,Long>, AutoCloseable {
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Fingerprints of the localizations, kept in a {@link FingerprintStore}. Every
+ * read and write goes through the store, so the generic {@link
+ * me.nunum.whereami.framework.persistence.repositories.Repository} entry points
+ * are not offered: they would only reach the database rows.
+ */
+public interface FingerprintRepository extends AutoCloseable {
 
     boolean bulkFingerprints(List<Fingerprint> fingerprints);
 
@@ -18,5 +24,35 @@ public interface FingerprintRepository
 
     List<Fingerprint> fingerprintByLocalizationIdAndWithIdGreater(Long localizationId, Long id, int batchSize);
 
-    Long predictUserLocalization(List<FingerprintSample> samples, Long localizationId);
+
+    /**
+     * @param localizationId Localization Id
+     * @param id             Exclusive lower bound of the fingerprint id
+     * @param consumer       Consumer of each fingerprint, in id order
+     * @return Number of fingerprints read
+     */
+    long streamByLocalizationIdAndWithIdGreater(Long localizationId, Long id, Consumer<Fingerprint> consumer);
+
+
+    /**
+     * @param localizationId Localization Id
+     * @param after          Exclusive lower bound of the fingerprint id
+     * @param upTo           Inclusive upper bound of the fingerprint id
+     * @param batchSize      Maximum number of fingerprints
+     * @return Fingerprints of the localization in the id range, ordered by id
+     */
+    List<Fingerprint> fingerprintByLocalizationIdAndIdBetween(Long localizationId, Long after, Long upTo, int batchSize);
+
+
+    /**
+     * @return Distinct BSSIDs observed in each localization
+     */
+    Map<Long, Set<String>> bssidsByLocalization();
+
+
+    /**
+     * @param localizationId Localization Id
+     * @return Distinct BSSIDs observed in the localization
+     */
+    Set<String> bssidsOfLocalization(Long localizationId);
 }
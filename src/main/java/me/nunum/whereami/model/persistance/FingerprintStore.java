@@ -0,0 +1,72 @@
+package me.nunum.whereami.model.persistance;
+
+import me.nunum.whereami.model.Fingerprint;
+import me.nunum.whereami.model.stats.PositionSignals;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Storage of the fingerprints, append-mostly series partitioned by
+ * localization and read in id order. The {@link FingerprintRepository} hands
+ * its fingerprint reads and writes to the store selected with
+ * {@code app.fingerprint.store}.
+ */
+public interface FingerprintStore extends AutoCloseable {
+
+    /**
+     * @param fingerprints Fingerprints to append, their ids are assigned by the store
+     * @return If the fingerprints were stored
+     */
+    boolean append(List<Fingerprint> fingerprints);
+
+
+    /**
+     * @param localizationId Localization of the position
+     * @param positionId     Position Id
+     * @return If the fingerprints of the position were deleted
+     */
+    boolean deleteByPosition(Long localizationId, Long positionId);
+
+
+    /**
+     * @param localizationId Localization Id
+     * @param after          Exclusive lower bound of the fingerprint id
+     * @param upTo           Inclusive upper bound of the fingerprint id
+     * @param limit          Maximum number of fingerprints
+     * @return Fingerprints of the localization in the id range, ordered by id
+     */
+    List<Fingerprint> range(Long localizationId, Long after, Long upTo, int limit);
+
+
+    /**
+     * @param localizationId Localization Id
+     * @param after          Exclusive lower bound of the fingerprint id
+     * @param consumer       Consumer of each fingerprint, in id order
+     * @return Number of fingerprints read
+     */
+    long scan(Long localizationId, Long after, Consumer<Fingerprint> consumer);
+
+
+    /**
+     * @return Distinct BSSIDs observed in each localization
+     */
+    Map<Long, Set<String>> bssidsByLocalization();
+
+
+    /**
+     * @param localizationId Localization Id
+     * @return Distinct BSSIDs observed in the localization
+     */
+    Set<String> bssidsOfLocalization(Long localizationId);
+
+
+    /**
+     * @param localizationId Localization of the position
+     * @param positionId     Position Id
+     * @return Signals of the fingerprints stored for the position
+     */
+    PositionSignals signalsOfPosition(Long localizationId, Long positionId);
+}
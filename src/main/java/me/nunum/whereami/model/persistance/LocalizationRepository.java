@@ -1,8 +1,10 @@
 package me.nunum.whereami.model.persistance;
 
+import me.nunum.whereami.framework.persistence.repositories.Keyset;
 import me.nunum.whereami.framework.persistence.repositories.Repository;
 import me.nunum.whereami.model.Device;
 import me.nunum.whereami.model.Localization;
+import me.nunum.whereami.model.dto.LocalizationDTO;
 
 import java.util.List;
 import java.util.Optional;
@@ -12,9 +14,20 @@ public interface LocalizationRepository extends Repository<Localization, Long>,
     void deleteLocalization(Localization localization);
 
 
-    List<Localization> searchWithPagination(Device device,
-                                            Optional<Integer> page,
-                                            Optional<String> localizationName,
-                                            Optional<String> trained,
-                                            Optional<Boolean> onlyUserLocalizations);
+    List<LocalizationDTO> searchWithPagination(Device device,
+                                               Optional<Integer> page,
+                                               Optional<String> localizationName,
+                                               Optional<String> trained,
+                                               Optional<Boolean> onlyUserLocalizations);
+
+    /**
+     * Same search as {@link #searchWithPagination}, seeking past the last localization seen instead of skipping pages
+     *
+     * @param lastSeenId Id of the last localization of the previous page, absent for the first page
+     */
+    Keyset<LocalizationDTO> searchAfter(Device device,
+                                        Optional<Long> lastSeenId,
+                                        Optional<String> localizationName,
+                                        Optional<String> trained,
+                                        Optional<Boolean> onlyUserLocalizations);
 }
@@ -3,6 +3,7 @@ package me.nunum.whereami.model.persistance;
 import me.nunum.whereami.framework.persistence.repositories.Repository;
 import me.nunum.whereami.model.Localization;
 import me.nunum.whereami.model.Position;
+import me.nunum.whereami.model.dto.PositionDTO;
 
 import java.util.List;
 
@@ -11,5 +12,11 @@ public interface PositionRepository extends Repository<Position, Long>, AutoClos
 
     List<Position> positionsByLocalization(Localization localization);
 
+    /**
+     * @param localization See {@link Localization}
+     * @return Projection of the positions of the localization, newest first
+     */
+    List<PositionDTO> positionSummariesByLocalization(Localization localization);
+
     boolean updateMetaData(Position position);
 }
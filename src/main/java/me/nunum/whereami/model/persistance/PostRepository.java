@@ -1,5 +1,6 @@
 package me.nunum.whereami.model.persistance;
 
+import me.nunum.whereami.framework.persistence.repositories.Keyset;
 import me.nunum.whereami.framework.persistence.repositories.Repository;
 import me.nunum.whereami.model.Post;
 
@@ -11,4 +12,10 @@ public interface PostRepository
 
     List<Post> paginate(Optional<Integer> page);
 
+    /**
+     * @param lastSeenId Id of the last post of the previous page, absent for the first page
+     * @return Posts newest first
+     */
+    Keyset<Post> paginateAfter(Optional<Long> lastSeenId);
+
 }
@@ -4,16 +4,53 @@ import me.nunum.whereami.framework.persistence.repositories.Repository;
 import me.nunum.whereami.model.Device;
 import me.nunum.whereami.model.Localization;
 import me.nunum.whereami.model.Prediction;
+import me.nunum.whereami.model.PredictionRollup;
 
 import java.util.Date;
 import java.util.List;
+import java.util.Optional;
 
 public interface PredictionRepository
         extends Repository<Prediction, Long>, AutoCloseable {
 
-    Long maxRequestIdForLocalization(Localization localization);
+    /**
+     * Reserve a block of request ids for the given localization. The first
+     * reservation is seeded from the predictions already stored.
+     *
+     * @param localizationId Localization Id
+     * @param blockSize      Number of ids to reserve
+     * @return First id of the reserved block
+     */
+    long reserveRequestIdBlock(Long localizationId, int blockSize);
 
 
     List<Prediction> allPredictionsSince(Device device, Localization localization, Date since);
 
+
+    /**
+     * @return Nullable creation date of the oldest prediction stored
+     */
+    Optional<Date> oldestPrediction();
+
+
+    /**
+     * Aggregate the predictions created in [since, until) by localization and algorithm provider
+     *
+     * @param day   Day the rollups are reported under
+     * @param since Inclusive lower bound
+     * @param until Exclusive upper bound
+     * @return List of {@link PredictionRollup}
+     */
+    List<PredictionRollup> rollupBetween(Date day, Date since, Date until);
+
+
+    /**
+     * Delete, in a single transaction, at most chunkSize predictions created before the cutoff
+     *
+     * @param cutoff    Exclusive upper bound
+     * @param chunkSize Maximum number of rows to delete
+     * @return Number of rows deleted
+     */
+    int purgeOlderThan(Date cutoff, int chunkSize);
+
 }
@@ -0,0 +1,26 @@
+package me.nunum.whereami.model.persistance;
+
+import me.nunum.whereami.framework.persistence.repositories.Repository;
+import me.nunum.whereami.model.PredictionRollup;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Optional;
+
+public interface PredictionRollupRepository
+        extends Repository<PredictionRollup, Long>, AutoCloseable {
+
+    /**
+     * Replace, in a single transaction, the rollups of a day
+     *
+     * @param day     Day
+     * @param rollups New rollups of that day
+     */
+    void replaceDay(Date day, List<PredictionRollup> rollups);
+
+
+    /**
+     * @return Most recent day already rolled up
+     */
+    Optional<Date> latestDay();
+}
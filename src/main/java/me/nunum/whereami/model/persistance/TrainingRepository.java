@@ -5,6 +5,7 @@ import me.nunum.whereami.model.Algorithm;
 import me.nunum.whereami.model.AlgorithmProvider;
 import me.nunum.whereami.model.Localization;
 import me.nunum.whereami.model.Training;
+import me.nunum.whereami.model.dto.TrainingDTO;
 
 import java.util.List;
 import java.util.Optional;
@@ -21,6 +22,14 @@ public interface TrainingRepository
      */
     List<Training> findByLocalization(Localization localization);
 
+    /**
+     * Obtain the status of the trainings of a localization, without loading them
+     *
+     * @param localization See {@link Localization}
+     * @return Projection of the trainings, last updated first
+     */
+    List<TrainingDTO> trainingStatusByLocalization(Localization localization);
+
     /**
      * Obtain a list of trainings by a given provider
      *
@@ -1,14 +1,21 @@
 package me.nunum.whereami.model.persistance.jpa;
 
+import me.nunum.whereami.framework.persistence.RoutingDataSource;
+import me.nunum.whereami.framework.persistence.repositories.Keyset;
 import me.nunum.whereami.framework.persistence.repositories.impl.jpa.JpaRepository;
 import me.nunum.whereami.model.Algorithm;
+import me.nunum.whereami.model.AlgorithmProvider;
+import me.nunum.whereami.model.dto.AlgorithmDTO;
 import me.nunum.whereami.model.persistance.AlgorithmRepository;
 import me.nunum.whereami.utils.AppConfig;
 
 import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CompoundSelection;
 import javax.persistence.criteria.CriteriaQuery;
 import javax.persistence.criteria.Root;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 public class AlgorithmRepositoryJpa
@@ -21,7 +28,7 @@ public class AlgorithmRepositoryJpa
     }
 
     @Override
-    public List<Algorithm> paginate(Optional<Integer> page) {
+    public List<AlgorithmDTO> paginate(Optional<Integer> page) {
 
         final Integer currentPage = page.map(p -> {
             if (p < 1) {
@@ -32,15 +39,82 @@ public class AlgorithmRepositoryJpa
 
         final CriteriaBuilder criteriaBuilder = super.entityManager().getCriteriaBuilder();
 
-        CriteriaQuery<Algorithm> builderQuery = criteriaBuilder.createQuery(Algorithm.class);
+        CriteriaQuery<AlgorithmDTO> builderQuery = criteriaBuilder.createQuery(AlgorithmDTO.class);
 
         final Root<Algorithm> algorithmRoot = builderQuery.from(Algorithm.class);
 
-        final CriteriaQuery<Algorithm> where = builderQuery
+        final CriteriaQuery<AlgorithmDTO> where = builderQuery
+                .select(projection(criteriaBuilder, algorithmRoot))
                 .where(criteriaBuilder.equal(algorithmRoot.get("isApproved"), true))
                 .orderBy(criteriaBuilder.desc(algorithmRoot.get("created")));
 
-        return this.pageWithFiltering(where, currentPage);
+        return RoutingDataSource.readOnly(() -> withProviders(fromReplica(super.entityManager().createQuery(where))
+                .setMaxResults(DEFAULT_PAGE_SIZE)
+                .setFirstResult((currentPage - 1) * DEFAULT_PAGE_SIZE)
+                .getResultList()));
+    }
+
+    @Override
+    public Keyset<AlgorithmDTO> paginateAfter(Optional<Long> lastSeenId) {
+
+        final CriteriaBuilder criteriaBuilder = super.entityManager().getCriteriaBuilder();
+
+        CriteriaQuery<AlgorithmDTO> builderQuery = criteriaBuilder.createQuery(AlgorithmDTO.class);
+
+        final Root<Algorithm> algorithmRoot = builderQuery.from(Algorithm.class);
+
+        final CriteriaQuery<AlgorithmDTO> where = builderQuery
+                .select(projection(criteriaBuilder, algorithmRoot))
+                .where(criteriaBuilder.equal(algorithmRoot.get("isApproved"), true),
+                        criteriaBuilder.lessThan(algorithmRoot.get("id"), lastSeenId.orElse(Long.MAX_VALUE)))
+                .orderBy(criteriaBuilder.desc(algorithmRoot.get("id")));
+
+        final List<AlgorithmDTO> algorithms = RoutingDataSource.readOnly(() -> withProviders(fromReplica(super.entityManager().createQuery(where))
+                .setMaxResults(DEFAULT_PAGE_SIZE)
+                .getResultList()));
+
+        return Keyset.of(algorithms, DEFAULT_PAGE_SIZE, AlgorithmDTO::id);
+    }
+
+    private static CompoundSelection<AlgorithmDTO> projection(CriteriaBuilder criteriaBuilder, Root<Algorithm> algorithmRoot) {
+        return criteriaBuilder.construct(AlgorithmDTO.class,
+                algorithmRoot.get("id"),
+                algorithmRoot.get("name"),
+                algorithmRoot.get("authorName"),
+                algorithmRoot.get("paperURL"),
+                algorithmRoot.get("isApproved"));
+    }
+
+    /**
+     * Read the providers of a page of algorithms in a single query
+     *
+     * @param algorithms Projection of the algorithms
+     * @return Same algorithms
+     */
+    @SuppressWarnings("unchecked")
+    private List<AlgorithmDTO> withProviders(List<AlgorithmDTO> algorithms) {
+
+        if (algorithms.isEmpty()) {
+            return algorithms;
+        }
+
+        final Map<Long, AlgorithmDTO> byId = new HashMap<>(algorithms.size());
+
+        algorithms.forEach(e -> byId.put(e.id(), e));
+
+        final List<Object[]> providers = super.entityManager()
+                .createQuery("SELECT a.id, p.id, p.method, p.isDeployed, p.successPredictions, p.failurePredictions FROM Algorithm a JOIN a.providers p WHERE a.id IN :ids ORDER BY p.id")
+                .setParameter("ids", byId.keySet())
+                .getResultList();
+
+        for (Object[] row : providers) {
+            byId.get((Long) row[0]).addProvider((Long) row[1],
+                    String.valueOf(row[2]),
+                    (Boolean) row[3],
+                    AlgorithmProvider.predictionRate((Integer) row[4], (Integer) row[5]));
+        }
+
+        return algorithms;
     }
 
     @Override
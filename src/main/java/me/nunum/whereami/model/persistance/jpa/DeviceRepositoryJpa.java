@@ -8,7 +8,6 @@ import me.nunum.whereami.model.persistance.DeviceRepository;
 import me.nunum.whereami.utils.AppConfig;
 
 import javax.persistence.EntityManager;
-import javax.persistence.EntityManagerFactory;
 import javax.persistence.NoResultException;
 import java.security.Principal;
 import java.util.Set;
@@ -24,6 +23,11 @@ public class DeviceRepositoryJpa
         return AppConfig.JPA_UNIT;
     }
 
+    /**
+     * The device is inserted in a transaction of its own, when another request
+     * inserts it at the same time the loser finds it on the next try, without
+     * failing the unit of work it runs in.
+     */
     @Override
     public Device findOrPersist(Principal principal) {
 
@@ -33,13 +37,18 @@ public class DeviceRepositoryJpa
         do {
             try {
 
-                EntityManagerFactory entityManagerFactory = super.entityManagerFactory();
-                EntityManager entityManager = entityManagerFactory.createEntityManager();
+                final EntityManager entityManager = entityManager();
                 device = (Device) entityManager.createNamedQuery("Device.findByInstance").setParameter("instance", principal.getName()).getSingleResult();
 
             } catch (NoResultException e) {
                 try {
-                    device = this.save(new Device(principal.getName()));
+                    final Device created = inOwnTransaction(manager -> {
+                        final Device inserted = new Device(principal.getName());
+                        manager.persist(inserted);
+                        return inserted;
+                    });
+
+                    device = entityManager().find(Device.class, created.getId());
                 } catch (EntityAlreadyExists e1) {
                     //continue
                 }
@@ -0,0 +1,86 @@
+package me.nunum.whereami.model.persistance.jpa;
+
+import me.nunum.whereami.model.*;
+import org.eclipse.persistence.config.CacheIsolationType;
+import org.eclipse.persistence.config.SessionCustomizer;
+import org.eclipse.persistence.descriptors.ClassDescriptor;
+import org.eclipse.persistence.descriptors.invalidation.TimeToLiveCacheInvalidationPolicy;
+import org.eclipse.persistence.sessions.Session;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Caching policy of every entity of the persistence unit. Read-mostly entities
+ * live in the shared cache, bounded in size and time; everything else, namely
+ * fingerprints and predictions, stays isolated in each entity manager.
+ * <p>
+ * Defaults can be changed with {@code app.cache.<entity>.size} and
+ * {@code app.cache.<entity>.ttl.seconds}, entity in lower case.
+ */
+public class EntityCachePolicy implements SessionCustomizer {
+
+    private static final Logger LOGGER = Logger.getLogger(EntityCachePolicy.class.getSimpleName());
+
+    private static final Map<Class<?>, Policy> SHARED;
+
+    static {
+        final HashMap<Class<?>, Policy> shared = new HashMap<>();
+
+        shared.put(Device.class, Policy.of(Device.class, 1000, 600));
+        shared.put(Role.class, Policy.of(Role.class, 50, 3600));
+        shared.put(Algorithm.class, Policy.of(Algorithm.class, 500, 600));
+        shared.put(AlgorithmProvider.class, Policy.of(AlgorithmProvider.class, 500, 600));
+        shared.put(Provider.class, Policy.of(Provider.class, 500, 600));
+        shared.put(Post.class, Policy.of(Post.class, 200, 600));
+        shared.put(Position.class, Policy.of(Position.class, 2000, 300));
+
+        SHARED = Collections.unmodifiableMap(shared);
+    }
+
+    @Override
+    public void customize(Session session) {
+
+        for (ClassDescriptor descriptor : session.getDescriptors().values()) {
+
+            if (descriptor.isAggregateDescriptor() || descriptor.isAggregateCollectionDescriptor()) {
+                continue;
+            }
+
+            final Policy policy = SHARED.get(descriptor.getJavaClass());
+
+            if (policy == null) {
+                descriptor.setCacheIsolation(CacheIsolationType.ISOLATED);
+                continue;
+            }
+
+            descriptor.setCacheIsolation(CacheIsolationType.SHARED);
+            descriptor.setIdentityMapSize(policy.size);
+            descriptor.setCacheInvalidationPolicy(new TimeToLiveCacheInvalidationPolicy(TimeUnit.SECONDS.toMillis(policy.ttlSeconds)));
+
+            LOGGER.log(Level.INFO, "Caching {0}: up to {1} entities for {2} seconds", new Object[]{descriptor.getJavaClass().getSimpleName(), policy.size, policy.ttlSeconds});
+        }
+    }
+
+    private static final class Policy {
+
+        private final int size;
+
+        private final long ttlSeconds;
+
+        private Policy(int size, long ttlSeconds) {
+            this.size = size;
+            this.ttlSeconds = ttlSeconds;
+        }
+
+        private static Policy of(Class<?> entityClass, int size, long ttlSeconds) {
+            final String prefix = "app.cache." + entityClass.getSimpleName().toLowerCase();
+
+            return new Policy(Integer.getInteger(prefix + ".size", size), Long.getLong(prefix + ".ttl.seconds", ttlSeconds));
+        }
+    }
+}
@@ -1,157 +1,80 @@
 package me.nunum.whereami.model.persistance.jpa;
 
-import me.nunum.whereami.framework.persistence.repositories.impl.jpa.JpaRepository;
 import me.nunum.whereami.model.Fingerprint;
 import me.nunum.whereami.model.Position;
 import me.nunum.whereami.model.persistance.FingerprintRepository;
-import me.nunum.whereami.model.request.FingerprintSample;
+import me.nunum.whereami.model.persistance.FingerprintStore;
+import me.nunum.whereami.model.persistance.segment.SegmentFingerprintStore;
 import me.nunum.whereami.utils.AppConfig;
 
-import javax.persistence.EntityManager;
-import javax.persistence.EntityTransaction;
-import javax.persistence.criteria.CriteriaBuilder;
-import javax.persistence.criteria.CriteriaQuery;
-import javax.persistence.criteria.Root;
-import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
-import java.util.logging.Level;
-import java.util.stream.Collectors;
+import java.util.function.Consumer;
 
-public class FingerprintRepositoryJpa
-        extends JpaRepository<Fingerprint, Long>
-        implements FingerprintRepository {
+/**
+ * Fingerprint repository whose fingerprint reads and writes go to the
+ * {@link FingerprintStore} selected with {@code app.fingerprint.store},
+ * {@value AppConfig#FINGERPRINT_STORE_JPA} or {@value AppConfig#FINGERPRINT_STORE_SEGMENT}.
+ */
+public class FingerprintRepositoryJpa implements FingerprintRepository {
 
-    @Override
-    protected String persistenceUnitName() {
-        return AppConfig.JPA_UNIT;
-    }
-
-    @Override
-    public boolean bulkFingerprints(List<Fingerprint> fingerprints) {
-
-        if (super.entityManager() == null) {
-            throw new IllegalArgumentException();
-        }
-
-        EntityManager em = entityManager();
+    private final FingerprintStore store;
 
-        try {
-
-            em.getTransaction();
-            em.getTransaction().begin();
-
-            for (int i = 0; i < fingerprints.size(); i++) {
-                em.persist(fingerprints.get(i));
-                if ((i % 20) == 0) {
-                    em.flush();
-                    em.clear();
-                }
-            }
-
-            em.flush();
-            em.clear();
+    public FingerprintRepositoryJpa() {
+        this(selectedStore());
+    }
 
-            em.getTransaction().commit();
+    public FingerprintRepositoryJpa(FingerprintStore store) {
+        this.store = store;
+    }
 
-        } finally {
-            em.close();
-        }
+    /**
+     * @return Store selected with {@code app.fingerprint.store}, to be closed by the caller
+     */
+    static FingerprintStore selectedStore() {
+        return AppConfig.FINGERPRINT_STORE_SEGMENT.equals(AppConfig.FINGERPRINT_STORE)
+                ? SegmentFingerprintStore.getInstance()
+                : new FingerprintStoreJpa();
+    }
 
-        return true;
+    @Override
+    public boolean bulkFingerprints(List<Fingerprint> fingerprints) {
+        return this.store.append(fingerprints);
     }
 
     @Override
     public boolean deleteByPosition(Position position) {
-
-        final EntityManager em = entityManager();
-        final EntityTransaction transaction = em.getTransaction();
-
-        try {
-
-            transaction.begin();
-
-            em.createNativeQuery("DELETE FROM fingerprint WHERE positionid=?")
-                    .setParameter(1, position.id())
-                    .executeUpdate();
-
-            transaction.commit();
-
-        } catch (Exception e) {
-
-            LOGGER.log(Level.SEVERE, "Not able to delete fingerprints", e);
-
-            transaction.rollback();
-
-            return false;
-        }
-
-        return true;
+        return this.store.deleteByPosition(position.getLocalization().id(), position.id());
     }
 
     @Override
     public List<Fingerprint> fingerprintByLocalizationIdAndWithIdGreater(Long localizationId, Long id, int batchSize) {
-
-        final CriteriaBuilder criteriaBuilder = super.entityManager().getCriteriaBuilder();
-
-        CriteriaQuery<Fingerprint> builderQuery = criteriaBuilder.createQuery(Fingerprint.class);
-
-        final Root<Fingerprint> fingerprintRoot = builderQuery.from(Fingerprint.class);
-
-        CriteriaQuery<Fingerprint> where = builderQuery
-                .where(criteriaBuilder.equal(fingerprintRoot.get("localizationId"), localizationId))
-                .where(criteriaBuilder.gt(fingerprintRoot.get("id"), id))
-                .orderBy(criteriaBuilder.asc(fingerprintRoot.get("id")));
-
-        return this.entityManager().createQuery(where).setMaxResults(batchSize).getResultList();
+        return this.store.range(localizationId, id, Long.MAX_VALUE, batchSize);
     }
 
-    @SuppressWarnings("unchecked")
     @Override
-    public Long predictUserLocalization(List<FingerprintSample> samples, Long localizationId) {
-
-        long positionId = 0;
-
-        if (!samples.isEmpty()) {
-
-
-            final Set<String> ssids = samples.stream().map(FingerprintSample::getSsid).collect(Collectors.toSet());
-
-            final String ssidsAsString = ssids.stream().reduce("", (acc, e) -> acc + ",'" + e + "'").replaceFirst(",", "");
-
-            final EntityManager entityManager = entityManager();
-
-            final List<Object[]> resultList =
-                    entityManager
-                            .createQuery("SELECT l.ssid,l.positionId,AVG (l.levelDBM) FROM Fingerprint l WHERE l.localizationId = " + localizationId + "  AND l.ssid IN (" + ssidsAsString + ") GROUP BY l.ssid, l.positionId")
-                            .getResultList();
-
-            if (!resultList.isEmpty()) {
-
-                final HashMap<String, Object[]> hashMap = new HashMap<>(resultList.size());
-
-                resultList.forEach(o -> hashMap.put(o[0].toString(), o));
-
-                int nearestGap = 0;
-
-                for (FingerprintSample s : samples) {
-                    Object[] current = hashMap.get(s.getSsid());
+    public long streamByLocalizationIdAndWithIdGreater(Long localizationId, Long id, Consumer<Fingerprint> consumer) {
+        return this.store.scan(localizationId, id, consumer);
+    }
 
-                    if (current == null) {
-                        continue;
-                    }
+    @Override
+    public List<Fingerprint> fingerprintByLocalizationIdAndIdBetween(Long localizationId, Long after, Long upTo, int batchSize) {
+        return this.store.range(localizationId, after, upTo, batchSize);
+    }
 
-                    int dbLdbm = (int) (double) current[2];
-                    int d = s.getLevelDBM() + dbLdbm;
-                    if (nearestGap == 0 || nearestGap < d) {
-                        nearestGap = d;
-                        positionId = (long) current[1];
-                    }
-                }
-            }
+    @Override
+    public Map<Long, Set<String>> bssidsByLocalization() {
+        return this.store.bssidsByLocalization();
+    }
 
-        }
+    @Override
+    public Set<String> bssidsOfLocalization(Long localizationId) {
+        return this.store.bssidsOfLocalization(localizationId);
+    }
 
-        return positionId;
+    @Override
+    public void close() throws Exception {
+        this.store.close();
     }
 }
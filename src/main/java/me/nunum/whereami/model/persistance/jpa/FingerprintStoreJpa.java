@@ -0,0 +1,184 @@
+package me.nunum.whereami.model.persistance.jpa;
+
+import me.nunum.whereami.framework.persistence.repositories.impl.jpa.JpaRepository;
+import me.nunum.whereami.model.Fingerprint;
+import me.nunum.whereami.model.persistance.FingerprintStore;
+import me.nunum.whereami.model.stats.PositionSignals;
+import me.nunum.whereami.utils.AppConfig;
+
+import javax.persistence.EntityManager;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Root;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+
+/**
+ * Fingerprints stored as rows of the persistence unit
+ */
+public class FingerprintStoreJpa
+        extends JpaRepository<Fingerprint, Long>
+        implements FingerprintStore {
+
+    @Override
+    protected String persistenceUnitName() {
+        return AppConfig.JPA_UNIT;
+    }
+
+    @Override
+    public boolean append(List<Fingerprint> fingerprints) {
+
+        if (super.entityManager() == null) {
+            throw new IllegalArgumentException();
+        }
+
+        return transactionally(em -> {
+
+            // flushed batches are detached one by one, clearing the persistence
+            // context would detach the entities of the whole unit of work too
+            int flushed = 0;
+
+            for (int i = 0; i < fingerprints.size(); i++) {
+                em.persist(fingerprints.get(i));
+                if ((i % 20) == 0) {
+                    em.flush();
+                    detach(em, fingerprints.subList(flushed, i + 1));
+                    flushed = i + 1;
+                }
+            }
+
+            em.flush();
+            detach(em, fingerprints.subList(flushed, fingerprints.size()));
+
+            return true;
+        });
+    }
+
+    private static void detach(EntityManager em, List<Fingerprint> fingerprints) {
+        fingerprints.forEach(em::detach);
+    }
+
+    @Override
+    public boolean deleteByPosition(Long localizationId, Long positionId) {
+
+        try {
+
+            transactionally(em -> em.createNativeQuery("DELETE FROM fingerprint WHERE positionid=?")
+                    .setParameter(1, positionId)
+                    .executeUpdate());
+
+        } catch (Exception e) {
+
+            LOGGER.log(Level.SEVERE, "Not able to delete fingerprints", e);
+
+            return false;
+        }
+
+        return true;
+    }
+
+    @Override
+    public List<Fingerprint> range(Long localizationId, Long after, Long upTo, int limit) {
+
+        final CriteriaBuilder criteriaBuilder = super.entityManager().getCriteriaBuilder();
+
+        CriteriaQuery<Fingerprint> builderQuery = criteriaBuilder.createQuery(Fingerprint.class);
+
+        final Root<Fingerprint> fingerprintRoot = builderQuery.from(Fingerprint.class);
+
+        CriteriaQuery<Fingerprint> where = builderQuery
+                .where(criteriaBuilder.and(
+                        criteriaBuilder.equal(fingerprintRoot.get("localizationId"), localizationId),
+                        criteriaBuilder.gt(fingerprintRoot.get("id"), after),
+                        criteriaBuilder.le(fingerprintRoot.get("id"), upTo)))
+                .orderBy(criteriaBuilder.asc(fingerprintRoot.get("id")));
+
+        return this.entityManager().createQuery(where).setMaxResults(limit).getResultList();
+    }
+
+    @Override
+    public long scan(Long localizationId, Long after, Consumer<Fingerprint> consumer) {
+
+        return stream(em -> {
+
+            final CriteriaBuilder criteriaBuilder = em.getCriteriaBuilder();
+
+            CriteriaQuery<Fingerprint> builderQuery = criteriaBuilder.createQuery(Fingerprint.class);
+
+            final Root<Fingerprint> fingerprintRoot = builderQuery.from(Fingerprint.class);
+
+            CriteriaQuery<Fingerprint> where = builderQuery
+                    .where(criteriaBuilder.and(
+                            criteriaBuilder.equal(fingerprintRoot.get("localizationId"), localizationId),
+                            criteriaBuilder.gt(fingerprintRoot.get("id"), after)))
+                    .orderBy(criteriaBuilder.asc(fingerprintRoot.get("id")));
+
+            return em.createQuery(where);
+
+        }, consumer);
+    }
+
+    @Override
+    public Map<Long, Set<String>> bssidsByLocalization() {
+
+        final List<Object[]> rows = entityManager()
+                .createQuery("SELECT DISTINCT f.localizationId, f.bssid FROM Fingerprint f WHERE f.bssid IS NOT NULL", Object[].class)
+                .getResultList();
+
+        final HashMap<Long, Set<String>> bssids = new HashMap<>();
+
+        for (Object[] row : rows) {
+            bssids.computeIfAbsent((Long) row[0], k -> new HashSet<>()).add((String) row[1]);
+        }
+
+        return bssids;
+    }
+
+    @Override
+    public Set<String> bssidsOfLocalization(Long localizationId) {
+
+        return new HashSet<>(entityManager()
+                .createQuery("SELECT DISTINCT f.bssid FROM Fingerprint f WHERE f.localizationId = :localizationId AND f.bssid IS NOT NULL", String.class)
+                .setParameter("localizationId", localizationId)
+                .getResultList());
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public PositionSignals signalsOfPosition(Long localizationId, Long positionId) {
+
+        final EntityManager entityManager = entityManager();
+
+        final List<Object[]> levels = entityManager
+                .createNativeQuery("SELECT AVG(CAST(leveldbm AS DOUBLE)) AS levelDbm, ssid AS ssid FROM FINGERPRINT WHERE localizationid=? AND positionid=? GROUP BY ssid")
+                .setParameter(1, localizationId)
+                .setParameter(2, positionId)
+                .getResultList();
+
+        final String strongest = levels
+                .stream()
+                .filter(e -> e[0] != null)
+                .max(Comparator.comparingDouble(e -> ((Number) e[0]).doubleValue()))
+                .map(e -> (String) e[1])
+                .orElse(null);
+
+        final List<Object[]> networks = entityManager
+                .createNativeQuery("SELECT COUNT(DISTINCT (ssid)) AS numberOfNetworks, bssid AS bssid FROM FINGERPRINT WHERE localizationid=? AND positionid=? GROUP BY bssid")
+                .setParameter(1, localizationId)
+                .setParameter(2, positionId)
+                .getResultList();
+
+        final int numberOfNetworks = networks
+                .stream()
+                .mapToInt(e -> ((Number) e[0]).intValue())
+                .sum();
+
+        return new PositionSignals(strongest, numberOfNetworks, networks.size());
+    }
+}
@@ -1,12 +1,16 @@
 package me.nunum.whereami.model.persistance.jpa;
 
+import me.nunum.whereami.framework.persistence.RoutingDataSource;
+import me.nunum.whereami.framework.persistence.repositories.Keyset;
 import me.nunum.whereami.framework.persistence.repositories.impl.jpa.JpaRepository;
 import me.nunum.whereami.model.Device;
 import me.nunum.whereami.model.Localization;
+import me.nunum.whereami.model.dto.LocalizationDTO;
 import me.nunum.whereami.model.persistance.LocalizationRepository;
 import me.nunum.whereami.utils.AppConfig;
 
 import javax.persistence.EntityManager;
+import javax.persistence.TypedQuery;
 import java.util.List;
 import java.util.Optional;
 
@@ -30,9 +34,8 @@ public class LocalizationRepositoryJpa
 
     }
 
-    @SuppressWarnings("unchecked")
     @Override
-    public List<Localization> searchWithPagination(Device device,
+    public List<LocalizationDTO> searchWithPagination(Device device,
                                                    Optional<Integer> page,
                                                    Optional<String> localizationName,
                                                    Optional<String> trained,
@@ -44,48 +47,59 @@ public class LocalizationRepositoryJpa
             } else return p;
         }).orElse(1);
 
+        return RoutingDataSource.readOnly(() -> search(device, Long.MAX_VALUE, localizationName, trained, onlyUserLocalizations)
+                .setFirstResult((currentPage - 1) * DEFAULT_PAGE_SIZE)
+                .getResultList());
+    }
+
+    @Override
+    public Keyset<LocalizationDTO> searchAfter(Device device,
+                                               Optional<Long> lastSeenId,
+                                               Optional<String> localizationName,
+                                               Optional<String> trained,
+                                               Optional<Boolean> onlyUserLocalizations) {
+
+        final List<LocalizationDTO> localizations = RoutingDataSource.readOnly(() -> search(device, lastSeenId.orElse(Long.MAX_VALUE), localizationName, trained, onlyUserLocalizations)
+                .getResultList());
+
+        return Keyset.of(localizations, DEFAULT_PAGE_SIZE, LocalizationDTO::id);
+    }
+
+    /**
+     * @param lastSeenId Only localizations with a lower id, they are listed newest first
+     * @return Projection of the localizations, not managed by the entity manager
+     */
+    private TypedQuery<LocalizationDTO> search(Device device,
+                                               Long lastSeenId,
+                                               Optional<String> localizationName,
+                                               Optional<String> trained,
+                                               Optional<Boolean> onlyUserLocalizations) {
+
         final EntityManager manager = entityManager();
 
-        if (trained.isPresent()) {
-            if (onlyUserLocalizations.isPresent()) {
-                return (List<Localization>) manager.createNamedQuery("Localization.allVisibleOwnerLocalizationsFilterByTraining")
-                        .setParameter("ownerId", device.getId())
-                        .setMaxResults(DEFAULT_PAGE_SIZE)
-                        .setFirstResult((currentPage - 1) * DEFAULT_PAGE_SIZE)
-                        .getResultList();
-            }
-
-            return (List<Localization>) manager.createNamedQuery("Localization.allVisibleLocalizationsFilterByTraining")
-                    .setParameter("ownerId", device.getId())
-                    .setMaxResults(DEFAULT_PAGE_SIZE)
-                    .setFirstResult((currentPage - 1) * DEFAULT_PAGE_SIZE)
-                    .getResultList();
-        }
+        final String queryName;
 
-        if (onlyUserLocalizations.isPresent()) {
-            return (List<Localization>) manager.createNamedQuery("Localization.onlyOwnerLocalizations")
-                    .setParameter("ownerId", device.getId())
-                    .setMaxResults(DEFAULT_PAGE_SIZE)
-                    .setFirstResult((currentPage - 1) * DEFAULT_PAGE_SIZE)
-                    .getResultList();
+        if (trained.isPresent()) {
+            queryName = onlyUserLocalizations.isPresent()
+                    ? "Localization.allVisibleOwnerLocalizationsFilterByTraining"
+                    : "Localization.allVisibleLocalizationsFilterByTraining";
+        } else if (onlyUserLocalizations.isPresent()) {
+            queryName = "Localization.onlyOwnerLocalizations";
+        } else if (localizationName.isPresent()) {
+            queryName = "Localization.allVisibleLocalizationsFilterByName";
+        } else {
+            queryName = "Localization.allVisibleLocalizations";
         }
 
+        final TypedQuery<LocalizationDTO> query = fromReplica(manager.createNamedQuery(queryName, LocalizationDTO.class))
+                .setParameter("ownerId", device.getId())
+                .setParameter("lastSeenId", lastSeenId)
+                .setMaxResults(DEFAULT_PAGE_SIZE);
 
-        if (!(localizationName.isPresent())) {
-            return (List<Localization>) manager.createNamedQuery("Localization.allVisibleLocalizations")
-                    .setParameter("ownerId", device.getId())
-                    .setMaxResults(DEFAULT_PAGE_SIZE)
-                    .setFirstResult((currentPage - 1) * DEFAULT_PAGE_SIZE)
-                    .getResultList();
-        } else {
-            final String lName = localizationName.get();
-
-            return (List<Localization>) manager.createNamedQuery("Localization.allVisibleLocalizationsFilterByName")
-                    .setParameter("ownerId", device.getId())
-                    .setParameter("name", lName)
-                    .setMaxResults(DEFAULT_PAGE_SIZE)
-                    .setFirstResult((currentPage - 1) * DEFAULT_PAGE_SIZE)
-                    .getResultList();
+        if (!trained.isPresent() && !onlyUserLocalizations.isPresent()) {
+            localizationName.ifPresent(name -> query.setParameter("name", name));
         }
+
+        return query;
     }
 }
@@ -7,7 +7,6 @@ import me.nunum.whereami.model.persistance.LocalizationSpamRepository;
 import me.nunum.whereami.utils.AppConfig;
 
 import javax.persistence.EntityManager;
-import javax.persistence.EntityManagerFactory;
 import javax.persistence.NoResultException;
 
 public class LocalizationSpamRepositoryJpa
@@ -25,8 +24,7 @@ public class LocalizationSpamRepositoryJpa
 
         try {
 
-            EntityManagerFactory entityManagerFactory = super.entityManagerFactory();
-            EntityManager entityManager = entityManagerFactory.createEntityManager();
+            final EntityManager entityManager = entityManager();
 
             return (LocalizationSpamReport) entityManager
                     .createNamedQuery("LocalizationSpam.findByLocalizationId")
@@ -3,24 +3,36 @@ package me.nunum.whereami.model.persistance.jpa;
 import me.nunum.whereami.framework.persistence.repositories.impl.jpa.JpaRepository;
 import me.nunum.whereami.model.Localization;
 import me.nunum.whereami.model.Position;
+import me.nunum.whereami.model.dto.PositionDTO;
+import me.nunum.whereami.model.persistance.FingerprintStore;
 import me.nunum.whereami.model.persistance.PositionRepository;
-import me.nunum.whereami.model.stats.NetworkingStats;
-import me.nunum.whereami.model.stats.StrongRouterSignal;
+import me.nunum.whereami.model.stats.PositionSignals;
 import me.nunum.whereami.utils.AppConfig;
 
 import javax.persistence.EntityManager;
-import javax.persistence.EntityManagerFactory;
 import javax.persistence.NoResultException;
 import java.util.ArrayList;
-import java.util.Comparator;
 import java.util.List;
-import java.util.Optional;
+import java.util.function.Supplier;
 import java.util.logging.Level;
 
 public class PositionRepositoryJpa
         extends JpaRepository<Position, Long>
         implements PositionRepository {
 
+    private final Supplier<FingerprintStore> fingerprintStore;
+
+    public PositionRepositoryJpa() {
+        this(FingerprintRepositoryJpa::selectedStore);
+    }
+
+    /**
+     * @param fingerprintStore Store of the fingerprints the position metadata is computed from
+     */
+    public PositionRepositoryJpa(Supplier<FingerprintStore> fingerprintStore) {
+        this.fingerprintStore = fingerprintStore;
+    }
+
     @Override
     protected String persistenceUnitName() {
         return AppConfig.JPA_UNIT;
@@ -33,8 +45,7 @@ public class PositionRepositoryJpa
 
         try {
 
-            EntityManagerFactory entityManagerFactory = super.entityManagerFactory();
-            EntityManager entityManager = entityManagerFactory.createEntityManager();
+            final EntityManager entityManager = entityManager();
 
             return (List<Position>) entityManager
                     .createNamedQuery("Position.findByLocalizationId")
@@ -47,41 +58,31 @@ public class PositionRepositoryJpa
         }
     }
 
-    @SuppressWarnings("unchecked")
     @Override
-    public boolean updateMetaData(Position position) {
-
-        try {
+    public List<PositionDTO> positionSummariesByLocalization(Localization localization) {
 
-            EntityManagerFactory entityManagerFactory = super.entityManagerFactory();
-            EntityManager entityManager = entityManagerFactory.createEntityManager();
-
-
-            final List<Object[]> resultList = entityManager
-                    .createNativeQuery("SELECT AVG(leveldbm) AS levelDbm, ssid AS ssid FROM FINGERPRINT WHERE positionid=? GROUP BY ssid;")
-                    .setParameter(1, position.id())
-                    .getResultList();
-
-
-            final Optional<StrongRouterSignal> strongRouter = resultList
-                    .stream()
-                    .map(e -> new StrongRouterSignal((int) e[0], (String) e[1]))
-                    .max(Comparator.comparingInt(StrongRouterSignal::getLevelDvm));
+        return entityManager()
+                .createNamedQuery("Position.summaryByLocalizationId", PositionDTO.class)
+                .setParameter("localizationId", localization.id())
+                .getResultList();
+    }
 
-            strongRouter.ifPresent(strongRouterSignal -> position.setStrongestRouter(strongRouterSignal.getSsid()));
+    @Override
+    public boolean updateMetaData(Position position) {
 
-            final List<Object[]> networkingStats = entityManager.createNativeQuery("SELECT COUNT(DISTINCT (ssid)) AS numberOfNetworks,bssid AS bssid FROM FINGERPRINT WHERE positionid=? GROUP BY bssid;")
-                    .setParameter(1, position.id())
-                    .getResultList();
+        try (FingerprintStore store = this.fingerprintStore.get()) {
 
+            final PositionSignals signals = store.signalsOfPosition(position.getLocalization().id(), position.id());
 
-            networkingStats.stream()
-                    .map(e -> new NetworkingStats(((int) (long) e[0]), (String) e[1]))
-                    .map(NetworkingStats::getNumberOfNetworks)
-                    .reduce((e0, e1) -> e0 + e1).ifPresent(position::setNumberOfNetworks);
+            if (signals.getStrongestNetwork() != null) {
+                position.setStrongestRouter(signals.getStrongestNetwork());
+            }
 
-            position.setNumberOfRouters(networkingStats.size());
+            if (signals.getNumberOfRouters() > 0) {
+                position.setNumberOfNetworks(signals.getNumberOfNetworks());
+            }
 
+            position.setNumberOfRouters(signals.getNumberOfRouters());
 
             this.save(position);
 
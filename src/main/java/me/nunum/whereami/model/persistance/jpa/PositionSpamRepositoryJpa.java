@@ -7,7 +7,6 @@ import me.nunum.whereami.model.persistance.PositionSpamRepository;
 import me.nunum.whereami.utils.AppConfig;
 
 import javax.persistence.EntityManager;
-import javax.persistence.EntityManagerFactory;
 import javax.persistence.NoResultException;
 
 public class PositionSpamRepositoryJpa
@@ -25,8 +24,7 @@ public class PositionSpamRepositoryJpa
 
         try {
 
-            EntityManagerFactory entityManagerFactory = super.entityManagerFactory();
-            EntityManager entityManager = entityManagerFactory.createEntityManager();
+            final EntityManager entityManager = entityManager();
 
             return (PositionSpamReport) entityManager
                     .createNamedQuery("PositionSpam.findByPositionId")
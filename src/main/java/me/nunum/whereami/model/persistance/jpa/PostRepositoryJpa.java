@@ -1,5 +1,7 @@
 package me.nunum.whereami.model.persistance.jpa;
 
+import me.nunum.whereami.framework.persistence.RoutingDataSource;
+import me.nunum.whereami.framework.persistence.repositories.Keyset;
 import me.nunum.whereami.framework.persistence.repositories.impl.jpa.JpaRepository;
 import me.nunum.whereami.model.Post;
 import me.nunum.whereami.model.persistance.PostRepository;
@@ -35,10 +37,20 @@ public class PostRepositoryJpa
 
         final EntityManager manager = entityManager();
 
-        return manager.createNamedQuery("Post.all")
+        return RoutingDataSource.readOnly(() -> fromReplica(manager.createNamedQuery("Post.all"))
                 .setMaxResults(DEFAULT_PAGE_SIZE)
                 .setFirstResult((currentPage - 1) * DEFAULT_PAGE_SIZE)
-                .getResultList();
+                .getResultList());
     }
 
+    @Override
+    public Keyset<Post> paginateAfter(Optional<Long> lastSeenId) {
+
+        final List<Post> posts = RoutingDataSource.readOnly(() -> fromReplica(entityManager().createNamedQuery("Post.allBefore", Post.class))
+                .setParameter("lastSeenId", lastSeenId.orElse(Long.MAX_VALUE))
+                .setMaxResults(DEFAULT_PAGE_SIZE)
+                .getResultList());
+
+        return Keyset.of(posts, DEFAULT_PAGE_SIZE, e -> e.id);
+    }
 }
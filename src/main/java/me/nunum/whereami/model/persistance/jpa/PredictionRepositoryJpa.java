@@ -1,15 +1,24 @@
 package me.nunum.whereami.model.persistance.jpa;
 
+import me.nunum.whereami.framework.persistence.RoutingDataSource;
 import me.nunum.whereami.framework.persistence.repositories.impl.jpa.JpaRepository;
 import me.nunum.whereami.model.Device;
 import me.nunum.whereami.model.Localization;
 import me.nunum.whereami.model.Prediction;
+import me.nunum.whereami.model.PredictionRollup;
+import me.nunum.whereami.model.PredictionSequence;
+import me.nunum.whereami.model.exceptions.EntityAlreadyExists;
 import me.nunum.whereami.model.persistance.PredictionRepository;
 import me.nunum.whereami.utils.AppConfig;
 
 import javax.persistence.EntityManager;
+import javax.persistence.LockModeType;
+import javax.persistence.TemporalType;
 import java.util.Date;
 import java.util.List;
+import java.util.Optional;
+import java.util.logging.Level;
+import java.util.stream.Collectors;
 
 public class PredictionRepositoryJpa
         extends JpaRepository<Prediction, Long>
@@ -20,20 +29,45 @@ public class PredictionRepositoryJpa
         return AppConfig.JPA_UNIT;
     }
 
+    /**
+     * The first reservation of a localization seeds its sequence row. When
+     * another instance seeds it at the same time, one of the inserts fails
+     * the primary key; the loser retries, finding and locking the row.
+     * <p>
+     * Reservations commit in a transaction of their own, so the row lock is
+     * released at once and not held until the unit of work of the caller ends.
+     */
     @Override
-    public synchronized Long maxRequestIdForLocalization(Localization localization) {
+    public long reserveRequestIdBlock(Long localizationId, int blockSize) {
 
-        final EntityManager manager = entityManager();
+        try {
+            return reserve(localizationId, blockSize);
+        } catch (EntityAlreadyExists e) {
+            LOGGER.log(Level.INFO, "Sequence of localization {0} seeded concurrently, retrying", localizationId);
+            return reserve(localizationId, blockSize);
+        }
+    }
 
-        Long maximum = (Long) manager.createNamedQuery("Prediction.maxRequestId")
-                .setParameter("localizationId", localization.id())
-                .getSingleResult();
+    private long reserve(Long localizationId, int blockSize) {
 
-        if (maximum == null) {
-            return 0L;
-        }
+        return inOwnTransaction(manager -> {
+
+            PredictionSequence sequence = manager.find(PredictionSequence.class, localizationId, LockModeType.PESSIMISTIC_WRITE);
+
+            if (sequence == null) {
 
-        return maximum;
+                final Long maximum = (Long) manager.createNamedQuery("Prediction.maxRequestId")
+                        .setParameter("localizationId", localizationId)
+                        .getSingleResult();
+
+                sequence = new PredictionSequence(localizationId, maximum == null ? 1L : maximum + 1);
+
+                manager.persist(sequence);
+                manager.flush();
+            }
+
+            return sequence.reserve(blockSize);
+        });
     }
 
     @SuppressWarnings("unchecked")
@@ -41,10 +75,49 @@ public class PredictionRepositoryJpa
     public List<Prediction> allPredictionsSince(Device device, Localization localization, Date since) {
         final EntityManager manager = entityManager();
 
-        return manager.createNamedQuery("Prediction.allPredictionsSince")
+        return RoutingDataSource.readOnly(() -> fromReplica(manager.createNamedQuery("Prediction.allPredictionsSince"))
                 .setParameter("localizationId", localization.id())
                 .setParameter("since", since)
                 .setParameter("deviceId", device.getId())
+                .getResultList());
+    }
+
+    @Override
+    public Optional<Date> oldestPrediction() {
+        final EntityManager manager = entityManager();
+
+        return Optional.ofNullable((Date) manager.createNamedQuery("Prediction.oldest").getSingleResult());
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public List<PredictionRollup> rollupBetween(Date day, Date since, Date until) {
+        final EntityManager manager = entityManager();
+
+        final List<Object[]> resultList = manager.createNamedQuery("Prediction.rollupBetween")
+                .setParameter("correct", Prediction.PREDICTION_FEEDBACK.CORRECT)
+                .setParameter("incorrect", Prediction.PREDICTION_FEEDBACK.INCORRECT)
+                .setParameter("since", since, TemporalType.TIMESTAMP)
+                .setParameter("until", until, TemporalType.TIMESTAMP)
                 .getResultList();
+
+        return resultList
+                .stream()
+                .map(e -> new PredictionRollup(day,
+                        (Long) e[0],
+                        (Long) e[1],
+                        ((Number) e[2]).longValue(),
+                        e[3] == null ? 0L : ((Number) e[3]).longValue(),
+                        e[4] == null ? 0L : ((Number) e[4]).longValue()))
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public int purgeOlderThan(Date cutoff, int chunkSize) {
+
+        return transactionally(manager -> manager.createNativeQuery("DELETE FROM PREDICTION WHERE CREATED < ? LIMIT ?")
+                .setParameter(1, cutoff, TemporalType.TIMESTAMP)
+                .setParameter(2, chunkSize)
+                .executeUpdate());
     }
 }
@@ -0,0 +1,44 @@
+package me.nunum.whereami.model.persistance.jpa;
+
+import me.nunum.whereami.framework.persistence.repositories.impl.jpa.JpaRepository;
+import me.nunum.whereami.model.PredictionRollup;
+import me.nunum.whereami.model.persistance.PredictionRollupRepository;
+import me.nunum.whereami.utils.AppConfig;
+
+import javax.persistence.EntityManager;
+import javax.persistence.TemporalType;
+import java.util.Date;
+import java.util.List;
+import java.util.Optional;
+
+public class PredictionRollupRepositoryJpa
+        extends JpaRepository<PredictionRollup, Long>
+        implements PredictionRollupRepository {
+
+    @Override
+    protected String persistenceUnitName() {
+        return AppConfig.JPA_UNIT;
+    }
+
+    @Override
+    public void replaceDay(Date day, List<PredictionRollup> rollups) {
+
+        transactionally(manager -> {
+
+            manager.createNamedQuery("PredictionRollup.deleteByDay")
+                    .setParameter("day", day, TemporalType.DATE)
+                    .executeUpdate();
+
+            rollups.forEach(manager::persist);
+
+            return rollups;
+        });
+    }
+
+    @Override
+    public Optional<Date> latestDay() {
+        final EntityManager manager = entityManager();
+
+        return Optional.ofNullable((Date) manager.createNamedQuery("PredictionRollup.latestDay").getSingleResult());
+    }
+}
@@ -5,6 +5,7 @@ import me.nunum.whereami.model.Algorithm;
 import me.nunum.whereami.model.AlgorithmProvider;
 import me.nunum.whereami.model.Localization;
 import me.nunum.whereami.model.Training;
+import me.nunum.whereami.model.dto.TrainingDTO;
 import me.nunum.whereami.model.persistance.TrainingRepository;
 import me.nunum.whereami.utils.AppConfig;
 
@@ -37,6 +38,20 @@ public class TrainingRepositoryJpa
     }
 
 
+    /**
+     * {@inheritDoc}
+     *
+     * @param localization See {@link Localization}
+     */
+    @Override
+    public List<TrainingDTO> trainingStatusByLocalization(Localization localization) {
+        return this.entityManager()
+                .createNamedQuery("Training.statusByLocalization", TrainingDTO.class)
+                .setParameter("localizationId", localization.id())
+                .getResultList();
+    }
+
+
     /**
      * {@inheritDoc}
      *
@@ -76,19 +91,10 @@ public class TrainingRepositoryJpa
      */
     @Override
     public int deleteTrainingsAffectedBy(AlgorithmProvider provider) {
-        int affected = 0;
-        EntityManager entityManager = this.entityManager();
-
         try {
-            entityManager.getTransaction().begin();
-            affected = entityManager.createNamedQuery("Training.deleteAllByProviderId").setParameter("providerId", provider.getId()).executeUpdate();
-            entityManager.getTransaction().commit();
+            return transactionally(entityManager -> entityManager.createNamedQuery("Training.deleteAllByProviderId").setParameter("providerId", provider.getId()).executeUpdate());
         } catch (IllegalStateException | RollbackException e) {
-            entityManager.getTransaction().rollback();
-        } finally {
-            entityManager.close();
+            return 0;
         }
-
-        return affected;
     }
 }
@@ -0,0 +1,550 @@
+package me.nunum.whereami.model.persistance.segment;
+
+import me.nunum.whereami.model.Fingerprint;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Segments with the fingerprints of one localization, in a directory named
+ * after it, and the positions whose fingerprints were deleted.
+ * <p>
+ * Only the last segment takes appends. Deleting the fingerprints of a position
+ * records the position in a tombstone file and hides its fingerprints from
+ * reads; compaction rewrites the other segments without them, merging the
+ * small ones, and drops the tombstones no segment needs anymore.
+ * <p>
+ * A compaction commits by writing a file that names the segments it replaces
+ * and the ones replacing them, once the new segments are written under a
+ * temporary name. Only then are they renamed and the old ones deleted, and a
+ * partition opened with that file still around finishes the job. Without it,
+ * the temporary segments of the compaction are simply discarded.
+ * <p>
+ * The BSSIDs heard at each position are kept in memory, read once when the
+ * partition is opened and kept up to date on appends and deletes, so the
+ * access points of a localization are known without scanning its segments.
+ */
+final class Partition {
+
+    private static final Logger LOGGER = Logger.getLogger(Partition.class.getSimpleName());
+
+    private static final String TOMBSTONES = "deleted-positions";
+
+    private static final String TEMPORARY = ".tmp";
+
+    private static final String COMPACTION = "compaction";
+
+    private static final String REPLACED = "-";
+
+    private static final String REPLACING = "+";
+
+    private static final Long NO_POSITION = Long.MIN_VALUE;
+
+    final Long localizationId;
+
+    private final Path directory;
+
+    private final int segmentBytes;
+
+    private final int indexInterval;
+
+    /**
+     * Segments in id order, replaced as a whole under the partition lock
+     */
+    private volatile List<Segment> segments;
+
+    private final Set<Long> deleted = ConcurrentHashMap.newKeySet();
+
+    /**
+     * BSSIDs heard at each position, fingerprints without a position under {@link #NO_POSITION}
+     */
+    private final ConcurrentHashMap<Long, Set<String>> bssidsByPosition = new ConcurrentHashMap<>();
+
+    private final Object compaction = new Object();
+
+    private int generation;
+
+    private Partition(Long localizationId, Path directory, int segmentBytes, int indexInterval) {
+        this.localizationId = localizationId;
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        this.indexInterval = indexInterval;
+    }
+
+    /**
+     * Open the segments of a localization. A compaction that committed but did
+     * not finish is completed, any other file under a temporary name is left
+     * behind by one that did not commit and is deleted.
+     *
+     * @param directory      Directory of the localization
+     * @param localizationId Localization Id
+     * @param segmentBytes   Size of new segments
+     * @param indexInterval  Records between sparse index entries
+     * @return Partition
+     * @throws IOException If the segments could not be read
+     */
+    static Partition open(Path directory, Long localizationId, int segmentBytes, int indexInterval) throws IOException {
+
+        Files.createDirectories(directory);
+
+        final Partition partition = new Partition(localizationId, directory, segmentBytes, indexInterval);
+
+        finishCompaction(directory);
+
+        final List<Segment> segments = new ArrayList<>();
+
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : files.collect(Collectors.toList())) {
+                if (file.getFileName().toString().endsWith(TEMPORARY)) {
+                    Files.deleteIfExists(file);
+                } else if (Segment.isSegment(file)) {
+                    segments.add(Segment.open(file, indexInterval));
+                }
+            }
+        }
+
+        segments.sort(Comparator.comparingLong(e -> e.firstId));
+
+        if (!segments.isEmpty()) {
+            segments.get(segments.size() - 1).clearTail();
+        }
+
+        partition.segments = Collections.unmodifiableList(segments);
+        partition.generation = segments.stream().mapToInt(e -> e.generation).max().orElse(0);
+
+        final Path tombstones = directory.resolve(TOMBSTONES);
+
+        if (Files.exists(tombstones)) {
+            final ByteBuffer positions = ByteBuffer.wrap(Files.readAllBytes(tombstones));
+            while (positions.remaining() >= 8) {
+                partition.deleted.add(positions.getLong());
+            }
+        }
+
+        partition.scan(0L, Long.MAX_VALUE, e -> {
+            partition.heard(e);
+            return true;
+        });
+
+        return partition;
+    }
+
+    /**
+     * Commit a compaction: from now on the replacing segments, still under a
+     * temporary name, take the place of the replaced ones
+     *
+     * @param directory Directory of the localization
+     * @param replaced  File names of the segments replaced
+     * @param replacing File names the new segments are renamed to
+     * @throws IOException If the commit could not be written
+     */
+    static void commitCompaction(Path directory, List<String> replaced, List<String> replacing) throws IOException {
+
+        final StringBuilder commit = new StringBuilder();
+
+        replaced.forEach(e -> commit.append(REPLACED).append(e).append('\n'));
+        replacing.forEach(e -> commit.append(REPLACING).append(e).append('\n'));
+
+        final Path temporary = directory.resolve(COMPACTION + TEMPORARY);
+
+        try (FileChannel channel = FileChannel.open(temporary,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+
+            final ByteBuffer buffer = StandardCharsets.UTF_8.encode(commit.toString());
+
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+
+            channel.force(true);
+        }
+
+        Files.move(temporary, directory.resolve(COMPACTION), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Rename the new segments and delete the replaced ones of a committed
+     * compaction, then forget the commit. Every step may already be done.
+     *
+     * @param directory Directory of the localization
+     * @throws IOException If a segment could not be renamed or deleted
+     */
+    private static void finishCompaction(Path directory) throws IOException {
+
+        final Path commit = directory.resolve(COMPACTION);
+
+        if (!Files.exists(commit)) {
+            return;
+        }
+
+        final List<String> lines = Files.readAllLines(commit, StandardCharsets.UTF_8);
+
+        for (String line : lines) {
+            if (line.startsWith(REPLACING)) {
+
+                final Path target = directory.resolve(line.substring(REPLACING.length()));
+                final Path temporary = directory.resolve(target.getFileName() + TEMPORARY);
+
+                if (Files.exists(temporary)) {
+                    Files.move(temporary, target, StandardCopyOption.ATOMIC_MOVE);
+                }
+            }
+        }
+
+        for (String line : lines) {
+            if (line.startsWith(REPLACED)) {
+                LOGGER.log(Level.INFO, "Deleting segment {0} replaced by a compaction", line.substring(REPLACED.length()));
+                Files.deleteIfExists(directory.resolve(line.substring(REPLACED.length())));
+            }
+        }
+
+        Files.delete(commit);
+    }
+
+    /**
+     * @return Highest fingerprint id of the partition, zero when empty
+     */
+    long lastId() {
+        return this.segments.stream().mapToLong(Segment::lastId).max().orElse(0L);
+    }
+
+    /**
+     * Append fingerprints to the last segment, starting a new one when it is full
+     *
+     * @param fingerprints Fingerprints of the localization
+     * @param ids          Sequence of the fingerprint ids
+     * @throws IOException If a segment could not be created
+     */
+    synchronized void append(List<Fingerprint> fingerprints, AtomicLong ids) throws IOException {
+
+        final List<Segment> current = new ArrayList<>(this.segments);
+
+        Segment active = current.isEmpty() ? null : current.get(current.size() - 1);
+
+        final Set<Segment> written = new HashSet<>();
+
+        for (Fingerprint fingerprint : fingerprints) {
+
+            final Date now = new Date(System.currentTimeMillis());
+
+            fingerprint.setId(ids.incrementAndGet());
+            fingerprint.setLocalizationId(this.localizationId);
+            fingerprint.setCreated(now);
+            fingerprint.setUpdated(now);
+
+            final byte[] record = Segment.encode(fingerprint);
+
+            if (active == null || !active.append(record, fingerprint.getId())) {
+
+                if (active != null) {
+                    active.force();
+                }
+
+                active = Segment.create(this.directory.resolve(Segment.fileName(fingerprint.getId(), 0)),
+                        fingerprint.getId(), 0, Math.max(this.segmentBytes, record.length + 4), this.indexInterval);
+
+                active.append(record, fingerprint.getId());
+
+                current.add(active);
+                this.segments = Collections.unmodifiableList(new ArrayList<>(current));
+            }
+
+            written.add(active);
+
+            heard(fingerprint);
+        }
+
+        written.forEach(Segment::force);
+    }
+
+    /**
+     * @param positionId Position whose fingerprints are deleted
+     * @throws IOException If the tombstone could not be written
+     */
+    synchronized void delete(Long positionId) throws IOException {
+
+        if (!this.deleted.add(positionId)) {
+            return;
+        }
+
+        this.bssidsByPosition.remove(positionId);
+
+        try (FileChannel channel = FileChannel.open(this.directory.resolve(TOMBSTONES),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+
+            final ByteBuffer buffer = ByteBuffer.allocate(8).putLong(positionId);
+            buffer.flip();
+
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+
+            channel.force(true);
+        }
+    }
+
+    /**
+     * Hand the fingerprints in an id range to a visitor, in id order
+     *
+     * @param after   Exclusive lower bound of the id
+     * @param upTo    Inclusive upper bound of the id
+     * @param visitor Visitor of each fingerprint, returning false to stop
+     */
+    void scan(long after, long upTo, Predicate<Fingerprint> visitor) {
+
+        for (Segment segment : this.segments) {
+
+            if (segment.firstId > upTo) {
+                return;
+            }
+
+            if (segment.records() == 0 || segment.lastId() <= after) {
+                continue;
+            }
+
+            final boolean more = segment.forEach(after, upTo, this.localizationId,
+                    e -> isDeleted(e) || visitor.test(e));
+
+            if (!more) {
+                return;
+            }
+        }
+    }
+
+    private void heard(Fingerprint fingerprint) {
+        if (fingerprint.getBssid() != null && !isDeleted(fingerprint)) {
+            this.bssidsByPosition
+                    .computeIfAbsent(fingerprint.getPositionId() == null ? NO_POSITION : fingerprint.getPositionId(), k -> ConcurrentHashMap.newKeySet())
+                    .add(fingerprint.getBssid());
+        }
+    }
+
+    /**
+     * @return Distinct BSSIDs of the fingerprints not deleted
+     */
+    Set<String> bssids() {
+
+        final Set<String> bssids = new HashSet<>();
+
+        this.bssidsByPosition.values().forEach(bssids::addAll);
+
+        return bssids;
+    }
+
+    private boolean isDeleted(Fingerprint fingerprint) {
+        return fingerprint.getPositionId() != null && this.deleted.contains(fingerprint.getPositionId());
+    }
+
+    /**
+     * Rewrite the segments that no longer take appends when they hold deleted
+     * fingerprints or when at least two of them are less than half full
+     *
+     * @return Number of segments replaced
+     * @throws IOException If the segments could not be rewritten
+     */
+    int compact() throws IOException {
+
+        synchronized (this.compaction) {
+
+            final List<Segment> sealed;
+            final int target;
+
+            synchronized (this) {
+                sealed = this.segments.subList(0, Math.max(0, this.segments.size() - 1));
+                target = ++this.generation;
+            }
+
+            final Set<Long> deletedPositions = new HashSet<>(this.deleted);
+
+            final boolean hasDeleted = sealed.stream().anyMatch(e -> e.hasAnyPosition(deletedPositions));
+
+            final long small = sealed.stream().filter(e -> e.size() < this.segmentBytes / 2).count();
+
+            if (!hasDeleted && small < 2) {
+                return 0;
+            }
+
+            // The last compaction committed but could not rename or delete every segment
+            for (Segment segment : sealed) {
+                if (segment.file().getFileName().toString().endsWith(TEMPORARY)) {
+                    segment.moveTo(this.directory.resolve(Segment.fileName(segment.firstId, segment.generation)));
+                }
+            }
+
+            finishCompaction(this.directory);
+
+            final List<Segment> rewritten = rewrite(sealed, deletedPositions, target);
+
+            try {
+                commitCompaction(this.directory,
+                        sealed.stream().map(e -> e.file().getFileName().toString()).collect(Collectors.toList()),
+                        rewritten.stream().map(e -> Segment.fileName(e.firstId, target)).collect(Collectors.toList()));
+            } catch (IOException e) {
+                for (Segment segment : rewritten) {
+                    segment.delete();
+                }
+                throw e;
+            }
+
+            // Committed, whatever fails from here on is finished when the partition is opened again
+            synchronized (this) {
+                final List<Segment> next = new ArrayList<>(rewritten);
+                next.addAll(this.segments.subList(sealed.size(), this.segments.size()));
+                this.segments = Collections.unmodifiableList(next);
+            }
+
+            boolean finished = true;
+
+            for (Segment segment : rewritten) {
+                try {
+                    segment.moveTo(this.directory.resolve(Segment.fileName(segment.firstId, target)));
+                } catch (IOException e) {
+                    LOGGER.log(Level.WARNING, "Could not rename compacted segment " + segment.file(), e);
+                    finished = false;
+                }
+            }
+
+            if (finished) {
+                for (Segment segment : sealed) {
+                    try {
+                        segment.delete();
+                    } catch (IOException e) {
+                        LOGGER.log(Level.WARNING, "Could not delete compacted segment " + segment.file(), e);
+                        finished = false;
+                    }
+                }
+            }
+
+            if (finished) {
+                Files.delete(this.directory.resolve(COMPACTION));
+                dropTombstones();
+            }
+
+            LOGGER.log(Level.INFO, "Compacted {0} segments of localization {1} into {2}",
+                    new Object[]{sealed.size(), this.localizationId, rewritten.size()});
+
+            return sealed.size();
+        }
+    }
+
+    /**
+     * Copy the fingerprints of the other positions into new segments, each as
+     * big as a full segment except for the last one, which is sized to fit.
+     * The new segments keep their temporary name until the compaction commits.
+     */
+    private List<Segment> rewrite(List<Segment> sealed, Set<Long> deletedPositions, int target) throws IOException {
+
+        final long[] remaining = {sealed.stream().mapToLong(e -> e.liveBytes(deletedPositions)).sum()};
+
+        final List<Segment> rewritten = new ArrayList<>();
+
+        try {
+
+            for (Segment segment : sealed) {
+                segment.forEach(0L, Long.MAX_VALUE, this.localizationId, fingerprint -> {
+
+                    if (fingerprint.getPositionId() != null && deletedPositions.contains(fingerprint.getPositionId())) {
+                        return true;
+                    }
+
+                    final byte[] record = Segment.encode(fingerprint);
+
+                    final Segment last = rewritten.isEmpty() ? null : rewritten.get(rewritten.size() - 1);
+
+                    if (last == null || !last.append(record, fingerprint.getId())) {
+                        try {
+
+                            final int capacity = (int) Math.max(record.length + 4, Math.min(this.segmentBytes, remaining[0]));
+
+                            final Segment next = Segment.create(
+                                    this.directory.resolve(Segment.fileName(fingerprint.getId(), target) + TEMPORARY),
+                                    fingerprint.getId(), target, capacity, this.indexInterval);
+
+                            next.append(record, fingerprint.getId());
+                            rewritten.add(next);
+
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    }
+
+                    remaining[0] -= record.length + 4;
+
+                    return true;
+                });
+            }
+
+            for (Segment segment : rewritten) {
+                segment.force();
+            }
+
+        } catch (UncheckedIOException e) {
+
+            for (Segment segment : rewritten) {
+                segment.delete();
+            }
+
+            throw e.getCause();
+        }
+
+        return rewritten;
+    }
+
+    /**
+     * Forget the deleted positions whose fingerprints are no longer in any segment
+     */
+    private synchronized void dropTombstones() throws IOException {
+
+        final List<Long> needed = this.deleted
+                .stream()
+                .filter(e -> this.segments.stream().anyMatch(s -> s.hasPosition(e)))
+                .collect(Collectors.toList());
+
+        if (needed.size() == this.deleted.size()) {
+            return;
+        }
+
+        final ByteBuffer buffer = ByteBuffer.allocate(needed.size() * 8);
+        needed.forEach(buffer::putLong);
+
+        final Path temporary = this.directory.resolve(TOMBSTONES + TEMPORARY);
+
+        Files.write(temporary, buffer.array());
+        Files.move(temporary, this.directory.resolve(TOMBSTONES), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+
+        this.deleted.retainAll(needed);
+    }
+
+    int numberOfSegments() {
+        return this.segments.size();
+    }
+
+    long bytes() {
+        return this.segments.stream().mapToLong(Segment::size).sum();
+    }
+
+    long records() {
+        return this.segments.stream().mapToLong(Segment::records).sum();
+    }
+}
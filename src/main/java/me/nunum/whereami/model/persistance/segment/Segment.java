@@ -0,0 +1,527 @@
+package me.nunum.whereami.model.persistance.segment;
+
+import me.nunum.whereami.model.Fingerprint;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Memory mapped file with fingerprints of one localization in id order, named
+ * {@code <firstId>-<generation>.segment}. Appended segments are generation
+ * zero, compaction writes segments of a higher generation.
+ * <p>
+ * A record is its length followed by the id, a mask of the null fields, the
+ * creation and update times, the position id, the integer fields and the
+ * strings. The length is written last, so a record torn by a crash reads as
+ * the end of the segment. Every {@code indexInterval} records the id and
+ * offset of a record are kept in a sparse index, used to seek to a cursor.
+ */
+final class Segment {
+
+    static final String EXTENSION = ".segment";
+
+    private static final Pattern FILE_NAME = Pattern.compile("^(\\d+)-(\\d+)\\" + EXTENSION + "$");
+
+    private static final int LENGTH_BYTES = 4;
+
+    /**
+     * Offset of the position id from the start of the record: length, id, mask, created and updated
+     */
+    private static final int POSITION_OFFSET = LENGTH_BYTES + 8 + 2 + 8 + 8;
+
+    private static final int NULL_POSITION = 1 << 7;
+
+    private static final int NULL_CREATED = 1 << 8;
+
+    private static final int NULL_UPDATED = 1 << 9;
+
+    final long firstId;
+
+    final int generation;
+
+    private volatile Path file;
+
+    private final MappedByteBuffer buffer;
+
+    private final int indexInterval;
+
+    private long[] indexIds = new long[16];
+
+    private int[] indexOffsets = new int[16];
+
+    private int indexSize;
+
+    private final Set<Long> positions = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Offset past the last record, published after the record is written
+     */
+    private volatile int end;
+
+    private volatile long lastId;
+
+    private volatile int records;
+
+    private Segment(Path file, long firstId, int generation, MappedByteBuffer buffer, int indexInterval) {
+        this.file = file;
+        this.firstId = firstId;
+        this.generation = generation;
+        this.buffer = buffer;
+        this.indexInterval = Math.max(1, indexInterval);
+    }
+
+    /**
+     * @param file          Segment file to create
+     * @param firstId       Id of the first record
+     * @param generation    Generation of the segment
+     * @param capacity      Size of the segment in bytes
+     * @param indexInterval Records between sparse index entries
+     * @return Empty segment
+     * @throws IOException If the file could not be created
+     */
+    static Segment create(Path file, long firstId, int generation, int capacity, int indexInterval) throws IOException {
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            return new Segment(file, firstId, generation, channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity), indexInterval);
+        }
+    }
+
+    /**
+     * @param file          Segment file
+     * @param indexInterval Records between sparse index entries
+     * @return Segment with every record up to the first torn one
+     * @throws IOException If the file could not be mapped
+     */
+    static Segment open(Path file, int indexInterval) throws IOException {
+
+        final Matcher matcher = FILE_NAME.matcher(file.getFileName().toString());
+
+        if (!matcher.matches()) {
+            throw new IllegalArgumentException("Not a segment " + file);
+        }
+
+        final Segment segment;
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            segment = new Segment(file,
+                    Long.parseLong(matcher.group(1)),
+                    Integer.parseInt(matcher.group(2)),
+                    channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size()),
+                    indexInterval);
+        }
+
+        segment.recover();
+
+        return segment;
+    }
+
+    static boolean isSegment(Path file) {
+        return FILE_NAME.matcher(file.getFileName().toString()).matches();
+    }
+
+    static String fileName(long firstId, int generation) {
+        return firstId + "-" + generation + EXTENSION;
+    }
+
+    /**
+     * Rebuild the sparse index and the positions of the segment from its records
+     */
+    private void recover() {
+
+        final int capacity = this.buffer.capacity();
+
+        int offset = 0;
+        long previousId = Long.MIN_VALUE;
+
+        while (offset + LENGTH_BYTES <= capacity) {
+
+            final int length = this.buffer.getInt(offset);
+
+            if (length <= 0 || length > capacity - offset - LENGTH_BYTES) {
+                break;
+            }
+
+            final long id = this.buffer.getLong(offset + LENGTH_BYTES);
+
+            if (id <= previousId) {
+                break;
+            }
+
+            indexed(offset, id, positionId(offset));
+
+            previousId = id;
+            offset += LENGTH_BYTES + length;
+        }
+
+        this.end = offset;
+    }
+
+    /**
+     * Zero whatever follows the last record, such as a torn record, so the
+     * records appended next are not followed by leftovers
+     */
+    void clearTail() {
+
+        final ByteBuffer tail = this.buffer.duplicate();
+        tail.position(this.end);
+
+        final byte[] zeros = new byte[Math.min(64 * 1024, Math.max(1, tail.remaining()))];
+
+        while (tail.hasRemaining()) {
+            tail.put(zeros, 0, Math.min(zeros.length, tail.remaining()));
+        }
+    }
+
+    /**
+     * @param record Record encoded by {@link #encode(Fingerprint)}
+     * @param id     Fingerprint id, higher than the ids already in the segment
+     * @return If the record fit in the segment
+     */
+    boolean append(byte[] record, long id) {
+
+        final int offset = this.end;
+
+        if (offset + LENGTH_BYTES + record.length > this.buffer.capacity()) {
+            return false;
+        }
+
+        final ByteBuffer target = this.buffer.duplicate();
+        target.position(offset + LENGTH_BYTES);
+        target.put(record);
+
+        this.buffer.putInt(offset, record.length);
+
+        indexed(offset, id, positionId(offset));
+
+        this.end = offset + LENGTH_BYTES + record.length;
+
+        return true;
+    }
+
+    private synchronized void indexed(int offset, long id, Long positionId) {
+
+        if (this.records % this.indexInterval == 0) {
+
+            if (this.indexSize == this.indexIds.length) {
+                this.indexIds = Arrays.copyOf(this.indexIds, this.indexSize * 2);
+                this.indexOffsets = Arrays.copyOf(this.indexOffsets, this.indexSize * 2);
+            }
+
+            this.indexIds[this.indexSize] = id;
+            this.indexOffsets[this.indexSize] = offset;
+            this.indexSize++;
+        }
+
+        if (positionId != null) {
+            this.positions.add(positionId);
+        }
+
+        this.lastId = id;
+        this.records++;
+    }
+
+    /**
+     * @param after Exclusive lower bound of the id
+     * @return Offset of the last indexed record with an id not above the bound
+     */
+    private synchronized int seek(long after) {
+
+        int low = 0;
+        int high = this.indexSize - 1;
+        int found = 0;
+
+        while (low <= high) {
+
+            final int middle = (low + high) >>> 1;
+
+            if (this.indexIds[middle] <= after) {
+                found = this.indexOffsets[middle];
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+
+        return found;
+    }
+
+    /**
+     * Hand the fingerprints in an id range to a visitor, in id order
+     *
+     * @param after          Exclusive lower bound of the id
+     * @param upTo           Inclusive upper bound of the id
+     * @param localizationId Localization of the segment
+     * @param visitor        Visitor of each fingerprint, returning false to stop
+     * @return False when the visitor stopped or the upper bound was reached
+     */
+    boolean forEach(long after, long upTo, Long localizationId, Predicate<Fingerprint> visitor) {
+
+        final int limit = this.end;
+
+        int offset = seek(after);
+
+        while (offset < limit) {
+
+            final int length = this.buffer.getInt(offset);
+            final long id = this.buffer.getLong(offset + LENGTH_BYTES);
+
+            if (id > upTo) {
+                return false;
+            }
+
+            if (id > after && !visitor.test(decode(offset, localizationId))) {
+                return false;
+            }
+
+            offset += LENGTH_BYTES + length;
+        }
+
+        return true;
+    }
+
+    /**
+     * @param deleted Positions whose fingerprints were deleted
+     * @return Bytes of the records of the other positions
+     */
+    long liveBytes(Set<Long> deleted) {
+
+        final int limit = this.end;
+
+        long bytes = 0;
+        int offset = 0;
+
+        while (offset < limit) {
+
+            final int length = this.buffer.getInt(offset);
+            final Long positionId = positionId(offset);
+
+            if (positionId == null || !deleted.contains(positionId)) {
+                bytes += LENGTH_BYTES + length;
+            }
+
+            offset += LENGTH_BYTES + length;
+        }
+
+        return bytes;
+    }
+
+    /**
+     * @param positionIds Position ids
+     * @return If the segment holds fingerprints of any of the positions
+     */
+    boolean hasAnyPosition(Set<Long> positionIds) {
+        return positionIds.stream().anyMatch(this.positions::contains);
+    }
+
+    boolean hasPosition(Long positionId) {
+        return this.positions.contains(positionId);
+    }
+
+    /**
+     * Write the appended records to the file
+     */
+    void force() {
+        this.buffer.force();
+    }
+
+    /**
+     * Rename the file of the segment, the mapping stays valid
+     *
+     * @param target New file
+     * @throws IOException If the file could not be moved
+     */
+    void moveTo(Path target) throws IOException {
+        Files.move(this.file, target, StandardCopyOption.ATOMIC_MOVE);
+        this.file = target;
+    }
+
+    void delete() throws IOException {
+        Files.deleteIfExists(this.file);
+    }
+
+    Path file() {
+        return this.file;
+    }
+
+    long lastId() {
+        return this.lastId;
+    }
+
+    int records() {
+        return this.records;
+    }
+
+    /**
+     * @return Bytes taken by the records
+     */
+    int size() {
+        return this.end;
+    }
+
+    int capacity() {
+        return this.buffer.capacity();
+    }
+
+    private Long positionId(int offset) {
+
+        final short mask = this.buffer.getShort(offset + LENGTH_BYTES + 8);
+
+        return (mask & NULL_POSITION) != 0 ? null : this.buffer.getLong(offset + POSITION_OFFSET);
+    }
+
+    /**
+     * @param fingerprint Fingerprint with its id assigned
+     * @return Record of the fingerprint, without its length
+     */
+    static byte[] encode(Fingerprint fingerprint) {
+
+        final Integer[] numbers = numbers(fingerprint);
+
+        final byte[][] strings = {
+                utf8(fingerprint.getUid()),
+                utf8(fingerprint.getBssid()),
+                utf8(fingerprint.getSsid()),
+                utf8(fingerprint.getTimeStamp())
+        };
+
+        int mask = 0;
+
+        for (int i = 0; i < numbers.length; i++) {
+            if (numbers[i] == null) {
+                mask |= 1 << i;
+            }
+        }
+
+        mask |= fingerprint.getPositionId() == null ? NULL_POSITION : 0;
+        mask |= fingerprint.getCreated() == null ? NULL_CREATED : 0;
+        mask |= fingerprint.getUpdated() == null ? NULL_UPDATED : 0;
+
+        int length = 8 + 2 + 8 + 8 + 8 + numbers.length * 4;
+
+        for (byte[] string : strings) {
+            length += 2 + (string == null ? 0 : string.length);
+        }
+
+        final ByteBuffer record = ByteBuffer.allocate(length);
+
+        record.putLong(fingerprint.getId());
+        record.putShort((short) mask);
+        record.putLong(fingerprint.getCreated() == null ? 0L : fingerprint.getCreated().getTime());
+        record.putLong(fingerprint.getUpdated() == null ? 0L : fingerprint.getUpdated().getTime());
+        record.putLong(fingerprint.getPositionId() == null ? 0L : fingerprint.getPositionId());
+
+        for (Integer number : numbers) {
+            record.putInt(number == null ? 0 : number);
+        }
+
+        for (byte[] string : strings) {
+            if (string == null) {
+                record.putShort((short) -1);
+            } else {
+                record.putShort((short) string.length);
+                record.put(string);
+            }
+        }
+
+        return record.array();
+    }
+
+    private Fingerprint decode(int offset, Long localizationId) {
+
+        final ByteBuffer record = this.buffer.duplicate();
+        record.position(offset + LENGTH_BYTES);
+
+        final long id = record.getLong();
+        final short mask = record.getShort();
+        final long created = record.getLong();
+        final long updated = record.getLong();
+        final long positionId = record.getLong();
+
+        final Integer[] numbers = new Integer[7];
+
+        for (int i = 0; i < numbers.length; i++) {
+            final int number = record.getInt();
+            numbers[i] = (mask & (1 << i)) != 0 ? null : number;
+        }
+
+        final String uid = string(record);
+
+        final Fingerprint fingerprint = new Fingerprint(string(record),
+                string(record),
+                numbers[0],
+                numbers[1],
+                numbers[2],
+                numbers[3],
+                numbers[4],
+                string(record),
+                numbers[5],
+                numbers[6],
+                (mask & NULL_POSITION) != 0 ? null : positionId,
+                localizationId);
+
+        fingerprint.setId(id);
+        fingerprint.setUid(uid);
+        fingerprint.setCreated((mask & NULL_CREATED) != 0 ? null : new Date(created));
+        fingerprint.setUpdated((mask & NULL_UPDATED) != 0 ? null : new Date(updated));
+
+        return fingerprint;
+    }
+
+    /**
+     * @return Integer fields in the order of the {@link Fingerprint} constructor
+     */
+    private static Integer[] numbers(Fingerprint fingerprint) {
+        return new Integer[]{
+                fingerprint.getLevelDBM(),
+                fingerprint.getCenterFreq0(),
+                fingerprint.getCenterFreq1(),
+                fingerprint.getChannelWidth(),
+                fingerprint.getFrequency(),
+                fingerprint.getBuildId(),
+                fingerprint.getFloorId()
+        };
+    }
+
+    private static byte[] utf8(String value) {
+
+        if (value == null) {
+            return null;
+        }
+
+        final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+
+        if (bytes.length > Short.MAX_VALUE) {
+            throw new IllegalArgumentException("Fingerprint field longer than " + Short.MAX_VALUE + " bytes");
+        }
+
+        return bytes;
+    }
+
+    private static String string(ByteBuffer record) {
+
+        final short length = record.getShort();
+
+        if (length < 0) {
+            return null;
+        }
+
+        final byte[] bytes = new byte[length];
+        record.get(bytes);
+
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,258 @@
+package me.nunum.whereami.model.persistance.segment;
+
+import me.nunum.whereami.model.Fingerprint;
+import me.nunum.whereami.model.persistance.FingerprintStore;
+import me.nunum.whereami.model.stats.PositionSignals;
+import me.nunum.whereami.utils.AppConfig;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Embedded append-only store of the fingerprints, one {@link Partition} of
+ * memory mapped {@link Segment}s per localization under
+ * {@code app.fingerprint.segment.dir}. Ids come from a single sequence
+ * resumed from the highest id on disk, so they grow across localizations as
+ * they do in the database.
+ * <p>
+ * The store is shared, closing it does nothing; appends are written to disk
+ * before they return.
+ */
+public final class SegmentFingerprintStore implements FingerprintStore {
+
+    private static final Logger LOGGER = Logger.getLogger(SegmentFingerprintStore.class.getSimpleName());
+
+    private static SegmentFingerprintStore ourInstance;
+
+    private final Path directory;
+
+    private final int segmentBytes;
+
+    private final int indexInterval;
+
+    private final ConcurrentHashMap<Long, Partition> partitions = new ConcurrentHashMap<>();
+
+    private final AtomicLong ids = new AtomicLong();
+
+    public SegmentFingerprintStore(Path directory, int segmentBytes, int indexInterval) {
+
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        this.indexInterval = indexInterval;
+
+        try {
+
+            Files.createDirectories(directory);
+
+            try (Stream<Path> files = Files.list(directory)) {
+                for (Path partitionDirectory : files.filter(Files::isDirectory).collect(Collectors.toList())) {
+
+                    final String name = partitionDirectory.getFileName().toString();
+
+                    if (name.matches("\\d+")) {
+                        final Long localizationId = Long.valueOf(name);
+                        this.partitions.put(localizationId, Partition.open(partitionDirectory, localizationId, segmentBytes, indexInterval));
+                    }
+                }
+            }
+
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not open the fingerprint segments in " + directory, e);
+        }
+
+        this.ids.set(this.partitions.values().stream().mapToLong(Partition::lastId).max().orElse(0L));
+
+        LOGGER.log(Level.INFO, "Opened {0} fingerprint partitions in {1}, last id {2}",
+                new Object[]{this.partitions.size(), directory, this.ids.get()});
+    }
+
+    public static synchronized SegmentFingerprintStore getInstance() {
+        if (ourInstance == null) {
+            ourInstance = new SegmentFingerprintStore(Paths.get(AppConfig.FINGERPRINT_SEGMENT_DIR),
+                    AppConfig.FINGERPRINT_SEGMENT_BYTES,
+                    AppConfig.FINGERPRINT_SEGMENT_INDEX_INTERVAL);
+        }
+        return ourInstance;
+    }
+
+    private Partition partition(Long localizationId) {
+        return this.partitions.computeIfAbsent(localizationId, id -> {
+            try {
+                return Partition.open(this.directory.resolve(id.toString()), id, this.segmentBytes, this.indexInterval);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    @Override
+    public boolean append(List<Fingerprint> fingerprints) {
+
+        final Map<Long, List<Fingerprint>> byLocalization = fingerprints
+                .stream()
+                .collect(Collectors.groupingBy(Fingerprint::getLocalizationId, LinkedHashMap::new, Collectors.toList()));
+
+        for (Map.Entry<Long, List<Fingerprint>> entry : byLocalization.entrySet()) {
+            try {
+                partition(entry.getKey()).append(entry.getValue(), this.ids);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not append fingerprints of localization " + entry.getKey(), e);
+            }
+        }
+
+        return true;
+    }
+
+    @Override
+    public boolean deleteByPosition(Long localizationId, Long positionId) {
+
+        final Partition partition = this.partitions.get(localizationId);
+
+        if (partition == null) {
+            return true;
+        }
+
+        try {
+            partition.delete(positionId);
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "Not able to delete fingerprints", e);
+            return false;
+        }
+
+        return true;
+    }
+
+    @Override
+    public List<Fingerprint> range(Long localizationId, Long after, Long upTo, int limit) {
+
+        final List<Fingerprint> fingerprints = new ArrayList<>(Math.min(limit, 1024));
+
+        final Partition partition = this.partitions.get(localizationId);
+
+        if (partition != null && limit > 0) {
+            partition.scan(after, upTo, e -> {
+                fingerprints.add(e);
+                return fingerprints.size() < limit;
+            });
+        }
+
+        return fingerprints;
+    }
+
+    @Override
+    public long scan(Long localizationId, Long after, Consumer<Fingerprint> consumer) {
+
+        final Partition partition = this.partitions.get(localizationId);
+
+        if (partition == null) {
+            return 0L;
+        }
+
+        final long[] read = {0L};
+
+        partition.scan(after, Long.MAX_VALUE, e -> {
+            consumer.accept(e);
+            read[0]++;
+            return true;
+        });
+
+        return read[0];
+    }
+
+    @Override
+    public Map<Long, Set<String>> bssidsByLocalization() {
+
+        final HashMap<Long, Set<String>> bssids = new HashMap<>();
+
+        for (Long localizationId : this.partitions.keySet()) {
+
+            final Set<String> localizationBssids = bssidsOfLocalization(localizationId);
+
+            if (!localizationBssids.isEmpty()) {
+                bssids.put(localizationId, localizationBssids);
+            }
+        }
+
+        return bssids;
+    }
+
+    @Override
+    public Set<String> bssidsOfLocalization(Long localizationId) {
+
+        final Partition partition = this.partitions.get(localizationId);
+
+        return partition == null ? new HashSet<>() : partition.bssids();
+    }
+
+    @Override
+    public PositionSignals signalsOfPosition(Long localizationId, Long positionId) {
+
+        final PositionSignals.Accumulator signals = new PositionSignals.Accumulator();
+
+        scan(localizationId, 0L, e -> {
+            if (positionId.equals(e.getPositionId())) {
+                signals.accept(e);
+            }
+        });
+
+        return signals.signals();
+    }
+
+    /**
+     * Compact the partitions, see {@link Partition#compact()}
+     *
+     * @return Number of segments replaced
+     */
+    public int compact() {
+
+        int replaced = 0;
+
+        for (Partition partition : this.partitions.values()) {
+            try {
+                replaced += partition.compact();
+            } catch (IOException e) {
+                LOGGER.log(Level.SEVERE, "Could not compact the fingerprints of localization " + partition.localizationId, e);
+            }
+        }
+
+        return replaced;
+    }
+
+    /**
+     * @return Partitions, segments, records and bytes on disk
+     */
+    public Map<String, Object> stats() {
+
+        final HashMap<String, Object> map = new HashMap<>(5);
+
+        map.put("partitions", this.partitions.size());
+        map.put("segments", this.partitions.values().stream().mapToInt(Partition::numberOfSegments).sum());
+        map.put("records", this.partitions.values().stream().mapToLong(Partition::records).sum());
+        map.put("bytes", this.partitions.values().stream().mapToLong(Partition::bytes).sum());
+        map.put("lastId", this.ids.get());
+
+        return map;
+    }
+
+    @Override
+    public void close() {
+        // Shared by every repository
+    }
+}
@@ -0,0 +1,37 @@
+package me.nunum.whereami.model.request;
+
+
+import javax.validation.constraints.NotNull;
+import javax.validation.constraints.Size;
+import java.util.ArrayList;
+import java.util.List;
+
+public class DiscoverLocalizationRequest {
+
+    @NotNull
+    @Size(min = 1)
+    private List<FingerprintSample> samples;
+
+    public DiscoverLocalizationRequest() {
+        this(new ArrayList<>());
+    }
+
+    public DiscoverLocalizationRequest(List<FingerprintSample> samples) {
+        this.samples = samples;
+    }
+
+    public List<FingerprintSample> getSamples() {
+        return samples;
+    }
+
+    public void setSamples(List<FingerprintSample> samples) {
+        this.samples = samples;
+    }
+
+    @Override
+    public String toString() {
+        return "DiscoverLocalizationRequest{" +
+                "samples=" + samples +
+                '}';
+    }
+}
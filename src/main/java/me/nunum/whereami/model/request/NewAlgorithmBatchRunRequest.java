@@ -0,0 +1,51 @@
+package me.nunum.whereami.model.request;
+
+
+import javax.validation.constraints.NotNull;
+import java.util.ArrayList;
+import java.util.List;
+
+public class NewAlgorithmBatchRunRequest {
+
+
+    @NotNull
+    private Long localizationId;
+
+    @NotNull
+    private List<List<FingerprintSample>> scans;
+
+    public NewAlgorithmBatchRunRequest() {
+        this(0L, new ArrayList<>());
+    }
+
+
+    public NewAlgorithmBatchRunRequest(Long localizationId, List<List<FingerprintSample>> scans) {
+        this.localizationId = localizationId;
+        this.scans = scans;
+    }
+
+    public Long getLocalizationId() {
+        return localizationId;
+    }
+
+    public void setLocalizationId(Long localizationId) {
+        this.localizationId = localizationId;
+    }
+
+    public List<List<FingerprintSample>> getScans() {
+        return scans;
+    }
+
+    public void setScans(List<List<FingerprintSample>> scans) {
+        this.scans = scans;
+    }
+
+
+    @Override
+    public String toString() {
+        return "NewAlgorithmBatchRunRequest{" +
+                "localizationId=" + localizationId +
+                ", scans=" + scans.size() +
+                '}';
+    }
+}
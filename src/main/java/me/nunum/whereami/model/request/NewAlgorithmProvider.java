@@ -2,6 +2,7 @@ package me.nunum.whereami.model.request;
 
 import me.nunum.whereami.model.AlgorithmProvider;
 import me.nunum.whereami.model.Provider;
+import me.nunum.whereami.service.spi.InProcessAlgorithms;
 
 import javax.validation.constraints.NotNull;
 import javax.validation.constraints.Size;
@@ -38,11 +39,21 @@ public class NewAlgorithmProvider {
         }
 
         for (String key : selectedMethod.requiredKeys()) {
-            if (!(this.properties.containsKey(key) && isValidURL(this.properties.get(key)))) {
-                throw new IllegalArgumentException(String.format("Key %s is required on properties object and must be a valid URL", key));
+            if (!(this.properties.containsKey(key) && selectedMethod.isValidProperty(this.properties.get(key)))) {
+                throw new IllegalArgumentException(String.format("Key %s is required on properties object and must be a valid value for %s", key, selectedMethod));
             }
         }
 
+        for (String key : selectedMethod.optionalKeys()) {
+            if (this.properties.containsKey(key) && !selectedMethod.isValidProperty(key, this.properties.get(key))) {
+                throw new IllegalArgumentException(String.format("Key %s is not a valid value for %s", key, selectedMethod));
+            }
+        }
+
+        if (selectedMethod == AlgorithmProvider.METHOD.IN_PROCESS) {
+            requireRegisteredImplementation(this.properties);
+        }
+
         if (selectedMethod == AlgorithmProvider.METHOD.UNSUPPORTED) {
             throw new IllegalArgumentException("Unsupported provider type");
         }
@@ -75,6 +86,18 @@ public class NewAlgorithmProvider {
         }
     }
 
+    /**
+     * @param properties Properties of an in-process provider
+     * @throws IllegalArgumentException If the implementation is not on the classpath
+     */
+    static void requireRegisteredImplementation(Map<String, String> properties) {
+        final String name = properties.get(AlgorithmProvider.IN_PROCESS_PROVIDER_IMPLEMENTATION_KEY);
+
+        if (!InProcessAlgorithms.isRegistered(name)) {
+            throw new IllegalArgumentException(String.format("Implementation %s is not available on this server", name));
+        }
+    }
+
     @Override
     public String toString() {
         return "NewAlgorithmProvider{" +
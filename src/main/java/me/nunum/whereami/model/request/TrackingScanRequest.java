@@ -0,0 +1,45 @@
+package me.nunum.whereami.model.request;
+
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class TrackingScanRequest {
+
+    private Long localizationId;
+
+    private List<FingerprintSample> samples;
+
+    public TrackingScanRequest() {
+        this(0L, new ArrayList<>());
+    }
+
+    public TrackingScanRequest(Long localizationId, List<FingerprintSample> samples) {
+        this.localizationId = localizationId;
+        this.samples = samples;
+    }
+
+    public Long getLocalizationId() {
+        return localizationId;
+    }
+
+    public void setLocalizationId(Long localizationId) {
+        this.localizationId = localizationId;
+    }
+
+    public List<FingerprintSample> getSamples() {
+        return samples;
+    }
+
+    public void setSamples(List<FingerprintSample> samples) {
+        this.samples = samples;
+    }
+
+    @Override
+    public String toString() {
+        return "TrackingScanRequest{" +
+                "localizationId=" + localizationId +
+                ", samples=" + samples +
+                '}';
+    }
+}
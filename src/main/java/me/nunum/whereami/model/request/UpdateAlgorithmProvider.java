@@ -6,7 +6,7 @@ import javax.validation.constraints.Size;
 import java.util.HashMap;
 import java.util.Map;
 
-import static me.nunum.whereami.model.request.NewAlgorithmProvider.isValidURL;
+import static me.nunum.whereami.model.request.NewAlgorithmProvider.requireRegisteredImplementation;
 
 public class UpdateAlgorithmProvider {
 
@@ -39,7 +39,7 @@ public class UpdateAlgorithmProvider {
 
             if (!provider.getMethod().equals(selectedMethod)) {
                 for (String key : selectedMethod.requiredKeys()) {
-                    if (!(this.properties.containsKey(key) && isValidURL(this.properties.get(key)))) {
+                    if (!(this.properties.containsKey(key) && selectedMethod.isValidProperty(this.properties.get(key)))) {
                         throw new IllegalArgumentException(String.format("Key %s is required on properties object", key));
                     }
                 }
@@ -47,16 +47,22 @@ public class UpdateAlgorithmProvider {
             }
         }
 
+        final AlgorithmProvider.METHOD targetMethod = selectedMethod == null ? provider.getMethod() : selectedMethod;
+
         this.properties.forEach((k, v) ->
                 {
-                    if (isValidURL(this.properties.get(k))) {
+                    if (targetMethod.isValidProperty(k, this.properties.get(k))) {
                         provider.getProperties().put(k, v);
                     } else {
-                        throw new IllegalArgumentException(String.format("Key %s is not a valid URL", k));
+                        throw new IllegalArgumentException(String.format("Key %s is not a valid value for %s", k, targetMethod));
                     }
                 }
         );
 
+        if (targetMethod == AlgorithmProvider.METHOD.IN_PROCESS) {
+            requireRegisteredImplementation(provider.getProperties());
+        }
+
         return provider;
     }
 
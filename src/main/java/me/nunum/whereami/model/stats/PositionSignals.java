@@ -0,0 +1,97 @@
+package me.nunum.whereami.model.stats;
+
+import me.nunum.whereami.model.Fingerprint;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Signals heard at a position: the network with the strongest mean level, the
+ * number of access points and the sum, over the access points, of the networks
+ * each one broadcasts
+ */
+public class PositionSignals {
+
+    private final String strongestNetwork;
+
+    private final int numberOfNetworks;
+
+    private final int numberOfRouters;
+
+    public PositionSignals(String strongestNetwork, int numberOfNetworks, int numberOfRouters) {
+        this.strongestNetwork = strongestNetwork;
+        this.numberOfNetworks = numberOfNetworks;
+        this.numberOfRouters = numberOfRouters;
+    }
+
+    /**
+     * @return SSID with the strongest mean level, null when nothing was heard
+     */
+    public String getStrongestNetwork() {
+        return strongestNetwork;
+    }
+
+    public int getNumberOfNetworks() {
+        return numberOfNetworks;
+    }
+
+    public int getNumberOfRouters() {
+        return numberOfRouters;
+    }
+
+    @Override
+    public String toString() {
+        return "PositionSignals{" +
+                "strongestNetwork='" + strongestNetwork + '\'' +
+                ", numberOfNetworks=" + numberOfNetworks +
+                ", numberOfRouters=" + numberOfRouters +
+                '}';
+    }
+
+    /**
+     * Signals of the fingerprints of a position, handed one at a time
+     */
+    public static final class Accumulator implements Consumer<Fingerprint> {
+
+        private final Map<String, long[]> levelsBySsid = new HashMap<>();
+
+        private final Map<String, Set<String>> ssidsByBssid = new HashMap<>();
+
+        @Override
+        public void accept(Fingerprint fingerprint) {
+
+            final long[] levels = levelsBySsid.computeIfAbsent(fingerprint.getSsid(), k -> new long[2]);
+            levels[0] += fingerprint.getLevelDBM() == null ? 0 : fingerprint.getLevelDBM();
+            levels[1]++;
+
+            final Set<String> ssids = ssidsByBssid.computeIfAbsent(fingerprint.getBssid(), k -> new HashSet<>());
+
+            if (fingerprint.getSsid() != null) {
+                ssids.add(fingerprint.getSsid());
+            }
+        }
+
+        public PositionSignals signals() {
+
+            String strongest = null;
+            double strongestLevel = Double.NEGATIVE_INFINITY;
+
+            for (Map.Entry<String, long[]> e : levelsBySsid.entrySet()) {
+
+                final double level = (double) e.getValue()[0] / e.getValue()[1];
+
+                if (level > strongestLevel) {
+                    strongestLevel = level;
+                    strongest = e.getKey();
+                }
+            }
+
+            final int networks = ssidsByBssid.values().stream().mapToInt(Set::size).sum();
+
+            return new PositionSignals(strongest, networks, ssidsByBssid.size());
+        }
+    }
+}
@@ -0,0 +1,298 @@
+package me.nunum.whereami.service;
+
+import me.nunum.whereami.model.Fingerprint;
+import me.nunum.whereami.model.persistance.FingerprintRepository;
+import me.nunum.whereami.model.persistance.jpa.FingerprintRepositoryJpa;
+import me.nunum.whereami.model.request.FingerprintSample;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Inverted index from the BSSID of an access point to the localizations
+ * where it was observed, used to find the localization of a scan without
+ * knowing its id.
+ * <p>
+ * An access point heard in few localizations tells more than one heard
+ * everywhere, so each one is weighted by its inverse localization frequency,
+ * {@code log(1 + localizations / localizationsWithTheAccessPoint)}, times
+ * a weight growing with the level it was heard at. The score of a localization
+ * is the weighted share of the scan it explains, from 0 to 1.
+ * <p>
+ * The index is loaded from the fingerprints on first use and kept up to date
+ * on ingestion. Only the presence of an access point is kept, so adding the
+ * same fingerprints twice, or before the index is loaded, is harmless.
+ * Removals load the index first, so the load can not bring them back.
+ */
+public final class BssidIndex {
+
+    private static final Logger LOGGER = Logger.getLogger(BssidIndex.class.getSimpleName());
+
+    private static final float WEAKEST_LEVEL = -100f;
+
+    private static final float STRONGEST_LEVEL = -30f;
+
+    private static final double WEAKEST_WEIGHT = 0.05;
+
+    private static final BssidIndex ourInstance = new BssidIndex(BssidIndex::loadFromFingerprints);
+
+    private final ConcurrentHashMap<String, Set<Long>> postings;
+
+    private final ConcurrentHashMap<Long, Set<String>> localizations;
+
+    private final Supplier<Map<Long, Set<String>>> loader;
+
+    private volatile boolean loaded;
+
+    BssidIndex(Supplier<Map<Long, Set<String>>> loader) {
+        this.postings = new ConcurrentHashMap<>();
+        this.localizations = new ConcurrentHashMap<>();
+        this.loader = loader;
+        this.loaded = false;
+    }
+
+    public static BssidIndex getInstance() {
+        return ourInstance;
+    }
+
+    /**
+     * Index the access points of new fingerprints
+     *
+     * @param localizationId Localization Id
+     * @param fingerprints   Fingerprints of the localization
+     */
+    public void add(Long localizationId, List<Fingerprint> fingerprints) {
+
+        final HashSet<String> bssids = new HashSet<>();
+
+        for (Fingerprint fingerprint : fingerprints) {
+            if (fingerprint.getBssid() != null) {
+                bssids.add(fingerprint.getBssid());
+            }
+        }
+
+        add(localizationId, bssids);
+    }
+
+    /**
+     * Replace the access points of a localization, after some of its fingerprints
+     * were deleted. The new set is posted first and then swapped in, so a
+     * concurrent match sees the localization all along.
+     *
+     * @param localizationId Localization Id
+     * @param bssids         Access points still observed in the localization
+     */
+    public void replace(Long localizationId, Set<String> bssids) {
+
+        ensureLoaded();
+
+        if (bssids.isEmpty()) {
+            remove(localizationId);
+            return;
+        }
+
+        for (String bssid : bssids) {
+            this.postings
+                    .computeIfAbsent(bssid, k -> ConcurrentHashMap.newKeySet())
+                    .add(localizationId);
+        }
+
+        final Set<String> replacement = ConcurrentHashMap.newKeySet();
+        replacement.addAll(bssids);
+
+        final Set<String> previous = this.localizations.put(localizationId, replacement);
+
+        if (previous == null) {
+            return;
+        }
+
+        for (String bssid : previous) {
+            this.postings.computeIfPresent(bssid, (k, v) -> {
+                final Set<String> current = this.localizations.get(localizationId);
+                if (current == null || !current.contains(bssid)) {
+                    v.remove(localizationId);
+                }
+                return v.isEmpty() ? null : v;
+            });
+        }
+    }
+
+    /**
+     * @param localizationId Localization Id to drop from the index
+     */
+    public void remove(Long localizationId) {
+
+        ensureLoaded();
+
+        final Set<String> bssids = this.localizations.remove(localizationId);
+
+        if (bssids == null) {
+            return;
+        }
+
+        for (String bssid : bssids) {
+            this.postings.computeIfPresent(bssid, (k, v) -> {
+                v.remove(localizationId);
+                return v.isEmpty() ? null : v;
+            });
+        }
+    }
+
+    /**
+     * Rank the localizations by how well they explain a scan
+     *
+     * @param samples Scan
+     * @return Matches sorted by decreasing score, localizations sharing no access point with the scan are left out
+     */
+    public List<Match> match(List<FingerprintSample> samples) {
+
+        ensureLoaded();
+
+        if (samples == null || samples.isEmpty() || this.localizations.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        final HashMap<String, Float> strongest = new HashMap<>(samples.size() * 2);
+
+        for (FingerprintSample sample : samples) {
+            if (sample.getBssid() != null) {
+                strongest.merge(sample.getBssid(), (float) sample.getLevelDBM(), Math::max);
+            }
+        }
+
+        final double total = this.localizations.size();
+
+        final HashMap<Long, Double> scores = new HashMap<>();
+        double explainable = 0;
+
+        for (Map.Entry<String, Float> e : strongest.entrySet()) {
+
+            final Set<Long> posting = this.postings.get(e.getKey());
+
+            if (posting == null || posting.isEmpty()) {
+                continue;
+            }
+
+            final double weight = Math.log(1.0 + total / posting.size()) * levelWeight(e.getValue());
+
+            explainable += weight;
+
+            for (Long localizationId : posting) {
+                scores.merge(localizationId, weight, Double::sum);
+            }
+        }
+
+        if (explainable == 0) {
+            return Collections.emptyList();
+        }
+
+        final List<Match> matches = new ArrayList<>(scores.size());
+
+        for (Map.Entry<Long, Double> e : scores.entrySet()) {
+            matches.add(new Match(e.getKey(), e.getValue() / explainable));
+        }
+
+        matches.sort(Comparator.comparingDouble(Match::getScore).reversed().thenComparing(Match::getLocalizationId));
+
+        return matches;
+    }
+
+    public Map<String, Object> stats() {
+
+        final HashMap<String, Object> stats = new HashMap<>(3);
+
+        stats.put("loaded", this.loaded);
+        stats.put("bssids", this.postings.size());
+        stats.put("localizations", this.localizations.size());
+
+        return stats;
+    }
+
+    private void add(Long localizationId, Set<String> bssids) {
+
+        if (bssids.isEmpty()) {
+            return;
+        }
+
+        this.localizations.compute(localizationId, (k, v) -> {
+            final Set<String> current = v == null ? ConcurrentHashMap.newKeySet() : v;
+            current.addAll(bssids);
+            return current;
+        });
+
+        for (String bssid : bssids) {
+            this.postings
+                    .computeIfAbsent(bssid, k -> ConcurrentHashMap.newKeySet())
+                    .add(localizationId);
+        }
+    }
+
+    private void ensureLoaded() {
+
+        if (this.loaded) {
+            return;
+        }
+
+        synchronized (this) {
+
+            if (this.loaded) {
+                return;
+            }
+
+            final long started = System.currentTimeMillis();
+
+            this.loader.get().forEach(this::add);
+
+            this.loaded = true;
+
+            LOGGER.log(Level.INFO, "BSSID index loaded with {0} access points of {1} localizations in {2} ms",
+                    new Object[]{this.postings.size(), this.localizations.size(), System.currentTimeMillis() - started});
+        }
+    }
+
+    private static double levelWeight(float level) {
+        final double weight = (level - WEAKEST_LEVEL) / (STRONGEST_LEVEL - WEAKEST_LEVEL);
+        return Math.min(1.0, Math.max(WEAKEST_WEIGHT, weight));
+    }
+
+    private static Map<Long, Set<String>> loadFromFingerprints() {
+
+        Map<Long, Set<String>> bssids = Collections.emptyMap();
+
+        try (FingerprintRepository repository = new FingerprintRepositoryJpa()) {
+            bssids = repository.bssidsByLocalization();
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            LOGGER.log(Level.WARNING, "Could not close fingerprint repository", e);
+        }
+
+        return bssids;
+    }
+
+    /**
+     * Localization matching a scan
+     */
+    public static final class Match {
+
+        private final Long localizationId;
+
+        private final double score;
+
+        Match(Long localizationId, double score) {
+            this.localizationId = localizationId;
+            this.score = score;
+        }
+
+        public Long getLocalizationId() {
+            return localizationId;
+        }
+
+        public double getScore() {
+            return score;
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package me.nunum.whereami.service;
+
+import me.nunum.whereami.model.Fingerprint;
+
+import javax.json.bind.Jsonb;
+import javax.json.bind.JsonbBuilder;
+import javax.ws.rs.core.StreamingOutput;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * A range of fingerprints of a localization read once and shared by every
+ * task sinking it. The JSON array of the fingerprints is serialized once, on
+ * first use, and the same bytes are written in the payload of every task,
+ * only the small {@code id} and {@code isDrained} envelope differs.
+ */
+final class FingerprintBatch {
+
+    static final FingerprintBatch EMPTY = new FingerprintBatch(Collections.emptyList());
+
+    private static final Jsonb JSONB = JsonbBuilder.create();
+
+    private final List<Fingerprint> fingerprints;
+
+    private final long lastId;
+
+    private volatile byte[] serialized;
+
+    FingerprintBatch(List<Fingerprint> fingerprints) {
+        this.fingerprints = Collections.unmodifiableList(new ArrayList<>(fingerprints));
+        this.lastId = fingerprints
+                .stream()
+                .mapToLong(Fingerprint::getId)
+                .max()
+                .orElse(0L);
+    }
+
+    List<Fingerprint> fingerprints() {
+        return fingerprints;
+    }
+
+    int size() {
+        return fingerprints.size();
+    }
+
+    /**
+     * @return Highest fingerprint id of the batch, zero when empty
+     */
+    long lastId() {
+        return lastId;
+    }
+
+    /**
+     * @param taskId    Task Id
+     * @param isDrained True on the last payload of the task
+     * @return Sink payload of the task
+     */
+    StreamingOutput payload(Long taskId, boolean isDrained) {
+        return payload(String.format("{\"id\":%d,\"isDrained\":%b,\"fingerprints\":", taskId, isDrained));
+    }
+
+    /**
+     * Payload of the windowed sink. The sequence of a batch is its last id and
+     * the previous sequence lets the provider check it holds every range before.
+     *
+     * @param taskId   Task Id
+     * @param previous Sequence of the batch sent before, the task cursor on the first
+     * @return Sink payload of the task
+     */
+    StreamingOutput payload(Long taskId, long previous) {
+        return payload(String.format("{\"id\":%d,\"isDrained\":false,\"sequence\":%d,\"previous\":%d,\"fingerprints\":", taskId, lastId, previous));
+    }
+
+    private StreamingOutput payload(String header) {
+
+        final byte[] array = serialized();
+        final byte[] envelope = header.getBytes(StandardCharsets.UTF_8);
+
+        return output -> {
+            output.write(envelope);
+            output.write(array);
+            output.write('}');
+        };
+    }
+
+    private byte[] serialized() {
+
+        byte[] current = serialized;
+
+        if (current == null) {
+            synchronized (this) {
+                current = serialized;
+                if (current == null) {
+                    current = JSONB
+                            .toJson(fingerprints.stream().map(e -> e.toDTO().dtoValues()).collect(Collectors.toList()))
+                            .getBytes(StandardCharsets.UTF_8);
+                    serialized = current;
+                }
+            }
+        }
+
+        return current;
+    }
+}
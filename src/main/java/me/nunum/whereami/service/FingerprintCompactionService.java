@@ -0,0 +1,27 @@
+package me.nunum.whereami.service;
+
+import me.nunum.whereami.framework.domain.Executable;
+import me.nunum.whereami.model.persistance.segment.SegmentFingerprintStore;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Compact the fingerprint segments holding deleted fingerprints or too small
+ */
+public class FingerprintCompactionService extends Executable {
+
+    private static final Logger LOGGER = Logger.getLogger(FingerprintCompactionService.class.getSimpleName());
+
+    @Override
+    public Boolean call() throws Exception {
+
+        final long started = System.currentTimeMillis();
+
+        final int replaced = SegmentFingerprintStore.getInstance().compact();
+
+        LOGGER.log(Level.INFO, "Compacted {0} fingerprint segments in {1} ms", new Object[]{replaced, System.currentTimeMillis() - started});
+
+        return true;
+    }
+}
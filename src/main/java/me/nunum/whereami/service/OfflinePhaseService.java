@@ -4,6 +4,7 @@ import me.nunum.whereami.framework.domain.Executable;
 import me.nunum.whereami.model.AlgorithmProvider;
 import me.nunum.whereami.model.Fingerprint;
 import me.nunum.whereami.model.Task;
+import me.nunum.whereami.model.Training;
 import me.nunum.whereami.model.persistance.FingerprintRepository;
 import me.nunum.whereami.model.persistance.TaskRepository;
 import me.nunum.whereami.model.persistance.TrainingRepository;
@@ -12,20 +13,24 @@ import me.nunum.whereami.model.persistance.jpa.TaskRepositoryJpa;
 import me.nunum.whereami.model.persistance.jpa.TrainingRepositoryJpa;
 import me.nunum.whereami.service.exceptions.HTTPRequestError;
 import me.nunum.whereami.service.notification.NotifyService;
+import me.nunum.whereami.service.radiomap.RadioMapIndex;
+import me.nunum.whereami.service.spi.InProcessAlgorithm;
+import me.nunum.whereami.service.spi.InProcessAlgorithms;
 import me.nunum.whereami.utils.AppConfig;
 
 import javax.ws.rs.ProcessingException;
 import javax.ws.rs.client.Client;
 import javax.ws.rs.client.ClientBuilder;
 import javax.ws.rs.client.Entity;
+import javax.ws.rs.client.InvocationCallback;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 import java.time.Instant;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
-import java.util.stream.Stream;
 
 public class OfflinePhaseService extends Executable {
 
@@ -37,136 +42,386 @@ public class OfflinePhaseService extends Executable {
     }
 
     /**
-     *
+     * Sink every open task. Tasks training on the same localization share the
+     * reads: the lowest cursor range is read and serialized once and the same
+     * batch is handed to every task standing at that cursor.
+     * <p>
+     * In-process providers reading the shared radio map are finished right
+     * away, there is nothing to stream to them.
      */
     public Boolean call() {
 
         LOGGER.log(Level.INFO, "Starting OfflinePhaseService");
 
+        final Client client = ClientBuilder.newClient(AppConfig.getInstance().clientConfig());
+
         try (final TaskRepository tasks = new TaskRepositoryJpa()) {
 
             final TrainingRepository trainings = new TrainingRepositoryJpa();
             final FingerprintRepository fingerprints = new FingerprintRepositoryJpa();
 
-            final Stream<Task> openTasks = tasks.openTasks();
+            final Map<Long, List<Task>> tasksByLocalization = tasks
+                    .openTasks()
+                    .collect(Collectors.groupingBy(e -> e.getTraining().localizationAssociated(), LinkedHashMap::new, Collectors.toList()));
 
-            openTasks.forEach(task -> {
+            tasksByLocalization.forEach((localizationId, localizationTasks) -> {
 
-                boolean wasLoopExhausted = true;
+                final List<Task> streaming = new ArrayList<>(localizationTasks.size());
 
-                if (task.getTraining().isHTTPProvider()) {
+                for (Task task : localizationTasks) {
 
-                    task.getTraining().trainingInProgress();
+                    if (readsRadioMap(task.getTraining())) {
 
-                    trainings.save(task.getTraining());
+                        this.finish(client, tasks, task);
 
-                    List<Fingerprint> fingerprintList = fingerprints
-                            .fingerprintByLocalizationIdAndWithIdGreater(task.getTraining().localizationAssociated(), task.getCursor(), task.getBatchSize());
+                    } else if (task.getTraining().isHTTPProvider() || task.getTraining().isInProcessProvider()) {
 
-                    long size = fingerprintList.size();
+                        task.getTraining().trainingInProgress();
 
-                    while (size > 0) {
+                        trainings.save(task.getTraining());
 
-                        LOGGER.log(Level.INFO, String.format("Processing task %d. Current cursor: %d. Provider %d", task.getId(), task.getCursor(), task.getTraining().getAlgorithmProvider().getId()));
+                        streaming.add(task);
 
-                        try {
+                    } else {
+                        this.finish(client, tasks, task);
+                    }
+                }
 
-                            this.flushPayload(task.getId(), false, fingerprintList, task.getTraining().providerProperties());
+                this.fanOut(client, tasks, fingerprints, localizationId, streaming);
+            });
 
-                        } catch (Exception e) {
+        } catch (Exception e) {
+            LOGGER.log(Level.SEVERE, "Could not close resources", e);
+        } finally {
+            client.close();
+        }
 
-                            LOGGER.log(Level.SEVERE, String.format("Sink Request fail. Processing task %d. Current cursor: %d. Provider %d", task.getId(), task.getCursor(), task.getTraining().getAlgorithmProvider().getId()), e);
+        return true;
+    }
 
-                            if (e instanceof HTTPRequestError) {
-                                this.warningProviderForRequestFailure(task.getTraining().getAlgorithmProvider().getEmail(), e.getMessage());
-                            }
+    /**
+     * Stream the fingerprints of a localization to a group of tasks. Each round
+     * reads the range after the lowest cursor, capped at the next cursor so that
+     * tasks behind catch up to the ones ahead and from there on share batches.
+     *
+     * @param client         HTTP client
+     * @param tasks          Task repository
+     * @param fingerprints   Fingerprint repository
+     * @param localizationId Localization of the tasks
+     * @param streaming      Tasks still streaming
+     */
+    void fanOut(Client client,
+                TaskRepository tasks,
+                FingerprintRepository fingerprints,
+                Long localizationId,
+                List<Task> streaming) {
+
+        // The batch size of a task is the most fingerprints its provider takes in
+        // one payload. Sharing reads means sharing batches, so every task gets the
+        // smallest size asked for: no provider receives more than it can take, the
+        // others only get more, smaller payloads, and cursors stay exact as each
+        // task advances to the last id of the batches it acknowledged.
+        final int batchSize = streaming
+                .stream()
+                .mapToInt(Task::getBatchSize)
+                .min()
+                .orElse(0);
+
+        while (!streaming.isEmpty()) {
+
+            final long cursor = streaming
+                    .stream()
+                    .mapToLong(Task::getCursor)
+                    .min()
+                    .getAsLong();
+
+            final OptionalLong next = streaming
+                    .stream()
+                    .mapToLong(Task::getCursor)
+                    .filter(e -> e > cursor)
+                    .min();
+
+            final List<Task> due = streaming
+                    .stream()
+                    .filter(e -> e.getCursor() == cursor)
+                    .collect(Collectors.toList());
+
+            final int depth = due
+                    .stream()
+                    .mapToInt(this::window)
+                    .max()
+                    .orElse(1);
+
+            final List<FingerprintBatch> batches = new ArrayList<>(depth);
+
+            long readCursor = cursor;
+
+            while (batches.size() < depth) {
+
+                final List<Fingerprint> fingerprintList = next.isPresent()
+                        ? fingerprints.fingerprintByLocalizationIdAndIdBetween(localizationId, readCursor, next.getAsLong(), batchSize)
+                        : fingerprints.fingerprintByLocalizationIdAndWithIdGreater(localizationId, readCursor, batchSize);
+
+                if (fingerprintList.isEmpty()) {
+                    break;
+                }
 
-                            wasLoopExhausted = false;
-                            break;
-                        }
+                final FingerprintBatch batch = new FingerprintBatch(fingerprintList);
+
+                batches.add(batch);
+                readCursor = batch.lastId();
+            }
+
+            if (batches.isEmpty()) {
+
+                if (next.isPresent()) {
+                    due.forEach(e -> e.setCursor(next.getAsLong()));
+                    tasks.saveAll(due);
+                } else {
+                    due.forEach(e -> this.finish(client, tasks, e));
+                    streaming.removeAll(due);
+                }
+
+                continue;
+            }
+
+            for (Task task : due) {
+
+                LOGGER.log(Level.INFO, String.format("Processing task %d. Current cursor: %d. Provider %d", task.getId(), task.getCursor(), task.getTraining().getAlgorithmProvider().getId()));
+
+                try {
 
-                        fingerprintList
-                                .stream()
-                                .max(Comparator.comparing(Fingerprint::getId))
-                                .map(Fingerprint::getId)
-                                .ifPresent(e -> {
-                                    task.setCursor(e);
-                                    tasks.save(task);
-                                });
+                    this.deliver(client, tasks, task, batches);
 
-                        fingerprintList = fingerprints
-                                .fingerprintByLocalizationIdAndWithIdGreater(task.getTraining().localizationAssociated(), task.getCursor(), task.getBatchSize());
+                } catch (Exception e) {
 
-                        size = fingerprintList.size();
+                    LOGGER.log(Level.SEVERE, String.format("Sink Request fail. Processing task %d. Current cursor: %d. Provider %d", task.getId(), task.getCursor(), task.getTraining().getAlgorithmProvider().getId()), e);
+
+                    if (e instanceof HTTPRequestError) {
+                        this.warningProviderForRequestFailure(task.getTraining().getAlgorithmProvider().getEmail(), e.getMessage());
                     }
+
+                    streaming.remove(task);
                 }
+            }
+        }
+    }
+
+    /**
+     * Hand consecutive batches to a task, advancing its cursor on what the
+     * provider holds. Providers with a sink window get them pipelined, the
+     * others one at a time.
+     *
+     * @param client  HTTP client
+     * @param tasks   Task repository
+     * @param task    Task
+     * @param batches Consecutive batches after the task cursor
+     */
+    private void deliver(Client client, TaskRepository tasks, Task task, List<FingerprintBatch> batches) {
+
+        final int window = this.window(task);
+
+        if (window > 1) {
 
-                if (wasLoopExhausted) {
-                    this.flushPayload(task.getId(), true, new ArrayList<>(), task.getTraining().providerProperties());
-                    task.sinkFinish(Date.from(Instant.now()));
+            final SinkWindow sinkWindow = new SinkWindow(this.transport(client, task), window, AppConfig.SINK_RETRANSMISSIONS, AppConfig.SINK_ACK_TIMEOUT_SECONDS);
+
+            try {
+                sinkWindow.send(task.getCursor(), batches);
+            } finally {
+                if (sinkWindow.acknowledged() > task.getCursor()) {
+                    task.setCursor(sinkWindow.acknowledged());
                     tasks.save(task);
                 }
-            });
+            }
+
+            return;
+        }
+
+        for (FingerprintBatch batch : batches) {
+            this.sink(client, task, false, batch);
+            task.setCursor(batch.lastId());
+            tasks.save(task);
+        }
+    }
+
+    private static boolean readsRadioMap(Training training) {
+        return training.isInProcessProvider() && InProcessAlgorithms
+                .implementation(training.providerProperties())
+                .map(InProcessAlgorithm::readsRadioMap)
+                .orElse(false);
+    }
+
+    private int window(Task task) {
+        final Training training = task.getTraining();
+
+        return training.isHTTPProvider() ? AlgorithmProvider.sinkWindow(training.providerProperties()) : 1;
+    }
+
+    /**
+     * @param client HTTP client
+     * @param task   Task
+     * @return Asynchronous sender of the task batches, reading the acknowledgement header of the provider
+     */
+    private SinkWindow.Transport transport(Client client, Task task) {
+
+        final String url = task.getTraining().providerProperties().get(AlgorithmProvider.HTTP_PROVIDER_INGESTION_URL_KEY);
+
+        return (batch, previous) -> {
+
+            final CompletableFuture<Long> acknowledgement = new CompletableFuture<>();
+
+            LOGGER.info(() -> String.format("Pushing %d samples with sequence %d for url %s", batch.size(), batch.lastId(), url));
+
+            client.target(url)
+                    .request(MediaType.APPLICATION_JSON)
+                    .async()
+                    .post(Entity.entity(batch.payload(task.getId(), previous), MediaType.APPLICATION_JSON), new InvocationCallback<Response>() {
+
+                        @Override
+                        public void completed(Response response) {
+
+                            try (final Response r = response) {
+
+                                if (r.getStatus() < 300 && r.getStatus() > 199) {
+                                    final String mark = r.getHeaderString(SinkWindow.ACK_HEADER);
+                                    acknowledgement.complete(mark == null ? null : Long.valueOf(mark.trim()));
+                                } else {
+                                    acknowledgement.completeExceptionally(requestError(url, r));
+                                }
+
+                            } catch (RuntimeException e) {
+                                acknowledgement.completeExceptionally(new HTTPRequestError(String.format("Invalid response from %s: %s", url, e.getMessage())));
+                            }
+                        }
+
+                        @Override
+                        public void failed(Throwable throwable) {
+                            acknowledgement.completeExceptionally(new HTTPRequestError("The server is down."));
+                        }
+                    });
+
+            return acknowledgement;
+        };
+    }
+
+    /**
+     * Send the drained signal of a task and close it
+     *
+     * @param client HTTP client
+     * @param tasks  Task repository
+     * @param task   Task
+     */
+    void finish(Client client, TaskRepository tasks, Task task) {
+
+        try {
+
+            this.sink(client, task, true, FingerprintBatch.EMPTY);
+            task.sinkFinish(Date.from(Instant.now()));
+            tasks.save(task);
+
         } catch (Exception e) {
-            LOGGER.log(Level.SEVERE, "Could not close resources", e);
+
+            LOGGER.log(Level.SEVERE, String.format("Could not finish task %d", task.getId()), e);
+
+            if (e instanceof HTTPRequestError) {
+                this.warningProviderForRequestFailure(task.getTraining().getAlgorithmProvider().getEmail(), e.getMessage());
+            }
+
+            return;
         }
 
-        return true;
+        PredictionCache.getInstance().invalidate(task.getTraining().localizationAssociated());
+
+        try {
+            RadioMapIndex.getInstance().warm(task.getTraining().localizationAssociated());
+        } catch (RuntimeException e) {
+            LOGGER.log(Level.WARNING, "Could not warm the radio map", e);
+        }
+    }
+
+    /**
+     * Hand a batch of fingerprints to the provider of the task training. In-process
+     * implementations are called directly, everything else goes through HTTP.
+     *
+     * @param client    HTTP client
+     * @param task      Task
+     * @param isDrained True on the last batch
+     * @param batch     Batch of fingerprints
+     */
+    void sink(Client client, Task task, boolean isDrained, FingerprintBatch batch) {
+
+        final Training training = task.getTraining();
+
+        if (training.isInProcessProvider()) {
+
+            InProcessAlgorithms
+                    .implementation(training.providerProperties())
+                    .orElseThrow(() -> new IllegalStateException(String.format("In-process implementation of provider %d is not available", training.getAlgorithmProvider().getId())))
+                    .train(training.localizationAssociated(), isDrained, batch.fingerprints());
+
+        } else {
+            this.flushPayload(client, task.getId(), isDrained, batch, training.providerProperties());
+        }
     }
 
     /**
      * Send a batch of fingerprints to a HTTP server
      *
+     * @param client
      * @param taskID
-     * @param fingerprints
+     * @param isDrained
+     * @param batch
      * @param providerServiceProperties
      * @return boolean
      * @throws HTTPRequestError
      */
-    private boolean flushPayload(Long taskID, boolean isDrained, List<Fingerprint> fingerprints, Map<String, String> providerServiceProperties) {
+    private boolean flushPayload(Client client, Long taskID, boolean isDrained, FingerprintBatch batch, Map<String, String> providerServiceProperties) {
 
         final String url = providerServiceProperties.get(AlgorithmProvider.HTTP_PROVIDER_INGESTION_URL_KEY);
-        final Client client = ClientBuilder.newClient(AppConfig.getInstance().clientConfig());
 
-        LOGGER.info(() -> String.format("Pushing %d samples for url %s", fingerprints.size(), url));
-
-        HashMap<String, Object> payload = new HashMap<>(2);
-
-        payload.put("id", taskID);
-        payload.put("isDrained", isDrained);
-        payload.put("fingerprints", fingerprints.stream().map(e -> e.toDTO().dtoValues()).collect(Collectors.toList()));
+        LOGGER.info(() -> String.format("Pushing %d samples for url %s", batch.size(), url));
 
         try (final Response response = client.target(url)
                 .request(MediaType.APPLICATION_JSON)
-                .buildPost(Entity.entity(payload, MediaType.APPLICATION_JSON))
+                .buildPost(Entity.entity(batch.payload(taskID, isDrained), MediaType.APPLICATION_JSON))
                 .invoke()) {
 
             if (response.getStatus() < 300 && response.getStatus() > 199) {
                 return true;
             }
 
-            final StringBuilder errorAsString = new StringBuilder();
+            throw requestError(url, response);
+        } catch (ProcessingException e) {
+            throw new HTTPRequestError("The server is down.");
+        }
 
-            errorAsString.append(String.format("Response to %s return with status code %s.%n", url, response.getStatus()));
+    }
 
-            errorAsString.append("Response headers:%n%n");
+    /**
+     * @param url      Requested url
+     * @param response Unsuccessful response
+     * @return Error describing the response to the provider
+     */
+    private static HTTPRequestError requestError(String url, Response response) {
 
-            response.getHeaders().forEach((k, v) ->
-                    errorAsString.append(String.format("%-12s : %-5s %n", k, v.toString()))
-            );
+        final StringBuilder errorAsString = new StringBuilder();
 
-            if (response.hasEntity()) {
-                final String entity = response.readEntity(String.class);
-                errorAsString.append(String.format("%nThe server send this payload:%n %s%n", entity));
-            } else {
-                errorAsString.append("%nThe server not sent any payload%n");
-            }
+        errorAsString.append(String.format("Response to %s return with status code %s.%n", url, response.getStatus()));
 
-            throw new HTTPRequestError(errorAsString.toString());
-        } catch (ProcessingException e) {
-            throw new HTTPRequestError("The server is down.");
+        errorAsString.append("Response headers:%n%n");
+
+        response.getHeaders().forEach((k, v) ->
+                errorAsString.append(String.format("%-12s : %-5s %n", k, v.toString()))
+        );
+
+        if (response.hasEntity()) {
+            final String entity = response.readEntity(String.class);
+            errorAsString.append(String.format("%nThe server send this payload:%n %s%n", entity));
+        } else {
+            errorAsString.append("%nThe server not sent any payload%n");
         }
 
+        return new HTTPRequestError(errorAsString.toString());
     }
 
     private void warningProviderForRequestFailure(final String mail, final String errorMessage) {
@@ -8,6 +8,9 @@ import me.nunum.whereami.model.persistance.jpa.PositionRepositoryJpa;
 import me.nunum.whereami.model.persistance.jpa.PredictionRepositoryJpa;
 import me.nunum.whereami.model.persistance.jpa.TrainingRepositoryJpa;
 import me.nunum.whereami.model.request.FingerprintSample;
+import me.nunum.whereami.service.radiomap.Candidate;
+import me.nunum.whereami.service.spi.InProcessAlgorithm;
+import me.nunum.whereami.service.spi.InProcessAlgorithms;
 import me.nunum.whereami.utils.AppConfig;
 
 import javax.ws.rs.client.Client;
@@ -16,9 +19,12 @@ import javax.ws.rs.client.Entity;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 import java.math.BigDecimal;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
@@ -47,7 +53,16 @@ public class OnlinePhaseService extends Executable {
         final PredictionRepository predictionRepository = new PredictionRepositoryJpa();
         final LocalizationRepositoryJpa localizationRepository = new LocalizationRepositoryJpa();
 
-        final Localization localization = localizationRepository.findById(this.localizationId).get();
+        final Optional<Localization> localizationOptional = localizationRepository.findById(this.localizationId);
+
+        if (!localizationOptional.isPresent()) {
+            LOGGER.log(Level.WARNING, "Localization {0} was deleted before request {1} was predicted",
+                    new Object[]{this.localizationId, this.requestId});
+            predictionRepository.close();
+            return true;
+        }
+
+        final Localization localization = localizationOptional.get();
 
         final TrainingRepositoryJpa trainingRepository = new TrainingRepositoryJpa();
 
@@ -66,6 +81,52 @@ public class OnlinePhaseService extends Executable {
 
         final List<HashMap<String, Object>> samplesList = samples.stream().map(FingerprintSample::values).collect(Collectors.toList());
 
+        final List<Prediction> predictions = new ArrayList<>(trainings.size());
+
+        final AtomicBoolean complete = new AtomicBoolean(true);
+
+        trainings
+                .stream()
+                .filter(Training::isInProcessProvider)
+                .forEach(e -> {
+
+                    final Optional<InProcessAlgorithm> implementation = InProcessAlgorithms.implementation(e.providerProperties());
+
+                    if (!implementation.isPresent()) {
+                        LOGGER.log(Level.WARNING, "In-process implementation of provider {0} is not available", e.getAlgorithmProvider().getId());
+                        complete.set(false);
+                        return;
+                    }
+
+                    try {
+                        final List<Candidate> candidates = implementation.get().predict(localization.id(), this.samples);
+
+                        if (!candidates.isEmpty()) {
+                            final Candidate best = candidates.get(0);
+                            final Optional<Position> position = positionRepository.findById(best.getPositionId());
+
+                            if (!position.isPresent()) {
+                                LOGGER.log(Level.WARNING, "Position {0} predicted by provider {1} no longer exists",
+                                        new Object[]{best.getPositionId(), e.getAlgorithmProvider().getId()});
+                                complete.set(false);
+                                return;
+                            }
+
+                            predictions.add(predictionRepository.save(new Prediction(
+                                    requestId,
+                                    localization.id(),
+                                    best.getPositionId(),
+                                    position.get().getLabel(),
+                                    (float) (best.getConfidence() * 100.0),
+                                    e.getAlgorithmProvider().getId(),
+                                    deviceId)));
+                        }
+                    } catch (RuntimeException ex) {
+                        LOGGER.log(Level.SEVERE, String.format("In-process provider %d failed", e.getAlgorithmProvider().getId()), ex);
+                        complete.set(false);
+                    }
+                });
+
         trainings
                 .stream()
                 .filter(Training::isHTTPProvider)
@@ -105,25 +166,40 @@ public class OnlinePhaseService extends Executable {
 
                                     final Float accuracy = ((BigDecimal) entity.getOrDefault(accuracyKey, 0f)).floatValue();
 
-                                    final Position position = positionRepository.findById(positionPredicated).get();
+                                    final Optional<Position> position = positionRepository.findById(positionPredicated);
+
+                                    if (!position.isPresent()) {
+                                        LOGGER.log(Level.WARNING, "Position {0} predicted by provider {1} no longer exists",
+                                                new Object[]{positionPredicated, e.getAlgorithmProvider().getId()});
+                                        complete.set(false);
+                                        return;
+                                    }
 
                                     final Prediction prediction = new Prediction(
                                             requestId,
                                             localization.id(),
                                             positionPredicated,
-                                            position.getLabel(),
+                                            position.get().getLabel(),
                                             accuracy,
                                             e.getAlgorithmProvider().getId(),
                                             deviceId);
 
-                                    predictionRepository.save(prediction);
+                                    predictions.add(predictionRepository.save(prediction));
                                 }
                             }
+                        } else {
+                            LOGGER.log(Level.WARNING, "Provider {0} answered with status {1}",
+                                    new Object[]{e.getAlgorithmProvider().getId(), response.getStatus()});
+                            complete.set(false);
                         }
                     }
 
                 });
 
+        if (complete.get()) {
+            PredictionCache.getInstance().store(this.localizationId, this.samples, predictions);
+        }
+
         try {
             predictionRepository.close();
         } catch (Exception e) {
@@ -0,0 +1,198 @@
+package me.nunum.whereami.service;
+
+import me.nunum.whereami.model.Prediction;
+import me.nunum.whereami.model.request.FingerprintSample;
+import me.nunum.whereami.utils.AppConfig;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+/**
+ * Short lived cache of the predictions made for a localization.
+ * <p>
+ * A device that stands still keeps sending almost the same scan. Entries are
+ * keyed by a coarse signature of the scan, the strongest access points with
+ * their level quantized in buckets, thus two scans that only differ by a few
+ * dBm resolve to the same entry and the providers are not asked again.
+ */
+public final class PredictionCache {
+
+    private static final PredictionCache ourInstance = new PredictionCache(
+            AppConfig.PREDICTION_CACHE_TTL_MILLIS,
+            AppConfig.PREDICTION_CACHE_MAX_ENTRIES,
+            AppConfig.PREDICTION_CACHE_TOP_K,
+            AppConfig.PREDICTION_CACHE_BUCKET_DBM);
+
+    private final ConcurrentHashMap<Key, Entry> entries;
+
+    private final long ttlMillis;
+    private final int maxEntries;
+    private final int topK;
+    private final int bucketWidth;
+
+    private final LongAdder hits;
+    private final LongAdder misses;
+
+    PredictionCache(long ttlMillis, int maxEntries, int topK, int bucketWidth) {
+        this.entries = new ConcurrentHashMap<>();
+        this.ttlMillis = ttlMillis;
+        this.maxEntries = maxEntries;
+        this.topK = Math.max(1, topK);
+        this.bucketWidth = Math.max(1, bucketWidth);
+        this.hits = new LongAdder();
+        this.misses = new LongAdder();
+    }
+
+    /**
+     * Find the predictions made for a similar scan
+     *
+     * @param localizationId Localization Id
+     * @param samples        Scan
+     * @return Cached predictions, empty when the scan is not cached or the entry expired
+     */
+    public Optional<List<Prediction>> lookup(final Long localizationId, final List<FingerprintSample> samples) {
+
+        if (!isEnabled() || samples == null || samples.isEmpty()) {
+            return Optional.empty();
+        }
+
+        final Key key = new Key(localizationId, signature(samples));
+
+        final Entry entry = this.entries.get(key);
+
+        if (entry == null || entry.isExpired(System.currentTimeMillis(), this.ttlMillis)) {
+            if (entry != null) {
+                this.entries.remove(key, entry);
+            }
+            this.misses.increment();
+            return Optional.empty();
+        }
+
+        this.hits.increment();
+
+        return Optional.of(entry.predictions);
+    }
+
+    /**
+     * Keep the predictions made for a scan. Only the predictions of a request
+     * every provider answered should be kept, otherwise the missing providers
+     * stay missing until the entry expires.
+     *
+     * @param localizationId Localization Id
+     * @param samples        Scan
+     * @param predictions    Predictions made by the providers
+     */
+    public void store(final Long localizationId, final List<FingerprintSample> samples, final List<Prediction> predictions) {
+
+        if (!isEnabled() || samples == null || samples.isEmpty() || predictions.isEmpty()) {
+            return;
+        }
+
+        final long now = System.currentTimeMillis();
+
+        if (this.entries.size() >= this.maxEntries) {
+            this.entries.values().removeIf(e -> e.isExpired(now, this.ttlMillis));
+
+            if (this.entries.size() >= this.maxEntries) {
+                return;
+            }
+        }
+
+        this.entries.put(new Key(localizationId, signature(samples)),
+                new Entry(now, Collections.unmodifiableList(new ArrayList<>(predictions))));
+    }
+
+    /**
+     * Drop every entry of a localization, when its models change or new
+     * fingerprints are added to it
+     *
+     * @param localizationId Localization Id
+     */
+    public void invalidate(final Long localizationId) {
+        this.entries.keySet().removeIf(k -> k.localizationId.equals(localizationId));
+    }
+
+    /**
+     * Locality sensitive signature of a scan: the top-k access points ordered
+     * by BSSID, each one with its level quantized
+     *
+     * @param samples Scan
+     * @return Signature
+     */
+    String signature(final List<FingerprintSample> samples) {
+        return samples
+                .stream()
+                .sorted(Comparator.comparingInt(FingerprintSample::getLevelDBM).reversed())
+                .limit(this.topK)
+                .sorted(Comparator.comparing(FingerprintSample::getBssid))
+                .map(e -> e.getBssid() + "@" + Math.floorDiv(e.getLevelDBM(), this.bucketWidth))
+                .collect(Collectors.joining(";"));
+    }
+
+    private boolean isEnabled() {
+        return this.ttlMillis > 0 && this.maxEntries > 0;
+    }
+
+    public Map<String, Object> stats() {
+
+        final long numberOfHits = this.hits.sum();
+        final long numberOfMisses = this.misses.sum();
+        final long lookups = numberOfHits + numberOfMisses;
+
+        final HashMap<String, Object> map = new HashMap<>(5);
+
+        map.put("entries", this.entries.size());
+        map.put("hits", numberOfHits);
+        map.put("misses", numberOfMisses);
+        map.put("hitRate", lookups == 0 ? 0.0f : numberOfHits / (float) lookups);
+        map.put("ttlMillis", this.ttlMillis);
+
+        return map;
+    }
+
+    public static PredictionCache getInstance() {
+        return ourInstance;
+    }
+
+    private static final class Key {
+
+        private final Long localizationId;
+        private final String signature;
+
+        private Key(Long localizationId, String signature) {
+            this.localizationId = localizationId;
+            this.signature = signature;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Key key = (Key) o;
+            return localizationId.equals(key.localizationId) &&
+                    signature.equals(key.signature);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(localizationId, signature);
+        }
+    }
+
+    private static final class Entry {
+
+        private final long created;
+        private final List<Prediction> predictions;
+
+        private Entry(long created, List<Prediction> predictions) {
+            this.created = created;
+            this.predictions = predictions;
+        }
+
+        private boolean isExpired(long now, long ttl) {
+            return now - this.created > ttl;
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package me.nunum.whereami.service;
+
+import me.nunum.whereami.model.Localization;
+import me.nunum.whereami.model.persistance.PredictionRepository;
+import me.nunum.whereami.model.persistance.jpa.PredictionRepositoryJpa;
+import me.nunum.whereami.utils.AppConfig;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Hands out prediction request ids per localization.
+ * <p>
+ * Ids are taken from blocks reserved in the database, so the common path is a
+ * single atomic increment. Only when a block is exhausted a new one is
+ * reserved, which keeps ids unique across restarts and across instances that
+ * share the same database.
+ */
+public final class PredictionRequestIdAllocator {
+
+    private static final Logger LOGGER = Logger.getLogger(PredictionRequestIdAllocator.class.getSimpleName());
+
+    private static final PredictionRequestIdAllocator ourInstance = new PredictionRequestIdAllocator(AppConfig.PREDICTION_REQUEST_ID_BLOCK_SIZE);
+
+    private final ConcurrentHashMap<Long, RequestIdSequence> sequences;
+
+    private final int blockSize;
+
+    private PredictionRequestIdAllocator(int blockSize) {
+        this.sequences = new ConcurrentHashMap<>();
+        this.blockSize = Math.max(1, blockSize);
+    }
+
+    /**
+     * Obtain the next request id for the given localization
+     *
+     * @param localization See {@link Localization}
+     * @return Request Id
+     */
+    public long nextRequestId(final Localization localization) {
+        return this.sequences
+                .computeIfAbsent(localization.id(), RequestIdSequence::new)
+                .next();
+    }
+
+    public static PredictionRequestIdAllocator getInstance() {
+        return ourInstance;
+    }
+
+    private long reserveBlock(final Long localizationId) {
+
+        try (final PredictionRepository repository = new PredictionRepositoryJpa()) {
+
+            final long start = repository.reserveRequestIdBlock(localizationId, this.blockSize);
+
+            LOGGER.log(Level.FINE, "Reserved request ids [{0}, {1}) for localization {2}",
+                    new Object[]{start, start + this.blockSize, localizationId});
+
+            return start;
+
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IllegalStateException("Could not reserve request ids for localization " + localizationId, e);
+        }
+    }
+
+    /**
+     * Range of ids [next, end) reserved for this instance
+     */
+    private static final class Block {
+
+        private final AtomicLong next;
+        private final long end;
+
+        private Block(long start, long end) {
+            this.next = new AtomicLong(start);
+            this.end = end;
+        }
+    }
+
+    private final class RequestIdSequence {
+
+        private final Long localizationId;
+
+        private volatile Block block;
+
+        private RequestIdSequence(Long localizationId) {
+            this.localizationId = localizationId;
+            this.block = new Block(0L, 0L);
+        }
+
+        private long next() {
+            for (; ; ) {
+                final Block current = this.block;
+
+                final long id = current.next.getAndIncrement();
+
+                if (id < current.end) {
+                    return id;
+                }
+
+                synchronized (this) {
+                    if (this.block == current) {
+                        final long start = reserveBlock(this.localizationId);
+                        this.block = new Block(start, start + blockSize);
+                    }
+                }
+            }
+        }
+    }
+}
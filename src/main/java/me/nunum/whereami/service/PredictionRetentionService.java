@@ -0,0 +1,171 @@
+package me.nunum.whereami.service;
+
+import me.nunum.whereami.framework.domain.Executable;
+import me.nunum.whereami.model.PredictionRollup;
+import me.nunum.whereami.model.persistance.PredictionRepository;
+import me.nunum.whereami.model.persistance.PredictionRollupRepository;
+import me.nunum.whereami.model.persistance.jpa.PredictionRepositoryJpa;
+import me.nunum.whereami.model.persistance.jpa.PredictionRollupRepositoryJpa;
+import me.nunum.whereami.utils.AppConfig;
+
+import java.time.Clock;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.Date;
+import java.util.List;
+import java.util.Optional;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Roll up every complete day of predictions into {@link PredictionRollup}
+ * and then purge, in chunks, the predictions older than the retention horizon.
+ * Purging never goes past the last rolled up day, so a failed rollup keeps the
+ * raw rows around for the next run.
+ * <p>
+ * Feedback on a prediction may arrive days after it was made, thus the last
+ * days already rolled up are rolled up again on every run.
+ */
+public class PredictionRetentionService extends Executable {
+
+    private static final Logger LOGGER = Logger.getLogger(PredictionRetentionService.class.getSimpleName());
+
+    private final int retentionDays;
+    private final int chunkSize;
+    private final int rerollDays;
+    private final Clock clock;
+
+    public PredictionRetentionService() {
+        this(AppConfig.PREDICTION_RETENTION_DAYS, AppConfig.PREDICTION_RETENTION_CHUNK);
+    }
+
+    public PredictionRetentionService(int retentionDays, int chunkSize) {
+        this(retentionDays, chunkSize, AppConfig.PREDICTION_ROLLUP_REROLL_DAYS, Clock.systemDefaultZone());
+    }
+
+    PredictionRetentionService(int retentionDays, int chunkSize, int rerollDays, Clock clock) {
+        super();
+        this.retentionDays = Math.max(1, retentionDays);
+        this.chunkSize = Math.max(1, chunkSize);
+        this.rerollDays = Math.max(0, rerollDays);
+        this.clock = clock;
+    }
+
+    @Override
+    public Boolean call() throws Exception {
+
+        try (PredictionRepository predictionRepository = new PredictionRepositoryJpa();
+             PredictionRollupRepository rollupRepository = new PredictionRollupRepositoryJpa()) {
+
+            retain(predictionRepository, rollupRepository);
+
+            return true;
+        }
+    }
+
+    /**
+     * Roll up and then purge the predictions
+     *
+     * @param predictionRepository Predictions
+     * @param rollupRepository     Rollups
+     * @return Number of predictions purged
+     */
+    long retain(PredictionRepository predictionRepository, PredictionRollupRepository rollupRepository) {
+
+        final LocalDate today = LocalDate.now(this.clock);
+
+        final Optional<LocalDate> rolledUpUntil = rollup(predictionRepository, rollupRepository, today);
+
+        if (!rolledUpUntil.isPresent()) {
+            return 0L;
+        }
+
+        LocalDate horizon = today.minusDays(this.retentionDays);
+
+        if (horizon.isAfter(rolledUpUntil.get())) {
+            horizon = rolledUpUntil.get();
+        }
+
+        final Date cutoff = toDate(horizon);
+
+        long purged = 0;
+        int deleted;
+
+        do {
+            deleted = predictionRepository.purgeOlderThan(cutoff, this.chunkSize);
+            purged += deleted;
+        } while (deleted >= this.chunkSize);
+
+        LOGGER.log(Level.INFO, "Purged {0} predictions created before {1}", new Object[]{purged, horizon});
+
+        return purged;
+    }
+
+    /**
+     * Roll up the days not yet rolled up and, again, the trailing days that may
+     * have received feedback since. The trailing window never reaches past the
+     * retention horizon, so the days rolled up again still have all their rows.
+     *
+     * @return First day not yet rolled up, absent when there is nothing stored
+     */
+    private Optional<LocalDate> rollup(PredictionRepository predictionRepository,
+                                       PredictionRollupRepository rollupRepository,
+                                       LocalDate today) {
+
+        final Optional<Date> oldest = predictionRepository.oldestPrediction();
+
+        final Optional<LocalDate> latestRolled = rollupRepository.latestDay().map(PredictionRetentionService::toLocalDate);
+
+        if (!oldest.isPresent()) {
+            return latestRolled.map(e -> e.plusDays(1));
+        }
+
+        LocalDate day = toLocalDate(oldest.get());
+
+        if (latestRolled.isPresent()) {
+
+            final LocalDate next = latestRolled.get().plusDays(1);
+            final LocalDate trailing = today.minusDays(Math.min(this.rerollDays, this.retentionDays));
+
+            final LocalDate from = next.isBefore(trailing) ? next : trailing;
+
+            if (from.isAfter(day)) {
+                day = from;
+            }
+        }
+
+        for (; day.isBefore(today); day = day.plusDays(1)) {
+
+            final Date since = toDate(day);
+            final Date until = toDate(day.plusDays(1));
+
+            try {
+
+                final List<PredictionRollup> rollups = predictionRepository.rollupBetween(since, since, until);
+
+                rollupRepository.replaceDay(since, rollups);
+
+                LOGGER.log(Level.FINE, "Rolled up {0} providers for {1}", new Object[]{rollups.size(), day});
+
+            } catch (RuntimeException e) {
+
+                LOGGER.log(Level.SEVERE, String.format("Could not roll up the predictions of %s", day), e);
+
+                return Optional.of(day);
+            }
+        }
+
+        return Optional.of(day);
+    }
+
+    static Date toDate(LocalDate day) {
+        return Date.from(day.atStartOfDay(ZoneId.systemDefault()).toInstant());
+    }
+
+    static LocalDate toLocalDate(Date date) {
+        if (date instanceof java.sql.Date) {
+            return ((java.sql.Date) date).toLocalDate();
+        }
+        return date.toInstant().atZone(ZoneId.systemDefault()).toLocalDate();
+    }
+}
@@ -0,0 +1,27 @@
+package me.nunum.whereami.service;
+
+import me.nunum.whereami.framework.domain.Executable;
+import me.nunum.whereami.service.radiomap.RadioMapIndex;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Save the radio maps that changed since their last snapshot
+ */
+public class RadioMapSnapshotService extends Executable {
+
+    private static final Logger LOGGER = Logger.getLogger(RadioMapSnapshotService.class.getSimpleName());
+
+    @Override
+    public Boolean call() throws Exception {
+
+        final long started = System.currentTimeMillis();
+
+        final int written = RadioMapIndex.getInstance().persist();
+
+        LOGGER.log(Level.INFO, "Wrote {0} radio map snapshots in {1} ms", new Object[]{written, System.currentTimeMillis() - started});
+
+        return true;
+    }
+}
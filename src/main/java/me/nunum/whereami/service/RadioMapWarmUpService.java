@@ -0,0 +1,27 @@
+package me.nunum.whereami.service;
+
+import me.nunum.whereami.framework.domain.Executable;
+import me.nunum.whereami.service.radiomap.RadioMapIndex;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Restore the radio maps with a snapshot and catch them up with the fingerprints stored since
+ */
+public class RadioMapWarmUpService extends Executable {
+
+    private static final Logger LOGGER = Logger.getLogger(RadioMapWarmUpService.class.getSimpleName());
+
+    @Override
+    public Boolean call() throws Exception {
+
+        final long started = System.currentTimeMillis();
+
+        final int warmed = RadioMapIndex.getInstance().warmFromSnapshots();
+
+        LOGGER.log(Level.INFO, "Warmed {0} radio maps in {1} ms", new Object[]{warmed, System.currentTimeMillis() - started});
+
+        return true;
+    }
+}
@@ -0,0 +1,150 @@
+package me.nunum.whereami.service;
+
+import me.nunum.whereami.service.exceptions.HTTPRequestError;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Go-back-N sender of the offline sink. Keeps up to {@code window} batches of a
+ * task in flight; the provider acknowledges a high-water mark, the last
+ * fingerprint id it holds without gaps, either explicitly in the
+ * {@link #ACK_HEADER} header or implicitly with a successful response. When a
+ * window ends short of its last batch, everything after the mark is sent again,
+ * giving up after a number of retransmissions without progress.
+ */
+final class SinkWindow {
+
+    static final String ACK_HEADER = "X-ACK";
+
+    private static final Logger LOGGER = Logger.getLogger(SinkWindow.class.getSimpleName());
+
+    @FunctionalInterface
+    interface Transport {
+
+        /**
+         * @param batch    Batch to send
+         * @param previous Sequence of the batch sent before it
+         * @return Future of the high-water mark the provider acknowledged, null
+         * when the response carries none, completed exceptionally on failure
+         */
+        CompletableFuture<Long> send(FingerprintBatch batch, long previous);
+    }
+
+    private final Transport transport;
+
+    private final int window;
+
+    private final int retransmissions;
+
+    private final long timeoutSeconds;
+
+    private long acknowledged;
+
+    SinkWindow(Transport transport, int window, int retransmissions, long timeoutSeconds) {
+        this.transport = transport;
+        this.window = Math.max(1, window);
+        this.retransmissions = retransmissions;
+        this.timeoutSeconds = timeoutSeconds;
+    }
+
+    /**
+     * @return Highest fingerprint id acknowledged so far
+     */
+    long acknowledged() {
+        return acknowledged;
+    }
+
+    /**
+     * Send every batch, returning once all of them were acknowledged.
+     *
+     * @param cursor  Task cursor, the range already held by the provider
+     * @param batches Consecutive batches after the cursor
+     * @throws HTTPRequestError If the batches were not acknowledged after the allowed retransmissions,
+     *                          {@link #acknowledged()} still reports the progress made
+     */
+    void send(long cursor, List<FingerprintBatch> batches) {
+
+        this.acknowledged = cursor;
+
+        int base = 0;
+        int failures = 0;
+
+        while (base < batches.size()) {
+
+            final int end = Math.min(base + window, batches.size());
+            final long highest = batches.get(end - 1).lastId();
+
+            final List<CompletableFuture<Long>> inFlight = new ArrayList<>(end - base);
+
+            for (int i = base; i < end; i++) {
+                inFlight.add(transport.send(batches.get(i), i == 0 ? cursor : batches.get(i - 1).lastId()));
+            }
+
+            RuntimeException failure = null;
+
+            for (int i = 0; i < inFlight.size(); i++) {
+
+                try {
+
+                    final Long mark = inFlight.get(i).get(timeoutSeconds, TimeUnit.SECONDS);
+
+                    if (mark != null) {
+                        acknowledged = Math.max(acknowledged, Math.min(mark, highest));
+                    } else if (failure == null) {
+                        acknowledged = Math.max(acknowledged, batches.get(base + i).lastId());
+                    }
+
+                } catch (ExecutionException e) {
+
+                    if (failure == null) {
+                        failure = e.getCause() instanceof RuntimeException
+                                ? (RuntimeException) e.getCause()
+                                : new HTTPRequestError(String.valueOf(e.getCause()));
+                    }
+
+                } catch (TimeoutException e) {
+
+                    inFlight.get(i).cancel(true);
+
+                    if (failure == null) {
+                        failure = new HTTPRequestError(String.format("The server did not acknowledge within %d seconds.", timeoutSeconds));
+                    }
+
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    inFlight.forEach(f -> f.cancel(true));
+                    throw new HTTPRequestError("Interrupted while waiting for acknowledgements.");
+                }
+            }
+
+            int next = base;
+
+            while (next < batches.size() && batches.get(next).lastId() <= acknowledged) {
+                next++;
+            }
+
+            if (next < end) {
+
+                failures = next > base ? 1 : failures + 1;
+
+                if (failures > retransmissions) {
+                    throw failure == null
+                            ? new HTTPRequestError(String.format("The server acknowledged up to %d after %d retransmissions.", acknowledged, retransmissions))
+                            : failure;
+                }
+
+                final int from = next;
+                LOGGER.log(Level.WARNING, () -> String.format("Window not acknowledged past %d, retransmitting %d batches", acknowledged, end - from));
+            }
+
+            base = next;
+        }
+    }
+}
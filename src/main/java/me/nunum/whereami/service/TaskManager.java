@@ -2,10 +2,16 @@ package me.nunum.whereami.service;
 
 
 import me.nunum.whereami.framework.domain.Executable;
+import me.nunum.whereami.framework.persistence.repositories.impl.jpa.UnitOfWork;
+import me.nunum.whereami.utils.AppConfig;
 
+import java.util.Optional;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -17,15 +23,57 @@ public class TaskManager implements Runnable {
 
     private final PriorityBlockingQueue<Executable> tasks;
 
+    private final ScheduledExecutorService housekeeping;
+
     private static TaskManager ourInstance = new TaskManager();
 
     private TaskManager() {
         this.tasks = new PriorityBlockingQueue<>();
         this.executor = Executors.newSingleThreadExecutor();
+        this.housekeeping = Executors.newScheduledThreadPool(Math.max(1, AppConfig.HOUSEKEEPING_THREADS), r -> {
+            final Thread thread = new Thread(r, "TaskManager-Housekeeping");
+            thread.setDaemon(true);
+            return thread;
+        });
     }
 
+    /**
+     * Queue a task. Inside a transactional unit of work it is queued once the
+     * unit commits, so the task reads what the unit wrote, and dropped if the
+     * unit rolls back.
+     *
+     * @param task Task
+     */
     public synchronized void queue(Executable task) {
-        this.tasks.add(task);
+
+        final Optional<UnitOfWork> work = UnitOfWork.current().filter(UnitOfWork::isTransactional);
+
+        if (work.isPresent()) {
+            work.get().afterCommit(() -> this.tasks.add(task));
+        } else {
+            this.tasks.add(task);
+        }
+    }
+
+    /**
+     * Periodically run a housekeeping task, such as a purge or a compaction.
+     * Housekeeping runs on its own executor, outside of the queue, so a long
+     * run never holds back trainings and predictions. Each run gets its own
+     * unit of work and runs of the same task never overlap.
+     *
+     * @param factory      Supplier of a fresh task per run
+     * @param initialDelay Delay before the first run
+     * @param period       Period between runs
+     * @param unit         Unit of the delay and of the period
+     */
+    public void scheduleAtFixedRate(Supplier<Executable> factory, long initialDelay, long period, TimeUnit unit) {
+        this.housekeeping.scheduleAtFixedRate(() -> {
+            try (UnitOfWork work = UnitOfWork.begin()) {
+                factory.get().call();
+            } catch (Exception e) {
+                LOGGER.log(Level.SEVERE, "Error while executing housekeeping task", e);
+            }
+        }, initialDelay, period, unit);
     }
 
     @Override
@@ -36,7 +84,11 @@ public class TaskManager implements Runnable {
                 LOGGER.info("Waiting for task");
                 final Executable task = this.tasks.take();
                 LOGGER.info("Executing task");
-                this.executor.submit(task).get();
+                this.executor.submit(() -> {
+                    try (UnitOfWork work = UnitOfWork.begin()) {
+                        return task.call();
+                    }
+                }).get();
             } catch (Exception e) {
                 LOGGER.log(Level.SEVERE, "Error while executing task", e);
             }
@@ -0,0 +1,101 @@
+package me.nunum.whereami.service.radiomap;
+
+import me.nunum.whereami.model.request.FingerprintSample;
+import me.nunum.whereami.utils.AppConfig;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Score many scans against the same {@link RadioMapSnapshot}. The scans are
+ * split in halves down to a grain of a few scans and scored on a dedicated
+ * fork-join pool, each one writing its result to its own slot, so the output
+ * keeps the input order without any merging.
+ */
+public final class BatchPredictor {
+
+    private static final ForkJoinPool POOL = new ForkJoinPool(AppConfig.PREDICTION_BATCH_PARALLELISM);
+
+    private BatchPredictor() {
+    }
+
+    /**
+     * @param algorithm Built-in algorithm
+     * @param snapshot  Radio map of the localization
+     * @param scans     Scans to score
+     * @return Candidates of each scan, in input order
+     * @throws IllegalArgumentException If a scan, or a sample of it, is missing
+     */
+    public static List<List<Candidate>> predict(BuiltInAlgorithm algorithm,
+                                                RadioMapSnapshot snapshot,
+                                                List<List<FingerprintSample>> scans) {
+        return predict(POOL, AppConfig.PREDICTION_BATCH_GRAIN, algorithm, snapshot, scans);
+    }
+
+    @SuppressWarnings("unchecked")
+    static List<List<Candidate>> predict(ForkJoinPool pool,
+                                         int grain,
+                                         BuiltInAlgorithm algorithm,
+                                         RadioMapSnapshot snapshot,
+                                         List<List<FingerprintSample>> scans) {
+
+        for (int i = 0; i < scans.size(); i++) {
+            if (scans.get(i) == null || scans.get(i).contains(null)) {
+                throw new IllegalArgumentException(String.format("Scan %d is missing or has a missing sample", i));
+            }
+        }
+
+        final List<Candidate>[] results = new List[scans.size()];
+
+        if (!scans.isEmpty()) {
+            pool.invoke(new ScoreTask(algorithm, snapshot, scans, results, 0, scans.size(), Math.max(1, grain)));
+        }
+
+        return Arrays.asList(results);
+    }
+
+    private static final class ScoreTask extends RecursiveAction {
+
+        private final BuiltInAlgorithm algorithm;
+        private final RadioMapSnapshot snapshot;
+        private final List<List<FingerprintSample>> scans;
+        private final List<Candidate>[] results;
+        private final int from;
+        private final int to;
+        private final int grain;
+
+        private ScoreTask(BuiltInAlgorithm algorithm,
+                          RadioMapSnapshot snapshot,
+                          List<List<FingerprintSample>> scans,
+                          List<Candidate>[] results,
+                          int from,
+                          int to,
+                          int grain) {
+            this.algorithm = algorithm;
+            this.snapshot = snapshot;
+            this.scans = scans;
+            this.results = results;
+            this.from = from;
+            this.to = to;
+            this.grain = grain;
+        }
+
+        @Override
+        protected void compute() {
+
+            if (to - from <= grain) {
+                for (int i = from; i < to; i++) {
+                    results[i] = algorithm.predict(snapshot, scans.get(i));
+                }
+                return;
+            }
+
+            final int middle = (from + to) >>> 1;
+
+            invokeAll(new ScoreTask(algorithm, snapshot, scans, results, from, middle, grain),
+                    new ScoreTask(algorithm, snapshot, scans, results, middle, to, grain));
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package me.nunum.whereami.service.radiomap;
+
+import me.nunum.whereami.model.request.FingerprintSample;
+
+import java.util.List;
+
+/**
+ * Algorithm implementation served by this server from a {@link RadioMapSnapshot}
+ */
+@FunctionalInterface
+public interface BuiltInAlgorithm {
+
+    /**
+     * @param snapshot Radio map of the localization
+     * @param samples  Scan
+     * @return Candidates sorted by decreasing confidence, empty when nothing matches
+     */
+    List<Candidate> predict(RadioMapSnapshot snapshot, List<FingerprintSample> samples);
+}
@@ -0,0 +1,113 @@
+package me.nunum.whereami.service.radiomap;
+
+import me.nunum.whereami.model.request.FingerprintSample;
+import me.nunum.whereami.service.spi.InProcessAlgorithm;
+import me.nunum.whereami.utils.AppConfig;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Registry of the built-in algorithms, keyed by the implementation id used
+ * in {@code /algorithm/{id}/implementation/{implementation}}. Each one is also
+ * exposed as an {@link InProcessAlgorithm}, see {@code META-INF/services}.
+ */
+public final class BuiltInAlgorithms {
+
+    public static final long MEAN = 1L;
+
+    public static final long WKNN = 2L;
+
+    public static final long HORUS = 3L;
+
+    public static final String MEAN_NAME = "mean";
+
+    public static final String WKNN_NAME = "wknn";
+
+    public static final String HORUS_NAME = "horus";
+
+    private static final HashMap<Long, BuiltInAlgorithm> IMPLEMENTATIONS = new HashMap<>();
+
+    static {
+        IMPLEMENTATIONS.put(MEAN, byFloor((snapshot, samples) -> {
+            final long positionId = MeanPredictor.predict(snapshot, samples);
+            return positionId == 0L
+                    ? Collections.emptyList()
+                    : Collections.singletonList(new Candidate(positionId, 1.0));
+        }));
+
+        IMPLEMENTATIONS.put(WKNN, byFloor(new WeightedKnnPredictor(AppConfig.WKNN_K,
+                AppConfig.WKNN_PARALLEL_THRESHOLD,
+                AppConfig.VP_TREE_MIN_POSITIONS,
+                AppConfig.VP_TREE_MAX_VISITS)));
+
+        IMPLEMENTATIONS.put(HORUS, byFloor(new HorusPredictor(AppConfig.HORUS_K)));
+    }
+
+    private BuiltInAlgorithms() {
+    }
+
+    public static Optional<BuiltInAlgorithm> implementation(Long implementationId) {
+        return Optional.ofNullable(IMPLEMENTATIONS.get(implementationId));
+    }
+
+    /**
+     * @return Algorithm scoring only the positions of the floor the scan was taken on
+     */
+    static BuiltInAlgorithm byFloor(BuiltInAlgorithm algorithm) {
+        return (snapshot, samples) -> algorithm.predict(snapshot.forScan(samples), samples);
+    }
+
+    /**
+     * Built-in algorithm predicting over the radio map of the localization.
+     * Training is a no-op: the radio map is fed on ingestion.
+     */
+    private abstract static class SnapshotAlgorithm implements InProcessAlgorithm {
+
+        private final String name;
+
+        private final long implementationId;
+
+        SnapshotAlgorithm(String name, long implementationId) {
+            this.name = name;
+            this.implementationId = implementationId;
+        }
+
+        @Override
+        public String name() {
+            return name;
+        }
+
+        @Override
+        public boolean readsRadioMap() {
+            return true;
+        }
+
+        @Override
+        public List<Candidate> predict(Long localizationId, List<FingerprintSample> samples) {
+            return IMPLEMENTATIONS
+                    .get(implementationId)
+                    .predict(RadioMapIndex.getInstance().snapshot(localizationId), samples);
+        }
+    }
+
+    public static final class Mean extends SnapshotAlgorithm {
+        public Mean() {
+            super(MEAN_NAME, MEAN);
+        }
+    }
+
+    public static final class Wknn extends SnapshotAlgorithm {
+        public Wknn() {
+            super(WKNN_NAME, WKNN);
+        }
+    }
+
+    public static final class Horus extends SnapshotAlgorithm {
+        public Horus() {
+            super(HORUS_NAME, HORUS);
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package me.nunum.whereami.service.radiomap;
+
+import java.util.HashMap;
+
+/**
+ * Position proposed by a built-in algorithm
+ */
+public final class Candidate {
+
+    private final long positionId;
+
+    private final double confidence;
+
+    public Candidate(long positionId, double confidence) {
+        this.positionId = positionId;
+        this.confidence = confidence;
+    }
+
+    public long getPositionId() {
+        return positionId;
+    }
+
+    /**
+     * @return Confidence in [0, 1]
+     */
+    public double getConfidence() {
+        return confidence;
+    }
+
+    public HashMap<String, Object> values() {
+        final HashMap<String, Object> map = new HashMap<>(2);
+        map.put("positionId", positionId);
+        map.put("confidence", confidence);
+        return map;
+    }
+
+    @Override
+    public String toString() {
+        return "Candidate{" +
+                "positionId=" + positionId +
+                ", confidence=" + confidence +
+                '}';
+    }
+}
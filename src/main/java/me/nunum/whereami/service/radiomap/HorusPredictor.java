@@ -0,0 +1,146 @@
+package me.nunum.whereami.service.radiomap;
+
+import me.nunum.whereami.model.request.FingerprintSample;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Horus style probabilistic algorithm. The access points of a scan are taken
+ * as independent, so the log likelihood of a position is the sum, over the
+ * heard access points, of the log likelihood of the heard level at that
+ * position. Positions are ranked by that sum and their posterior, under a
+ * uniform prior, is the confidence of each candidate.
+ * <p>
+ * Scoring reads the quantized table of the snapshot and works on per thread
+ * scratch arrays, only the returned candidates are allocated.
+ */
+public final class HorusPredictor implements BuiltInAlgorithm {
+
+    private final int k;
+
+    private final ThreadLocal<Scratch> scratch;
+
+    public HorusPredictor(int k) {
+        this.k = Math.max(1, k);
+        this.scratch = ThreadLocal.withInitial(Scratch::new);
+    }
+
+    @Override
+    public List<Candidate> predict(RadioMapSnapshot snapshot, List<FingerprintSample> samples) {
+
+        if (snapshot.isEmpty() || samples.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        final Scratch s = this.scratch.get().reset(samples.size(), this.k);
+
+        for (int i = 0, n = samples.size(); i < n; i++) {
+
+            final FingerprintSample sample = samples.get(i);
+            final int column = snapshot.apIndex(sample.getBssid());
+
+            if (column < 0) {
+                continue;
+            }
+
+            int j = 0;
+            while (j < s.size && s.columns[j] != column) {
+                j++;
+            }
+
+            if (j == s.size) {
+                s.columns[s.size] = column;
+                s.levels[s.size] = sample.getLevelDBM();
+                s.size++;
+            } else if (s.levels[j] < sample.getLevelDBM()) {
+                s.levels[j] = sample.getLevelDBM();
+            }
+        }
+
+        if (s.size == 0) {
+            return Collections.emptyList();
+        }
+
+        for (int i = 0; i < s.size; i++) {
+            // Offset of the bin inside a row of the table
+            s.offsets[i] = snapshot.likelihoodColumn(s.columns[i]) + snapshot.bin(s.levels[i]);
+        }
+
+        final ByteBuffer table = snapshot.likelihoods();
+        final int positions = snapshot.positionCount();
+        final int size = Math.min(this.k, positions);
+
+        for (int p = 0; p < positions; p++) {
+
+            final int row = snapshot.likelihoodRow(p);
+
+            int penalty = 0;
+
+            for (int i = 0; i < s.size; i++) {
+                penalty += table.get(row + s.offsets[i]) & 0xFF;
+            }
+
+            if (penalty >= s.bestPenalty[size - 1]) {
+                continue;
+            }
+
+            int i = size - 1;
+            while (i > 0 && s.bestPenalty[i - 1] > penalty) {
+                s.bestPenalty[i] = s.bestPenalty[i - 1];
+                s.best[i] = s.best[i - 1];
+                i--;
+            }
+
+            s.bestPenalty[i] = penalty;
+            s.best[i] = p;
+        }
+
+        double total = 0;
+        for (int i = 0; i < size; i++) {
+            total += Math.exp((s.bestPenalty[0] - s.bestPenalty[i]) / LevelHistograms.SCALE);
+        }
+
+        final List<Candidate> candidates = new ArrayList<>(size);
+
+        for (int i = 0; i < size; i++) {
+            final double weight = Math.exp((s.bestPenalty[0] - s.bestPenalty[i]) / LevelHistograms.SCALE);
+            candidates.add(new Candidate(snapshot.positionId(s.best[i]), weight / total));
+        }
+
+        return candidates;
+    }
+
+    private static final class Scratch {
+
+        private int[] columns = new int[64];
+        private int[] levels = new int[64];
+        private int[] offsets = new int[64];
+        private int[] best = new int[8];
+        private int[] bestPenalty = new int[8];
+        private int size;
+
+        private Scratch reset(int samples, int k) {
+
+            if (columns.length < samples) {
+                final int capacity = Math.max(samples, columns.length * 2);
+                columns = new int[capacity];
+                levels = new int[capacity];
+                offsets = new int[capacity];
+            }
+
+            if (best.length < k) {
+                best = new int[k];
+                bestPenalty = new int[k];
+            }
+
+            Arrays.fill(bestPenalty, Integer.MAX_VALUE);
+            size = 0;
+
+            return this;
+        }
+    }
+}
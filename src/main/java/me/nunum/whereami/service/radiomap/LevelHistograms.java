@@ -0,0 +1,237 @@
+package me.nunum.whereami.service.radiomap;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+/**
+ * Off-heap histograms of the levels of every (position, access point) cell
+ * of a {@link RadioMap}. A cell owns {@link #bins()} consecutive int counters,
+ * bins are {@code binWidth} dBm wide starting at {@link #MIN_LEVEL}.
+ * <p>
+ * The likelihood table, one quantized penalty per counter, is kept off-heap
+ * next to the counters and updated in place as levels are added, so it is
+ * only allocated again when the map grows.
+ * <p>
+ * Not thread safe, the owning radio map serializes the access.
+ */
+final class LevelHistograms {
+
+    static final int MIN_LEVEL = -100;
+
+    static final int MAX_LEVEL = -20;
+
+    static final int DEFAULT_BIN_WIDTH = 4;
+
+    /**
+     * Scale of the quantized negative log likelihood, one unit is 1/SCALE nats
+     */
+    static final float SCALE = 16f;
+
+    static final int MAX_PENALTY = 255;
+
+    private final int binWidth;
+    private final int bins;
+
+    private ByteBuffer counts;
+
+    private ByteBuffer penalties;
+
+    /**
+     * Read only view of the penalties handed to the snapshots
+     */
+    private ByteBuffer likelihoods;
+
+    LevelHistograms(int binWidth, int cells) {
+        this.binWidth = Math.max(1, binWidth);
+        this.bins = bins(this.binWidth);
+        this.counts = allocate(cells);
+        this.penalties = allocatePenalties(cells);
+        this.likelihoods = penalties.asReadOnlyBuffer();
+    }
+
+    /**
+     * Histograms backed by an existing buffer, such as a mapped snapshot file
+     *
+     * @param binWidth Width of the bins the counts were taken with
+     * @param counts   Counters, in native order
+     */
+    LevelHistograms(int binWidth, ByteBuffer counts) {
+        this.binWidth = Math.max(1, binWidth);
+        this.bins = bins(this.binWidth);
+        this.counts = counts.order(ByteOrder.nativeOrder());
+
+        final int cells = counts.capacity() / (this.bins * Integer.BYTES);
+
+        this.penalties = allocatePenalties(cells);
+
+        for (int cell = 0; cell < cells; cell++) {
+            updatePenalties(cell);
+        }
+
+        this.likelihoods = penalties.asReadOnlyBuffer();
+    }
+
+    /**
+     * Size of a radio map buffer or array, computed without overflowing
+     *
+     * @param what    Name of the buffer, for the error message
+     * @param factors Dimensions of the buffer
+     * @return Product of the dimensions
+     * @throws IllegalStateException If the product is larger than a buffer can hold
+     */
+    static int checkedSize(String what, long... factors) {
+
+        long size = 1L;
+
+        try {
+            for (long factor : factors) {
+                size = Math.multiplyExact(size, factor);
+            }
+        } catch (ArithmeticException e) {
+            size = Long.MAX_VALUE;
+        }
+
+        if (size < 0 || size > Integer.MAX_VALUE) {
+            throw new IllegalStateException(String.format("The radio map is too large, %s of %s exceeds the %d limit of a buffer",
+                    what, Arrays.toString(factors), Integer.MAX_VALUE));
+        }
+
+        return (int) size;
+    }
+
+    static int bins(int binWidth) {
+        return (MAX_LEVEL - MIN_LEVEL) / Math.max(1, binWidth) + 1;
+    }
+
+    int bins() {
+        return bins;
+    }
+
+    int binWidth() {
+        return binWidth;
+    }
+
+    /**
+     * @return Bytes held off-heap by the counters and the likelihood table
+     */
+    long bytes() {
+        return counts.capacity() + penalties.capacity();
+    }
+
+    static int bin(int level, int binWidth, int bins) {
+        final int bin = (level - MIN_LEVEL) / binWidth;
+        return bin < 0 ? 0 : (bin >= bins ? bins - 1 : bin);
+    }
+
+    void add(int cell, int level) {
+        final int index = (cell * bins + bin(level, binWidth, bins)) * Integer.BYTES;
+        counts.putInt(index, counts.getInt(index) + 1);
+        updatePenalties(cell);
+    }
+
+    int count(int cell, int bin) {
+        return counts.getInt((cell * bins + bin) * Integer.BYTES);
+    }
+
+    /**
+     * Move the rows to a matrix with a wider stride
+     */
+    void resize(int newCells, int rows, int oldStride, int newStride, int columns) {
+
+        final ByteBuffer resized = allocate(newCells);
+        final ByteBuffer resizedPenalties = allocatePenalties(newCells);
+
+        for (int p = 0; p < rows; p++) {
+            copyRow(counts, resized, p * oldStride, p * newStride, columns, Integer.BYTES);
+            copyRow(penalties, resizedPenalties, p * oldStride, p * newStride, columns, Byte.BYTES);
+        }
+
+        this.counts = resized;
+        this.penalties = resizedPenalties;
+        this.likelihoods = resizedPenalties.asReadOnlyBuffer();
+    }
+
+    private void copyRow(ByteBuffer from, ByteBuffer to, int fromCell, int toCell, int columns, int bytes) {
+
+        final ByteBuffer source = from.duplicate();
+        source.position(fromCell * bins * bytes);
+        source.limit(source.position() + columns * bins * bytes);
+
+        final ByteBuffer target = to.duplicate();
+        target.position(toCell * bins * bytes);
+        target.put(source);
+    }
+
+    /**
+     * Write the counters of the first rows and columns, dropping the stride padding
+     */
+    void writeTo(WritableByteChannel channel, CRC32 crc, int rows, int stride, int columns) throws IOException {
+
+        final int rowBytes = columns * bins * Integer.BYTES;
+
+        for (int p = 0; p < rows; p++) {
+
+            final ByteBuffer source = counts.duplicate();
+            source.position(p * stride * bins * Integer.BYTES);
+            source.limit(source.position() + rowBytes);
+
+            RadioMapFiles.write(channel, crc, source);
+        }
+    }
+
+    /**
+     * Quantized negative log likelihood of every bin, Laplace smoothed. Cells
+     * never observed get {@link #MAX_PENALTY}. The view is updated in place as
+     * levels are added, until the histograms grow.
+     *
+     * @return Read only direct buffer laid out as (position * stride + ap) * bins + bin
+     */
+    ByteBuffer likelihoods() {
+        return likelihoods;
+    }
+
+    private void updatePenalties(int cell) {
+
+        final int offset = cell * bins;
+
+        long total = 0;
+        for (int b = 0; b < bins; b++) {
+            total += count(cell, b);
+        }
+
+        if (total == 0) {
+            for (int b = 0; b < bins; b++) {
+                penalties.put(offset + b, (byte) MAX_PENALTY);
+            }
+            return;
+        }
+
+        final double denominator = total + bins;
+
+        for (int b = 0; b < bins; b++) {
+            final double nll = -Math.log((count(cell, b) + 1) / denominator) * SCALE;
+            penalties.put(offset + b, (byte) Math.min(MAX_PENALTY, Math.round(nll)));
+        }
+    }
+
+    private ByteBuffer allocate(int cells) {
+        return ByteBuffer.allocateDirect(checkedSize("histograms", cells, bins, Integer.BYTES)).order(ByteOrder.nativeOrder());
+    }
+
+    private ByteBuffer allocatePenalties(int cells) {
+
+        final ByteBuffer table = ByteBuffer.allocateDirect(checkedSize("likelihood table", cells, bins));
+
+        while (table.hasRemaining()) {
+            table.put((byte) MAX_PENALTY);
+        }
+
+        table.clear();
+
+        return table;
+    }
+}
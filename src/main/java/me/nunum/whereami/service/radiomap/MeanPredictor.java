@@ -0,0 +1,58 @@
+package me.nunum.whereami.service.radiomap;
+
+import me.nunum.whereami.model.request.FingerprintSample;
+
+import java.util.List;
+
+/**
+ * Built-in "Mean" algorithm. The predicted position is the one whose mean
+ * levels are the closest, in mean absolute difference, to the scan.
+ */
+public final class MeanPredictor {
+
+    private MeanPredictor() {
+    }
+
+    /**
+     * @param snapshot Radio map of the localization
+     * @param samples  Scan
+     * @return Position id or 0 when the scan shares no access point with the map
+     */
+    public static long predict(RadioMapSnapshot snapshot, List<FingerprintSample> samples) {
+
+        if (snapshot.isEmpty() || samples.isEmpty()) {
+            return 0L;
+        }
+
+        final RadioMapSnapshot.Projection scan = snapshot.project(samples);
+
+        if (scan.isEmpty()) {
+            return 0L;
+        }
+
+        final float[] means = snapshot.means();
+        final int aps = snapshot.apCount();
+        final int positions = snapshot.positionCount();
+
+        int best = -1;
+        float bestDistance = Float.MAX_VALUE;
+
+        for (int p = 0; p < positions; p++) {
+
+            final int row = p * aps;
+
+            float distance = 0f;
+
+            for (int i = 0; i < scan.size; i++) {
+                distance += Math.abs(scan.levels[i] - means[row + scan.columns[i]]);
+            }
+
+            if (distance < bestDistance) {
+                bestDistance = distance;
+                best = p;
+            }
+        }
+
+        return snapshot.positionId(best);
+    }
+}
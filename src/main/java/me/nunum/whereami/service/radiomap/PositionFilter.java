@@ -0,0 +1,174 @@
+package me.nunum.whereami.service.radiomap;
+
+import me.nunum.whereami.model.request.FingerprintSample;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Hidden Markov model forward filter over the positions of a localization,
+ * smoothing a stream of scans of the same device.
+ * <p>
+ * Positions have no coordinates, so the transition model only knows that a
+ * device tends to stay where it was: with probability {@code stay} it keeps
+ * its position, otherwise it may be anywhere. The emission of a scan at a
+ * position is a Gaussian on the mean squared difference between the levels
+ * heard and the radio map means, tempered by the number of access points so
+ * a long scan does not make the belief collapse on one position.
+ * <p>
+ * The belief is kept per position id and carried over when the radio map
+ * changes between two scans. Not thread safe, one filter per device.
+ */
+public final class PositionFilter {
+
+    private final double stay;
+
+    private final double twoSigmaSquared;
+
+    private final int k;
+
+    private RadioMapSnapshot snapshot;
+
+    private double[] belief;
+
+    /**
+     * @param stay  Probability of staying at the same position between two scans, in [0, 1]
+     * @param sigma Standard deviation, in dBm, of a level around its radio map mean
+     * @param k     Candidates returned by an update
+     */
+    public PositionFilter(double stay, double sigma, int k) {
+        this.stay = Math.min(1.0, Math.max(0.0, stay));
+        this.twoSigmaSquared = 2.0 * sigma * sigma;
+        this.k = Math.max(1, k);
+    }
+
+    /**
+     * Fold a scan into the belief
+     *
+     * @param current Radio map of the localization
+     * @param samples Scan
+     * @return Most likely positions, sorted by decreasing probability, empty when the map is empty
+     */
+    public List<Candidate> update(RadioMapSnapshot current, List<FingerprintSample> samples) {
+
+        if (current.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        if (this.snapshot != current) {
+            carryOver(current);
+        }
+
+        final int positions = current.positionCount();
+
+        if (positions > 1) {
+            final double jump = (1.0 - stay) / positions;
+            for (int p = 0; p < positions; p++) {
+                belief[p] = stay * belief[p] + jump;
+            }
+        }
+
+        final RadioMapSnapshot.Projection projection = current.project(samples);
+
+        if (!projection.isEmpty()) {
+
+            final double[] logPosterior = new double[positions];
+            double max = Double.NEGATIVE_INFINITY;
+
+            for (int p = 0; p < positions; p++) {
+
+                double distance = 0;
+
+                for (int i = 0; i < projection.size; i++) {
+                    final double delta = projection.levels[i] - current.mean(p, projection.columns[i]);
+                    distance += delta * delta;
+                }
+
+                logPosterior[p] = Math.log(belief[p]) - (distance / projection.size) / twoSigmaSquared;
+                max = Math.max(max, logPosterior[p]);
+            }
+
+            double sum = 0;
+
+            for (int p = 0; p < positions; p++) {
+                belief[p] = Math.exp(logPosterior[p] - max);
+                sum += belief[p];
+            }
+
+            for (int p = 0; p < positions; p++) {
+                belief[p] = Math.max(belief[p] / sum, Double.MIN_NORMAL);
+            }
+        }
+
+        return top();
+    }
+
+    /**
+     * Forget everything seen so far
+     */
+    public void reset() {
+        this.snapshot = null;
+        this.belief = null;
+    }
+
+    private void carryOver(RadioMapSnapshot current) {
+
+        final int positions = current.positionCount();
+        final double[] carried = new double[positions];
+
+        if (this.snapshot == null) {
+            Arrays.fill(carried, 1.0 / positions);
+        } else {
+
+            final HashMap<Long, Double> previous = new HashMap<>(this.snapshot.positionCount() * 2);
+            for (int p = 0; p < this.snapshot.positionCount(); p++) {
+                previous.put(this.snapshot.positionId(p), belief[p]);
+            }
+
+            double sum = 0;
+            for (int p = 0; p < positions; p++) {
+                carried[p] = previous.getOrDefault(current.positionId(p), 1.0 / positions);
+                sum += carried[p];
+            }
+
+            for (int p = 0; p < positions; p++) {
+                carried[p] /= sum;
+            }
+        }
+
+        this.snapshot = current;
+        this.belief = carried;
+    }
+
+    private List<Candidate> top() {
+
+        final int size = Math.min(k, belief.length);
+        final int[] best = new int[size];
+        int filled = 0;
+
+        for (int p = 0; p < belief.length; p++) {
+
+            int i = filled < size ? filled++ : size;
+
+            while (i > 0 && belief[best[i - 1]] < belief[p]) {
+                if (i < size) {
+                    best[i] = best[i - 1];
+                }
+                i--;
+            }
+
+            if (i < size) {
+                best[i] = p;
+            }
+        }
+
+        final List<Candidate> candidates = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            candidates.add(new Candidate(snapshot.positionId(best[i]), belief[best[i]]));
+        }
+
+        return candidates;
+    }
+}
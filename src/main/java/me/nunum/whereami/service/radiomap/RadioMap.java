@@ -0,0 +1,531 @@
+package me.nunum.whereami.service.radiomap;
+
+import me.nunum.whereami.model.Fingerprint;
+import me.nunum.whereami.utils.AppConfig;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeSet;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.CRC32;
+
+/**
+ * Running sum and count of the level of every (position, access point) pair
+ * of a localization. Rows are positions and columns are access points, both
+ * kept in flat primitive arrays that grow by doubling.
+ * <p>
+ * Every position belongs to the building and floor partition of its first
+ * fingerprint, see {@link RadioMapSnapshot#partition(Integer, Integer)}.
+ * <p>
+ * Each cell also keeps an off-heap histogram of its levels and their
+ * likelihood, see {@link LevelHistograms}, for the probabilistic algorithms.
+ * The likelihood table is shared by the snapshots and updated in place.
+ * <p>
+ * Readers work over a {@link RadioMapSnapshot}, which is rebuilt on demand
+ * after a write, once, by the first reader that needs it, so predictions
+ * never hold the lock while scoring. The
+ * spatial index of a snapshot is built in the background once it is published.
+ * <p>
+ * Fingerprint ids are not committed in order, so the map remembers the ids
+ * applied in a window behind the last one and catching up with the store
+ * starts from {@link #rereadFrom()}: late commits inside the window are
+ * applied, fingerprints already applied are skipped.
+ * <p>
+ * The map can be saved to and restored from a {@link RadioMapFiles} snapshot.
+ */
+public final class RadioMap {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final Long localizationId;
+
+    private final ReentrantReadWriteLock lock;
+
+    private final HashMap<Long, Integer> positionIndex;
+    private final HashMap<String, Integer> apIndex;
+
+    private long[] positionIds;
+    private long[] partitions;
+    private double[] sums;
+    private int[] counts;
+
+    private LevelHistograms histograms;
+
+    private int positionCapacity;
+    private int apCapacity;
+
+    private long lastFingerprintId;
+
+    private final long rereadWindow;
+
+    /**
+     * Ids applied within the reread window of the last fingerprint id
+     */
+    private final TreeSet<Long> recentIds;
+
+    private volatile RadioMapSnapshot snapshot;
+
+    /**
+     * Held while a snapshot is built, so readers arriving after a write wait
+     * for the one being built instead of each building their own
+     */
+    private final Object snapshotBuild = new Object();
+
+    /**
+     * Most recent snapshot built, kept after a write so the next one can
+     * search its tree while its own is built
+     */
+    private volatile RadioMapSnapshot published;
+
+    public RadioMap(Long localizationId) {
+        this(localizationId, LevelHistograms.DEFAULT_BIN_WIDTH);
+    }
+
+    /**
+     * @param localizationId Localization Id
+     * @param binWidth       Width, in dBm, of the histogram bins
+     */
+    public RadioMap(Long localizationId, int binWidth) {
+        this(localizationId, binWidth, AppConfig.RADIO_MAP_REREAD_WINDOW);
+    }
+
+    /**
+     * @param localizationId Localization Id
+     * @param binWidth       Width, in dBm, of the histogram bins
+     * @param rereadWindow   Ids behind the last fingerprint id read again when catching up
+     */
+    RadioMap(Long localizationId, int binWidth, long rereadWindow) {
+        this.localizationId = localizationId;
+        this.lock = new ReentrantReadWriteLock();
+        this.positionIndex = new HashMap<>();
+        this.apIndex = new HashMap<>();
+        this.positionCapacity = INITIAL_CAPACITY;
+        this.apCapacity = INITIAL_CAPACITY;
+        this.positionIds = new long[positionCapacity];
+        this.partitions = new long[positionCapacity];
+        this.sums = new double[positionCapacity * apCapacity];
+        this.counts = new int[positionCapacity * apCapacity];
+        this.histograms = new LevelHistograms(binWidth, positionCapacity * apCapacity);
+        this.lastFingerprintId = 0L;
+        this.rereadWindow = Math.max(0L, rereadWindow);
+        this.recentIds = new TreeSet<>();
+    }
+
+    /**
+     * Restore a map from a snapshot payload, see {@link RadioMapFiles}. The
+     * histograms keep using the payload buffer, the rest is copied.
+     */
+    static RadioMap restore(RadioMapFiles.Header header, ByteBuffer payload) {
+
+        final RadioMap map = new RadioMap(header.localizationId, header.binWidth);
+
+        map.lastFingerprintId = header.lastFingerprintId;
+
+        if (header.positions == 0 || header.aps == 0) {
+            return map;
+        }
+
+        if (LevelHistograms.bins(header.binWidth) != header.bins) {
+            throw new IllegalStateException("Histogram bins do not match the bin width");
+        }
+
+        final int cells = LevelHistograms.checkedSize("radio map", header.positions, header.aps);
+
+        final ByteBuffer buffer = payload.duplicate().order(ByteOrder.nativeOrder());
+
+        final ByteBuffer histograms = buffer.duplicate();
+        final int histogramBytes = LevelHistograms.checkedSize("histograms", cells, header.bins, Integer.BYTES);
+
+        histograms.limit(histogramBytes);
+        map.histograms = new LevelHistograms(header.binWidth, histograms.slice());
+
+        buffer.position(histogramBytes);
+
+        map.sums = new double[cells];
+        map.counts = new int[cells];
+        map.positionIds = new long[header.positions];
+        map.partitions = new long[header.positions];
+
+        for (int i = 0; i < cells; i++) {
+            map.sums[i] = buffer.getDouble();
+        }
+
+        for (int i = 0; i < cells; i++) {
+            map.counts[i] = buffer.getInt();
+        }
+
+        for (int p = 0; p < header.positions; p++) {
+            map.positionIds[p] = buffer.getLong();
+            map.positionIndex.put(map.positionIds[p], p);
+        }
+
+        for (int p = 0; p < header.positions; p++) {
+            map.partitions[p] = buffer.getLong();
+        }
+
+        for (int a = 0; a < header.aps; a++) {
+            final byte[] bssid = new byte[buffer.getShort() & 0xFFFF];
+            buffer.get(bssid);
+            map.apIndex.put(new String(bssid, StandardCharsets.UTF_8), a);
+        }
+
+        for (int i = buffer.getInt(); i > 0; i--) {
+            map.recentIds.add(buffer.getLong());
+        }
+
+        map.positionCapacity = header.positions;
+        map.apCapacity = header.aps;
+
+        return map;
+    }
+
+    /**
+     * Write the snapshot payload of the map, see {@link RadioMapFiles}
+     *
+     * @return Header describing the payload written
+     */
+    RadioMapFiles.Header writeTo(WritableByteChannel channel, CRC32 crc) throws IOException {
+
+        lock.readLock().lock();
+        try {
+
+            final int positions = positionIndex.size();
+            final int aps = apIndex.size();
+
+            histograms.writeTo(channel, crc, positions, apCapacity, aps);
+
+            final String[] bssids = new String[aps];
+            for (Map.Entry<String, Integer> e : apIndex.entrySet()) {
+                bssids[e.getValue()] = e.getKey();
+            }
+
+            final byte[][] encoded = new byte[aps][];
+            int bssidBytes = 0;
+            for (int a = 0; a < aps; a++) {
+                encoded[a] = bssids[a].getBytes(StandardCharsets.UTF_8);
+                bssidBytes += Short.BYTES + encoded[a].length;
+            }
+
+            final ByteBuffer buffer = ByteBuffer
+                    .allocate(positions * aps * (Double.BYTES + Integer.BYTES) + 2 * positions * Long.BYTES + bssidBytes
+                            + Integer.BYTES + recentIds.size() * Long.BYTES)
+                    .order(ByteOrder.nativeOrder());
+
+            for (int p = 0; p < positions; p++) {
+                for (int a = 0; a < aps; a++) {
+                    buffer.putDouble(sums[cell(p, a)]);
+                }
+            }
+
+            for (int p = 0; p < positions; p++) {
+                for (int a = 0; a < aps; a++) {
+                    buffer.putInt(counts[cell(p, a)]);
+                }
+            }
+
+            for (int p = 0; p < positions; p++) {
+                buffer.putLong(positionIds[p]);
+            }
+
+            for (int p = 0; p < positions; p++) {
+                buffer.putLong(partitions[p]);
+            }
+
+            for (byte[] bssid : encoded) {
+                buffer.putShort((short) bssid.length);
+                buffer.put(bssid);
+            }
+
+            buffer.putInt(recentIds.size());
+            recentIds.forEach(buffer::putLong);
+
+            buffer.flip();
+
+            RadioMapFiles.write(channel, crc, buffer);
+
+            return new RadioMapFiles.Header(localizationId,
+                    lastFingerprintId,
+                    positions,
+                    aps,
+                    histograms.binWidth(),
+                    histograms.bins());
+
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public Long getLocalizationId() {
+        return localizationId;
+    }
+
+    public int binWidth() {
+        lock.readLock().lock();
+        try {
+            return histograms.binWidth();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return Bytes held off-heap by the histograms and the likelihood table
+     */
+    public long offHeapBytes() {
+        lock.readLock().lock();
+        try {
+            return histograms.bytes();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return Highest fingerprint id added to the map
+     */
+    public long lastFingerprintId() {
+        lock.readLock().lock();
+        try {
+            return lastFingerprintId;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return Id after which fingerprints are read to catch up with the store,
+     * the reread window behind the last fingerprint id
+     */
+    public long rereadFrom() {
+        lock.readLock().lock();
+        try {
+            return Math.max(0L, lastFingerprintId - rereadWindow);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Add fingerprints to the map, skipping the ones already applied
+     *
+     * @param fingerprints Fingerprints of this localization
+     */
+    public void append(List<Fingerprint> fingerprints) {
+        append(fingerprints, 0L);
+    }
+
+    /**
+     * Add fingerprints to the map, skipping the ones already applied and the
+     * ones older than the reread window
+     *
+     * @param fingerprints Fingerprints of this localization
+     * @param afterId      Fingerprints with an id lower or equal are ignored
+     */
+    public void append(List<Fingerprint> fingerprints, long afterId) {
+
+        if (fingerprints.isEmpty()) {
+            return;
+        }
+
+        lock.writeLock().lock();
+        try {
+
+            for (Fingerprint fingerprint : fingerprints) {
+
+                final Long id = fingerprint.getId();
+
+                if (id != null && (id <= afterId || id <= lastFingerprintId - rereadWindow || !recentIds.add(id))) {
+                    continue;
+                }
+
+                if (fingerprint.getPositionId() == null
+                        || fingerprint.getBssid() == null
+                        || fingerprint.getLevelDBM() == null) {
+                    continue;
+                }
+
+                final long partition = RadioMapSnapshot.partition(fingerprint.getBuildId(), fingerprint.getFloorId());
+
+                final int cell = cell(position(fingerprint.getPositionId(), partition), ap(fingerprint.getBssid()));
+
+                sums[cell] += fingerprint.getLevelDBM();
+                counts[cell]++;
+                histograms.add(cell, fingerprint.getLevelDBM());
+
+                if (id != null && id > lastFingerprintId) {
+                    lastFingerprintId = id;
+                }
+            }
+
+            recentIds.headSet(lastFingerprintId - rereadWindow, true).clear();
+
+            snapshot = null;
+
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return Snapshot already built, empty when it is rebuilt on the next read
+     */
+    public Optional<RadioMapSnapshot> currentSnapshot() {
+        return Optional.ofNullable(snapshot);
+    }
+
+    /**
+     * @return Immutable view of the current state of the map
+     */
+    public RadioMapSnapshot snapshot() {
+
+        RadioMapSnapshot current = snapshot;
+
+        if (current != null) {
+            return current;
+        }
+
+        synchronized (snapshotBuild) {
+            current = snapshot;
+            return current != null ? current : buildSnapshot();
+        }
+    }
+
+    /**
+     * Build and publish a snapshot of the map. The read lock is held until the
+     * snapshot is published, so a write can not be missed by it.
+     */
+    private RadioMapSnapshot buildSnapshot() {
+
+        lock.readLock().lock();
+        try {
+
+            final int positions = positionIndex.size();
+            final int aps = apIndex.size();
+
+            final int cells = LevelHistograms.checkedSize("snapshot", positions, aps);
+
+            final float[] means = new float[cells];
+            final int[] snapshotCounts = new int[cells];
+
+            for (int p = 0; p < positions; p++) {
+                for (int a = 0; a < aps; a++) {
+                    final int cell = cell(p, a);
+                    final int count = counts[cell];
+                    snapshotCounts[p * aps + a] = count;
+                    means[p * aps + a] = count == 0 ? RadioMapSnapshot.MISSING : (float) (sums[cell] / count);
+                }
+            }
+
+            final RadioMapSnapshot current = new RadioMapSnapshot(localizationId,
+                    lastFingerprintId,
+                    Arrays.copyOf(positionIds, positions),
+                    Arrays.copyOf(partitions, positions),
+                    new HashMap<>(apIndex),
+                    means,
+                    snapshotCounts,
+                    histograms.likelihoods(),
+                    identity(positions),
+                    identity(aps),
+                    apCapacity,
+                    histograms.bins(),
+                    histograms.binWidth());
+
+            current.succeed(published);
+
+            snapshot = current;
+            published = current;
+
+            current.buildTreeInBackground(() -> snapshot == current);
+
+            return current;
+
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private static int[] identity(int length) {
+        final int[] indexes = new int[length];
+        for (int i = 0; i < length; i++) {
+            indexes[i] = i;
+        }
+        return indexes;
+    }
+
+    private int cell(int position, int ap) {
+        return position * apCapacity + ap;
+    }
+
+    private int position(Long positionId, long partition) {
+
+        Integer index = positionIndex.get(positionId);
+
+        if (index != null) {
+            return index;
+        }
+
+        index = positionIndex.size();
+
+        if (index == positionCapacity) {
+            resize(Math.max(INITIAL_CAPACITY, positionCapacity * 2), apCapacity);
+        }
+
+        positionIds[index] = positionId;
+        partitions[index] = partition;
+        positionIndex.put(positionId, index);
+
+        return index;
+    }
+
+    private int ap(String bssid) {
+
+        Integer index = apIndex.get(bssid);
+
+        if (index != null) {
+            return index;
+        }
+
+        index = apIndex.size();
+
+        if (index == apCapacity) {
+            resize(positionCapacity, Math.max(INITIAL_CAPACITY, apCapacity * 2));
+        }
+
+        apIndex.put(bssid, index);
+
+        return index;
+    }
+
+    private void resize(int newPositionCapacity, int newApCapacity) {
+
+        final int cells = LevelHistograms.checkedSize("radio map", newPositionCapacity, newApCapacity);
+
+        final double[] newSums = new double[cells];
+        final int[] newCounts = new int[cells];
+
+        final int positions = positionIndex.size();
+        final int aps = apIndex.size();
+
+        for (int p = 0; p < positions; p++) {
+            System.arraycopy(sums, p * apCapacity, newSums, p * newApCapacity, aps);
+            System.arraycopy(counts, p * apCapacity, newCounts, p * newApCapacity, aps);
+        }
+
+        histograms.resize(cells, positions, apCapacity, newApCapacity, aps);
+
+        this.positionIds = Arrays.copyOf(positionIds, newPositionCapacity);
+        this.partitions = Arrays.copyOf(partitions, newPositionCapacity);
+        this.sums = newSums;
+        this.counts = newCounts;
+        this.positionCapacity = newPositionCapacity;
+        this.apCapacity = newApCapacity;
+    }
+}
@@ -0,0 +1,326 @@
+package me.nunum.whereami.service.radiomap;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Snapshot files of the {@link RadioMap}s, named
+ * {@code <localizationId>-<lastFingerprintId>.radiomap}.
+ * <p>
+ * A file starts with a {@value #HEADER_BYTES} bytes big endian header:
+ * magic, version, byte order of the payload, localization id, last
+ * fingerprint id, positions, access points, bin width, bins, payload length
+ * and the CRC32 of the payload. The payload, in native order, holds the
+ * histograms first, so they can be used straight from the mapped file, then
+ * the sums, the counts, the position ids, the position partitions, the BSSIDs
+ * and the fingerprint ids applied within the reread window of the map.
+ * <p>
+ * Files are written to a temporary file and atomically renamed, and mapped in
+ * private mode when read, so the in-memory map may keep growing without
+ * touching the file.
+ */
+public final class RadioMapFiles {
+
+    private static final Logger LOGGER = Logger.getLogger(RadioMapFiles.class.getSimpleName());
+
+    static final int MAGIC = 0x57524D50;
+
+    static final int VERSION = 3;
+
+    static final int HEADER_BYTES = 64;
+
+    private static final int BIG_ENDIAN = 1;
+
+    private static final int LITTLE_ENDIAN = 2;
+
+    private static final String EXTENSION = ".radiomap";
+
+    private static final Pattern FILE_NAME = Pattern.compile("^(\\d+)-(\\d+)\\" + EXTENSION + "$");
+
+    private RadioMapFiles() {
+    }
+
+    /**
+     * Write a snapshot of the map and delete the older snapshots of its localization
+     *
+     * @param directory Snapshot directory
+     * @param map       Radio map
+     * @return Header of the snapshot written
+     * @throws IOException If the snapshot could not be written
+     */
+    public static Header write(Path directory, RadioMap map) throws IOException {
+
+        Files.createDirectories(directory);
+
+        final Path temporary = Files.createTempFile(directory, map.getLocalizationId() + "-", ".tmp");
+
+        final Header header;
+
+        try {
+
+            try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+
+                channel.position(HEADER_BYTES);
+
+                final CRC32 crc = new CRC32();
+
+                final Header written = map.writeTo(channel, crc);
+
+                header = new Header(written, channel.position() - HEADER_BYTES, crc.getValue());
+
+                channel.position(0);
+                write(channel, null, header.encode());
+
+                channel.force(true);
+            }
+
+            Files.move(temporary, directory.resolve(fileName(header.localizationId, header.lastFingerprintId)),
+                    StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+
+        for (Path older : files(directory, header.localizationId)) {
+            if (lastFingerprintId(older) < header.lastFingerprintId) {
+                Files.deleteIfExists(older);
+            }
+        }
+
+        return header;
+    }
+
+    /**
+     * Map the most recent valid snapshot of a localization
+     *
+     * @param directory      Snapshot directory
+     * @param localizationId Localization Id
+     * @return Restored radio map, empty when there is no valid snapshot
+     */
+    public static Optional<RadioMap> read(Path directory, Long localizationId) {
+
+        final List<Path> files = files(directory, localizationId);
+
+        files.sort((a, b) -> Long.compare(lastFingerprintId(b), lastFingerprintId(a)));
+
+        for (Path file : files) {
+            try {
+                return Optional.of(map(file, localizationId));
+            } catch (IOException | RuntimeException e) {
+                LOGGER.log(Level.WARNING, "Ignoring invalid radio map snapshot " + file, e);
+            }
+        }
+
+        return Optional.empty();
+    }
+
+    /**
+     * @param directory Snapshot directory
+     * @return Localizations with at least one snapshot
+     */
+    public static List<Long> localizations(Path directory) {
+
+        final List<Long> localizations = new ArrayList<>();
+
+        for (Path file : files(directory, null)) {
+            final Matcher matcher = FILE_NAME.matcher(file.getFileName().toString());
+            if (matcher.matches()) {
+                final Long localizationId = Long.valueOf(matcher.group(1));
+                if (!localizations.contains(localizationId)) {
+                    localizations.add(localizationId);
+                }
+            }
+        }
+
+        return localizations;
+    }
+
+    /**
+     * Delete every snapshot of a localization
+     */
+    public static void delete(Path directory, Long localizationId) {
+        for (Path file : files(directory, localizationId)) {
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Could not delete radio map snapshot " + file, e);
+            }
+        }
+    }
+
+    static void write(WritableByteChannel channel, CRC32 crc, ByteBuffer buffer) throws IOException {
+
+        if (crc != null) {
+            crc.update(buffer.duplicate());
+        }
+
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private static RadioMap map(Path file, Long localizationId) throws IOException {
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+
+            if (channel.size() < HEADER_BYTES) {
+                throw new IllegalStateException("Truncated header");
+            }
+
+            // Private mapping, writes to the histograms stay in memory
+            final MappedByteBuffer mapped = channel.map(FileChannel.MapMode.PRIVATE, 0, channel.size());
+
+            final Header header = Header.decode(mapped);
+
+            if (!localizationId.equals(header.localizationId)) {
+                throw new IllegalStateException("Snapshot of localization " + header.localizationId);
+            }
+
+            if (header.payloadBytes != channel.size() - HEADER_BYTES) {
+                throw new IllegalStateException("Truncated payload");
+            }
+
+            final ByteBuffer payload = mapped.duplicate();
+            payload.position(HEADER_BYTES);
+            final ByteBuffer slice = payload.slice();
+
+            final CRC32 crc = new CRC32();
+            crc.update(slice.duplicate());
+
+            if (crc.getValue() != header.crc) {
+                throw new IllegalStateException("Checksum mismatch");
+            }
+
+            return RadioMap.restore(header, slice);
+        }
+    }
+
+    private static List<Path> files(Path directory, Long localizationId) {
+
+        final List<Path> files = new ArrayList<>();
+
+        if (!Files.isDirectory(directory)) {
+            return files;
+        }
+
+        try (Stream<Path> stream = Files.list(directory)) {
+            stream.filter(e -> {
+                final Matcher matcher = FILE_NAME.matcher(e.getFileName().toString());
+                return matcher.matches() && (localizationId == null || matcher.group(1).equals(localizationId.toString()));
+            }).forEach(files::add);
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Could not list radio map snapshots", e);
+        }
+
+        return files;
+    }
+
+    private static String fileName(Long localizationId, long lastFingerprintId) {
+        return localizationId + "-" + lastFingerprintId + EXTENSION;
+    }
+
+    private static long lastFingerprintId(Path file) {
+        final Matcher matcher = FILE_NAME.matcher(file.getFileName().toString());
+        return matcher.matches() ? Long.parseLong(matcher.group(2)) : -1L;
+    }
+
+    /**
+     * Snapshot header
+     */
+    static final class Header {
+
+        final Long localizationId;
+        final long lastFingerprintId;
+        final int positions;
+        final int aps;
+        final int binWidth;
+        final int bins;
+        final long payloadBytes;
+        final long crc;
+
+        Header(Long localizationId, long lastFingerprintId, int positions, int aps, int binWidth, int bins) {
+            this(localizationId, lastFingerprintId, positions, aps, binWidth, bins, 0L, 0L);
+        }
+
+        private Header(Header header, long payloadBytes, long crc) {
+            this(header.localizationId, header.lastFingerprintId, header.positions, header.aps, header.binWidth, header.bins, payloadBytes, crc);
+        }
+
+        private Header(Long localizationId, long lastFingerprintId, int positions, int aps, int binWidth, int bins, long payloadBytes, long crc) {
+            this.localizationId = localizationId;
+            this.lastFingerprintId = lastFingerprintId;
+            this.positions = positions;
+            this.aps = aps;
+            this.binWidth = binWidth;
+            this.bins = bins;
+            this.payloadBytes = payloadBytes;
+            this.crc = crc;
+        }
+
+        private ByteBuffer encode() {
+
+            final ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.BIG_ENDIAN);
+
+            buffer.putInt(MAGIC);
+            buffer.putInt(VERSION);
+            buffer.putInt(ByteOrder.nativeOrder() == ByteOrder.BIG_ENDIAN ? BIG_ENDIAN : LITTLE_ENDIAN);
+            buffer.putInt(0);
+            buffer.putLong(localizationId);
+            buffer.putLong(lastFingerprintId);
+            buffer.putInt(positions);
+            buffer.putInt(aps);
+            buffer.putInt(binWidth);
+            buffer.putInt(bins);
+            buffer.putLong(payloadBytes);
+            buffer.putLong(crc);
+
+            buffer.flip();
+
+            return buffer;
+        }
+
+        private static Header decode(ByteBuffer mapped) {
+
+            final ByteBuffer buffer = mapped.duplicate().order(ByteOrder.BIG_ENDIAN);
+
+            if (buffer.getInt() != MAGIC) {
+                throw new IllegalStateException("Not a radio map snapshot");
+            }
+
+            if (buffer.getInt() != VERSION) {
+                throw new IllegalStateException("Unsupported snapshot version");
+            }
+
+            final int order = buffer.getInt();
+
+            if (order != (ByteOrder.nativeOrder() == ByteOrder.BIG_ENDIAN ? BIG_ENDIAN : LITTLE_ENDIAN)) {
+                throw new IllegalStateException("Snapshot written with another byte order");
+            }
+
+            buffer.getInt();
+
+            return new Header(buffer.getLong(),
+                    buffer.getLong(),
+                    buffer.getInt(),
+                    buffer.getInt(),
+                    buffer.getInt(),
+                    buffer.getInt(),
+                    buffer.getLong(),
+                    buffer.getLong());
+        }
+    }
+}
@@ -0,0 +1,276 @@
+package me.nunum.whereami.service.radiomap;
+
+import me.nunum.whereami.model.Fingerprint;
+import me.nunum.whereami.model.persistance.FingerprintRepository;
+import me.nunum.whereami.model.persistance.jpa.FingerprintRepositoryJpa;
+import me.nunum.whereami.utils.AppConfig;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Per localization {@link RadioMap}. A map is loaded from the fingerprints
+ * table the first time it is needed, then kept up to date by the ingestion
+ * path and dropped when fingerprints are deleted.
+ * <p>
+ * When a snapshot directory is configured, maps are periodically saved as
+ * {@link RadioMapFiles} and restored from them, so a load only reads the
+ * fingerprints stored after the snapshot.
+ */
+public final class RadioMapIndex {
+
+    private static final Logger LOGGER = Logger.getLogger(RadioMapIndex.class.getSimpleName());
+
+    private static final RadioMapIndex ourInstance = new RadioMapIndex();
+
+    private final ConcurrentHashMap<Long, Entry> maps;
+
+    private final Optional<Path> snapshotDirectory;
+
+    private RadioMapIndex() {
+        this.maps = new ConcurrentHashMap<>();
+        this.snapshotDirectory = AppConfig.RADIO_MAP_SNAPSHOT_DIR.isEmpty()
+                ? Optional.empty()
+                : Optional.of(Paths.get(AppConfig.RADIO_MAP_SNAPSHOT_DIR));
+    }
+
+    public static RadioMapIndex getInstance() {
+        return ourInstance;
+    }
+
+    /**
+     * @param localizationId Localization Id
+     * @return Current snapshot of the localization radio map
+     */
+    public RadioMapSnapshot snapshot(final Long localizationId) {
+
+        final Entry entry = this.maps.computeIfAbsent(localizationId, Entry::new);
+
+        if (!entry.loaded) {
+            synchronized (entry) {
+                if (!entry.loaded) {
+                    try {
+                        load(entry);
+                    } catch (RuntimeException e) {
+                        this.maps.remove(localizationId, entry);
+                        throw e;
+                    }
+                }
+            }
+        }
+
+        return entry.map.snapshot();
+    }
+
+    /**
+     * Add freshly stored fingerprints to the radio map, if it was already loaded
+     *
+     * @param localizationId Localization Id
+     * @param fingerprints   Stored fingerprints
+     */
+    public void append(final Long localizationId, final List<Fingerprint> fingerprints) {
+
+        final Entry entry = this.maps.get(localizationId);
+
+        if (entry == null) {
+            return;
+        }
+
+        synchronized (entry) {
+            if (entry.loaded) {
+                entry.map.append(fingerprints);
+            }
+        }
+    }
+
+    /**
+     * Load the radio map of a localization, and its spatial index when it is
+     * large enough to be used, ahead of the first prediction
+     *
+     * @param localizationId Localization Id
+     */
+    public void warm(final Long localizationId) {
+
+        final RadioMapSnapshot snapshot = snapshot(localizationId);
+
+        if (snapshot.positionCount() >= AppConfig.VP_TREE_MIN_POSITIONS) {
+            snapshot.vantagePointTree();
+        }
+    }
+
+    /**
+     * Drop the radio map of a localization, it is loaded again on the next use
+     *
+     * @param localizationId Localization Id
+     */
+    public void invalidate(final Long localizationId) {
+        this.maps.remove(localizationId);
+        this.snapshotDirectory.ifPresent(directory -> RadioMapFiles.delete(directory, localizationId));
+    }
+
+    /**
+     * Save the loaded radio maps that changed since their last snapshot
+     *
+     * @return Number of snapshots written
+     */
+    public int persist() {
+
+        if (!this.snapshotDirectory.isPresent()) {
+            return 0;
+        }
+
+        final Path directory = this.snapshotDirectory.get();
+
+        int written = 0;
+
+        for (Entry entry : this.maps.values()) {
+
+            if (!entry.loaded || entry.map.lastFingerprintId() <= entry.persistedUpTo) {
+                continue;
+            }
+
+            try {
+
+                final RadioMapFiles.Header header = RadioMapFiles.write(directory, entry.map);
+
+                entry.persistedUpTo = header.lastFingerprintId;
+                written++;
+
+                // Invalidated while it was being written
+                if (this.maps.get(entry.localizationId) != entry) {
+                    RadioMapFiles.delete(directory, entry.localizationId);
+                }
+
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Could not write the radio map snapshot of localization " + entry.localizationId, e);
+            }
+        }
+
+        return written;
+    }
+
+    /**
+     * Load, and catch up with the database, every radio map with a snapshot
+     *
+     * @return Number of localizations warmed
+     */
+    public int warmFromSnapshots() {
+
+        if (!this.snapshotDirectory.isPresent()) {
+            return 0;
+        }
+
+        final List<Long> localizations = RadioMapFiles.localizations(this.snapshotDirectory.get());
+
+        for (Long localizationId : localizations) {
+            try {
+                warm(localizationId);
+            } catch (RuntimeException e) {
+                LOGGER.log(Level.WARNING, "Could not warm the radio map of localization " + localizationId, e);
+            }
+        }
+
+        return localizations.size();
+    }
+
+    /**
+     * Figures of the snapshots already built, reading them never builds one
+     *
+     * @return Localizations loaded, positions and stale snapshots
+     */
+    public Map<String, Object> stats() {
+
+        final HashMap<String, Object> stats = new HashMap<>(4);
+
+        stats.put("localizations", this.maps.size());
+        stats.put("positions", this.maps.values()
+                .stream()
+                .filter(e -> e.loaded)
+                .map(e -> e.map.currentSnapshot())
+                .filter(Optional::isPresent)
+                .mapToInt(e -> e.get().positionCount())
+                .sum());
+        stats.put("staleSnapshots", this.maps.values()
+                .stream()
+                .filter(e -> e.loaded && !e.map.currentSnapshot().isPresent())
+                .count());
+        stats.put("histogramOffHeapBytes", this.maps.values()
+                .stream()
+                .mapToLong(e -> e.map.offHeapBytes())
+                .sum());
+
+        return stats;
+    }
+
+    private void load(Entry entry) {
+
+        final long started = System.currentTimeMillis();
+
+        if (this.snapshotDirectory.isPresent()) {
+
+            final Optional<RadioMap> restored = RadioMapFiles.read(this.snapshotDirectory.get(), entry.localizationId);
+
+            if (restored.isPresent() && restored.get().binWidth() == AppConfig.HORUS_BIN_WIDTH) {
+                entry.map = restored.get();
+                entry.persistedUpTo = entry.map.lastFingerprintId();
+            }
+        }
+
+        try (FingerprintRepository repository = new FingerprintRepositoryJpa()) {
+
+            final List<Fingerprint> batch = new ArrayList<>(AppConfig.RADIO_MAP_LOAD_BATCH_SIZE);
+
+            // Read again the window behind the snapshot, fingerprints committed late are applied
+            repository.streamByLocalizationIdAndWithIdGreater(entry.localizationId, entry.map.rereadFrom(), fingerprint -> {
+
+                batch.add(fingerprint);
+
+                if (batch.size() == AppConfig.RADIO_MAP_LOAD_BATCH_SIZE) {
+                    entry.map.append(batch);
+                    batch.clear();
+                }
+            });
+
+            entry.map.append(batch);
+
+            entry.loaded = true;
+
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            LOGGER.log(Level.WARNING, "Could not close fingerprint repository", e);
+        }
+
+        LOGGER.log(Level.INFO, "Radio map of localization {0} loaded up to fingerprint {1} in {2} ms",
+                new Object[]{entry.localizationId, entry.map.lastFingerprintId(), System.currentTimeMillis() - started});
+    }
+
+    private static final class Entry {
+
+        private final Long localizationId;
+
+        private volatile RadioMap map;
+
+        /**
+         * Last fingerprint id of the most recent snapshot file
+         */
+        private volatile long persistedUpTo;
+
+        private volatile boolean loaded;
+
+        private Entry(Long localizationId) {
+            this.localizationId = localizationId;
+            this.map = new RadioMap(localizationId, AppConfig.HORUS_BIN_WIDTH);
+            this.loaded = false;
+        }
+    }
+}
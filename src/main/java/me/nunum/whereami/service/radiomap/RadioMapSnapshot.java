@@ -0,0 +1,563 @@
+package me.nunum.whereami.service.radiomap;
+
+import me.nunum.whereami.model.request.FingerprintSample;
+import me.nunum.whereami.utils.AppConfig;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BooleanSupplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Immutable view of a {@link RadioMap}. The mean level of the access point
+ * {@code a} at the position {@code p} is stored in {@code means[p * apCount + a]},
+ * pairs never observed hold {@link #MISSING}.
+ * <p>
+ * The quantized negative log likelihood of each level bin of a pair is read
+ * from the off-heap table of the radio map, see {@link LevelHistograms}, at the
+ * row and column the snapshot maps the pair to. The table is shared with the
+ * map and updated in place, so it may count fingerprints read since.
+ * <p>
+ * Positions are grouped by building and floor. When a localization spans more
+ * than one floor, {@link #forScan(List)} picks the floor of a scan with a
+ * nearest centroid classifier and hands out a snapshot of that floor only, so
+ * the algorithms score the positions of one floor instead of the whole building.
+ * <p>
+ * The {@link VantagePointTree} of a large snapshot is built in the background
+ * when the snapshot is published; until it is ready, searches use the latest
+ * older snapshot whose tree is, see {@link #indexed()}.
+ */
+public final class RadioMapSnapshot {
+
+    public static final float MISSING = -100f;
+
+    private static final Logger LOGGER = Logger.getLogger(RadioMapSnapshot.class.getSimpleName());
+
+    private static final ExecutorService TREE_BUILDER = Executors.newSingleThreadExecutor(r -> {
+        final Thread thread = new Thread(r, "RadioMap-VantagePointTree");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Long localizationId;
+    private final long lastFingerprintId;
+    private final long[] positionIds;
+    private final long[] partitions;
+    private final Map<String, Integer> apIndex;
+    private final float[] means;
+    private final int[] counts;
+    private final ByteBuffer likelihoods;
+
+    /**
+     * Row of the likelihood table of each position and column of each access point
+     */
+    private final int[] likelihoodRows;
+    private final int[] likelihoodColumns;
+    private final int likelihoodStride;
+
+    private final int bins;
+    private final int binWidth;
+
+    private final FutureTask<VantagePointTree> tree;
+
+    /**
+     * This snapshot once its tree is built, until then the latest older one whose tree is
+     */
+    private volatile RadioMapSnapshot indexed;
+
+    private final AtomicReference<Floors> floors = new AtomicReference<>();
+
+    RadioMapSnapshot(Long localizationId,
+                     long lastFingerprintId,
+                     long[] positionIds,
+                     long[] partitions,
+                     Map<String, Integer> apIndex,
+                     float[] means,
+                     int[] counts,
+                     ByteBuffer likelihoods,
+                     int[] likelihoodRows,
+                     int[] likelihoodColumns,
+                     int likelihoodStride,
+                     int bins,
+                     int binWidth) {
+        this.localizationId = localizationId;
+        this.lastFingerprintId = lastFingerprintId;
+        this.positionIds = positionIds;
+        this.partitions = partitions;
+        this.apIndex = Collections.unmodifiableMap(apIndex);
+        this.means = means;
+        this.counts = counts;
+        this.likelihoods = likelihoods;
+        this.likelihoodRows = likelihoodRows;
+        this.likelihoodColumns = likelihoodColumns;
+        this.likelihoodStride = likelihoodStride;
+        this.bins = bins;
+        this.binWidth = binWidth;
+        this.tree = new FutureTask<VantagePointTree>(() -> new VantagePointTree(means, apIndex.size(), positionIds.length, lastFingerprintId)) {
+            @Override
+            protected void set(VantagePointTree built) {
+                super.set(built);
+                indexed = RadioMapSnapshot.this;
+            }
+        };
+    }
+
+    /**
+     * @param buildId Nullable building of a fingerprint
+     * @param floorId Nullable floor of a fingerprint
+     * @return Partition key of the building and floor
+     */
+    public static long partition(Integer buildId, Integer floorId) {
+        final long build = buildId == null ? 0L : buildId;
+        final long floor = floorId == null ? 0L : floorId;
+        return (build << 32) | (floor & 0xFFFFFFFFL);
+    }
+
+    public Long getLocalizationId() {
+        return localizationId;
+    }
+
+    public long getLastFingerprintId() {
+        return lastFingerprintId;
+    }
+
+    public int positionCount() {
+        return positionIds.length;
+    }
+
+    public int apCount() {
+        return apIndex.size();
+    }
+
+    public boolean isEmpty() {
+        return positionIds.length == 0 || apIndex.isEmpty();
+    }
+
+    public long positionId(int position) {
+        return positionIds[position];
+    }
+
+    /**
+     * @return Partition key of the position, see {@link #partition(Integer, Integer)}
+     */
+    public long partitionOf(int position) {
+        return partitions[position];
+    }
+
+    /**
+     * @return Number of building and floor partitions of the localization
+     */
+    public int partitionCount() {
+        return floors().keys.length;
+    }
+
+    /**
+     * @param bssid Access point
+     * @return Column of the access point or -1 when it was never observed
+     */
+    public int apIndex(String bssid) {
+        final Integer index = apIndex.get(bssid);
+        return index == null ? -1 : index;
+    }
+
+    public float mean(int position, int ap) {
+        return means[position * apIndex.size() + ap];
+    }
+
+    public int count(int position, int ap) {
+        return counts[position * apIndex.size() + ap];
+    }
+
+    public int bins() {
+        return bins;
+    }
+
+    /**
+     * @param level Level in dBm
+     * @return Histogram bin of the level
+     */
+    public int bin(int level) {
+        return LevelHistograms.bin(level, binWidth, bins);
+    }
+
+    /**
+     * @return Quantized negative log likelihood of observing the bin at the pair
+     */
+    public int penalty(int position, int ap, int bin) {
+        return likelihoods.get(likelihoodRow(position) + likelihoodColumn(ap) + bin) & 0xFF;
+    }
+
+    /**
+     * @return Likelihood table, see {@link #likelihoodRow(int)} and {@link #likelihoodColumn(int)}
+     */
+    ByteBuffer likelihoods() {
+        return likelihoods;
+    }
+
+    /**
+     * @return Offset of the row of the position in the likelihood table
+     */
+    int likelihoodRow(int position) {
+        return likelihoodRows[position] * likelihoodStride * bins;
+    }
+
+    /**
+     * @return Offset of the bins of the access point inside a row of the likelihood table
+     */
+    int likelihoodColumn(int ap) {
+        return likelihoodColumns[ap] * bins;
+    }
+
+    Map<String, Integer> apIndex() {
+        return apIndex;
+    }
+
+    float[] means() {
+        return means;
+    }
+
+    int[] counts() {
+        return counts;
+    }
+
+    long[] positionIds() {
+        return positionIds;
+    }
+
+    /**
+     * Narrow the snapshot to the floor the scan was most likely taken on
+     *
+     * @param samples Scan
+     * @return Snapshot of the floor, or this snapshot when it has a single floor
+     * or the scan does not hear any known access point
+     */
+    public RadioMapSnapshot forScan(List<FingerprintSample> samples) {
+
+        final Floors current = floors();
+
+        if (current.keys.length < 2) {
+            return this;
+        }
+
+        final Projection projection = project(samples);
+
+        if (projection.isEmpty()) {
+            return this;
+        }
+
+        return current.snapshot(this, current.classify(projection, apIndex.size()));
+    }
+
+    /**
+     * @param projection Scan projected over this snapshot
+     * @return Partition key of the floor closest to the scan
+     */
+    public long classifyPartition(Projection projection) {
+        final Floors current = floors();
+        return current.keys[current.classify(projection, apIndex.size())];
+    }
+
+    private Floors floors() {
+
+        final Floors current = floors.get();
+
+        if (current != null) {
+            return current;
+        }
+
+        floors.compareAndSet(null, new Floors(partitions, means, counts, apIndex.size()));
+
+        return floors.get();
+    }
+
+    /**
+     * Snapshot holding only the given positions, in the same order, and the
+     * access points observed at any of them. It reads the likelihood table of
+     * this snapshot through its own rows and columns, nothing is copied.
+     */
+    private RadioMapSnapshot subset(int[] positions) {
+
+        final int aps = apIndex.size();
+
+        final String[] bssids = new String[aps];
+        apIndex.forEach((bssid, column) -> bssids[column] = bssid);
+
+        final Map<String, Integer> subsetApIndex = new HashMap<>();
+        final int[] columns = new int[aps];
+
+        for (int a = 0; a < aps; a++) {
+            columns[a] = -1;
+            for (int p : positions) {
+                if (counts[p * aps + a] > 0) {
+                    columns[a] = subsetApIndex.size();
+                    subsetApIndex.put(bssids[a], columns[a]);
+                    break;
+                }
+            }
+        }
+
+        final int subsetAps = subsetApIndex.size();
+
+        final int[] subsetRows = new int[positions.length];
+        final int[] subsetColumns = new int[subsetAps];
+
+        for (int a = 0; a < aps; a++) {
+            if (columns[a] >= 0) {
+                subsetColumns[columns[a]] = likelihoodColumns[a];
+            }
+        }
+
+        final long[] subsetIds = new long[positions.length];
+        final long[] subsetPartitions = new long[positions.length];
+        final float[] subsetMeans = new float[positions.length * subsetAps];
+        final int[] subsetCounts = new int[positions.length * subsetAps];
+
+        for (int i = 0; i < positions.length; i++) {
+
+            final int p = positions[i];
+
+            subsetIds[i] = positionIds[p];
+            subsetRows[i] = likelihoodRows[p];
+            subsetPartitions[i] = partitions[p];
+
+            for (int a = 0; a < aps; a++) {
+                if (columns[a] >= 0) {
+                    subsetMeans[i * subsetAps + columns[a]] = means[p * aps + a];
+                    subsetCounts[i * subsetAps + columns[a]] = counts[p * aps + a];
+                }
+            }
+        }
+
+        return new RadioMapSnapshot(localizationId,
+                lastFingerprintId,
+                subsetIds,
+                subsetPartitions,
+                subsetApIndex,
+                subsetMeans,
+                subsetCounts,
+                likelihoods,
+                subsetRows,
+                subsetColumns,
+                likelihoodStride,
+                bins,
+                binWidth);
+    }
+
+    /**
+     * @return Vantage point tree over the positions, built on first use
+     */
+    public VantagePointTree vantagePointTree() {
+
+        // Builds the tree unless it is built or being built already
+        tree.run();
+
+        try {
+            return tree.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the vantage point tree", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Could not build the vantage point tree", e.getCause());
+        }
+    }
+
+    /**
+     * @return Snapshot whose tree serves the searches: this one when its tree
+     * is built, else the latest older snapshot whose tree is, empty when none is
+     */
+    public Optional<RadioMapSnapshot> indexed() {
+        return Optional.ofNullable(indexed);
+    }
+
+    /**
+     * Keep searching the tree of the previous snapshot while this one is built
+     *
+     * @param previous Snapshot this one replaces
+     */
+    void succeed(RadioMapSnapshot previous) {
+        if (indexed == null && previous != null) {
+            indexed = previous.indexed;
+        }
+    }
+
+    /**
+     * Build the vantage point tree on a background thread, when the snapshot
+     * is large enough for it to be used
+     *
+     * @param stillCurrent Checked right before building, so the snapshots
+     *                     replaced meanwhile are skipped
+     */
+    void buildTreeInBackground(BooleanSupplier stillCurrent) {
+
+        if (positionIds.length < AppConfig.VP_TREE_MIN_POSITIONS || tree.isDone()) {
+            return;
+        }
+
+        TREE_BUILDER.execute(() -> {
+            if (stillCurrent.getAsBoolean()) {
+                try {
+                    vantagePointTree();
+                } catch (RuntimeException e) {
+                    LOGGER.log(Level.WARNING, "Could not build the vantage point tree of localization " + localizationId, e);
+                }
+            }
+        });
+    }
+
+    /**
+     * Project a scan over the known access points. Samples of unknown access
+     * points are dropped, repeated samples of the same access point keep the
+     * strongest level.
+     *
+     * @param samples Scan
+     * @return Columns and levels of the samples kept, see {@link Projection}
+     */
+    public Projection project(List<FingerprintSample> samples) {
+
+        final int[] columns = new int[samples.size()];
+        final float[] levels = new float[samples.size()];
+
+        int size = 0;
+
+        for (FingerprintSample sample : samples) {
+
+            final int column = apIndex(sample.getBssid());
+
+            if (column < 0) {
+                continue;
+            }
+
+            int i = 0;
+            while (i < size && columns[i] != column) {
+                i++;
+            }
+
+            if (i == size) {
+                columns[size] = column;
+                levels[size] = sample.getLevelDBM();
+                size++;
+            } else if (levels[i] < sample.getLevelDBM()) {
+                levels[i] = sample.getLevelDBM();
+            }
+        }
+
+        return new Projection(columns, levels, size);
+    }
+
+    /**
+     * Floors of a snapshot. The centroid of a floor is the average, over its
+     * positions, of the mean level of every access point, or {@link #MISSING}
+     * when no position of the floor observed it. Floor snapshots are built on
+     * first use, without locking the floors the other scans are narrowed to.
+     */
+    private static final class Floors {
+
+        private final long[] keys;
+        private final int[][] positions;
+        private final float[] centroids;
+        private final ConcurrentHashMap<Integer, RadioMapSnapshot> snapshots;
+
+        private Floors(long[] partitions, float[] means, int[] counts, int aps) {
+
+            final Map<Long, List<Integer>> grouped = new TreeMap<>();
+
+            for (int p = 0; p < partitions.length; p++) {
+                grouped.computeIfAbsent(partitions[p], k -> new ArrayList<>()).add(p);
+            }
+
+            this.keys = new long[grouped.size()];
+            this.positions = new int[grouped.size()][];
+            this.centroids = new float[grouped.size() * aps];
+            this.snapshots = new ConcurrentHashMap<>(grouped.size());
+
+            int f = 0;
+
+            for (Map.Entry<Long, List<Integer>> e : grouped.entrySet()) {
+
+                keys[f] = e.getKey();
+                positions[f] = e.getValue().stream().mapToInt(Integer::intValue).toArray();
+
+                for (int a = 0; a < aps; a++) {
+
+                    double sum = 0;
+                    int observed = 0;
+
+                    for (int p : positions[f]) {
+                        if (counts[p * aps + a] > 0) {
+                            sum += means[p * aps + a];
+                            observed++;
+                        }
+                    }
+
+                    centroids[f * aps + a] = observed == 0 ? MISSING : (float) (sum / observed);
+                }
+
+                f++;
+            }
+        }
+
+        private int classify(Projection projection, int aps) {
+
+            int best = 0;
+            double bestDistance = Double.MAX_VALUE;
+
+            for (int f = 0; f < keys.length; f++) {
+
+                double distance = 0;
+
+                for (int i = 0; i < projection.size; i++) {
+                    final double delta = projection.levels[i] - centroids[f * aps + projection.columns[i]];
+                    distance += delta * delta;
+                }
+
+                if (distance < bestDistance) {
+                    bestDistance = distance;
+                    best = f;
+                }
+            }
+
+            return best;
+        }
+
+        private RadioMapSnapshot snapshot(RadioMapSnapshot parent, int floor) {
+            return snapshots.computeIfAbsent(floor, f -> {
+                final RadioMapSnapshot subset = parent.subset(positions[f]);
+                subset.buildTreeInBackground(() -> true);
+                return subset;
+            });
+        }
+    }
+
+    /**
+     * A scan projected over the columns of a snapshot
+     */
+    public static final class Projection {
+
+        public final int[] columns;
+        public final float[] levels;
+        public final int size;
+
+        Projection(int[] columns, float[] levels, int size) {
+            this.columns = columns;
+            this.levels = levels;
+            this.size = size;
+        }
+
+        public boolean isEmpty() {
+            return size == 0;
+        }
+    }
+}
@@ -0,0 +1,263 @@
+package me.nunum.whereami.service.radiomap;
+
+import java.util.Random;
+
+/**
+ * Vantage point tree over the rows of a dense radio map, euclidean distance.
+ * <p>
+ * Every node keeps a position, the vantage point, and the median distance from
+ * it to the positions of its subtree. Positions closer than the median go to
+ * the inside child, the remaining ones to the outside child. A search prunes
+ * the subtrees that can not hold a point closer than the current k-th best.
+ * <p>
+ * Nodes are kept in parallel primitive arrays, indexed by node id.
+ * <p>
+ * The search may stop after a budget of visited nodes. An exhausted budget
+ * trades recall for latency: the result holds the best points seen so far,
+ * visited closest subtree first.
+ */
+public final class VantagePointTree {
+
+    private static final int NONE = -1;
+
+    private final float[] rows;
+    private final int dimensions;
+
+    private final int[] point;
+    private final float[] radius;
+    private final int[] inside;
+    private final int[] outside;
+
+    private final int root;
+
+    private int nodes;
+
+    /**
+     * @param rows       Row major matrix, one row per position
+     * @param dimensions Columns of the matrix
+     * @param positions  Rows of the matrix
+     * @param seed       Seed of the vantage point selection
+     */
+    public VantagePointTree(float[] rows, int dimensions, int positions, long seed) {
+        this.rows = rows;
+        this.dimensions = dimensions;
+        this.point = new int[positions];
+        this.radius = new float[positions];
+        this.inside = new int[positions];
+        this.outside = new int[positions];
+        this.nodes = 0;
+
+        final int[] items = new int[positions];
+        for (int i = 0; i < positions; i++) {
+            items[i] = i;
+        }
+
+        this.root = build(items, new float[positions], 0, positions, new Random(seed));
+    }
+
+    public int size() {
+        return nodes;
+    }
+
+    /**
+     * @param query    Dense vector with the same dimensions of the rows
+     * @param k        Number of neighbours
+     * @param maxVisits Nodes visited before giving up, zero or less for an exact search
+     * @return Nearest rows found
+     */
+    public Neighbours search(float[] query, int k, int maxVisits) {
+
+        final Neighbours neighbours = new Neighbours(Math.max(1, Math.min(k, Math.max(1, nodes))));
+
+        if (root != NONE) {
+            final int[] budget = {maxVisits <= 0 ? Integer.MAX_VALUE : maxVisits};
+            search(root, query, neighbours, budget);
+        }
+
+        return neighbours;
+    }
+
+    private void search(int node, float[] query, Neighbours neighbours, int[] budget) {
+
+        if (node == NONE || budget[0] <= 0) {
+            return;
+        }
+
+        budget[0]--;
+
+        final float d = (float) Math.sqrt(squaredDistance(query, point[node]));
+
+        neighbours.offer(point[node], d);
+
+        final float mu = radius[node];
+
+        if (d < mu) {
+            search(inside[node], query, neighbours, budget);
+            if (d + neighbours.worst() >= mu) {
+                search(outside[node], query, neighbours, budget);
+            }
+        } else {
+            search(outside[node], query, neighbours, budget);
+            if (d - neighbours.worst() <= mu) {
+                search(inside[node], query, neighbours, budget);
+            }
+        }
+    }
+
+    private int build(int[] items, float[] distances, int from, int to, Random random) {
+
+        if (from >= to) {
+            return NONE;
+        }
+
+        final int node = nodes++;
+
+        // Move a random vantage point to the front
+        swap(items, from, from + random.nextInt(to - from));
+
+        point[node] = items[from];
+        inside[node] = NONE;
+        outside[node] = NONE;
+
+        if (to - from == 1) {
+            radius[node] = 0f;
+            return node;
+        }
+
+        for (int i = from + 1; i < to; i++) {
+            distances[i] = (float) Math.sqrt(squaredDistance(rows, items[from] * dimensions, items[i] * dimensions));
+        }
+
+        final int median = (from + 1 + to) >>> 1;
+
+        select(items, distances, from + 1, to - 1, median);
+
+        radius[node] = distances[median];
+
+        inside[node] = build(items, distances, from + 1, median, random);
+        outside[node] = build(items, distances, median, to, random);
+
+        return node;
+    }
+
+    private float squaredDistance(float[] query, int row) {
+
+        final int offset = row * dimensions;
+
+        float sum = 0f;
+
+        for (int a = 0; a < dimensions; a++) {
+            final float d = query[a] - rows[offset + a];
+            sum += d * d;
+        }
+
+        return sum;
+    }
+
+    private float squaredDistance(float[] matrix, int left, int right) {
+
+        float sum = 0f;
+
+        for (int a = 0; a < dimensions; a++) {
+            final float d = matrix[left + a] - matrix[right + a];
+            sum += d * d;
+        }
+
+        return sum;
+    }
+
+    /**
+     * Quickselect of items[lo..hi] by distance, leaving the k-th smallest at k
+     */
+    private static void select(int[] items, float[] distances, int lo, int hi, int k) {
+
+        while (lo < hi) {
+
+            final float pivot = distances[(lo + hi) >>> 1];
+
+            int i = lo;
+            int j = hi;
+
+            while (i <= j) {
+                while (distances[i] < pivot) i++;
+                while (distances[j] > pivot) j--;
+                if (i <= j) {
+                    swap(items, i, j);
+                    swap(distances, i, j);
+                    i++;
+                    j--;
+                }
+            }
+
+            if (k <= j) {
+                hi = j;
+            } else if (k >= i) {
+                lo = i;
+            } else {
+                return;
+            }
+        }
+    }
+
+    private static void swap(int[] array, int i, int j) {
+        final int tmp = array[i];
+        array[i] = array[j];
+        array[j] = tmp;
+    }
+
+    private static void swap(float[] array, int i, int j) {
+        final float tmp = array[i];
+        array[i] = array[j];
+        array[j] = tmp;
+    }
+
+    /**
+     * Bounded list of the nearest rows, sorted by increasing distance
+     */
+    public static final class Neighbours {
+
+        private final int[] rows;
+        private final float[] distances;
+        private int size;
+
+        Neighbours(int capacity) {
+            this.rows = new int[capacity];
+            this.distances = new float[capacity];
+            this.size = 0;
+        }
+
+        void offer(int row, float distance) {
+
+            if (size == rows.length && distance >= distances[size - 1]) {
+                return;
+            }
+
+            int i = size == rows.length ? size - 1 : size++;
+
+            while (i > 0 && distances[i - 1] > distance) {
+                distances[i] = distances[i - 1];
+                rows[i] = rows[i - 1];
+                i--;
+            }
+
+            distances[i] = distance;
+            rows[i] = row;
+        }
+
+        float worst() {
+            return size < rows.length ? Float.MAX_VALUE : distances[size - 1];
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public int row(int i) {
+            return rows[i];
+        }
+
+        public float distance(int i) {
+            return distances[i];
+        }
+    }
+}
@@ -0,0 +1,228 @@
+package me.nunum.whereami.service.radiomap;
+
+import me.nunum.whereami.model.request.FingerprintSample;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.IntStream;
+
+/**
+ * Weighted k nearest neighbours over the dense radio map.
+ * <p>
+ * The scan is expanded to a dense vector over every access point of the map,
+ * the ones it did not hear set to {@link RadioMapSnapshot#MISSING}, so the
+ * distance to a position is a plain loop over two float arrays without
+ * branches that the JIT can unroll and vectorize. Maps above the parallel
+ * threshold, in cells, are scored in chunks of positions on the common pool.
+ * <p>
+ * Maps with many positions are searched through the snapshot
+ * {@link VantagePointTree} instead, optionally bounded by a budget of
+ * visited nodes. While the tree of a new snapshot is built in the background
+ * the search runs over the latest snapshot whose tree is ready, and over the
+ * whole map when there is none yet.
+ * <p>
+ * The k closest positions are weighted by the inverse of their distance and
+ * the weights normalized into the confidence of each candidate.
+ */
+public final class WeightedKnnPredictor implements BuiltInAlgorithm {
+
+    private static final float EPSILON = 1e-3f;
+
+    private static final int CHUNK_POSITIONS = 256;
+
+    private final int k;
+
+    private final long parallelThreshold;
+
+    private final int treeMinPositions;
+
+    private final int treeMaxVisits;
+
+    public WeightedKnnPredictor(int k, long parallelThreshold) {
+        this(k, parallelThreshold, Integer.MAX_VALUE, 0);
+    }
+
+    /**
+     * @param k                 Neighbours
+     * @param parallelThreshold Cells above which a brute force scoring runs in parallel
+     * @param treeMinPositions  Positions above which the vantage point tree is used
+     * @param treeMaxVisits     Node budget of a tree search, zero or less for an exact search
+     */
+    public WeightedKnnPredictor(int k, long parallelThreshold, int treeMinPositions, int treeMaxVisits) {
+        this.k = Math.max(1, k);
+        this.parallelThreshold = parallelThreshold;
+        this.treeMinPositions = treeMinPositions;
+        this.treeMaxVisits = treeMaxVisits;
+    }
+
+    @Override
+    public List<Candidate> predict(RadioMapSnapshot snapshot, List<FingerprintSample> samples) {
+
+        if (snapshot.isEmpty() || samples.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        if (snapshot.positionCount() >= treeMinPositions) {
+
+            final Optional<RadioMapSnapshot> indexed = snapshot.indexed();
+
+            if (indexed.isPresent()) {
+                return search(indexed.get(), samples);
+            }
+        }
+
+        final float[] query = query(snapshot, samples);
+
+        if (query == null) {
+            return Collections.emptyList();
+        }
+
+        return nearest(snapshot, distances(snapshot, query));
+    }
+
+    /**
+     * @return Dense vector of the scan over the access points of the snapshot,
+     * null when it does not hear any of them
+     */
+    private static float[] query(RadioMapSnapshot snapshot, List<FingerprintSample> samples) {
+
+        final RadioMapSnapshot.Projection scan = snapshot.project(samples);
+
+        if (scan.isEmpty()) {
+            return null;
+        }
+
+        final float[] query = new float[snapshot.apCount()];
+        Arrays.fill(query, RadioMapSnapshot.MISSING);
+
+        for (int i = 0; i < scan.size; i++) {
+            query[scan.columns[i]] = scan.levels[i];
+        }
+
+        return query;
+    }
+
+    private List<Candidate> search(RadioMapSnapshot snapshot, List<FingerprintSample> samples) {
+
+        final float[] query = query(snapshot, samples);
+
+        if (query == null) {
+            return Collections.emptyList();
+        }
+
+        final VantagePointTree.Neighbours neighbours = snapshot
+                .vantagePointTree()
+                .search(query, this.k, this.treeMaxVisits);
+
+        final int[] best = new int[neighbours.size()];
+        final float[] bestDistance = new float[neighbours.size()];
+
+        for (int i = 0; i < best.length; i++) {
+            best[i] = neighbours.row(i);
+            bestDistance[i] = neighbours.distance(i);
+        }
+
+        return candidates(snapshot, best, bestDistance);
+    }
+
+    /**
+     * @return Squared euclidean distance from the query to every position
+     */
+    float[] distances(RadioMapSnapshot snapshot, float[] query) {
+
+        final int positions = snapshot.positionCount();
+        final float[] distances = new float[positions];
+
+        if ((long) positions * query.length < parallelThreshold || positions <= CHUNK_POSITIONS) {
+            score(snapshot.means(), query, distances, 0, positions);
+        } else {
+            final int chunks = (positions + CHUNK_POSITIONS - 1) / CHUNK_POSITIONS;
+            IntStream.range(0, chunks).parallel().forEach(c -> {
+                final int from = c * CHUNK_POSITIONS;
+                score(snapshot.means(), query, distances, from, Math.min(positions, from + CHUNK_POSITIONS));
+            });
+        }
+
+        return distances;
+    }
+
+    private static void score(float[] means, float[] query, float[] distances, int from, int to) {
+
+        final int aps = query.length;
+
+        for (int p = from; p < to; p++) {
+
+            final int row = p * aps;
+
+            float sum = 0f;
+
+            for (int a = 0; a < aps; a++) {
+                final float d = query[a] - means[row + a];
+                sum += d * d;
+            }
+
+            distances[p] = sum;
+        }
+    }
+
+    private List<Candidate> nearest(RadioMapSnapshot snapshot, float[] distances) {
+
+        final int size = Math.min(this.k, distances.length);
+
+        // Insertion into a sorted array of k elements, k is small
+        final int[] best = new int[size];
+        final float[] bestDistance = new float[size];
+        Arrays.fill(bestDistance, Float.MAX_VALUE);
+
+        for (int p = 0; p < distances.length; p++) {
+
+            final float d = distances[p];
+
+            if (d >= bestDistance[size - 1]) {
+                continue;
+            }
+
+            int i = size - 1;
+            while (i > 0 && bestDistance[i - 1] > d) {
+                bestDistance[i] = bestDistance[i - 1];
+                best[i] = best[i - 1];
+                i--;
+            }
+
+            bestDistance[i] = d;
+            best[i] = p;
+        }
+
+        for (int i = 0; i < size; i++) {
+            bestDistance[i] = (float) Math.sqrt(bestDistance[i]);
+        }
+
+        return candidates(snapshot, best, bestDistance);
+    }
+
+    /**
+     * @param best         Positions sorted by distance
+     * @param bestDistance Euclidean distance of each position
+     */
+    private static List<Candidate> candidates(RadioMapSnapshot snapshot, int[] best, float[] bestDistance) {
+
+        final double[] weights = new double[best.length];
+        double total = 0;
+
+        for (int i = 0; i < best.length; i++) {
+            weights[i] = 1.0 / (bestDistance[i] + EPSILON);
+            total += weights[i];
+        }
+
+        final List<Candidate> candidates = new ArrayList<>(best.length);
+
+        for (int i = 0; i < best.length; i++) {
+            candidates.add(new Candidate(snapshot.positionId(best[i]), weights[i] / total));
+        }
+
+        return candidates;
+    }
+}
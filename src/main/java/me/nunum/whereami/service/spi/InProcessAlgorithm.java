@@ -0,0 +1,49 @@
+package me.nunum.whereami.service.spi;
+
+import me.nunum.whereami.model.Fingerprint;
+import me.nunum.whereami.model.request.FingerprintSample;
+import me.nunum.whereami.service.radiomap.Candidate;
+
+import java.util.List;
+
+/**
+ * Algorithm implementation running inside this server. Implementations are
+ * discovered with {@link java.util.ServiceLoader}, so a plugin only needs a
+ * jar on the classpath with a
+ * {@code META-INF/services/me.nunum.whereami.service.spi.InProcessAlgorithm} entry.
+ * <p>
+ * Implementations are shared by every thread and must be thread safe.
+ */
+public interface InProcessAlgorithm {
+
+    /**
+     * @return Unique name, referenced by the
+     * {@link me.nunum.whereami.model.AlgorithmProvider#IN_PROCESS_PROVIDER_IMPLEMENTATION_KEY} property
+     */
+    String name();
+
+    /**
+     * Receive a batch of the fingerprints of a localization, in increasing id order
+     *
+     * @param localizationId Localization Id
+     * @param isDrained      True on the last call of a training, fingerprints is then empty
+     * @param fingerprints   Batch of fingerprints
+     */
+    default void train(Long localizationId, boolean isDrained, List<Fingerprint> fingerprints) {
+    }
+
+    /**
+     * @return True when the algorithm predicts over the shared radio map, fed on
+     * ingestion, and has no use for the fingerprints handed to {@link #train}
+     */
+    default boolean readsRadioMap() {
+        return false;
+    }
+
+    /**
+     * @param localizationId Localization Id
+     * @param samples        Scan
+     * @return Candidates sorted by decreasing confidence, empty when nothing matches
+     */
+    List<Candidate> predict(Long localizationId, List<FingerprintSample> samples);
+}
@@ -0,0 +1,59 @@
+package me.nunum.whereami.service.spi;
+
+import me.nunum.whereami.model.AlgorithmProvider;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.ServiceLoader;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Registry of the {@link InProcessAlgorithm} found on the classpath, keyed by name
+ */
+public final class InProcessAlgorithms {
+
+    private static final Logger LOGGER = Logger.getLogger(InProcessAlgorithms.class.getSimpleName());
+
+    private static final Map<String, InProcessAlgorithm> IMPLEMENTATIONS = load();
+
+    private InProcessAlgorithms() {
+    }
+
+    private static Map<String, InProcessAlgorithm> load() {
+
+        final HashMap<String, InProcessAlgorithm> implementations = new HashMap<>();
+
+        for (InProcessAlgorithm algorithm : ServiceLoader.load(InProcessAlgorithm.class)) {
+
+            final InProcessAlgorithm previous = implementations.putIfAbsent(algorithm.name(), algorithm);
+
+            if (previous == null) {
+                LOGGER.log(Level.INFO, "In-process algorithm {0} registered", algorithm.name());
+            } else {
+                LOGGER.log(Level.WARNING, "In-process algorithm {0} is provided by {1} and {2}. Keeping the first",
+                        new Object[]{algorithm.name(), previous.getClass().getName(), algorithm.getClass().getName()});
+            }
+        }
+
+        return Collections.unmodifiableMap(implementations);
+    }
+
+    public static Optional<InProcessAlgorithm> implementation(String name) {
+        return Optional.ofNullable(name).map(IMPLEMENTATIONS::get);
+    }
+
+    /**
+     * @param providerProperties Properties of an {@link AlgorithmProvider.METHOD#IN_PROCESS} provider
+     * @return Implementation referenced by the properties
+     */
+    public static Optional<InProcessAlgorithm> implementation(Map<String, String> providerProperties) {
+        return implementation(providerProperties.get(AlgorithmProvider.IN_PROCESS_PROVIDER_IMPLEMENTATION_KEY));
+    }
+
+    public static boolean isRegistered(String name) {
+        return implementation(name).isPresent();
+    }
+}
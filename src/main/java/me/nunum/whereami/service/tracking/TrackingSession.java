@@ -0,0 +1,74 @@
+package me.nunum.whereami.service.tracking;
+
+import me.nunum.whereami.model.request.FingerprintSample;
+import me.nunum.whereami.service.radiomap.Candidate;
+import me.nunum.whereami.service.radiomap.PositionFilter;
+import me.nunum.whereami.service.radiomap.RadioMapSnapshot;
+
+import java.util.List;
+
+/**
+ * State of a device streaming scans of one localization, see {@link PositionFilter}
+ */
+public final class TrackingSession {
+
+    private final String instance;
+
+    private final PositionFilter filter;
+
+    private Long localizationId;
+
+    private long scans;
+
+    private volatile long lastActivity;
+
+    TrackingSession(String instance, PositionFilter filter, long now) {
+        this.instance = instance;
+        this.filter = filter;
+        this.lastActivity = now;
+    }
+
+    /**
+     * @return App instance of the device, see {@link me.nunum.whereami.utils.AppConfig#X_APP_HEADER}
+     */
+    public String getInstance() {
+        return instance;
+    }
+
+    public synchronized boolean isBoundTo(Long localizationId) {
+        return this.localizationId != null && this.localizationId.equals(localizationId);
+    }
+
+    /**
+     * Track another localization, forgetting the previous belief
+     *
+     * @param localizationId Localization Id
+     */
+    public synchronized void bind(Long localizationId) {
+        this.localizationId = localizationId;
+        this.scans = 0;
+        this.filter.reset();
+    }
+
+    /**
+     * @param snapshot Radio map of the bound localization
+     * @param samples  Scan
+     * @return Smoothed candidates, see {@link PositionFilter#update(RadioMapSnapshot, List)}
+     */
+    public synchronized List<Candidate> update(RadioMapSnapshot snapshot, List<FingerprintSample> samples) {
+        this.scans++;
+        return this.filter.update(snapshot, samples);
+    }
+
+    public synchronized long scans() {
+        return scans;
+    }
+
+    void touch(long now) {
+        this.lastActivity = now;
+    }
+
+    boolean isIdle(long now, long idleMillis) {
+        return now - this.lastActivity > idleMillis;
+    }
+}
@@ -0,0 +1,33 @@
+package me.nunum.whereami.service.tracking;
+
+import me.nunum.whereami.framework.domain.Executable;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Close the tracking sessions idle for too long
+ */
+public class TrackingSessionExpiryService extends Executable {
+
+    private static final Logger LOGGER = Logger.getLogger(TrackingSessionExpiryService.class.getSimpleName());
+
+    private final TrackingSessions<?> sessions;
+
+    public TrackingSessionExpiryService(TrackingSessions<?> sessions) {
+        super();
+        this.sessions = sessions;
+    }
+
+    @Override
+    public Boolean call() throws Exception {
+
+        final int expired = this.sessions.expireIdle();
+
+        if (expired > 0) {
+            LOGGER.log(Level.INFO, "Expired {0} idle tracking sessions", expired);
+        }
+
+        return true;
+    }
+}
@@ -0,0 +1,128 @@
+package me.nunum.whereami.service.tracking;
+
+import me.nunum.whereami.service.radiomap.PositionFilter;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Bounded registry of the open {@link TrackingSession}s, keyed by their
+ * connection. New sessions are refused above the limit and sessions idle for
+ * too long are handed to the expiry callback, which closes their connection.
+ *
+ * @param <K> Connection
+ */
+public final class TrackingSessions<K> {
+
+    private final ConcurrentHashMap<K, TrackingSession> sessions;
+
+    private final AtomicInteger size;
+
+    private final int maxSessions;
+
+    private final long idleMillis;
+
+    private final Supplier<PositionFilter> filters;
+
+    private final Consumer<K> onExpire;
+
+    /**
+     * @param maxSessions Maximum number of open sessions
+     * @param idleMillis  Inactivity after which a session expires
+     * @param filters     Supplier of a fresh filter per session
+     * @param onExpire    Called with the connection of every expired session
+     */
+    public TrackingSessions(int maxSessions, long idleMillis, Supplier<PositionFilter> filters, Consumer<K> onExpire) {
+        this.sessions = new ConcurrentHashMap<>();
+        this.size = new AtomicInteger();
+        this.maxSessions = maxSessions;
+        this.idleMillis = idleMillis;
+        this.filters = filters;
+        this.onExpire = onExpire;
+    }
+
+    /**
+     * @param connection Connection of the device
+     * @param instance   App instance of the device
+     * @return New session, empty when the registry is full
+     */
+    public Optional<TrackingSession> open(K connection, String instance) {
+
+        if (this.size.incrementAndGet() > this.maxSessions) {
+            this.size.decrementAndGet();
+            return Optional.empty();
+        }
+
+        final TrackingSession session = new TrackingSession(instance, this.filters.get(), System.currentTimeMillis());
+
+        if (this.sessions.putIfAbsent(connection, session) != null) {
+            this.size.decrementAndGet();
+            return Optional.of(this.sessions.get(connection));
+        }
+
+        return Optional.of(session);
+    }
+
+    /**
+     * @param connection Connection of the device
+     * @return Session of the connection, marked as active
+     */
+    public Optional<TrackingSession> get(K connection) {
+
+        final TrackingSession session = this.sessions.get(connection);
+
+        if (session != null) {
+            session.touch(System.currentTimeMillis());
+        }
+
+        return Optional.ofNullable(session);
+    }
+
+    public void close(K connection) {
+        if (this.sessions.remove(connection) != null) {
+            this.size.decrementAndGet();
+        }
+    }
+
+    /**
+     * Close the sessions idle for too long
+     *
+     * @return Number of sessions expired
+     */
+    public int expireIdle() {
+
+        final long now = System.currentTimeMillis();
+
+        final List<K> idle = new ArrayList<>();
+
+        this.sessions.forEach((connection, session) -> {
+            if (session.isIdle(now, this.idleMillis)) {
+                idle.add(connection);
+            }
+        });
+
+        for (K connection : idle) {
+            close(connection);
+            this.onExpire.accept(connection);
+        }
+
+        return idle.size();
+    }
+
+    public Map<String, Object> stats() {
+
+        final HashMap<String, Object> stats = new HashMap<>(2);
+
+        stats.put("sessions", this.sessions.size());
+        stats.put("maxSessions", this.maxSessions);
+
+        return stats;
+    }
+}
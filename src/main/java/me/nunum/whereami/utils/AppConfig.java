@@ -4,6 +4,7 @@ import com.google.auth.oauth2.GoogleCredentials;
 import com.google.firebase.FirebaseApp;
 import com.google.firebase.FirebaseOptions;
 import me.nunum.whereami.framework.interceptor.ClientLoggingInterceptor;
+import me.nunum.whereami.framework.persistence.ConnectionPool;
 import org.glassfish.jersey.client.ClientConfig;
 
 import java.io.FileInputStream;
@@ -36,10 +37,79 @@ public class AppConfig {
 
     public static final String X_APP_HEADER = "X-APP";
 
+    public static final String DB_DRIVER = System.getProperty("app.db.driver", "org.h2.Driver");
+    public static final String DB_JDBC_URL = System.getProperty("app.db.jdbc.url", "jdbc:h2:mem:test;DB_CLOSE_DELAY=-1");
+    public static final String DB_USER = System.getProperty("app.db.user", "sa");
+    public static final String DB_PASSWORD = System.getProperty("app.db.password", "");
+
+    public static final int DB_POOL_MIN_IDLE = Integer.getInteger("app.db.pool.min", 2);
+    public static final int DB_POOL_MAX_SIZE = Integer.getInteger("app.db.pool.max", 10);
+    public static final long DB_POOL_ACQUIRE_TIMEOUT_MILLIS = Long.getLong("app.db.pool.acquire.timeout.millis", 30000L);
+    public static final long DB_POOL_LEAK_DETECTION_MILLIS = Long.getLong("app.db.pool.leak.millis", 60000L);
+    public static final int DB_STATEMENT_CACHE_SIZE = Integer.getInteger("app.db.statement.cache", 64);
+    public static final int DB_STREAM_FETCH_SIZE = Integer.getInteger("app.db.stream.fetch", 500);
+
+    // Read replica served to read-only operations, none when the url is empty
+    public static final String DB_REPLICA_JDBC_URL = System.getProperty("app.db.replica.jdbc.url", "");
+    public static final String DB_REPLICA_USER = System.getProperty("app.db.replica.user", DB_USER);
+    public static final String DB_REPLICA_PASSWORD = System.getProperty("app.db.replica.password", DB_PASSWORD);
+
     public static final String EMAIL_HOST = System.getProperty("app.smtp.host", "");
     public static final String EMAIL_FROM = System.getProperty("app.no.reply.email", "no-reply@whereami.nunum.me");
     public static final String EMAIL_ADMIN_CONTACT = System.getProperty("app.admin.email", EMAIL_FROM);
 
+    public static final int PREDICTION_REQUEST_ID_BLOCK_SIZE = Integer.getInteger("app.prediction.request.id.block", 100);
+
+    public static final long PREDICTION_CACHE_TTL_MILLIS = Long.getLong("app.prediction.cache.ttl", 10_000L);
+    public static final int PREDICTION_CACHE_MAX_ENTRIES = Integer.getInteger("app.prediction.cache.size", 10_000);
+    public static final int PREDICTION_CACHE_TOP_K = Integer.getInteger("app.prediction.cache.top.k", 5);
+    public static final int PREDICTION_CACHE_BUCKET_DBM = Integer.getInteger("app.prediction.cache.bucket.dbm", 6);
+
+    public static final int PREDICTION_RETENTION_DAYS = Math.max(1, Integer.getInteger("app.prediction.retention.days", 30));
+    public static final int PREDICTION_RETENTION_CHUNK = Integer.getInteger("app.prediction.retention.chunk", 1000);
+    public static final long PREDICTION_RETENTION_PERIOD_HOURS = Long.getLong("app.prediction.retention.period.hours", 6L);
+    public static final int PREDICTION_ROLLUP_REROLL_DAYS = Integer.getInteger("app.prediction.rollup.reroll.days", 7);
+
+    public static final int HOUSEKEEPING_THREADS = Integer.getInteger("app.housekeeping.threads", 2);
+
+    public static final String FINGERPRINT_STORE_JPA = "jpa";
+    public static final String FINGERPRINT_STORE_SEGMENT = "segment";
+    public static final String FINGERPRINT_STORE = System.getProperty("app.fingerprint.store", FINGERPRINT_STORE_JPA);
+    public static final String FINGERPRINT_SEGMENT_DIR = System.getProperty("app.fingerprint.segment.dir", "fingerprints");
+    public static final int FINGERPRINT_SEGMENT_BYTES = Integer.getInteger("app.fingerprint.segment.bytes", 16 << 20);
+    public static final int FINGERPRINT_SEGMENT_INDEX_INTERVAL = Integer.getInteger("app.fingerprint.segment.index.interval", 64);
+    public static final long FINGERPRINT_COMPACTION_PERIOD_MINUTES = Long.getLong("app.fingerprint.compaction.period.minutes", 30L);
+
+    public static final int RADIO_MAP_LOAD_BATCH_SIZE = Integer.getInteger("app.radio.map.load.batch", 1000);
+    public static final long RADIO_MAP_REREAD_WINDOW = Long.getLong("app.radio.map.reread.window", 1000L);
+    public static final String RADIO_MAP_SNAPSHOT_DIR = System.getProperty("app.radio.map.snapshot.dir", "");
+    public static final long RADIO_MAP_SNAPSHOT_PERIOD_MINUTES = Long.getLong("app.radio.map.snapshot.period.minutes", 10L);
+
+    public static final int WKNN_K = Integer.getInteger("app.wknn.k", 3);
+    public static final long WKNN_PARALLEL_THRESHOLD = Long.getLong("app.wknn.parallel.cells", 1L << 18);
+
+    public static final int VP_TREE_MIN_POSITIONS = Integer.getInteger("app.vp.tree.min.positions", 200);
+    public static final int VP_TREE_MAX_VISITS = Integer.getInteger("app.vp.tree.max.visits", 0);
+
+    public static final int HORUS_K = Integer.getInteger("app.horus.k", 3);
+    public static final int HORUS_BIN_WIDTH = Integer.getInteger("app.horus.bin.dbm", 4);
+
+    public static final int PREDICTION_BATCH_MAX_SCANS = Integer.getInteger("app.prediction.batch.max", 1000);
+    public static final int PREDICTION_BATCH_GRAIN = Integer.getInteger("app.prediction.batch.grain", 4);
+    public static final int PREDICTION_BATCH_PARALLELISM = Integer.getInteger("app.prediction.batch.parallelism", Runtime.getRuntime().availableProcessors());
+
+    public static final int LOCALIZATION_DISCOVERY_MAX_RESULTS = Integer.getInteger("app.localization.discovery.max", 5);
+
+    public static final String TRACKING_PATH = "/tracking";
+    public static final int TRACKING_MAX_SESSIONS = Integer.getInteger("app.tracking.max.sessions", 1000);
+    public static final long TRACKING_IDLE_SECONDS = Long.getLong("app.tracking.idle.seconds", 120L);
+    public static final double TRACKING_STAY_PROBABILITY = Double.parseDouble(System.getProperty("app.tracking.stay", "0.8"));
+    public static final double TRACKING_SIGMA_DBM = Double.parseDouble(System.getProperty("app.tracking.sigma.dbm", "6"));
+    public static final int TRACKING_CANDIDATES = Integer.getInteger("app.tracking.candidates", 3);
+
+    public static final int SINK_RETRANSMISSIONS = Integer.getInteger("app.sink.retransmissions", 3);
+    public static final long SINK_ACK_TIMEOUT_SECONDS = Long.getLong("app.sink.ack.timeout.seconds", 60L);
+
 
     /**
      * @return See {@link FirebaseApp}
@@ -62,11 +132,12 @@ public class AppConfig {
         return firebaseApp;
     }
 
-    public static HashMap<String, String> persistenceUnitOverrideConfigs() {
+    public static HashMap<String, Object> persistenceUnitOverrideConfigs() {
 
-        final HashMap<String, String> map = new HashMap<>(1);
+        final HashMap<String, Object> map = new HashMap<>(2);
 
-        map.put("javax.persistence.jdbc.url", System.getProperty("app.db.jdbc.url", "jdbc:h2:mem:test"));
+        map.put("javax.persistence.nonJtaDataSource", ConnectionPool.getInstance().dataSource());
+        map.put("eclipselink.jdbc.batch-writing.size", System.getProperty("app.db.batch.size", "100"));
 
         return map;
     }
@@ -1,6 +1,7 @@
 package me.nunum.whereami.facade;
 
 import me.nunum.whereami.framework.interceptor.PrincipalInterceptor;
+import me.nunum.whereami.framework.persistence.repositories.Keyset;
 import me.nunum.whereami.model.Device;
 import me.nunum.whereami.model.Localization;
 import me.nunum.whereami.model.persistance.DeviceRepository;
@@ -18,6 +19,7 @@ import javax.ws.rs.core.Response;
 import java.security.Principal;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Vector;
 
@@ -33,6 +35,68 @@ public class LocalizationResourceTest extends JerseyTest {
     }
 
 
+    @Test
+    public void retrieveLocalizationsByCursor() {
+
+        LocalizationRepository localizationRepository = new LocalizationRepositoryJpa();
+
+        DeviceRepository deviceRepository = new DeviceRepositoryJpa();
+        Device device = deviceRepository.findOrPersist(() -> "retrieveLocalizationsByCursor");
+
+        for (int i = 0; i < 25; i++) {
+            localizationRepository.save(new Localization("retrieveLocalizationsByCursor" + i,
+                    "retrieveLocalizationsByCursor",
+                    0.0,
+                    0.0,
+                    false,
+                    false,
+                    false,
+                    device));
+        }
+
+        Response firstPage = target("localization")
+                .queryParam("owner", "true")
+                .request(MediaType.APPLICATION_JSON)
+                .header("X-APP", "retrieveLocalizationsByCursor")
+                .get();
+
+        final String cursor = firstPage.getHeaderString(Keyset.NEXT_HEADER);
+
+        final Vector first = firstPage.readEntity(Vector.class);
+
+        assertEquals("First page must retrieve 20 records", 20, first.size());
+        assertEquals("Requester owns the localizations", Boolean.TRUE, ((Map) first.get(0)).get("isOwner"));
+        assertTrue("Expecting a cursor for the next page", cursor != null);
+
+        // Inserted after the first page was read, must not shift the second one
+        localizationRepository.save(new Localization("retrieveLocalizationsByCursorLate",
+                "retrieveLocalizationsByCursor",
+                0.0,
+                0.0,
+                false,
+                false,
+                false,
+                device));
+
+        Response secondPage = target("localization")
+                .queryParam("owner", "true")
+                .queryParam("cursor", cursor)
+                .request(MediaType.APPLICATION_JSON)
+                .header("X-APP", "retrieveLocalizationsByCursor")
+                .get();
+
+        assertEquals("Second page must retrieve the remaining 5 records", 5, secondPage.readEntity(Vector.class).size());
+        assertEquals("Last page has no cursor", null, secondPage.getHeaderString(Keyset.NEXT_HEADER));
+
+        Response invalidCursor = target("localization")
+                .queryParam("cursor", "not a cursor")
+                .request(MediaType.APPLICATION_JSON)
+                .header("X-APP", "retrieveLocalizationsByCursor")
+                .get();
+
+        assertEquals(Response.Status.BAD_REQUEST.getStatusCode(), invalidCursor.getStatus());
+    }
+
     @Test
     public void retrieveLocalizations() {
 
@@ -162,6 +226,29 @@ public class LocalizationResourceTest extends JerseyTest {
 
     }
 
+    @Test
+    public void discoverWithoutSamples() {
+
+        HashMap<String, Object> payload = new HashMap<>();
+        payload.put("samples", new Vector<>());
+
+        Response empty = target("localization/discover")
+                .request(MediaType.APPLICATION_JSON)
+                .header("X-APP", "discoverWithoutSamples")
+                .buildPost(Entity.json(payload))
+                .invoke();
+
+        assertEquals("Empty scan", 400, empty.getStatus());
+
+        Response missing = target("localization/discover")
+                .request(MediaType.APPLICATION_JSON)
+                .header("X-APP", "discoverWithoutSamples")
+                .buildPost(Entity.json(new HashMap<>()))
+                .invoke();
+
+        assertEquals("Missing scan", 400, missing.getStatus());
+    }
+
     @Test
     public void deleteLocalization() {
 
@@ -0,0 +1,27 @@
+package me.nunum.whereami.framework.persistence;
+
+import me.nunum.whereami.model.persistance.DeviceRepository;
+import me.nunum.whereami.model.persistance.jpa.DeviceRepositoryJpa;
+import org.junit.Test;
+
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ConnectionPoolTest {
+
+    @Test
+    public void testPersistenceUnitUsesThePool() throws Exception {
+
+        try (DeviceRepository devices = new DeviceRepositoryJpa()) {
+            devices.size();
+        }
+
+        final Map<String, Object> stats = ConnectionPool.getInstance().stats();
+
+        assertTrue((long) stats.get("acquisitions") > 0);
+        assertEquals(0, stats.get("waiting"));
+        assertTrue((int) stats.get("total") <= (int) stats.get("maxSize"));
+    }
+}
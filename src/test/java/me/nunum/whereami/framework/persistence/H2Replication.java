@@ -0,0 +1,46 @@
+package me.nunum.whereami.framework.persistence;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Stand-in for the replication between a primary H2 database and its replica:
+ * the replica is rebuilt from a script of the primary whenever {@link #sync()}
+ * is called, and lags behind it in between.
+ */
+final class H2Replication {
+
+    private final DataSource primary;
+
+    private final DataSource replica;
+
+    H2Replication(DataSource primary, DataSource replica) {
+        this.primary = primary;
+        this.replica = replica;
+    }
+
+    void sync() throws SQLException {
+
+        try (Connection from = this.primary.getConnection();
+             Connection to = this.replica.getConnection();
+             Statement script = from.createStatement();
+             Statement apply = to.createStatement()) {
+
+            apply.execute("DROP ALL OBJECTS");
+
+            try (ResultSet statements = script.executeQuery("SCRIPT NOSETTINGS")) {
+                while (statements.next()) {
+
+                    final String sql = statements.getString(1);
+
+                    if (!sql.startsWith("--")) {
+                        apply.execute(sql);
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package me.nunum.whereami.framework.persistence;
+
+import me.nunum.whereami.framework.persistence.repositories.impl.jpa.UnitOfWork;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.Test;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import static org.junit.Assert.assertEquals;
+
+public class RoutingDataSourceTest {
+
+    private static DataSource h2(String name) {
+
+        final JdbcDataSource dataSource = new JdbcDataSource();
+
+        dataSource.setURL("jdbc:h2:mem:" + name + ";DB_CLOSE_DELAY=-1");
+        dataSource.setUser("sa");
+        dataSource.setPassword("");
+
+        return dataSource;
+    }
+
+    private static void write(DataSource dataSource, String sql) throws SQLException {
+
+        try (Connection connection = dataSource.getConnection();
+             Statement statement = connection.createStatement()) {
+
+            connection.setAutoCommit(false);
+            statement.executeUpdate(sql);
+            connection.commit();
+        }
+    }
+
+    private static int notes(DataSource dataSource) {
+
+        try (Connection connection = dataSource.getConnection();
+             Statement statement = connection.createStatement();
+             ResultSet count = statement.executeQuery("SELECT COUNT(*) FROM note")) {
+
+            count.next();
+
+            return count.getInt(1);
+
+        } catch (SQLException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @return Routing data source whose replica lags one note behind the primary
+     */
+    private static RoutingDataSource lagging(String name) throws SQLException {
+
+        final DataSource primary = h2(name + "-primary");
+        final DataSource replica = h2(name + "-replica");
+
+        write(primary, "CREATE TABLE note (id INT PRIMARY KEY)");
+        write(primary, "INSERT INTO note VALUES (1)");
+
+        new H2Replication(primary, replica).sync();
+
+        write(primary, "INSERT INTO note VALUES (2)");
+
+        return new RoutingDataSource(primary, replica);
+    }
+
+    @Test
+    public void testReadOnlyOperationsAreServedByTheReplica() throws Exception {
+
+        final RoutingDataSource dataSource = lagging("testReadOnlyOperationsAreServedByTheReplica");
+
+        assertEquals(2, notes(dataSource));
+        assertEquals(1, (int) RoutingDataSource.readOnly(() -> notes(dataSource)));
+
+        assertEquals(1L, dataSource.stats().get("replica"));
+    }
+
+    @Test
+    public void testRequestReadsItsOwnWrites() throws Exception {
+
+        final RoutingDataSource dataSource = lagging("testRequestReadsItsOwnWrites");
+
+        try (UnitOfWork ignored = UnitOfWork.begin()) {
+
+            assertEquals(1, (int) RoutingDataSource.readOnly(() -> notes(dataSource)));
+
+            write(dataSource, "INSERT INTO note VALUES (3)");
+
+            assertEquals(3, (int) RoutingDataSource.readOnly(() -> notes(dataSource)));
+        }
+
+        assertEquals(1, (int) RoutingDataSource.readOnly(() -> notes(dataSource)));
+    }
+}
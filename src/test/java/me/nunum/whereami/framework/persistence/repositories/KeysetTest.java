@@ -0,0 +1,41 @@
+package me.nunum.whereami.framework.persistence.repositories;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.function.Function;
+
+import static org.junit.Assert.*;
+
+public class KeysetTest {
+
+    @Test
+    public void testCursorContinuesAfterTheLastItem() {
+
+        final Keyset<Long> page = Keyset.of(Arrays.asList(30L, 29L, 28L), 3, Function.identity());
+
+        assertTrue(page.next().isPresent());
+        assertEquals(Optional.of(28L), Keyset.lastSeen(page.next()));
+    }
+
+    @Test
+    public void testShortPageIsTheLast() {
+
+        final Keyset<Long> page = Keyset.of(Arrays.asList(2L, 1L), 3, Function.identity());
+
+        assertFalse(page.next().isPresent());
+        assertFalse(Keyset.lastSeen(page.next()).isPresent());
+    }
+
+    @Test
+    public void testForgedCursorIsRejected() {
+
+        try {
+            Keyset.lastSeen(Optional.of("MjA"));
+            fail("Expecting a cursor without the id prefix to be rejected");
+        } catch (IllegalArgumentException e) {
+            assertEquals("Invalid page cursor", e.getMessage());
+        }
+    }
+}
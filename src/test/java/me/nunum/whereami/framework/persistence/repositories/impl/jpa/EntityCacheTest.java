@@ -0,0 +1,55 @@
+package me.nunum.whereami.framework.persistence.repositories.impl.jpa;
+
+import me.nunum.whereami.model.Device;
+import me.nunum.whereami.model.persistance.DeviceRepository;
+import me.nunum.whereami.model.persistance.jpa.DeviceRepositoryJpa;
+import me.nunum.whereami.model.persistance.jpa.FingerprintStoreJpa;
+import org.junit.Test;
+
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class EntityCacheTest {
+
+    @SuppressWarnings("unchecked")
+    private static long stat(String entity, String key) {
+        final Map<String, Object> counters = (Map<String, Object>) JpaRepository.cacheStats().get(entity);
+        return counters == null ? 0L : (long) counters.get(key);
+    }
+
+    @Test
+    public void testWrittenDeviceIsEvictedThenCached() throws Exception {
+
+        final Device device;
+
+        try (DeviceRepository devices = new DeviceRepositoryJpa()) {
+            device = devices.save(new Device("testWrittenDeviceIsEvictedThenCached"));
+        }
+
+        final long hits = stat("Device", "hits");
+        final long misses = stat("Device", "misses");
+
+        try (DeviceRepository devices = new DeviceRepositoryJpa()) {
+            devices.findById(device.getId());
+        }
+
+        try (DeviceRepository devices = new DeviceRepositoryJpa()) {
+            devices.findById(device.getId());
+        }
+
+        assertEquals(misses + 1, stat("Device", "misses"));
+        assertEquals(hits + 1, stat("Device", "hits"));
+    }
+
+    @Test
+    public void testFingerprintsAreNotCached() throws Exception {
+
+        try (FingerprintStoreJpa fingerprints = new FingerprintStoreJpa()) {
+            fingerprints.findById(1L);
+        }
+
+        assertFalse(JpaRepository.cacheStats().containsKey("Fingerprint"));
+    }
+}
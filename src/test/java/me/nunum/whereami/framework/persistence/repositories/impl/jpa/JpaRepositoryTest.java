@@ -0,0 +1,103 @@
+package me.nunum.whereami.framework.persistence.repositories.impl.jpa;
+
+import me.nunum.whereami.model.Device;
+import me.nunum.whereami.model.Fingerprint;
+import me.nunum.whereami.model.exceptions.EntityAlreadyExists;
+import me.nunum.whereami.model.persistance.DeviceRepository;
+import me.nunum.whereami.model.persistance.FingerprintRepository;
+import me.nunum.whereami.model.persistance.jpa.DeviceRepositoryJpa;
+import me.nunum.whereami.model.persistance.jpa.FingerprintRepositoryJpa;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class JpaRepositoryTest {
+
+    @Test
+    public void testNewEntityIsPersistedInPlace() throws Exception {
+
+        try (UnitOfWork work = UnitOfWork.begin();
+             DeviceRepository devices = new DeviceRepositoryJpa()) {
+
+            final Device device = new Device("testNewEntityIsPersistedInPlace");
+
+            assertSame(device, devices.save(device));
+            assertNotNull(device.getId());
+        }
+    }
+
+    @Test
+    public void testDetachedEntityIsMerged() throws Exception {
+
+        final Device device;
+
+        try (DeviceRepository devices = new DeviceRepositoryJpa()) {
+            device = devices.save(new Device("testDetachedEntityIsMerged"));
+        }
+
+        try (DeviceRepository devices = new DeviceRepositoryJpa()) {
+
+            final Device merged = devices.save(device);
+
+            assertNotSame(device, merged);
+            assertEquals(device.getId(), merged.getId());
+        }
+    }
+
+    @Test
+    public void testSaveAllIsAllOrNothing() throws Exception {
+
+        try (DeviceRepository devices = new DeviceRepositoryJpa()) {
+
+            final List<Device> saved = devices.saveAll(Arrays.asList(
+                    new Device("testSaveAllIsAllOrNothing-1"),
+                    new Device("testSaveAllIsAllOrNothing-2")));
+
+            assertEquals(2, saved.size());
+            assertNotNull(saved.get(1).getId());
+
+            try {
+                devices.saveAll(Arrays.asList(
+                        new Device("testSaveAllIsAllOrNothing-3"),
+                        new Device("testSaveAllIsAllOrNothing-1")));
+                fail("Expecting the duplicated instance to be refused");
+            } catch (EntityAlreadyExists e) {
+                for (Device device : devices.all()) {
+                    assertFalse("testSaveAllIsAllOrNothing-3".equals(device.instanceId()));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testStreamHandsEveryRowInIdOrder() throws Exception {
+
+        final long localizationId = 46046L;
+
+        try (FingerprintRepository fingerprints = new FingerprintRepositoryJpa()) {
+
+            final List<Fingerprint> batch = new ArrayList<>();
+
+            for (int i = 0; i < 1200; i++) {
+                batch.add(new Fingerprint("bssid" + i, "ssid", -50, 0, 0, 0, 2412, "", 0, 0, 1L, localizationId));
+            }
+
+            fingerprints.bulkFingerprints(batch);
+
+            final List<Long> ids = new ArrayList<>();
+
+            final long count = fingerprints.streamByLocalizationIdAndWithIdGreater(localizationId, 0L, e -> ids.add(e.getId()));
+
+            assertEquals(1200L, count);
+            assertEquals(1200, ids.size());
+
+            for (int i = 1; i < ids.size(); i++) {
+                assertTrue(ids.get(i - 1) < ids.get(i));
+            }
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package me.nunum.whereami.framework.persistence.repositories.impl.jpa;
+
+import me.nunum.whereami.model.*;
+import me.nunum.whereami.model.persistance.*;
+import me.nunum.whereami.model.persistance.jpa.*;
+import org.junit.Test;
+
+import java.util.HashMap;
+
+import static org.junit.Assert.assertEquals;
+
+public class ListingStatementsTest {
+
+    private static Algorithm algorithm(String name, Device device) throws Exception {
+
+        try (ProviderRepository providers = new ProviderRepositoryJpa();
+             AlgorithmRepository algorithms = new AlgorithmRepositoryJpa()) {
+
+            final Provider provider = providers.save(new Provider(name + "@provider.com", name, true, device));
+
+            final Algorithm algorithm = new Algorithm(name, name, "http://paper.com/" + name, true, device);
+            algorithm.addProvider(new AlgorithmProvider(provider, AlgorithmProvider.METHOD.HTTP, new HashMap<>()));
+
+            return algorithms.save(algorithm);
+        }
+    }
+
+    private static AlgorithmProvider providerWithTrainings(String name, int numberOfTrainings) throws Exception {
+
+        try (DeviceRepository devices = new DeviceRepositoryJpa();
+             LocalizationRepository localizations = new LocalizationRepositoryJpa();
+             TrainingRepository trainings = new TrainingRepositoryJpa()) {
+
+            final Algorithm algorithm = algorithm(name, devices.findOrPersist(() -> name));
+            final AlgorithmProvider provider = algorithm.firstAlgorithmProvider().get();
+
+            for (int i = 0; i < numberOfTrainings; i++) {
+
+                final String ownerId = name + "-owner" + i;
+                final Device owner = devices.findOrPersist(() -> ownerId);
+                final Localization localization = localizations.save(new Localization(name + i, name, owner));
+
+                trainings.save(new Training(algorithm, provider, localization));
+            }
+
+            return provider;
+        }
+    }
+
+    private static long trainingsOfProvider(StatementCounter counter, AlgorithmProvider provider) {
+
+        return counter.count(() -> {
+            try (TrainingRepository trainings = new TrainingRepositoryJpa()) {
+                trainings.findAllTrainingWithProvider(provider)
+                        .forEach(e -> e.getLocalization().getOwner().instanceId());
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        });
+    }
+
+    private static long algorithmPage(StatementCounter counter, int pageSize) {
+
+        return counter.count(() -> {
+            try (AlgorithmRepositoryJpa algorithms = new AlgorithmRepositoryJpa()) {
+                algorithms.page(1, pageSize).forEach(Algorithm::toDTO);
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        });
+    }
+
+    @Test
+    public void testTrainingsOfProviderDoNotLoadLocalizationsOneByOne() throws Exception {
+
+        final StatementCounter counter = StatementCounter.install();
+
+        final AlgorithmProvider few = providerWithTrainings("testTrainingsOfProviderFew", 2);
+        final AlgorithmProvider many = providerWithTrainings("testTrainingsOfProviderMany", 8);
+
+        assertEquals("Statements must not grow with the number of trainings",
+                trainingsOfProvider(counter, few),
+                trainingsOfProvider(counter, many));
+    }
+
+    @Test
+    public void testAlgorithmPageDoesNotLoadProvidersOneByOne() throws Exception {
+
+        final StatementCounter counter = StatementCounter.install();
+
+        try (DeviceRepository devices = new DeviceRepositoryJpa()) {
+
+            final Device device = devices.findOrPersist(() -> "testAlgorithmPageDoesNotLoadProvidersOneByOne");
+
+            for (int i = 0; i < 8; i++) {
+                algorithm("testAlgorithmPageDoesNotLoadProvidersOneByOne" + i, device);
+            }
+        }
+
+        assertEquals("Statements must not grow with the page size",
+                algorithmPage(counter, 2),
+                algorithmPage(counter, 8));
+    }
+}
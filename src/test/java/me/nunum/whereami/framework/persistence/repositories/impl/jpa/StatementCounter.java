@@ -0,0 +1,75 @@
+package me.nunum.whereami.framework.persistence.repositories.impl.jpa;
+
+import me.nunum.whereami.model.persistance.jpa.DeviceRepositoryJpa;
+import org.eclipse.persistence.jpa.JpaHelper;
+import org.eclipse.persistence.logging.AbstractSessionLog;
+import org.eclipse.persistence.logging.SessionLog;
+import org.eclipse.persistence.logging.SessionLogEntry;
+import org.eclipse.persistence.sessions.server.ServerSession;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Session log of the persistence unit that counts the SQL statements sent to
+ * the database, handing everything else to the log it replaces. Entity
+ * managers opened after {@link #install()} are counted.
+ */
+final class StatementCounter extends AbstractSessionLog {
+
+    private static StatementCounter ourInstance;
+
+    private final SessionLog delegate;
+
+    private final AtomicLong statements = new AtomicLong();
+
+    private StatementCounter(SessionLog delegate) {
+        this.delegate = delegate;
+    }
+
+    static synchronized StatementCounter install() {
+
+        if (ourInstance == null) {
+
+            final ServerSession session = JpaHelper.getServerSession(new DeviceRepositoryJpa().entityManagerFactory());
+
+            ourInstance = new StatementCounter(session.getSessionLog());
+
+            session.setSessionLog(ourInstance);
+        }
+
+        return ourInstance;
+    }
+
+    /**
+     * @param action Database work
+     * @return Number of SQL statements the action sent
+     */
+    long count(Runnable action) {
+
+        final long before = this.statements.get();
+
+        action.run();
+
+        return this.statements.get() - before;
+    }
+
+    @Override
+    public boolean shouldLog(int level, String category) {
+        return SessionLog.SQL.equals(category) || this.delegate.shouldLog(level, category);
+    }
+
+    @Override
+    public void log(SessionLogEntry entry) {
+
+        if (SessionLog.SQL.equals(entry.getNameSpace())) {
+
+            this.statements.incrementAndGet();
+
+            if (!this.delegate.shouldLog(entry.getLevel(), entry.getNameSpace())) {
+                return;
+            }
+        }
+
+        this.delegate.log(entry);
+    }
+}
@@ -0,0 +1,151 @@
+package me.nunum.whereami.framework.persistence.repositories.impl.jpa;
+
+import me.nunum.whereami.model.Device;
+import me.nunum.whereami.model.exceptions.EntityAlreadyExists;
+import me.nunum.whereami.model.persistance.DeviceRepository;
+import me.nunum.whereami.model.persistance.jpa.DeviceRepositoryJpa;
+import org.junit.Test;
+
+import javax.persistence.RollbackException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.*;
+
+public class UnitOfWorkTest {
+
+    private static long stat(String key) {
+        return (long) JpaRepository.stats().get(key);
+    }
+
+    /**
+     * @return If the device is committed, as seen from a thread outside of the unit of work
+     */
+    private static boolean committed(String instance) throws Exception {
+
+        return CompletableFuture.supplyAsync(() -> {
+            try (DeviceRepositoryJpa devices = new DeviceRepositoryJpa()) {
+                return devices.all().stream().anyMatch(e -> instance.equals(e.instanceId()));
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        }).get();
+    }
+
+    @Test
+    public void testRepositoriesShareOneEntityManager() throws Exception {
+
+        final long opened = stat("opened");
+        final long open = stat("open");
+
+        try (UnitOfWork work = UnitOfWork.begin();
+             DeviceRepository devices = new DeviceRepositoryJpa();
+             DeviceRepository others = new DeviceRepositoryJpa()) {
+
+            final Device device = devices.findOrPersist(() -> "testRepositoriesShareOneEntityManager");
+
+            assertSame(device, others.findOrPersist(() -> "testRepositoriesShareOneEntityManager"));
+        }
+
+        assertEquals(opened + 1, stat("opened"));
+        assertEquals(open, stat("open"));
+        assertFalse(UnitOfWork.current().isPresent());
+    }
+
+    @Test
+    public void testNestedUnitJoinsTheOuterOne() {
+
+        try (UnitOfWork outer = UnitOfWork.begin()) {
+
+            try (UnitOfWork inner = UnitOfWork.begin()) {
+                assertSame(outer, UnitOfWork.current().orElse(null));
+            }
+
+            assertSame(outer, UnitOfWork.current().orElse(null));
+        }
+
+        assertFalse(UnitOfWork.current().isPresent());
+    }
+
+    @Test
+    public void testTransactionalUnitCommitsItsWritesTogether() throws Exception {
+
+        final AtomicBoolean ranAfterCommit = new AtomicBoolean();
+
+        try (UnitOfWork work = UnitOfWork.beginTransaction();
+             DeviceRepository devices = new DeviceRepositoryJpa()) {
+
+            devices.save(new Device("testTransactionalUnitCommitsItsWritesTogether-1"));
+            devices.save(new Device("testTransactionalUnitCommitsItsWritesTogether-2"));
+
+            work.afterCommit(() -> ranAfterCommit.set(true));
+
+            assertFalse(committed("testTransactionalUnitCommitsItsWritesTogether-1"));
+            assertFalse(ranAfterCommit.get());
+
+            work.commit();
+        }
+
+        assertTrue(ranAfterCommit.get());
+        assertTrue(committed("testTransactionalUnitCommitsItsWritesTogether-1"));
+        assertTrue(committed("testTransactionalUnitCommitsItsWritesTogether-2"));
+    }
+
+    @Test
+    public void testTransactionalUnitClosedWithoutCommitRollsBack() throws Exception {
+
+        try (UnitOfWork work = UnitOfWork.beginTransaction();
+             DeviceRepository devices = new DeviceRepositoryJpa()) {
+
+            devices.save(new Device("testTransactionalUnitClosedWithoutCommitRollsBack"));
+        }
+
+        assertFalse(committed("testTransactionalUnitClosedWithoutCommitRollsBack"));
+    }
+
+    @Test
+    public void testFailedWriteRollsBackTheWholeUnit() throws Exception {
+
+        final AtomicBoolean ranAfterCommit = new AtomicBoolean();
+
+        try (UnitOfWork work = UnitOfWork.beginTransaction();
+             DeviceRepository devices = new DeviceRepositoryJpa()) {
+
+            devices.save(new Device("testFailedWriteRollsBackTheWholeUnit-1"));
+
+            try {
+                devices.save(new Device("testFailedWriteRollsBackTheWholeUnit-1"));
+                fail("The second device breaks the unique instance");
+            } catch (EntityAlreadyExists e) {
+                assertTrue(work.isRollbackOnly());
+            }
+
+            work.afterCommit(() -> ranAfterCommit.set(true));
+
+            try {
+                work.commit();
+                fail("A unit with a failed write must not commit");
+            } catch (RollbackException e) {
+                // expected
+            }
+        }
+
+        assertFalse(ranAfterCommit.get());
+        assertFalse(committed("testFailedWriteRollsBackTheWholeUnit-1"));
+    }
+
+    @Test
+    public void testDeviceIsInsertedInItsOwnTransaction() throws Exception {
+
+        try (UnitOfWork work = UnitOfWork.beginTransaction();
+             DeviceRepository devices = new DeviceRepositoryJpa()) {
+
+            final Device device = devices.findOrPersist(() -> "testDeviceIsInsertedInItsOwnTransaction");
+
+            assertTrue(committed("testDeviceIsInsertedInItsOwnTransaction"));
+            assertSame(device, devices.findOrPersist(() -> "testDeviceIsInsertedInItsOwnTransaction"));
+        }
+
+        assertTrue(committed("testDeviceIsInsertedInItsOwnTransaction"));
+    }
+}
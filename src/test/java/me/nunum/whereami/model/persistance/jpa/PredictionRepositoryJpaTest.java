@@ -0,0 +1,74 @@
+package me.nunum.whereami.model.persistance.jpa;
+
+import me.nunum.whereami.model.persistance.PredictionRepository;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class PredictionRepositoryJpaTest {
+
+    @Test
+    public void testBlocksFollowEachOther() throws Exception {
+
+        try (PredictionRepository predictions = new PredictionRepositoryJpa()) {
+
+            final long first = predictions.reserveRequestIdBlock(26001L, 10);
+            final long second = predictions.reserveRequestIdBlock(26001L, 10);
+
+            assertEquals(1L, first);
+            assertEquals(first + 10, second);
+        }
+    }
+
+    @Test
+    public void testConcurrentSeedingHandsOutDisjointBlocks() throws Exception {
+
+        final int instances = 4;
+        final long localizationId = 26002L;
+
+        final ExecutorService executor = Executors.newFixedThreadPool(instances);
+        final CountDownLatch start = new CountDownLatch(1);
+        final Set<Long> starts = ConcurrentHashMap.newKeySet();
+
+        try {
+
+            final List<Future<?>> reservations = new ArrayList<>(instances);
+
+            for (int i = 0; i < instances; i++) {
+                reservations.add(executor.submit(() -> {
+                    try (PredictionRepository predictions = new PredictionRepositoryJpa()) {
+                        start.await();
+                        starts.add(predictions.reserveRequestIdBlock(localizationId, 10));
+                    }
+                    return null;
+                }));
+            }
+
+            start.countDown();
+
+            for (Future<?> reservation : reservations) {
+                reservation.get(30, TimeUnit.SECONDS);
+            }
+
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(instances, starts.size());
+
+        for (Long blockStart : starts) {
+            assertEquals(0L, (blockStart - 1) % 10);
+            assertTrue(blockStart < 1 + instances * 10);
+        }
+    }
+}
@@ -0,0 +1,302 @@
+package me.nunum.whereami.model.persistance.segment;
+
+import me.nunum.whereami.model.Fingerprint;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+
+public class SegmentFingerprintStoreTest {
+
+    private static final int SEGMENT_BYTES = 1024;
+
+    private static final int INDEX_INTERVAL = 4;
+
+    private static List<Fingerprint> fingerprints(long localizationId, long positionId, int howMany) {
+
+        final List<Fingerprint> fingerprints = new ArrayList<>(howMany);
+
+        for (int i = 0; i < howMany; i++) {
+            fingerprints.add(new Fingerprint("bssid" + (i % 5), "ssid", -40 - i % 50, 0, null, 20, 2412, "", 0, 1, positionId, localizationId));
+        }
+
+        return fingerprints;
+    }
+
+    private static List<Long> ids(SegmentFingerprintStore store, long localizationId) {
+
+        final List<Long> ids = new ArrayList<>();
+
+        store.scan(localizationId, 0L, e -> ids.add(e.getId()));
+
+        return ids;
+    }
+
+    private static void deleteRecursively(Path directory) throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+
+    @Test
+    public void testRangesContinueFromTheCursor() throws IOException {
+
+        final Path directory = Files.createTempDirectory("segments");
+
+        try {
+
+            final SegmentFingerprintStore store = new SegmentFingerprintStore(directory, SEGMENT_BYTES, INDEX_INTERVAL);
+
+            for (int i = 0; i < 10; i++) {
+                store.append(fingerprints(1L, 10L, 10));
+                store.append(fingerprints(2L, 20L, 3));
+            }
+
+            assertTrue("Expecting the localization to span several segments", (int) store.stats().get("segments") > 2);
+
+            final List<Long> read = new ArrayList<>();
+
+            long cursor = 0L;
+
+            for (List<Fingerprint> page = store.range(1L, cursor, Long.MAX_VALUE, 30); !page.isEmpty(); page = store.range(1L, cursor, Long.MAX_VALUE, 30)) {
+
+                assertTrue(page.size() <= 30);
+
+                page.forEach(e -> assertEquals(Long.valueOf(1L), e.getLocalizationId()));
+                page.forEach(e -> read.add(e.getId()));
+
+                cursor = page.get(page.size() - 1).getId();
+            }
+
+            assertEquals(ids(store, 1L), read);
+            assertEquals(100, read.size());
+
+            for (int i = 1; i < read.size(); i++) {
+                assertTrue(read.get(i - 1) < read.get(i));
+            }
+
+            final List<Fingerprint> bounded = store.range(1L, read.get(9), read.get(19), 100);
+
+            assertEquals(read.subList(10, 20), bounded.stream().map(Fingerprint::getId).collect(Collectors.toList()));
+
+        } finally {
+            deleteRecursively(directory);
+        }
+    }
+
+    @Test
+    public void testFingerprintsSurviveReopening() throws IOException {
+
+        final Path directory = Files.createTempDirectory("segments");
+
+        try {
+
+            final SegmentFingerprintStore store = new SegmentFingerprintStore(directory, SEGMENT_BYTES, INDEX_INTERVAL);
+
+            store.append(fingerprints(1L, 10L, 40));
+
+            final Fingerprint last = store.range(1L, 0L, Long.MAX_VALUE, 40).get(39);
+
+            final SegmentFingerprintStore reopened = new SegmentFingerprintStore(directory, SEGMENT_BYTES, INDEX_INTERVAL);
+
+            assertEquals(ids(store, 1L), ids(reopened, 1L));
+
+            final Fingerprint restored = reopened.range(1L, last.getId() - 1, Long.MAX_VALUE, 1).get(0);
+
+            assertEquals(last.getUid(), restored.getUid());
+            assertEquals(last.getCreated(), restored.getCreated());
+            assertEquals(last.getLevelDBM(), restored.getLevelDBM());
+            assertNull(restored.getCenterFreq1());
+            assertEquals(Long.valueOf(10L), restored.getPositionId());
+
+            final List<Fingerprint> appended = fingerprints(1L, 10L, 1);
+
+            reopened.append(appended);
+
+            assertTrue(appended.get(0).getId() > last.getId());
+
+        } finally {
+            deleteRecursively(directory);
+        }
+    }
+
+    @Test
+    public void testDeletedPositionsAreCompactedAway() throws IOException {
+
+        final Path directory = Files.createTempDirectory("segments");
+
+        try {
+
+            final SegmentFingerprintStore store = new SegmentFingerprintStore(directory, SEGMENT_BYTES, INDEX_INTERVAL);
+
+            for (int i = 0; i < 10; i++) {
+                store.append(fingerprints(1L, 10L, 5));
+                store.append(fingerprints(1L, 20L, 5));
+            }
+
+            assertTrue(store.deleteByPosition(1L, 10L));
+
+            final HashSet<Long> positions = new HashSet<>();
+
+            store.scan(1L, 0L, e -> positions.add(e.getPositionId()));
+
+            assertEquals(1, positions.size());
+            assertTrue(positions.contains(20L));
+
+            final long bytes = (long) store.stats().get("bytes");
+
+            assertTrue(store.compact() > 0);
+            assertTrue((long) store.stats().get("bytes") < bytes);
+
+            final SegmentFingerprintStore reopened = new SegmentFingerprintStore(directory, SEGMENT_BYTES, INDEX_INTERVAL);
+
+            assertEquals(ids(store, 1L), ids(reopened, 1L));
+            assertEquals(50, ids(reopened, 1L).size());
+
+            assertEquals(5, reopened.bssidsOfLocalization(1L).size());
+
+        } finally {
+            deleteRecursively(directory);
+        }
+    }
+
+    private static Map<String, byte[]> files(Path directory) throws IOException {
+
+        final Map<String, byte[]> files = new TreeMap<>();
+
+        try (Stream<Path> paths = Files.list(directory)) {
+            for (Path file : paths.collect(Collectors.toList())) {
+                files.put(file.getFileName().toString(), Files.readAllBytes(file));
+            }
+        }
+
+        return files;
+    }
+
+    private static Set<String> segments(Map<String, byte[]> files) {
+        return files.keySet().stream().filter(e -> e.endsWith(Segment.EXTENSION)).collect(Collectors.toSet());
+    }
+
+    private static void restore(Path directory, Map<String, byte[]> files) throws IOException {
+
+        try (Stream<Path> paths = Files.list(directory)) {
+            for (Path file : paths.collect(Collectors.toList())) {
+                Files.delete(file);
+            }
+        }
+
+        for (Map.Entry<String, byte[]> file : files.entrySet()) {
+            Files.write(directory.resolve(file.getKey()), file.getValue());
+        }
+    }
+
+    @Test
+    public void testCompactionInterruptedBetweenRenamesKeepsEveryFingerprint() throws IOException {
+
+        final Path directory = Files.createTempDirectory("segments");
+
+        try {
+
+            final SegmentFingerprintStore store = new SegmentFingerprintStore(directory, SEGMENT_BYTES, INDEX_INTERVAL);
+
+            for (int i = 0; i < 10; i++) {
+                store.append(fingerprints(1L, 10L, 5));
+                store.append(fingerprints(1L, 20L, 5));
+            }
+
+            assertTrue(store.deleteByPosition(1L, 10L));
+
+            final List<Long> expected = ids(store, 1L);
+
+            final Path partition = directory.resolve("1");
+
+            final Map<String, byte[]> before = files(partition);
+
+            assertTrue(store.compact() > 0);
+
+            final Map<String, byte[]> after = files(partition);
+
+            final List<String> replaced = before.keySet().stream().filter(e -> !after.containsKey(e)).collect(Collectors.toList());
+            final List<String> replacing = after.keySet().stream().filter(e -> !before.containsKey(e)).collect(Collectors.toList());
+
+            assertTrue("Expecting the compaction to write several segments", replacing.size() > 1);
+
+            // Committed, only the first new segment renamed
+            final Map<String, byte[]> renaming = new TreeMap<>(before);
+
+            for (int i = 0; i < replacing.size(); i++) {
+                renaming.put(replacing.get(i) + (i == 0 ? "" : ".tmp"), after.get(replacing.get(i)));
+            }
+
+            restore(partition, renaming);
+            Partition.commitCompaction(partition, replaced, replacing);
+
+            assertEquals(expected, ids(new SegmentFingerprintStore(directory, SEGMENT_BYTES, INDEX_INTERVAL), 1L));
+            assertEquals(segments(after), segments(files(partition)));
+
+            // Not committed, every new segment still under a temporary name
+            final Map<String, byte[]> writing = new TreeMap<>(before);
+
+            replacing.forEach(e -> writing.put(e + ".tmp", after.get(e)));
+
+            restore(partition, writing);
+
+            assertEquals(expected, ids(new SegmentFingerprintStore(directory, SEGMENT_BYTES, INDEX_INTERVAL), 1L));
+            assertEquals(before.keySet(), files(partition).keySet());
+
+        } finally {
+            deleteRecursively(directory);
+        }
+    }
+
+    @Test
+    public void testBssidsOfDeletedPositionsAreDropped() throws IOException {
+
+        final Path directory = Files.createTempDirectory("segments");
+
+        try {
+
+            final SegmentFingerprintStore store = new SegmentFingerprintStore(directory, SEGMENT_BYTES, INDEX_INTERVAL);
+
+            store.append(Arrays.asList(
+                    new Fingerprint("shared", "ssid", -40, 0, null, 20, 2412, "", 0, 1, 10L, 1L),
+                    new Fingerprint("only-10", "ssid", -40, 0, null, 20, 2412, "", 0, 1, 10L, 1L),
+                    new Fingerprint("shared", "ssid", -40, 0, null, 20, 2412, "", 0, 1, 20L, 1L),
+                    new Fingerprint("only-20", "ssid", -40, 0, null, 20, 2412, "", 0, 1, 20L, 1L),
+                    new Fingerprint("other", "ssid", -40, 0, null, 20, 2412, "", 0, 1, 30L, 2L)));
+
+            assertEquals(new HashSet<>(Arrays.asList("shared", "only-10", "only-20")), store.bssidsOfLocalization(1L));
+
+            assertTrue(store.deleteByPosition(1L, 10L));
+
+            final HashSet<String> expected = new HashSet<>(Arrays.asList("shared", "only-20"));
+
+            assertEquals(expected, store.bssidsOfLocalization(1L));
+            assertEquals(expected, store.bssidsByLocalization().get(1L));
+
+            final SegmentFingerprintStore reopened = new SegmentFingerprintStore(directory, SEGMENT_BYTES, INDEX_INTERVAL);
+
+            assertEquals(expected, reopened.bssidsOfLocalization(1L));
+            assertEquals(Collections.singleton("other"), reopened.bssidsOfLocalization(2L));
+            assertTrue(reopened.bssidsOfLocalization(3L).isEmpty());
+
+        } finally {
+            deleteRecursively(directory);
+        }
+    }
+}
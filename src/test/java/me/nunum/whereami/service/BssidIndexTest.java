@@ -0,0 +1,107 @@
+package me.nunum.whereami.service;
+
+import me.nunum.whereami.model.Fingerprint;
+import me.nunum.whereami.model.request.FingerprintSample;
+import org.junit.Test;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.*;
+
+public class BssidIndexTest {
+
+    private static FingerprintSample sample(String bssid, int level) {
+        return new FingerprintSample(bssid, "ssid", level, 0, 0, 0, 2412, "");
+    }
+
+    private static Fingerprint fingerprint(long localizationId, String bssid) {
+        return new Fingerprint(bssid, "ssid", -50, 0, 0, 0, 2412, "", 0, 0, 1L, localizationId);
+    }
+
+    private static BssidIndex index() {
+
+        final Map<Long, Set<String>> stored = new HashMap<>();
+        stored.put(1L, new HashSet<>(Arrays.asList("mall-a", "mall-b", "street")));
+        stored.put(2L, new HashSet<>(Arrays.asList("home-a", "home-b", "street")));
+
+        return new BssidIndex(() -> stored);
+    }
+
+    @Test
+    public void testRareAccessPointsDecide() {
+
+        final List<BssidIndex.Match> matches = index().match(Arrays.asList(
+                sample("street", -40),
+                sample("home-a", -70),
+                sample("unknown", -30)));
+
+        assertEquals(2, matches.size());
+        assertEquals(Long.valueOf(2L), matches.get(0).getLocalizationId());
+        assertEquals(1.0, matches.get(0).getScore(), 1e-9);
+        assertTrue(matches.get(1).getScore() < matches.get(0).getScore());
+    }
+
+    @Test
+    public void testIngestionAndRemovalAreIndexed() {
+
+        final BssidIndex index = index();
+
+        assertTrue(index.match(Collections.singletonList(sample("office", -50))).isEmpty());
+
+        index.add(3L, Collections.singletonList(fingerprint(3L, "office")));
+        index.add(3L, Collections.singletonList(fingerprint(3L, "office")));
+
+        final List<BssidIndex.Match> matches = index.match(Collections.singletonList(sample("office", -50)));
+
+        assertEquals(1, matches.size());
+        assertEquals(Long.valueOf(3L), matches.get(0).getLocalizationId());
+
+        index.remove(3L);
+
+        assertTrue(index.match(Collections.singletonList(sample("office", -50))).isEmpty());
+        assertEquals(2, index.match(Collections.singletonList(sample("street", -50))).size());
+    }
+
+    @Test
+    public void testReplaceDropsDeletedAccessPoints() {
+
+        final BssidIndex index = index();
+
+        index.replace(1L, Collections.singleton("mall-a"));
+
+        final List<BssidIndex.Match> matches = index.match(Collections.singletonList(sample("street", -50)));
+
+        assertEquals(1, matches.size());
+        assertEquals(Long.valueOf(2L), matches.get(0).getLocalizationId());
+    }
+
+    @Test
+    public void testReplaceKeepsTheLocalizationVisible() throws InterruptedException {
+
+        final BssidIndex index = index();
+
+        final AtomicBoolean done = new AtomicBoolean(false);
+
+        final Thread replacer = new Thread(() -> {
+            for (int i = 0; i < 20000; i++) {
+                index.replace(1L, new HashSet<>(Arrays.asList("mall-a", i % 2 == 0 ? "mall-b" : "mall-c")));
+            }
+            done.set(true);
+        });
+
+        replacer.start();
+
+        while (!done.get()) {
+            final List<BssidIndex.Match> matches = index.match(Collections.singletonList(sample("mall-a", -50)));
+            assertEquals(1, matches.size());
+            assertEquals(Long.valueOf(1L), matches.get(0).getLocalizationId());
+        }
+
+        replacer.join();
+
+        assertTrue(index.match(Collections.singletonList(sample("mall-b", -50))).isEmpty());
+        assertEquals(1, index.match(Collections.singletonList(sample("mall-c", -50))).size());
+        assertEquals(1, index.match(Collections.singletonList(sample("street", -50))).size());
+    }
+}
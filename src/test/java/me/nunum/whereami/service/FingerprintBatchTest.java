@@ -0,0 +1,62 @@
+package me.nunum.whereami.service;
+
+import me.nunum.whereami.model.Fingerprint;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class FingerprintBatchTest {
+
+    private static String write(FingerprintBatch batch, Long taskId, boolean isDrained) throws IOException {
+
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+        batch.payload(taskId, isDrained).write(output);
+
+        return new String(output.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void testEmptyBatchPayload() throws IOException {
+
+        assertEquals(0L, FingerprintBatch.EMPTY.lastId());
+        assertEquals(0, FingerprintBatch.EMPTY.size());
+        assertEquals("{\"id\":7,\"isDrained\":true,\"fingerprints\":[]}", write(FingerprintBatch.EMPTY, 7L, true));
+    }
+
+    @Test
+    public void testPayloadsOfTasksShareTheFingerprints() throws IOException {
+
+        final Fingerprint first = new Fingerprint("bssid", "ssid", -50, 0, 0, 0, 2412, "", 0, 0, 1L, 1L);
+        final Fingerprint second = new Fingerprint("bssid", "ssid", -60, 0, 0, 0, 2412, "", 0, 0, 1L, 1L);
+        first.setId(12L);
+        second.setId(9L);
+
+        final FingerprintBatch batch = new FingerprintBatch(Arrays.asList(first, second));
+
+        assertEquals(12L, batch.lastId());
+        assertEquals(2, batch.size());
+
+        final String plain = write(batch, 1L, false);
+        final String windowed = new String(toBytes(batch, 2L, 5L), StandardCharsets.UTF_8);
+
+        assertTrue(plain.startsWith("{\"id\":1,\"isDrained\":false,\"fingerprints\":["));
+        assertTrue(windowed.startsWith("{\"id\":2,\"isDrained\":false,\"sequence\":12,\"previous\":5,\"fingerprints\":["));
+        assertEquals(plain.substring(plain.indexOf('[')), windowed.substring(windowed.indexOf('[')));
+    }
+
+    private static byte[] toBytes(FingerprintBatch batch, Long taskId, long previous) throws IOException {
+
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+        batch.payload(taskId, previous).write(output);
+
+        return output.toByteArray();
+    }
+}
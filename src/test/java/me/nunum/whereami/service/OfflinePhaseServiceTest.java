@@ -0,0 +1,331 @@
+package me.nunum.whereami.service;
+
+import me.nunum.whereami.controller.FingerprintController;
+import me.nunum.whereami.framework.dto.DTO;
+import me.nunum.whereami.model.Algorithm;
+import me.nunum.whereami.model.AlgorithmProvider;
+import me.nunum.whereami.model.Device;
+import me.nunum.whereami.model.Fingerprint;
+import me.nunum.whereami.model.Localization;
+import me.nunum.whereami.model.Position;
+import me.nunum.whereami.model.Task;
+import me.nunum.whereami.model.Training;
+import me.nunum.whereami.model.persistance.FingerprintRepository;
+import me.nunum.whereami.model.persistance.TaskRepository;
+import me.nunum.whereami.model.persistance.jpa.DeviceRepositoryJpa;
+import me.nunum.whereami.model.persistance.jpa.FingerprintRepositoryJpa;
+import me.nunum.whereami.model.persistance.jpa.LocalizationRepositoryJpa;
+import me.nunum.whereami.model.persistance.jpa.PositionRepositoryJpa;
+import me.nunum.whereami.model.persistance.segment.SegmentFingerprintStore;
+import me.nunum.whereami.model.request.FingerprintRequest;
+import org.junit.Test;
+
+import javax.ws.rs.client.Client;
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+
+public class OfflinePhaseServiceTest {
+
+    private static Fingerprint fingerprint(long id, long localizationId) {
+        final Fingerprint fingerprint = new Fingerprint("bssid", "ssid", -50, 0, 0, 0, 2412, "", 0, 0, 1L, localizationId);
+        fingerprint.setId(id);
+        return fingerprint;
+    }
+
+    private static Task task(long id, long cursor, int batchSize) {
+
+        final Training training = new Training(new Algorithm(),
+                new AlgorithmProvider(null, AlgorithmProvider.METHOD.IN_PROCESS, new HashMap<>()),
+                null);
+
+        final Task task = new Task(cursor, training);
+        task.setId(id);
+        task.setBatchSize(batchSize);
+
+        return task;
+    }
+
+    private static List<Long> ids(List<FingerprintBatch> batches) {
+        return batches
+                .stream()
+                .flatMap(e -> e.fingerprints().stream())
+                .map(Fingerprint::getId)
+                .collect(Collectors.toList());
+    }
+
+    @Test
+    public void testTasksBehindCatchUpAndThenShareBatches() {
+
+        // Ids of localization 1: 1, 2, 4, 5, 7, 8, 10, 11, 13, 14
+        final List<Fingerprint> stored = new ArrayList<>();
+
+        for (long id = 1; id <= 15; id++) {
+            stored.add(fingerprint(id, id % 3 == 0 ? 2L : 1L));
+        }
+
+        final Fingerprints fingerprints = new Fingerprints(stored);
+        final Tasks tasks = new Tasks();
+        final Recording service = new Recording();
+
+        final Task behind = task(1L, 0L, 3);
+        final Task ahead = task(2L, 5L, 2);
+        final Task aheadToo = task(3L, 5L, 4);
+
+        service.fanOut(null, tasks, fingerprints, 1L, new ArrayList<>(Arrays.asList(behind, ahead, aheadToo)));
+
+        assertEquals(Arrays.asList(1L, 2L, 4L, 5L, 7L, 8L, 10L, 11L, 13L, 14L), ids(service.batches(behind)));
+        assertEquals(Arrays.asList(7L, 8L, 10L, 11L, 13L, 14L), ids(service.batches(ahead)));
+        assertEquals(ids(service.batches(ahead)), ids(service.batches(aheadToo)));
+
+        // The smallest batch size is used for every task
+        service.batches.values().forEach(e -> e.forEach(batch -> assertTrue(batch.size() <= 2)));
+
+        // Once caught up, the tasks are handed the very same batches
+        final List<FingerprintBatch> shared = service.batches(behind).subList(2, 5);
+
+        for (int i = 0; i < shared.size(); i++) {
+            assertSame(shared.get(i), service.batches(ahead).get(i));
+            assertSame(shared.get(i), service.batches(aheadToo).get(i));
+        }
+
+        // Two reads to catch up, three shared and the empty one
+        assertEquals(6, fingerprints.reads);
+
+        assertEquals(Arrays.asList(behind, ahead, aheadToo), service.finished);
+
+        for (Task task : Arrays.asList(behind, ahead, aheadToo)) {
+            assertEquals(Long.valueOf(14L), task.getCursor());
+        }
+    }
+
+    @Test
+    public void testTasksSkipOverEmptyRanges() {
+
+        final Fingerprints fingerprints = new Fingerprints(Arrays.asList(fingerprint(1L, 2L), fingerprint(2L, 2L), fingerprint(9L, 1L)));
+        final Tasks tasks = new Tasks();
+        final Recording service = new Recording();
+
+        final Task behind = task(1L, 0L, 10);
+        final Task ahead = task(2L, 2L, 10);
+
+        service.fanOut(null, tasks, fingerprints, 1L, new ArrayList<>(Arrays.asList(behind, ahead)));
+
+        // Nothing of the localization before the cursor of the other task, the cursor jumps to it
+        assertTrue(tasks.saved.contains(behind));
+        assertEquals(Collections.singletonList(9L), ids(service.batches(behind)));
+        assertSame(service.batches(behind).get(0), service.batches(ahead).get(0));
+        assertEquals(Arrays.asList(behind, ahead), service.finished);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testSegmentUploadsReachThePositionAndTheTasks() throws Exception {
+
+        final Path directory = Files.createTempDirectory("segments");
+
+        try {
+
+            final SegmentFingerprintStore store = new SegmentFingerprintStore(directory, 1024, 4);
+
+            final Device device = new DeviceRepositoryJpa().findOrPersist(() -> "testSegmentUploadsReachThePositionAndTheTasks");
+            final Localization localization = new LocalizationRepositoryJpa().save(new Localization("testSegmentUploads", "testSegmentUploads", device));
+            final Position position = new PositionRepositoryJpa().save(new Position("testSegmentUploads", localization));
+
+            final long positionId = position.id();
+            final long localizationId = localization.id();
+
+            final List<DTO> dtos;
+
+            try (FingerprintController controller = new FingerprintController(store)) {
+                dtos = controller.storeFingerprints(() -> "testSegmentUploadsReachThePositionAndTheTasks", Arrays.asList(
+                        new FingerprintRequest("ap-1", "lobby", -40, 0, 0, 0, 2412, "", 0, 0, positionId, localizationId),
+                        new FingerprintRequest("ap-1", "lobby", -50, 0, 0, 0, 2412, "", 0, 0, positionId, localizationId),
+                        new FingerprintRequest("ap-2", "hall", -70, 0, 0, 0, 2412, "", 0, 0, positionId, localizationId),
+                        new FingerprintRequest("ap-2", "guest", -80, 0, 0, 0, 2412, "", 0, 0, positionId, localizationId)));
+            }
+
+            // The metadata is read back from the segments, the database holds no fingerprint of the position
+            assertEquals(1, dtos.size());
+
+            final Map<String, Object> stats = (Map<String, Object>) dtos.get(0).dtoValues().get("stats");
+
+            assertEquals(2, stats.get("routers"));
+            assertEquals(3, stats.get("networks"));
+            assertEquals("lobby", stats.get("strongestSignal"));
+
+            final List<Fingerprint> stored = store.range(localizationId, 0L, Long.MAX_VALUE, 10);
+
+            assertEquals(4, stored.size());
+
+            final Tasks tasks = new Tasks();
+            final Recording service = new Recording();
+            final Task task = task(1L, 0L, 10);
+
+            try (FingerprintRepository fingerprints = new FingerprintRepositoryJpa(store)) {
+                service.fanOut(null, tasks, fingerprints, localizationId, new ArrayList<>(Collections.singletonList(task)));
+            }
+
+            assertEquals(stored.stream().map(Fingerprint::getId).collect(Collectors.toList()), ids(service.batches(task)));
+            assertEquals(stored.get(3).getId(), task.getCursor());
+            assertEquals(Collections.singletonList(task), service.finished);
+
+        } finally {
+            try (Stream<Path> files = Files.walk(directory)) {
+                files.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+            }
+        }
+    }
+
+    /**
+     * Records what every task is handed instead of reaching its provider
+     */
+    private static final class Recording extends OfflinePhaseService {
+
+        private final Map<Task, List<FingerprintBatch>> batches = new IdentityHashMap<>();
+
+        private final List<Task> finished = new ArrayList<>();
+
+        private List<FingerprintBatch> batches(Task task) {
+            return batches.getOrDefault(task, Collections.emptyList());
+        }
+
+        @Override
+        void sink(Client client, Task task, boolean isDrained, FingerprintBatch batch) {
+            batches.computeIfAbsent(task, k -> new ArrayList<>()).add(batch);
+        }
+
+        @Override
+        void finish(Client client, TaskRepository tasks, Task task) {
+            finished.add(task);
+        }
+    }
+
+    private static final class Fingerprints implements FingerprintRepository {
+
+        private final List<Fingerprint> stored;
+
+        private int reads;
+
+        private Fingerprints(List<Fingerprint> stored) {
+            this.stored = stored;
+        }
+
+        @Override
+        public List<Fingerprint> fingerprintByLocalizationIdAndWithIdGreater(Long localizationId, Long id, int batchSize) {
+            return fingerprintByLocalizationIdAndIdBetween(localizationId, id, Long.MAX_VALUE, batchSize);
+        }
+
+        @Override
+        public List<Fingerprint> fingerprintByLocalizationIdAndIdBetween(Long localizationId, Long after, Long upTo, int batchSize) {
+            reads++;
+            return stored
+                    .stream()
+                    .filter(e -> e.getLocalizationId().equals(localizationId))
+                    .filter(e -> e.getId() > after && e.getId() <= upTo)
+                    .limit(batchSize)
+                    .collect(Collectors.toList());
+        }
+
+        @Override
+        public long streamByLocalizationIdAndWithIdGreater(Long localizationId, Long id, Consumer<Fingerprint> consumer) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean bulkFingerprints(List<Fingerprint> fingerprints) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean deleteByPosition(Position position) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Map<Long, Set<String>> bssidsByLocalization() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Set<String> bssidsOfLocalization(Long localizationId) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    private static final class Tasks implements TaskRepository {
+
+        private final List<Task> saved = new ArrayList<>();
+
+        @Override
+        public Stream<Task> openTasks() {
+            return Stream.empty();
+        }
+
+        @Override
+        public Optional<Task> findTaskByTrainingId(Training training) {
+            return Optional.empty();
+        }
+
+        @Override
+        public Task save(Task entity) {
+            saved.add(entity);
+            return entity;
+        }
+
+        @Override
+        public List<Task> saveAll(Collection<Task> entities) {
+            saved.addAll(entities);
+            return new ArrayList<>(entities);
+        }
+
+        @Override
+        public boolean add(Task entity) {
+            return saved.add(entity);
+        }
+
+        @Override
+        public Iterable<Task> all() {
+            return saved;
+        }
+
+        @Override
+        public Optional<Task> findById(Long id) {
+            return saved.stream().filter(e -> e.getId().equals(id)).findFirst();
+        }
+
+        @Override
+        public long size() {
+            return saved.size();
+        }
+
+        @Override
+        public void delete(Task entity) {
+            saved.remove(entity);
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package me.nunum.whereami.service;
+
+import me.nunum.whereami.model.Prediction;
+import me.nunum.whereami.model.request.FingerprintSample;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.Assert.*;
+
+public class PredictionCacheTest {
+
+    private static FingerprintSample sample(String bssid, int level) {
+        return new FingerprintSample(bssid, "ssid", level, 0, 0, 0, 2412, "");
+    }
+
+    @Test
+    public void testSimilarScansShareSignature() {
+
+        final PredictionCache cache = new PredictionCache(10_000L, 10, 3, 6);
+
+        final List<FingerprintSample> scan = Arrays.asList(sample("a", -40), sample("b", -55), sample("c", -61), sample("d", -90));
+        final List<FingerprintSample> sameScan = Arrays.asList(sample("c", -62), sample("a", -41), sample("b", -56), sample("e", -92));
+        final List<FingerprintSample> otherScan = Arrays.asList(sample("a", -70), sample("b", -55), sample("c", -61));
+
+        assertEquals(cache.signature(scan), cache.signature(sameScan));
+        assertFalse(cache.signature(scan).equals(cache.signature(otherScan)));
+    }
+
+    @Test
+    public void testLookupAfterStore() {
+
+        final PredictionCache cache = new PredictionCache(10_000L, 10, 3, 6);
+
+        final List<FingerprintSample> scan = Arrays.asList(sample("a", -40), sample("b", -55));
+        final Prediction prediction = new Prediction(1L, 1L, 2L, "Kitchen", 0.9f, 3L, 4L);
+
+        assertFalse(cache.lookup(1L, scan).isPresent());
+
+        cache.store(1L, scan, Collections.singletonList(prediction));
+
+        final Optional<List<Prediction>> hit = cache.lookup(1L, scan);
+        assertTrue(hit.isPresent());
+        assertEquals(1, hit.get().size());
+
+        assertFalse("Entries are per localization", cache.lookup(2L, scan).isPresent());
+
+        assertEquals(1L, cache.stats().get("hits"));
+        assertEquals(2L, cache.stats().get("misses"));
+    }
+
+    @Test
+    public void testExpiredEntriesAreNotReused() throws InterruptedException {
+
+        final PredictionCache cache = new PredictionCache(1L, 10, 3, 6);
+
+        final List<FingerprintSample> scan = Arrays.asList(sample("a", -40), sample("b", -55));
+
+        cache.store(1L, scan, Collections.singletonList(new Prediction(1L, 1L, 2L, "Kitchen", 0.9f, 3L, 4L)));
+
+        Thread.sleep(5);
+
+        assertFalse(cache.lookup(1L, scan).isPresent());
+    }
+}
@@ -0,0 +1,200 @@
+package me.nunum.whereami.service;
+
+import me.nunum.whereami.model.Prediction;
+import me.nunum.whereami.model.PredictionRollup;
+import me.nunum.whereami.model.persistance.jpa.PredictionRepositoryJpa;
+import me.nunum.whereami.model.persistance.jpa.PredictionRollupRepositoryJpa;
+import org.junit.Test;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityTransaction;
+import javax.persistence.TemporalType;
+import java.time.Clock;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.StreamSupport;
+
+import static org.junit.Assert.*;
+
+public class PredictionRetentionServiceTest {
+
+    private static final long PROVIDER = 28L;
+
+    /**
+     * Rollups are never written for days before the latest one rolled up, so
+     * each test starts after the days rolled up by the others
+     */
+    private static LocalDate startingDay() throws Exception {
+        try (PredictionRollupRepositoryJpa rollups = new PredictionRollupRepositoryJpa()) {
+            return rollups
+                    .latestDay()
+                    .map(e -> PredictionRetentionService.toLocalDate(e).plusDays(10))
+                    .orElse(LocalDate.now().minusDays(3000));
+        }
+    }
+
+    private static Clock clockAt(LocalDate day) {
+        return Clock.fixed(PredictionRetentionService.toDate(day).toInstant(), ZoneId.systemDefault());
+    }
+
+    private static Prediction predict(Predictions predictions, long localizationId, LocalDate day) {
+        final Prediction prediction = predictions.save(new Prediction(1L, localizationId, 1L, "label", 90f, PROVIDER, 1L));
+        predictions.backdate(prediction, day);
+        return prediction;
+    }
+
+    private static List<PredictionRollup> rollups(long localizationId, LocalDate day) throws Exception {
+
+        try (PredictionRollupRepositoryJpa rollups = new PredictionRollupRepositoryJpa()) {
+            return StreamSupport
+                    .stream(rollups.all().spliterator(), false)
+                    .filter(e -> e.getLocalizationId().equals(localizationId))
+                    .filter(e -> e.getRollupDay().getTime() == PredictionRetentionService.toDate(day).getTime())
+                    .collect(Collectors.toList());
+        }
+    }
+
+    @Test
+    public void testFeedbackAfterTheRollupIsRolledUpAgain() throws Exception {
+
+        final long localizationId = 28001L;
+        final LocalDate today = startingDay();
+        final LocalDate day = today.minusDays(2);
+
+        try (Predictions predictions = new Predictions();
+             PredictionRollupRepositoryJpa rollupRepository = new PredictionRollupRepositoryJpa()) {
+
+            final Prediction correct = predict(predictions, localizationId, day);
+            final Prediction incorrect = predict(predictions, localizationId, day);
+            final Prediction late = predict(predictions, localizationId, day);
+
+            predictions.feedback(correct, true, day);
+            predictions.feedback(incorrect, false, day);
+
+            final PredictionRetentionService service = new PredictionRetentionService(30, 10, 7, clockAt(today));
+
+            assertEquals(0L, service.retain(predictions, rollupRepository));
+
+            List<PredictionRollup> rolled = rollups(localizationId, day);
+
+            assertEquals(1, rolled.size());
+            assertEquals(3L, rolled.get(0).getPredictions());
+            assertEquals(1L, rolled.get(0).getCorrectPredictions());
+            assertEquals(1L, rolled.get(0).getIncorrectPredictions());
+
+            predictions.feedback(late, true, day);
+
+            service.retain(predictions, rollupRepository);
+
+            rolled = rollups(localizationId, day);
+
+            assertEquals(1, rolled.size());
+            assertEquals(3L, rolled.get(0).getPredictions());
+            assertEquals(2L, rolled.get(0).getCorrectPredictions());
+            assertEquals(1L, rolled.get(0).getIncorrectPredictions());
+
+            new PredictionRetentionService(30, 10, 7, clockAt(today.plusDays(40))).retain(predictions, rollupRepository);
+
+            assertEquals(0L, predictions.count(localizationId));
+            assertEquals(2L, rollups(localizationId, day).get(0).getCorrectPredictions());
+        }
+    }
+
+    @Test
+    public void testPurgeStopsAtTheLastRolledUpDay() throws Exception {
+
+        final long localizationId = 28002L;
+        final LocalDate today = startingDay();
+        final LocalDate first = today.minusDays(5);
+        final LocalDate failing = today.minusDays(4);
+        final LocalDate last = today.minusDays(3);
+
+        try (Predictions predictions = new Predictions();
+             PredictionRollupRepositoryJpa failingRollups = new FailingRollups(failing);
+             PredictionRollupRepositoryJpa rollupRepository = new PredictionRollupRepositoryJpa()) {
+
+            predict(predictions, localizationId, first);
+            predict(predictions, localizationId, first);
+            predict(predictions, localizationId, last);
+            predict(predictions, localizationId, last);
+
+            final PredictionRetentionService service = new PredictionRetentionService(1, 1, 7, clockAt(today));
+
+            assertEquals(2L, service.retain(predictions, failingRollups));
+
+            assertEquals(2L, rollups(localizationId, first).get(0).getPredictions());
+            assertTrue(rollups(localizationId, last).isEmpty());
+            assertEquals(2L, predictions.count(localizationId));
+
+            assertEquals(2L, service.retain(predictions, rollupRepository));
+
+            assertEquals(2L, rollups(localizationId, last).get(0).getPredictions());
+            assertEquals(0L, predictions.count(localizationId));
+        }
+    }
+
+    /**
+     * Predictions whose creation date and feedback are set by the test
+     */
+    private static final class Predictions extends PredictionRepositoryJpa {
+
+        private void backdate(Prediction prediction, LocalDate day) {
+
+            final EntityManager manager = entityManager();
+            final EntityTransaction transaction = manager.getTransaction();
+
+            transaction.begin();
+
+            manager.createNativeQuery("UPDATE PREDICTION SET CREATED = ? WHERE ID = ?")
+                    .setParameter(1, new Date(PredictionRetentionService.toDate(day).getTime() + TimeUnit.HOURS.toMillis(12)), TemporalType.TIMESTAMP)
+                    .setParameter(2, prediction.getId())
+                    .executeUpdate();
+
+            transaction.commit();
+        }
+
+        private void feedback(Prediction prediction, boolean correct, LocalDate day) {
+
+            if (correct) {
+                prediction.correctPrediction();
+            } else {
+                prediction.incorrectPrediction();
+            }
+
+            backdate(save(prediction), day);
+        }
+
+        private long count(long localizationId) {
+            return ((Number) entityManager()
+                    .createNativeQuery("SELECT COUNT(*) FROM PREDICTION WHERE LOCALIZATIONID = ?")
+                    .setParameter(1, localizationId)
+                    .getSingleResult()).longValue();
+        }
+    }
+
+    /**
+     * Rollups that can not be written for one day
+     */
+    private static final class FailingRollups extends PredictionRollupRepositoryJpa {
+
+        private final Date failing;
+
+        private FailingRollups(LocalDate failing) {
+            this.failing = PredictionRetentionService.toDate(failing);
+        }
+
+        @Override
+        public void replaceDay(Date day, List<PredictionRollup> rollups) {
+
+            if (day.equals(this.failing)) {
+                throw new IllegalStateException("Rollup of " + day + " failed");
+            }
+
+            super.replaceDay(day, rollups);
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package me.nunum.whereami.service;
+
+import me.nunum.whereami.model.Fingerprint;
+import me.nunum.whereami.service.exceptions.HTTPRequestError;
+import org.junit.Test;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.Assert.*;
+
+public class SinkWindowTest {
+
+    private static FingerprintBatch batch(long... ids) {
+
+        final List<Fingerprint> fingerprints = new ArrayList<>(ids.length);
+
+        for (long id : ids) {
+            final Fingerprint fingerprint = new Fingerprint("bssid", "ssid", -50, 0, 0, 0, 2412, "", 0, 0, 1L, 1L);
+            fingerprint.setId(id);
+            fingerprints.add(fingerprint);
+        }
+
+        return new FingerprintBatch(fingerprints);
+    }
+
+    private static List<FingerprintBatch> batches() {
+        return Arrays.asList(batch(1, 2), batch(3, 4), batch(5, 6), batch(7, 8));
+    }
+
+    private static CompletableFuture<Long> failed() {
+        final CompletableFuture<Long> future = new CompletableFuture<>();
+        future.completeExceptionally(new HTTPRequestError("The server is down."));
+        return future;
+    }
+
+    @Test
+    public void testWindowIsAcknowledgedImplicitly() {
+
+        final List<String> sent = new ArrayList<>();
+
+        final SinkWindow window = new SinkWindow((batch, previous) -> {
+            sent.add(previous + "-" + batch.lastId());
+            return CompletableFuture.completedFuture(null);
+        }, 3, 2, 1);
+
+        window.send(0, batches());
+
+        assertEquals(Arrays.asList("0-2", "2-4", "4-6", "6-8"), sent);
+        assertEquals(8L, window.acknowledged());
+    }
+
+    @Test
+    public void testGoBackFromTheFailedBatch() {
+
+        final List<Long> sent = new ArrayList<>();
+        final Set<Long> failOnce = new HashSet<>(Collections.singletonList(4L));
+
+        final SinkWindow window = new SinkWindow((batch, previous) -> {
+            sent.add(batch.lastId());
+            return failOnce.remove(batch.lastId()) ? failed() : CompletableFuture.completedFuture(null);
+        }, 4, 2, 1);
+
+        window.send(0, batches());
+
+        assertEquals(Arrays.asList(2L, 4L, 6L, 8L, 4L, 6L, 8L), sent);
+        assertEquals(8L, window.acknowledged());
+    }
+
+    @Test
+    public void testExplicitMarkSkipsHeldBatches() {
+
+        final List<Long> sent = new ArrayList<>();
+        final Set<Long> failOnce = new HashSet<>(Collections.singletonList(4L));
+
+        final SinkWindow window = new SinkWindow((batch, previous) -> {
+            sent.add(batch.lastId());
+            if (failOnce.remove(batch.lastId())) {
+                return failed();
+            }
+            return CompletableFuture.completedFuture(batch.lastId() == 6L ? 6L : null);
+        }, 4, 2, 1);
+
+        window.send(0, batches());
+
+        assertEquals(Arrays.asList(2L, 4L, 6L, 8L, 8L), sent);
+        assertEquals(8L, window.acknowledged());
+    }
+
+    @Test
+    public void testProgressIsKeptWhenRetransmissionsRunOut() {
+
+        final SinkWindow window = new SinkWindow((batch, previous) ->
+                batch.lastId() > 4 ? failed() : CompletableFuture.completedFuture(null), 2, 1, 1);
+
+        try {
+            window.send(0, batches());
+            fail("Expecting the window to give up");
+        } catch (HTTPRequestError e) {
+            assertEquals(4L, window.acknowledged());
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package me.nunum.whereami.service.radiomap;
+
+import me.nunum.whereami.model.request.FingerprintSample;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.*;
+
+public class BatchPredictorTest {
+
+    @Test
+    public void testResultsKeepInputOrder() {
+
+        final RadioMap map = new RadioMap(1L);
+
+        // Echo the level of the first sample as the position id
+        final BuiltInAlgorithm echo = (snapshot, samples) ->
+                Collections.singletonList(new Candidate(-samples.get(0).getLevelDBM(), 1.0));
+
+        final List<List<FingerprintSample>> scans = new ArrayList<>();
+
+        for (int i = 0; i < 101; i++) {
+            scans.add(Collections.singletonList(new FingerprintSample("a", "ssid", -i, 0, 0, 0, 2412, "")));
+        }
+
+        final ForkJoinPool pool = new ForkJoinPool(4);
+
+        try {
+
+            final List<List<Candidate>> results = BatchPredictor.predict(pool, 3, echo, map.snapshot(), scans);
+
+            assertEquals(scans.size(), results.size());
+
+            for (int i = 0; i < results.size(); i++) {
+                assertEquals(i, results.get(i).get(0).getPositionId());
+            }
+
+            assertTrue(BatchPredictor.predict(pool, 3, echo, map.snapshot(), new ArrayList<>()).isEmpty());
+
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testMissingScanIsRejected() {
+
+        final RadioMap map = new RadioMap(1L);
+
+        final BuiltInAlgorithm none = (snapshot, samples) -> Collections.emptyList();
+
+        final List<List<FingerprintSample>> scans = new ArrayList<>();
+        scans.add(Collections.singletonList(new FingerprintSample("a", "ssid", -40, 0, 0, 0, 2412, "")));
+        scans.add(null);
+
+        final ForkJoinPool pool = new ForkJoinPool(1);
+
+        try {
+
+            BatchPredictor.predict(pool, 3, none, map.snapshot(), scans);
+            fail("Expecting the missing scan to be rejected");
+
+        } catch (IllegalArgumentException e) {
+
+            assertTrue(e.getMessage().contains("1"));
+
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package me.nunum.whereami.service.radiomap;
+
+import me.nunum.whereami.model.Fingerprint;
+import me.nunum.whereami.model.request.FingerprintSample;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class HorusPredictorTest {
+
+    private static long ids = 0;
+
+    private static Fingerprint fingerprint(long positionId, String bssid, int level) {
+        final Fingerprint fingerprint = new Fingerprint(bssid, "ssid", level, 0, 0, 0, 2412, "", 0, 0, positionId, 1L);
+        fingerprint.setId(++ids);
+        return fingerprint;
+    }
+
+    private static FingerprintSample sample(String bssid, int level) {
+        return new FingerprintSample(bssid, "ssid", level, 0, 0, 0, 2412, "");
+    }
+
+    @Test
+    public void testMostLikelyPositionComesFirst() {
+
+        final RadioMap map = new RadioMap(1L, 4);
+        final List<Fingerprint> fingerprints = new ArrayList<>();
+
+        for (int i = 0; i < 20; i++) {
+            fingerprints.add(fingerprint(10L, "a", -40 - i % 3));
+            fingerprints.add(fingerprint(10L, "b", -80 - i % 3));
+            fingerprints.add(fingerprint(20L, "a", -80 - i % 3));
+            fingerprints.add(fingerprint(20L, "b", -40 - i % 3));
+        }
+
+        map.append(fingerprints, 0L);
+
+        final HorusPredictor predictor = new HorusPredictor(2);
+
+        final List<Candidate> candidates = predictor.predict(map.snapshot(), Arrays.asList(sample("a", -41), sample("b", -81)));
+
+        assertEquals(2, candidates.size());
+        assertEquals(10L, candidates.get(0).getPositionId());
+        assertTrue(candidates.get(0).getConfidence() > 0.9);
+
+        assertEquals(20L, predictor.predict(map.snapshot(), Arrays.asList(sample("b", -42), sample("z", -30))).get(0).getPositionId());
+        assertTrue(predictor.predict(map.snapshot(), Collections.singletonList(sample("z", -30))).isEmpty());
+    }
+
+    @Test
+    public void testHistogramsSurviveGrowth() {
+
+        final RadioMap map = new RadioMap(1L, 4);
+        final List<Fingerprint> fingerprints = new ArrayList<>();
+
+        fingerprints.add(fingerprint(0L, "ap0", -50));
+        fingerprints.add(fingerprint(0L, "ap0", -50));
+
+        for (int p = 1; p < 40; p++) {
+            for (int a = 0; a < 40; a++) {
+                fingerprints.add(fingerprint(p, "ap" + a, -90));
+            }
+        }
+
+        map.append(fingerprints, 0L);
+
+        final RadioMapSnapshot snapshot = map.snapshot();
+        final int column = snapshot.apIndex("ap0");
+
+        assertTrue(snapshot.penalty(0, column, snapshot.bin(-50)) < snapshot.penalty(0, column, snapshot.bin(-90)));
+        assertEquals(LevelHistograms.MAX_PENALTY, snapshot.penalty(0, snapshot.apIndex("ap39"), snapshot.bin(-90)));
+        assertEquals(0L, new HorusPredictor(1).predict(snapshot, Collections.singletonList(sample("ap0", -51))).get(0).getPositionId());
+    }
+}
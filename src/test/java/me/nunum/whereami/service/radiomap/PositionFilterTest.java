@@ -0,0 +1,101 @@
+package me.nunum.whereami.service.radiomap;
+
+import me.nunum.whereami.model.Fingerprint;
+import me.nunum.whereami.model.request.FingerprintSample;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class PositionFilterTest {
+
+    private static long ids = 0;
+
+    private static Fingerprint fingerprint(long positionId, String bssid, int level) {
+        final Fingerprint fingerprint = new Fingerprint(bssid, "ssid", level, 0, 0, 0, 2412, "", 0, 0, positionId, 1L);
+        fingerprint.setId(++ids);
+        return fingerprint;
+    }
+
+    private static FingerprintSample sample(String bssid, int level) {
+        return new FingerprintSample(bssid, "ssid", level, 0, 0, 0, 2412, "");
+    }
+
+    private static RadioMap corridor() {
+
+        final RadioMap map = new RadioMap(1L);
+
+        map.append(Arrays.asList(
+                fingerprint(10L, "a", -40), fingerprint(10L, "b", -80),
+                fingerprint(20L, "a", -60), fingerprint(20L, "b", -60),
+                fingerprint(30L, "a", -80), fingerprint(30L, "b", -40)), 0L);
+
+        return map;
+    }
+
+    @Test
+    public void testSingleOutlierDoesNotMoveTheEstimate() {
+
+        final RadioMapSnapshot snapshot = corridor().snapshot();
+        final PositionFilter filter = new PositionFilter(0.8, 6.0, 3);
+
+        final List<FingerprintSample> atTen = Arrays.asList(sample("a", -42), sample("b", -79));
+        final List<FingerprintSample> outlier = Arrays.asList(sample("a", -52), sample("b", -66));
+
+        for (int i = 0; i < 5; i++) {
+            assertEquals(10L, filter.update(snapshot, atTen).get(0).getPositionId());
+        }
+
+        assertEquals(20L, new PositionFilter(0.8, 6.0, 1).update(snapshot, outlier).get(0).getPositionId());
+
+        final List<Candidate> smoothed = filter.update(snapshot, outlier);
+
+        assertEquals(10L, smoothed.get(0).getPositionId());
+        assertEquals(3, smoothed.size());
+        assertTrue(smoothed.get(0).getConfidence() >= smoothed.get(1).getConfidence());
+    }
+
+    @Test
+    public void testMovesAfterRepeatedEvidence() {
+
+        final RadioMapSnapshot snapshot = corridor().snapshot();
+        final PositionFilter filter = new PositionFilter(0.8, 6.0, 1);
+
+        final List<FingerprintSample> atTen = Arrays.asList(sample("a", -40), sample("b", -80));
+        final List<FingerprintSample> atThirty = Arrays.asList(sample("a", -80), sample("b", -40));
+
+        for (int i = 0; i < 5; i++) {
+            filter.update(snapshot, atTen);
+        }
+
+        Candidate estimate = null;
+        for (int i = 0; i < 5; i++) {
+            estimate = filter.update(snapshot, atThirty).get(0);
+        }
+
+        assertEquals(30L, estimate.getPositionId());
+        assertTrue(estimate.getConfidence() > 0.9);
+    }
+
+    @Test
+    public void testBeliefSurvivesRadioMapChanges() {
+
+        final RadioMap map = corridor();
+        final PositionFilter filter = new PositionFilter(0.95, 6.0, 1);
+
+        final List<FingerprintSample> atThirty = Arrays.asList(sample("a", -80), sample("b", -40));
+
+        for (int i = 0; i < 5; i++) {
+            filter.update(map.snapshot(), atThirty);
+        }
+
+        map.append(Collections.singletonList(fingerprint(40L, "c", -50)), 0L);
+
+        final Candidate estimate = filter.update(map.snapshot(), Collections.singletonList(sample("unknown", -50))).get(0);
+
+        assertEquals(30L, estimate.getPositionId());
+    }
+}
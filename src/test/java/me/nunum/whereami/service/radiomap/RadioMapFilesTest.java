@@ -0,0 +1,142 @@
+package me.nunum.whereami.service.radiomap;
+
+import me.nunum.whereami.model.Fingerprint;
+import me.nunum.whereami.model.request.FingerprintSample;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Optional;
+
+import static org.junit.Assert.*;
+
+public class RadioMapFilesTest {
+
+    private static long ids = 0;
+
+    private static Fingerprint fingerprint(long positionId, String bssid, int level) {
+        final Fingerprint fingerprint = new Fingerprint(bssid, "ssid", level, 0, 0, 0, 2412, "", 0, 0, positionId, 7L);
+        fingerprint.setId(++ids);
+        return fingerprint;
+    }
+
+    private static RadioMap sampleMap() {
+        final RadioMap map = new RadioMap(7L, 4);
+        map.append(Arrays.asList(
+                fingerprint(10L, "a", -40),
+                fingerprint(10L, "a", -44),
+                fingerprint(10L, "b", -80),
+                fingerprint(20L, "a", -80),
+                fingerprint(20L, "b", -41)), 0L);
+        return map;
+    }
+
+    private static void deleteRecursively(Path directory) throws IOException {
+        if (Files.exists(directory)) {
+            Files.list(directory).forEach(e -> e.toFile().delete());
+            Files.delete(directory);
+        }
+    }
+
+    @Test
+    public void testRoundTrip() throws IOException {
+
+        final Path directory = Files.createTempDirectory("radiomap");
+
+        try {
+
+            final RadioMap map = sampleMap();
+            final RadioMapSnapshot original = map.snapshot();
+
+            final RadioMapFiles.Header header = RadioMapFiles.write(directory, map);
+
+            assertEquals(map.lastFingerprintId(), header.lastFingerprintId);
+            assertEquals(Collections.singletonList(7L), RadioMapFiles.localizations(directory));
+
+            final Optional<RadioMap> restored = RadioMapFiles.read(directory, 7L);
+            assertTrue(restored.isPresent());
+
+            final RadioMapSnapshot snapshot = restored.get().snapshot();
+
+            assertEquals(original.positionCount(), snapshot.positionCount());
+            assertEquals(original.apCount(), snapshot.apCount());
+            assertEquals(original.getLastFingerprintId(), snapshot.getLastFingerprintId());
+
+            for (int p = 0; p < snapshot.positionCount(); p++) {
+                assertEquals(original.positionId(p), snapshot.positionId(p));
+                assertEquals(original.partitionOf(p), snapshot.partitionOf(p));
+                for (String bssid : Arrays.asList("a", "b")) {
+                    final int a = snapshot.apIndex(bssid);
+                    assertEquals(original.mean(p, original.apIndex(bssid)), snapshot.mean(p, a), 0f);
+                    for (int b = 0; b < snapshot.bins(); b++) {
+                        assertEquals(original.penalty(p, original.apIndex(bssid), b), snapshot.penalty(p, a, b));
+                    }
+                }
+            }
+
+            assertFalse(RadioMapFiles.read(directory, 8L).isPresent());
+
+        } finally {
+            deleteRecursively(directory);
+        }
+    }
+
+    @Test
+    public void testRestoredMapKeepsGrowing() throws IOException {
+
+        final Path directory = Files.createTempDirectory("radiomap");
+
+        try {
+
+            RadioMapFiles.write(directory, sampleMap());
+
+            final RadioMap restored = RadioMapFiles.read(directory, 7L).get();
+            final long last = restored.lastFingerprintId();
+
+            restored.append(Arrays.asList(
+                    fingerprint(10L, "a", -48),
+                    fingerprint(30L, "c", -60)), last);
+
+            final RadioMapSnapshot snapshot = restored.snapshot();
+
+            assertEquals(3, snapshot.positionCount());
+            assertEquals(3, snapshot.apCount());
+            assertEquals(-44f, snapshot.mean(0, snapshot.apIndex("a")), 0.001f);
+            assertEquals(-60f, snapshot.mean(2, snapshot.apIndex("c")), 0.001f);
+            assertEquals(30L, MeanPredictor.predict(snapshot, Collections.singletonList(new FingerprintSample("c", "ssid", -61, 0, 0, 0, 2412, ""))));
+
+            // The file is mapped privately, it still holds the old state
+            assertEquals(2, RadioMapFiles.read(directory, 7L).get().snapshot().positionCount());
+
+        } finally {
+            deleteRecursively(directory);
+        }
+    }
+
+    @Test
+    public void testCorruptedSnapshotIsIgnored() throws IOException {
+
+        final Path directory = Files.createTempDirectory("radiomap");
+
+        try {
+
+            final RadioMapFiles.Header header = RadioMapFiles.write(directory, sampleMap());
+
+            final Path file = directory.resolve("7-" + header.lastFingerprintId + ".radiomap");
+
+            try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+                raf.seek(RadioMapFiles.HEADER_BYTES + 3);
+                raf.write(0x7F);
+            }
+
+            assertFalse(RadioMapFiles.read(directory, 7L).isPresent());
+
+        } finally {
+            deleteRecursively(directory);
+        }
+    }
+}
@@ -0,0 +1,349 @@
+package me.nunum.whereami.service.radiomap;
+
+import me.nunum.whereami.model.Fingerprint;
+import me.nunum.whereami.model.request.FingerprintSample;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.*;
+
+public class RadioMapTest {
+
+    private static long ids = 0;
+
+    private static Fingerprint fingerprint(long positionId, String bssid, int level) {
+        final Fingerprint fingerprint = new Fingerprint(bssid, "ssid", level, 0, 0, 0, 2412, "", 0, 0, positionId, 1L);
+        fingerprint.setId(++ids);
+        return fingerprint;
+    }
+
+    private static Fingerprint fingerprint(long positionId, int floorId, String bssid, int level) {
+        final Fingerprint fingerprint = new Fingerprint(bssid, "ssid", level, 0, 0, 0, 2412, "", 1, floorId, positionId, 1L);
+        fingerprint.setId(++ids);
+        return fingerprint;
+    }
+
+    private static FingerprintSample sample(String bssid, int level) {
+        return new FingerprintSample(bssid, "ssid", level, 0, 0, 0, 2412, "");
+    }
+
+    @Test
+    public void testMeansPerPositionAndAccessPoint() {
+
+        final RadioMap map = new RadioMap(1L);
+
+        map.append(Arrays.asList(
+                fingerprint(10L, "a", -40),
+                fingerprint(10L, "a", -50),
+                fingerprint(20L, "b", -70)), 0L);
+
+        final RadioMapSnapshot snapshot = map.snapshot();
+
+        assertEquals(2, snapshot.positionCount());
+        assertEquals(2, snapshot.apCount());
+
+        final int a = snapshot.apIndex("a");
+        final int b = snapshot.apIndex("b");
+
+        assertEquals(-45f, snapshot.mean(0, a), 0.001f);
+        assertEquals(2, snapshot.count(0, a));
+        assertEquals(RadioMapSnapshot.MISSING, snapshot.mean(0, b), 0.001f);
+        assertEquals(-70f, snapshot.mean(1, b), 0.001f);
+        assertEquals(-1, snapshot.apIndex("c"));
+    }
+
+    @Test
+    public void testGrowsBeyondInitialCapacity() {
+
+        final RadioMap map = new RadioMap(1L);
+
+        final List<Fingerprint> fingerprints = new ArrayList<>();
+
+        for (int p = 0; p < 40; p++) {
+            for (int a = 0; a < 40; a++) {
+                fingerprints.add(fingerprint(p, "ap" + a, -p - a));
+            }
+        }
+
+        map.append(fingerprints, 0L);
+
+        final RadioMapSnapshot snapshot = map.snapshot();
+
+        assertEquals(40, snapshot.positionCount());
+        assertEquals(40, snapshot.apCount());
+        assertEquals(-39f - 17f, snapshot.mean(39, snapshot.apIndex("ap17")), 0.001f);
+    }
+
+    @Test
+    public void testSkipsAlreadyLoadedFingerprints() {
+
+        final RadioMap map = new RadioMap(1L);
+
+        final Fingerprint first = fingerprint(10L, "a", -40);
+
+        map.append(Collections.singletonList(first), 0L);
+        map.append(Arrays.asList(first, fingerprint(10L, "a", -60)), first.getId());
+
+        final RadioMapSnapshot snapshot = map.snapshot();
+
+        assertEquals(-50f, snapshot.mean(0, snapshot.apIndex("a")), 0.001f);
+        assertEquals(snapshot.getLastFingerprintId(), map.lastFingerprintId());
+    }
+
+    @Test
+    public void testOversizedBuffersAreRejected() {
+
+        assertEquals(64 * 64 * 20 * Integer.BYTES, LevelHistograms.checkedSize("histograms", 64, 64, 20, Integer.BYTES));
+
+        try {
+            LevelHistograms.checkedSize("histograms", 100000, 1000, 20, Integer.BYTES);
+            fail("Expecting the size to be rejected");
+        } catch (IllegalStateException e) {
+            assertTrue(e.getMessage().contains("histograms"));
+        }
+
+        try {
+            LevelHistograms.checkedSize("likelihood table", Integer.MAX_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE);
+            fail("Expecting the size to be rejected");
+        } catch (IllegalStateException e) {
+            assertTrue(e.getMessage().contains("likelihood table"));
+        }
+    }
+
+    @Test
+    public void testLikelihoodTableIsUpdatedInPlace() {
+
+        final RadioMap map = new RadioMap(1L);
+
+        map.append(Collections.singletonList(fingerprint(10L, "a", -50)), 0L);
+
+        final long bytes = map.offHeapBytes();
+
+        // Counters and likelihood table of the initial capacity
+        assertEquals(16L * 16 * LevelHistograms.bins(LevelHistograms.DEFAULT_BIN_WIDTH) * (Integer.BYTES + 1), bytes);
+
+        final RadioMapSnapshot first = map.snapshot();
+        final int penalty = first.penalty(0, first.apIndex("a"), first.bin(-50));
+
+        final List<Fingerprint> more = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            more.add(fingerprint(10L, "a", -50));
+        }
+        map.append(more, 0L);
+
+        final RadioMapSnapshot second = map.snapshot();
+
+        assertNotSame(first, second);
+        assertSame(first.likelihoods(), second.likelihoods());
+        assertEquals(bytes, map.offHeapBytes());
+        assertTrue(second.penalty(0, second.apIndex("a"), second.bin(-50)) < penalty);
+
+        final RadioMap rebuilt = new RadioMap(1L);
+        final List<Fingerprint> all = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            all.add(fingerprint(10L, "a", -50));
+        }
+        rebuilt.append(all, 0L);
+
+        assertEquals(rebuilt.snapshot().penalty(0, 0, second.bin(-50)), second.penalty(0, second.apIndex("a"), second.bin(-50)));
+        assertEquals(rebuilt.snapshot().penalty(0, 0, second.bin(-90)), second.penalty(0, second.apIndex("a"), second.bin(-90)));
+
+        for (int p = 0; p < 20; p++) {
+            map.append(Collections.singletonList(fingerprint(100L + p, "a", -60)), 0L);
+        }
+
+        // Grown, the table was allocated again
+        assertTrue(map.offHeapBytes() > bytes);
+        assertNotSame(second.likelihoods(), map.snapshot().likelihoods());
+        assertEquals(second.penalty(0, 0, second.bin(-50)), map.snapshot().penalty(0, 0, second.bin(-50)));
+    }
+
+    @Test
+    public void testLateCommitsWithinTheWindowAreApplied() {
+
+        final RadioMap map = new RadioMap(1L, LevelHistograms.DEFAULT_BIN_WIDTH, 10L);
+
+        final Fingerprint tooLate = fingerprint(10L, "a", -90);
+
+        ids += 5;
+
+        final Fingerprint late = fingerprint(10L, "a", -60);
+        final Fingerprint first = fingerprint(10L, "a", -40);
+
+        ids += 4;
+
+        final Fingerprint last = fingerprint(10L, "a", -50);
+
+        map.append(Arrays.asList(first, last));
+
+        assertEquals(last.getId() - 10L, map.rereadFrom());
+
+        // Read again behind the cursor: the late commit is applied, the others are skipped
+        map.append(Arrays.asList(tooLate, late, first, last));
+
+        final RadioMapSnapshot snapshot = map.snapshot();
+
+        assertEquals(3, snapshot.count(0, snapshot.apIndex("a")));
+        assertEquals(-50f, snapshot.mean(0, snapshot.apIndex("a")), 0.001f);
+    }
+
+    @Test
+    public void testConcurrentReadersShareOneSnapshotPerWrite() throws Exception {
+
+        final RadioMap map = new RadioMap(1L);
+
+        // Large enough for a snapshot to take a while to build
+        final List<Fingerprint> fingerprints = new ArrayList<>();
+        for (int p = 0; p < 400; p++) {
+            for (int a = 0; a < 50; a++) {
+                fingerprints.add(fingerprint(1000L + p, "ap" + a, -40 - (p + a) % 50));
+            }
+        }
+        map.append(fingerprints, 0L);
+
+        final int readers = 8;
+        final ExecutorService executor = Executors.newFixedThreadPool(readers);
+
+        try {
+
+            for (int round = 0; round < 20; round++) {
+
+                map.append(Collections.singletonList(fingerprint(1000L + round, "ap" + round, -40 - round)), 0L);
+
+                final CountDownLatch start = new CountDownLatch(1);
+                final List<Future<RadioMapSnapshot>> snapshots = new ArrayList<>();
+
+                for (int i = 0; i < readers; i++) {
+                    snapshots.add(executor.submit(() -> {
+                        start.await();
+                        return map.snapshot();
+                    }));
+                }
+
+                start.countDown();
+
+                final RadioMapSnapshot first = snapshots.get(0).get();
+
+                for (Future<RadioMapSnapshot> snapshot : snapshots) {
+                    assertSame(first, snapshot.get());
+                }
+
+                assertSame(first, map.currentSnapshot().orElse(null));
+            }
+
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testSearchesUseThePreviousTreeUntilTheNewOneIsBuilt() {
+
+        final RadioMap map = new RadioMap(1L);
+
+        map.append(Arrays.asList(fingerprint(10L, "a", -40), fingerprint(20L, "a", -80)));
+
+        final RadioMapSnapshot first = map.snapshot();
+
+        assertFalse(first.indexed().isPresent());
+
+        first.vantagePointTree();
+
+        assertSame(first, first.indexed().get());
+
+        map.append(Collections.singletonList(fingerprint(30L, "a", -60)));
+
+        final RadioMapSnapshot second = map.snapshot();
+
+        assertSame(first, second.indexed().get());
+
+        final List<Candidate> candidates = new WeightedKnnPredictor(1, Long.MAX_VALUE, 1, 0)
+                .predict(second, Collections.singletonList(sample("a", -61)));
+
+        // Position 30 is not in the tree of the first snapshot yet
+        assertEquals(1, candidates.size());
+        assertEquals(20L, candidates.get(0).getPositionId());
+
+        second.vantagePointTree();
+
+        assertSame(second, second.indexed().get());
+        assertEquals(30L, new WeightedKnnPredictor(1, Long.MAX_VALUE, 1, 0)
+                .predict(second, Collections.singletonList(sample("a", -61))).get(0).getPositionId());
+    }
+
+    @Test
+    public void testMeanPredictorPicksClosestPosition() {
+
+        final RadioMap map = new RadioMap(1L);
+
+        map.append(Arrays.asList(
+                fingerprint(10L, "a", -40),
+                fingerprint(10L, "b", -80),
+                fingerprint(20L, "a", -80),
+                fingerprint(20L, "b", -40)), 0L);
+
+        final RadioMapSnapshot snapshot = map.snapshot();
+
+        assertEquals(10L, MeanPredictor.predict(snapshot, Arrays.asList(sample("a", -42), sample("b", -77))));
+        assertEquals(20L, MeanPredictor.predict(snapshot, Arrays.asList(sample("a", -79), sample("b", -45), sample("z", -30))));
+        assertEquals(0L, MeanPredictor.predict(snapshot, Collections.singletonList(sample("z", -30))));
+    }
+
+    @Test
+    public void testScanIsNarrowedToItsFloor() {
+
+        final RadioMap map = new RadioMap(1L);
+
+        map.append(Arrays.asList(
+                fingerprint(10L, 0, "lobby", -40),
+                fingerprint(10L, 0, "stairs", -75),
+                fingerprint(11L, 0, "lobby", -55),
+                fingerprint(20L, 1, "office", -45),
+                fingerprint(20L, 1, "stairs", -70),
+                fingerprint(21L, 1, "office", -60)), 0L);
+
+        final RadioMapSnapshot snapshot = map.snapshot();
+
+        assertEquals(2, snapshot.partitionCount());
+        assertEquals(RadioMapSnapshot.partition(1, 1), snapshot.partitionOf(2));
+
+        final List<FingerprintSample> scan = Arrays.asList(sample("office", -50), sample("stairs", -72));
+        final RadioMapSnapshot floor = snapshot.forScan(scan);
+
+        assertEquals(2, floor.positionCount());
+        assertEquals(1, floor.partitionCount());
+        assertEquals(20L, floor.positionId(0));
+        assertEquals(21L, floor.positionId(1));
+        assertEquals(-45f, floor.mean(0, floor.apIndex("office")), 0.001f);
+        assertEquals(RadioMapSnapshot.MISSING, floor.mean(1, floor.apIndex("stairs")), 0.001f);
+        assertEquals(2, floor.apCount());
+        assertEquals(-1, floor.apIndex("lobby"));
+        assertSame(snapshot.likelihoods(), floor.likelihoods());
+        assertEquals(snapshot.penalty(2, snapshot.apIndex("office"), snapshot.bin(-45)),
+                floor.penalty(0, floor.apIndex("office"), floor.bin(-45)));
+        assertSame(floor, snapshot.forScan(scan));
+
+        assertEquals(20L, MeanPredictor.predict(floor, scan));
+        assertEquals(20L, BuiltInAlgorithms.byFloor(new HorusPredictor(1)).predict(snapshot, scan).get(0).getPositionId());
+    }
+
+    @Test
+    public void testSingleFloorIsNotNarrowed() {
+
+        final RadioMap map = new RadioMap(1L);
+
+        map.append(Arrays.asList(fingerprint(10L, "a", -40), fingerprint(20L, "b", -70)), 0L);
+
+        final RadioMapSnapshot snapshot = map.snapshot();
+
+        assertSame(snapshot, snapshot.forScan(Collections.singletonList(sample("a", -40))));
+    }
+}
@@ -0,0 +1,110 @@
+package me.nunum.whereami.service.radiomap;
+
+import java.util.Random;
+
+/**
+ * Compare brute force scoring with the vantage point tree, exact and with
+ * a few node budgets. Not a unit test, run it by hand:
+ * <pre>
+ * java -cp target/classes:target/test-classes me.nunum.whereami.service.radiomap.VantagePointTreeBenchmark [positions] [aps]
+ * </pre>
+ */
+public final class VantagePointTreeBenchmark {
+
+    private static final int QUERIES = 2_000;
+    private static final int K = 3;
+
+    public static void main(String[] args) {
+
+        final int positions = args.length > 0 ? Integer.parseInt(args[0]) : 2_000;
+        final int dimensions = args.length > 1 ? Integer.parseInt(args[1]) : 64;
+
+        final Random random = new Random(42);
+
+        // Access points and positions scattered over a square venue, log distance path loss
+        final double side = Math.sqrt(positions) * 5;
+
+        final double[][] aps = new double[dimensions][2];
+        for (double[] ap : aps) {
+            ap[0] = random.nextDouble() * side;
+            ap[1] = random.nextDouble() * side;
+        }
+
+        final float[] rows = new float[positions * dimensions];
+        for (int p = 0; p < positions; p++) {
+            final double x = random.nextDouble() * side;
+            final double y = random.nextDouble() * side;
+            for (int a = 0; a < dimensions; a++) {
+                final double distance = Math.max(1, Math.hypot(x - aps[a][0], y - aps[a][1]));
+                final double level = -30 - 30 * Math.log10(distance) + random.nextGaussian() * 2;
+                rows[p * dimensions + a] = level < RadioMapSnapshot.MISSING ? RadioMapSnapshot.MISSING : (float) level;
+            }
+        }
+
+        final float[][] queries = new float[QUERIES][dimensions];
+        for (float[] query : queries) {
+            final int origin = random.nextInt(positions) * dimensions;
+            for (int a = 0; a < dimensions; a++) {
+                query[a] = Math.max(RadioMapSnapshot.MISSING, rows[origin + a] + (float) random.nextGaussian() * 4);
+            }
+        }
+
+        long started = System.nanoTime();
+        final VantagePointTree tree = new VantagePointTree(rows, dimensions, positions, 1L);
+        System.out.printf("positions=%d aps=%d build=%.2f ms%n", positions, dimensions, (System.nanoTime() - started) / 1e6);
+
+        final int[] truth = new int[QUERIES];
+
+        // Warm up and ground truth
+        for (int i = 0; i < QUERIES; i++) {
+            truth[i] = bruteForce(rows, dimensions, queries[i]);
+            tree.search(queries[i], K, 0);
+        }
+
+        started = System.nanoTime();
+        for (int i = 0; i < QUERIES; i++) {
+            truth[i] = bruteForce(rows, dimensions, queries[i]);
+        }
+        report("brute force", started, QUERIES, QUERIES);
+
+        for (int budget : new int[]{0, positions / 4, positions / 16, positions / 64}) {
+
+            int hits = 0;
+
+            started = System.nanoTime();
+            for (int i = 0; i < QUERIES; i++) {
+                final VantagePointTree.Neighbours neighbours = tree.search(queries[i], K, budget);
+                if (neighbours.size() > 0 && neighbours.row(0) == truth[i]) {
+                    hits++;
+                }
+            }
+
+            report(budget <= 0 ? "vp-tree exact" : "vp-tree budget " + budget, started, QUERIES, hits);
+        }
+    }
+
+    private static int bruteForce(float[] rows, int dimensions, float[] query) {
+
+        int best = -1;
+        float bestDistance = Float.MAX_VALUE;
+
+        for (int p = 0, positions = rows.length / dimensions; p < positions; p++) {
+            float sum = 0f;
+            for (int a = 0; a < dimensions; a++) {
+                final float d = query[a] - rows[p * dimensions + a];
+                sum += d * d;
+            }
+            if (sum < bestDistance) {
+                bestDistance = sum;
+                best = p;
+            }
+        }
+
+        return best;
+    }
+
+    private static void report(String name, long started, int queries, int hits) {
+        final double micros = (System.nanoTime() - started) / 1e3 / queries;
+        System.out.printf("%-24s %8.2f us/query recall@1=%.3f%n", name, micros, hits / (double) queries);
+    }
+}
@@ -0,0 +1,168 @@
+package me.nunum.whereami.service.radiomap;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class VantagePointTreeTest {
+
+    private static float[] matrix(Random random, int positions, int dimensions) {
+        final float[] rows = new float[positions * dimensions];
+        for (int i = 0; i < rows.length; i++) {
+            rows[i] = random.nextInt(10) == 0 ? RadioMapSnapshot.MISSING : -30 - random.nextInt(60);
+        }
+        return rows;
+    }
+
+    private static float[] bruteForce(float[] rows, int dimensions, float[] query) {
+        final float[] distances = new float[rows.length / dimensions];
+        for (int p = 0; p < distances.length; p++) {
+            float sum = 0f;
+            for (int a = 0; a < dimensions; a++) {
+                final float d = query[a] - rows[p * dimensions + a];
+                sum += d * d;
+            }
+            distances[p] = (float) Math.sqrt(sum);
+        }
+        return distances;
+    }
+
+    @Test
+    public void testExactSearchMatchesBruteForce() {
+
+        final Random random = new Random(7);
+        final int positions = 500;
+        final int dimensions = 24;
+
+        final float[] rows = matrix(random, positions, dimensions);
+        final VantagePointTree tree = new VantagePointTree(rows, dimensions, positions, 1L);
+
+        assertEquals(positions, tree.size());
+
+        for (int q = 0; q < 50; q++) {
+
+            final float[] query = Arrays.copyOfRange(matrix(random, 1, dimensions), 0, dimensions);
+
+            final float[] distances = bruteForce(rows, dimensions, query);
+            final float[] sorted = distances.clone();
+            Arrays.sort(sorted);
+
+            final VantagePointTree.Neighbours neighbours = tree.search(query, 5, 0);
+
+            assertEquals(5, neighbours.size());
+
+            for (int i = 0; i < neighbours.size(); i++) {
+                assertEquals(sorted[i], neighbours.distance(i), 1e-3f);
+                assertEquals(distances[neighbours.row(i)], neighbours.distance(i), 1e-3f);
+            }
+        }
+    }
+
+    @Test
+    public void testBudgetBoundsTheSearch() {
+
+        final Random random = new Random(11);
+        final int positions = 300;
+        final int dimensions = 8;
+
+        final float[] rows = matrix(random, positions, dimensions);
+        final VantagePointTree tree = new VantagePointTree(rows, dimensions, positions, 1L);
+
+        final float[] query = Arrays.copyOfRange(rows, 0, dimensions);
+
+        final VantagePointTree.Neighbours neighbours = tree.search(query, 3, 2);
+
+        assertTrue(neighbours.size() <= 2);
+        assertTrue(neighbours.size() > 0);
+    }
+
+    @Test
+    public void testEmptyAndSingleton() {
+
+        assertEquals(0, new VantagePointTree(new float[0], 4, 0, 1L).search(new float[4], 3, 0).size());
+
+        final VantagePointTree.Neighbours one = new VantagePointTree(new float[]{-40f, -50f}, 2, 1, 1L)
+                .search(new float[]{-40f, -50f}, 3, 0);
+
+        assertEquals(1, one.size());
+        assertEquals(0, one.row(0));
+        assertEquals(0f, one.distance(0), 0f);
+    }
+
+    /**
+     * Latency against brute force scoring is measured by {@link VantagePointTreeBenchmark}
+     */
+    @Test
+    public void testBudgetedSearchKeepsRecall() {
+
+        final Random random = new Random(42);
+        final int positions = 2_000;
+        final int dimensions = 32;
+        final int queries = 200;
+
+        // Access points and positions scattered over a square venue, log distance path loss
+        final double side = Math.sqrt(positions) * 5;
+
+        final double[][] aps = new double[dimensions][2];
+        for (double[] ap : aps) {
+            ap[0] = random.nextDouble() * side;
+            ap[1] = random.nextDouble() * side;
+        }
+
+        final float[] rows = new float[positions * dimensions];
+        for (int p = 0; p < positions; p++) {
+            final double x = random.nextDouble() * side;
+            final double y = random.nextDouble() * side;
+            for (int a = 0; a < dimensions; a++) {
+                final double distance = Math.max(1, Math.hypot(x - aps[a][0], y - aps[a][1]));
+                final double level = -30 - 30 * Math.log10(distance) + random.nextGaussian() * 2;
+                rows[p * dimensions + a] = level < RadioMapSnapshot.MISSING ? RadioMapSnapshot.MISSING : (float) level;
+            }
+        }
+
+        final VantagePointTree tree = new VantagePointTree(rows, dimensions, positions, 1L);
+
+        int exactHits = 0;
+        int budgetHits = 0;
+
+        for (int q = 0; q < queries; q++) {
+
+            final int origin = random.nextInt(positions) * dimensions;
+
+            final float[] query = new float[dimensions];
+            for (int a = 0; a < dimensions; a++) {
+                query[a] = Math.max(RadioMapSnapshot.MISSING, rows[origin + a] + (float) random.nextGaussian() * 4);
+            }
+
+            final float[] distances = bruteForce(rows, dimensions, query);
+            final float nearest = distances[nearest(distances)];
+
+            if (Math.abs(tree.search(query, 3, 0).distance(0) - nearest) < 1e-3f) {
+                exactHits++;
+            }
+
+            final VantagePointTree.Neighbours budgeted = tree.search(query, 3, positions / 4);
+
+            if (budgeted.size() > 0 && Math.abs(budgeted.distance(0) - nearest) < 1e-3f) {
+                budgetHits++;
+            }
+        }
+
+        assertEquals(queries, exactHits);
+        assertTrue("Recall@1 of a budget of a quarter of the positions is " + budgetHits / (double) queries,
+                budgetHits >= queries * 0.9);
+    }
+
+    private static int nearest(float[] distances) {
+        int best = 0;
+        for (int p = 1; p < distances.length; p++) {
+            if (distances[p] < distances[best]) {
+                best = p;
+            }
+        }
+        return best;
+    }
+}
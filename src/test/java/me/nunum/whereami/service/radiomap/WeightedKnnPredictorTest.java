@@ -0,0 +1,91 @@
+package me.nunum.whereami.service.radiomap;
+
+import me.nunum.whereami.model.Fingerprint;
+import me.nunum.whereami.model.request.FingerprintSample;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class WeightedKnnPredictorTest {
+
+    private static Fingerprint fingerprint(long id, long positionId, String bssid, int level) {
+        final Fingerprint fingerprint = new Fingerprint(bssid, "ssid", level, 0, 0, 0, 2412, "", 0, 0, positionId, 1L);
+        fingerprint.setId(id);
+        return fingerprint;
+    }
+
+    private static FingerprintSample sample(String bssid, int level) {
+        return new FingerprintSample(bssid, "ssid", level, 0, 0, 0, 2412, "");
+    }
+
+    @Test
+    public void testNearestPositionsComeFirst() {
+
+        final RadioMap map = new RadioMap(1L);
+
+        map.append(Arrays.asList(
+                fingerprint(1, 10L, "a", -40),
+                fingerprint(2, 10L, "b", -80),
+                fingerprint(3, 20L, "a", -60),
+                fingerprint(4, 20L, "b", -60),
+                fingerprint(5, 30L, "a", -80),
+                fingerprint(6, 30L, "b", -40)), 0L);
+
+        final List<Candidate> candidates = new WeightedKnnPredictor(2, Long.MAX_VALUE)
+                .predict(map.snapshot(), Arrays.asList(sample("a", -42), sample("b", -78)));
+
+        assertEquals(2, candidates.size());
+        assertEquals(10L, candidates.get(0).getPositionId());
+        assertEquals(20L, candidates.get(1).getPositionId());
+        assertTrue(candidates.get(0).getConfidence() > candidates.get(1).getConfidence());
+        assertEquals(1.0, candidates.get(0).getConfidence() + candidates.get(1).getConfidence(), 1e-6);
+    }
+
+    @Test
+    public void testUnknownScanHasNoCandidates() {
+
+        final RadioMap map = new RadioMap(1L);
+        map.append(Collections.singletonList(fingerprint(1, 10L, "a", -40)), 0L);
+
+        assertTrue(new WeightedKnnPredictor(3, Long.MAX_VALUE)
+                .predict(map.snapshot(), Collections.singletonList(sample("z", -40)))
+                .isEmpty());
+    }
+
+    @Test
+    public void testParallelScoringMatchesSequential() {
+
+        final Random random = new Random(42);
+        final RadioMap map = new RadioMap(1L);
+        final List<Fingerprint> fingerprints = new ArrayList<>();
+
+        long id = 0;
+        for (int p = 0; p < 2000; p++) {
+            for (int a = 0; a < 20; a++) {
+                fingerprints.add(fingerprint(++id, p, "ap" + a, -30 - random.nextInt(60)));
+            }
+        }
+
+        map.append(fingerprints, 0L);
+
+        final RadioMapSnapshot snapshot = map.snapshot();
+
+        final float[] query = new float[snapshot.apCount()];
+        for (int a = 0; a < query.length; a++) {
+            query[a] = -30 - random.nextInt(60);
+        }
+
+        final float[] sequential = new WeightedKnnPredictor(3, Long.MAX_VALUE).distances(snapshot, query);
+        final float[] parallel = new WeightedKnnPredictor(3, 1L).distances(snapshot, query);
+
+        for (int p = 0; p < sequential.length; p++) {
+            assertEquals(sequential[p], parallel[p], 0f);
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package me.nunum.whereami.service.spi;
+
+import me.nunum.whereami.model.AlgorithmProvider;
+import me.nunum.whereami.service.radiomap.BuiltInAlgorithms;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.HashMap;
+
+import static org.junit.Assert.*;
+
+public class InProcessAlgorithmsTest {
+
+    @Test
+    public void testBuiltInsAreDiscovered() {
+
+        assertTrue(InProcessAlgorithms.isRegistered(BuiltInAlgorithms.MEAN_NAME));
+        assertTrue(InProcessAlgorithms.isRegistered(BuiltInAlgorithms.WKNN_NAME));
+        assertTrue(InProcessAlgorithms.isRegistered(BuiltInAlgorithms.HORUS_NAME));
+
+        assertEquals(BuiltInAlgorithms.WKNN_NAME, InProcessAlgorithms.implementation(BuiltInAlgorithms.WKNN_NAME).get().name());
+    }
+
+    @Test
+    public void testLookupFromProviderProperties() {
+
+        final HashMap<String, String> properties = new HashMap<>();
+        properties.put(AlgorithmProvider.IN_PROCESS_PROVIDER_IMPLEMENTATION_KEY, BuiltInAlgorithms.HORUS_NAME);
+
+        assertTrue(InProcessAlgorithms.implementation(properties).isPresent());
+        assertFalse(InProcessAlgorithms.implementation(Collections.emptyMap()).isPresent());
+        assertFalse(InProcessAlgorithms.isRegistered("unknown"));
+    }
+
+    @Test
+    public void testInProcessMethodAcceptsNames() {
+
+        assertEquals(AlgorithmProvider.METHOD.IN_PROCESS, AlgorithmProvider.METHOD.parse("in_process"));
+        assertTrue(AlgorithmProvider.METHOD.IN_PROCESS.isValidProperty(BuiltInAlgorithms.MEAN_NAME));
+        assertFalse(AlgorithmProvider.METHOD.IN_PROCESS.isValidProperty(" "));
+        assertFalse(AlgorithmProvider.METHOD.HTTP.isValidProperty(BuiltInAlgorithms.MEAN_NAME));
+    }
+}
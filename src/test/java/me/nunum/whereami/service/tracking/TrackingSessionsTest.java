@@ -0,0 +1,66 @@
+package me.nunum.whereami.service.tracking;
+
+import me.nunum.whereami.service.radiomap.PositionFilter;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class TrackingSessionsTest {
+
+    @Test
+    public void testSessionsAreBounded() {
+
+        final TrackingSessions<String> sessions = new TrackingSessions<>(2, 60_000L, () -> new PositionFilter(0.8, 6.0, 1), e -> {
+        });
+
+        assertTrue(sessions.open("first", "a").isPresent());
+        assertTrue(sessions.open("second", "b").isPresent());
+        assertFalse(sessions.open("third", "c").isPresent());
+
+        sessions.close("first");
+
+        assertTrue(sessions.open("third", "c").isPresent());
+        assertEquals("c", sessions.get("third").get().getInstance());
+        assertFalse(sessions.get("first").isPresent());
+    }
+
+    @Test
+    public void testIdleSessionsExpire() throws InterruptedException {
+
+        final List<String> expired = new ArrayList<>();
+
+        final TrackingSessions<String> sessions = new TrackingSessions<>(10, 20L, () -> new PositionFilter(0.8, 6.0, 1), expired::add);
+
+        sessions.open("idle", "a");
+        sessions.open("active", "b");
+
+        Thread.sleep(50L);
+
+        sessions.get("active");
+
+        assertEquals(1, sessions.expireIdle());
+        assertEquals(1, expired.size());
+        assertEquals("idle", expired.get(0));
+        assertFalse(sessions.get("idle").isPresent());
+        assertTrue(sessions.get("active").isPresent());
+    }
+
+    @Test
+    public void testBindingAnotherLocalizationStartsOver() {
+
+        final TrackingSessions<String> sessions = new TrackingSessions<>(1, 60_000L, () -> new PositionFilter(0.8, 6.0, 1), e -> {
+        });
+
+        final TrackingSession session = sessions.open("socket", "a").get();
+
+        assertFalse(session.isBoundTo(1L));
+
+        session.bind(1L);
+
+        assertTrue(session.isBoundTo(1L));
+        assertFalse(session.isBoundTo(2L));
+    }
+}